@@ -81,7 +81,7 @@ public class Amount extends BigDecimal {
      * @param decimal The BigDecimal with the initial value.
      */
     public Amount( BigDecimal decimal) {
-	this( decimal.toString());
+	super( decimal.unscaledValue(), decimal.scale(), MathContext.DECIMAL128);  // Avoid formatting and parsing a string.
     }
 
     
@@ -38,6 +38,10 @@ public interface Depth {
 
     // Static variables
 
+    /**
+     * The maximum number of levels to use, if the full depth is requested.
+     */
+    public final static int ALL_LEVELS = Integer.MAX_VALUE;
 
     // Methods
 
@@ -71,6 +75,14 @@ public interface Depth {
      */
     public CurrencyPair getCurrencyPair();
 
+    /**
+     * Get the liquidity metrics of this depth (spread, mid price, imbalance etc).
+     * The metrics are computed once and then cached in the depth.
+     *
+     * @return The liquidity metrics of this depth.
+     */
+    public DepthMetrics getMetrics();
+
     /**
      * Get the price for a given amount of buy order volume.
      *
@@ -36,6 +36,8 @@ import de.andreas_rueckert.util.TimeUtils;
 import java.math.MathContext;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
@@ -47,6 +49,11 @@ public class DepthImpl implements Depth {
 
     // Static variables
 
+    /**
+     * Marker for orders, that cannot be represented as fixed point numbers.
+     */
+    private final static long [][] NO_FIXED_POINT_ORDERS = new long[ 0][];
+
     
     // Instance variable
 
@@ -60,6 +67,26 @@ public class DepthImpl implements Depth {
      */
     protected CurrencyPair _currencyPair;
 
+    /**
+     * The prices and amounts of the buy orders as fixed point mantissas or null, if they are not computed yet.
+     */
+    private volatile long [][] _fixedPointBuys = null;
+
+    /**
+     * The prices and amounts of the sell orders as fixed point mantissas or null, if they are not computed yet.
+     */
+    private volatile long [][] _fixedPointSells = null;
+
+    /**
+     * The limited copies of this depth, mapped by their maximum number of levels, or null, if there are none yet.
+     */
+    private volatile Map< Integer, Depth> _limitedDepths = null;
+
+    /**
+     * The cached liquidity metrics of this depth or null, if they are not computed yet.
+     */
+    private volatile DepthMetrics _metrics = null;
+
     /**
      * The sell orders as a list of DepthOrder objects.
      */
@@ -105,9 +132,79 @@ public class DepthImpl implements Depth {
 	_timestamp = TimeUtils.getInstance().getCurrentGMTTimeMicros();  // Store the timestamp in the object.
     }
 
+    /**
+     * Create a new depth object from the best orders of another depth.
+     * The timestamp of the original depth is kept, since the orders are not any newer.
+     *
+     * @param depth The depth to copy the orders from.
+     * @param maxLevels The maximum number of buy and sell orders to copy.
+     */
+    public DepthImpl( Depth depth, int maxLevels) {
+
+	this( depth.getCurrencyPair(), depth.getTradeSite());
+
+	_timestamp = depth.getTimestamp();  // Keep the timestamp of the original depth.
+
+	// Copy the best orders of both sides.
+	List<DepthOrder> buys = depth.getBuyOrders();
+	_buys.addAll( buys.subList( 0, Math.min( buys.size(), maxLevels)));
+
+	List<DepthOrder> sells = depth.getSellOrders();
+	_sells.addAll( sells.subList( 0, Math.min( sells.size(), maxLevels)));
+    }
+
 
     // Methods
 
+    /**
+     * Get a depth with at most maxLevels orders on each side from a given depth.
+     * If the depth is already small enough, it is returned unchanged. The limited
+     * copies of a DepthImpl are kept, so their cached metrics are reused.
+     *
+     * @param depth The depth to limit.
+     * @param maxLevels The maximum number of buy and sell orders.
+     *
+     * @return A depth with at most maxLevels orders on each side.
+     */
+    public static Depth getLimitedDepth( Depth depth, int maxLevels) {
+
+	if( ( depth.getBuySize() <= maxLevels) && ( depth.getSellSize() <= maxLevels)) {
+
+	    return depth;  // Nothing to remove, so just return the original depth.
+	}
+
+	if( ! ( depth instanceof DepthImpl)) {
+	    return new DepthImpl( depth, maxLevels);
+	}
+
+	DepthImpl depthImpl = (DepthImpl)depth;
+	Map< Integer, Depth> limitedDepths = depthImpl._limitedDepths;
+
+	if( limitedDepths == null) {  // Concurrent callers might create 2 maps, but then 1 copy is just created again.
+	    depthImpl._limitedDepths = limitedDepths = new ConcurrentHashMap< Integer, Depth>();
+	}
+
+	Depth result = limitedDepths.get( maxLevels);
+
+	if( result == null) {
+
+	    result = new DepthImpl( depth, maxLevels);
+
+	    limitedDepths.put( maxLevels, result);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the fixed point scale for the amounts of this depth.
+     *
+     * @return The number of decimals of the traded currency.
+     */
+    private final int getAmountScale() {
+	return FixedPoint.getScale( getCurrencyPair() != null ? getCurrencyPair().getCurrency() : null);
+    }
+
     /**
      * Get a buy order with a given index.
      *
@@ -146,6 +243,82 @@ public class DepthImpl implements Depth {
 	return _currencyPair;
     }
 
+    /**
+     * Get the prices and amounts of the buy or sell orders as fixed point mantissas.
+     * The mantissas are computed on the first call and then cached.
+     *
+     * @param buyOrders true, if we want the buy orders. False for the sell orders.
+     *
+     * @return An array with the price mantissas at index 0 and the amount mantissas at index 1.
+     *
+     * @throws ArithmeticException if the orders cannot be represented as fixed point numbers.
+     */
+    private final long [][] getFixedPointOrders( boolean buyOrders) throws ArithmeticException {
+
+	long [][] result = buyOrders ? _fixedPointBuys : _fixedPointSells;
+
+	if( result == null) {  // Convert the orders only once. A concurrent duplicate conversion is harmless.
+
+	    List<DepthOrder> orders = buyOrders ? getBuyOrders() : getSellOrders();
+	    int priceScale = getPriceScale();
+	    int amountScale = getAmountScale();
+
+	    try {
+
+		result = new long[ 2][ orders.size()];
+
+		for( int i = 0; i < orders.size(); ++i) {
+
+		    result[ 0][ i] = FixedPoint.toMantissa( orders.get( i).getPrice(), priceScale);
+		    result[ 1][ i] = FixedPoint.toMantissa( orders.get( i).getAmount(), amountScale);
+		}
+
+	    } catch( ArithmeticException ae) {  // Remember, that the orders do not fit, so we don't try again.
+
+		result = NO_FIXED_POINT_ORDERS;
+	    }
+
+	    if( buyOrders) {
+		_fixedPointBuys = result;
+	    } else {
+		_fixedPointSells = result;
+	    }
+	}
+
+	if( result == NO_FIXED_POINT_ORDERS) {
+	    throw new ArithmeticException( "The orders of this depth cannot be represented as fixed point numbers");
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the liquidity metrics of this depth (spread, mid price, imbalance etc).
+     * The metrics are computed on the first call and then cached.
+     *
+     * @return The liquidity metrics of this depth.
+     */
+    public DepthMetrics getMetrics() {
+
+	DepthMetrics metrics = _metrics;
+
+	if( metrics == null) {  // Compute the metrics only once. A concurrent duplicate computation is harmless.
+
+	    _metrics = metrics = new DepthMetrics( this);
+	}
+
+	return metrics;
+    }
+
+    /**
+     * Get the fixed point scale for the prices of this depth.
+     *
+     * @return The number of decimals of the payment currency.
+     */
+    private final int getPriceScale() {
+	return FixedPoint.getScale( getCurrencyPair() != null ? getCurrencyPair().getPaymentCurrency() : null);
+    }
+
     /**
      * Get the price for a given amount of buy order volume.
      *
@@ -202,6 +375,19 @@ public class DepthImpl implements Depth {
 
 	// ... end of the excessive error checking...
 
+	// Try the fixed point computation first, and use BigDecimals only if the values don't fit into a long.
+	try {
+
+	    Price fixedPointPrice = getPriceForAmountFixedPoint( amount, buyOrders);
+
+	    if( fixedPointPrice != null) {
+		return fixedPointPrice;
+	    }
+
+	} catch( ArithmeticException ae) {
+	    // Just use the BigDecimal computation then.
+	}
+
 	List<DepthOrder> orders = buyOrders ? getBuyOrders() : getSellOrders();
 	Amount currentAmount = new Amount( "0");
 	Price currentPrice = new Price( "0", getCurrencyPair().getPaymentCurrency());
@@ -238,6 +424,54 @@ public class DepthImpl implements Depth {
 					    + " is not possible. Not enough order volume to do so.");
     }
 
+    /**
+     * Get the price for a given amount of order volume with fixed point arithmetic.
+     *
+     * @param amount The amount, that we want to trade.
+     * @param buyOrders true, if we want to sum up the buy orders. False for the sell orders.
+     *
+     * @return The price for the given amount or null, if there are not enough orders.
+     *
+     * @throws ArithmeticException if the values cannot be represented as fixed point numbers.
+     */
+    private final Price getPriceForAmountFixedPoint( Amount amount, boolean buyOrders) throws ArithmeticException {
+
+	int priceScale = getPriceScale();
+	int amountScale = getAmountScale();
+
+	long [][] orders = getFixedPointOrders( buyOrders);
+	long [] prices = orders[ 0];
+	long [] amounts = orders[ 1];
+
+	// The product of price and amount has priceScale + amountScale decimals. All of them are kept,
+	// so the result equals the BigDecimal computation. If the sum overflows, FixedPoint throws and
+	// the caller uses the BigDecimal computation instead.
+	int volumeScale = priceScale + amountScale;
+
+	long missingAmount = FixedPoint.toMantissa( amount, amountScale);
+	long currentAmount = 0L;
+	long currentVolume = 0L;
+
+	for( int i = 0; i < prices.length; ++i) {
+
+	    // Add the whole order or just the missing amount.
+	    long addedAmount = Math.min( amounts[ i], missingAmount);
+
+	    currentVolume = FixedPoint.add( currentVolume, FixedPoint.multiply( prices[ i], addedAmount, 0));
+	    currentAmount += addedAmount;
+	    missingAmount -= addedAmount;
+
+	    if( missingAmount <= 0L) {
+
+		// Divide the volume by the amount to get the average price.
+		return new Price( FixedPoint.toBigDecimal( currentVolume, volumeScale).divide( FixedPoint.toBigDecimal( currentAmount, amountScale), MathContext.DECIMAL128)
+				  , getCurrencyPair() != null ? getCurrencyPair().getPaymentCurrency() : null);
+	    }
+	}
+
+	return null;  // Not enough orders.
+    }
+
     /**
      * Get the price for a given amount of sell order volume.
      *
@@ -309,6 +543,21 @@ public class DepthImpl implements Depth {
      */
     public Amount getTotalOrderVolume( boolean buyOrders) {
 
+	// Try to sum up the fixed point amounts first, which does not create any objects.
+	try {
+
+	    long totalMantissa = 0L;
+
+	    for( long currentAmount : getFixedPointOrders( buyOrders)[ 1]) {
+		totalMantissa = FixedPoint.add( totalMantissa, currentAmount);
+	    }
+
+	    return new Amount( FixedPoint.toBigDecimal( totalMantissa, getAmountScale()));
+
+	} catch( ArithmeticException ae) {
+	    // Just use the BigDecimal computation then.
+	}
+
 	Amount totalAmount = new Amount( "0");
 
 	// Just loop over the requested order type and add the amounts up.
@@ -349,41 +598,87 @@ public class DepthImpl implements Depth {
      */
     protected void parseJSONDepthArrays( JSONObject jsonDepth) {
 
-	// Get the array with the sell orders.
-	JSONArray asks = jsonDepth.getJSONArray( "asks");
+	parseJSONDepthArrays( jsonDepth, ALL_LEVELS);
+    }
 
-	// Now loop over the asks array and get the entries as arrays.
-	for( int i = 0; i < asks.size(); ++i) {
+    /**
+     * Parse a JSON reponse, that consists of nested arrays and convert them to
+     * DepthOrder objects. Only the best maxLevels orders of each side are parsed.
+     *
+     * @param jsonDepth The depth as nested JSON arrays.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    protected void parseJSONDepthArrays( JSONObject jsonDepth, int maxLevels) {
 
-	    JSONArray sellOrder = asks.getJSONArray( i);  // Get the current sell order.
+	// Parse the sell orders.
+	parseJSONDepthArray( jsonDepth.getJSONArray( "asks"), OrderType.SELL, _sells, maxLevels);
 
-	    // System.out.println( "Creating order with price: " + sellOrder.getString( 0));
+	// Parse the buy orders.
+	parseJSONDepthArray( jsonDepth.getJSONArray( "bids"), OrderType.BUY, _buys, maxLevels);
+    }
 
-	    _sells.add( new DepthOrderImpl( OrderType.SELL
-					    , new Price( sellOrder.getString( 0))
-					    , _currencyPair
-					    , new Amount( sellOrder.getString( 1))));
+    /**
+     * Parse a JSON array of [ price, amount ] arrays and add the best maxLevels orders
+     * to a list of DepthOrder objects.
+     *
+     * @param jsonOrders The orders as nested JSON arrays.
+     * @param orderType The type of the orders (buy or sell).
+     * @param result The list, where the parsed orders are added to.
+     * @param maxLevels The maximum number of orders to parse.
+     */
+    private void parseJSONDepthArray( JSONArray jsonOrders, OrderType orderType, List<DepthOrder> result, int maxLevels) {
+
+	int nOrders = jsonOrders.size();
+
+	// Most trade sites send the best order first, but some start with the worst price.
+	// So compare the first and the last price, if not all the orders are parsed, and
+	// start at the end of the array, if necessary.
+	boolean bestOrderLast = false;
+
+	if( maxLevels < nOrders) {
+
+	    int priceComparison = new Price( jsonOrders.getJSONArray( 0).getString( 0))
+		.compareTo( new Price( jsonOrders.getJSONArray( nOrders - 1).getString( 0)));
+
+	    bestOrderLast = ( orderType == OrderType.SELL) ? ( priceComparison > 0) : ( priceComparison < 0);
 	}
 
-	// Make sure, the sells are sorted (they should be anyway, but just in case...)
-	Collections.sort( _sells);
+	// Now loop over the best orders and get the entries as arrays.
+	for( int i = 0, nParsedOrders = Math.min( nOrders, maxLevels); i < nParsedOrders; ++i) {
+
+	    JSONArray jsonOrder = jsonOrders.getJSONArray( bestOrderLast ? nOrders - 1 - i : i);
 
-	// Get the array with the buy orders.
-	JSONArray bids = jsonDepth.getJSONArray( "bids");
+	    result.add( new DepthOrderImpl( orderType
+					    , new Price( jsonOrder.getString( 0))
+					    , _currencyPair
+					    , new Amount( jsonOrder.getString( 1))));
+	}
 
-	// Now loop over the bids array and get the entries as arrays.
-	for( int i = 0; i < bids.size(); ++i) {
+	// Make sure, the orders are sorted (they should be anyway, but just in case...)
+	Collections.sort( result);
+    }
 
-	    JSONArray buyOrder = bids.getJSONArray( i);  // Get the current buy order.
+    /**
+     * Remove all but the best maxLevels orders from both sides of this depth.
+     * Depth implementations, that have to parse all the orders before they can be
+     * sorted, can use this method to limit the depth afterwards.
+     *
+     * @param maxLevels The maximum number of buy and sell orders to keep.
+     */
+    protected void removeOrdersBeyondLevel( int maxLevels) {
+
+	// The cached metrics and fixed point orders are no longer valid.
+	_metrics = null;
+	_fixedPointBuys = null;
+	_fixedPointSells = null;
 
-	    _buys.add( new DepthOrderImpl( OrderType.BUY
-					   , new Price( buyOrder.getString( 0))
-					   , _currencyPair
-					   , new Amount( buyOrder.getString( 1))));
+	if( _buys.size() > maxLevels) {
+	    _buys.subList( maxLevels, _buys.size()).clear();
 	}
 
-	// Make sure, the buys are sorted (they should be anyway, but just in case...)
-	Collections.sort( _buys);
+	if( _sells.size() > maxLevels) {
+	    _sells.subList( maxLevels, _sells.size()).clear();
+	}
     }
 
     /**
@@ -396,6 +691,10 @@ public class DepthImpl implements Depth {
     public void setCurrencyPair( CurrencyPair currencyPair) {
 
 	_currencyPair = currencyPair;
+
+	// The fixed point scales depend on the currencies, so convert the orders again.
+	_fixedPointBuys = null;
+	_fixedPointSells = null;
     }
 
 }
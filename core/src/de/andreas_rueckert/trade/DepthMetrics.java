@@ -0,0 +1,424 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade;
+
+import de.andreas_rueckert.trade.order.DepthOrder;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+
+/**
+ * Liquidity metrics of a depth snapshot. The metrics are computed once per depth,
+ * so strategies can use them without walking the orders of the depth again.
+ * Volumes within a price band are computed from cumulative volumes, so any
+ * band width can be queried without another pass over the orders.
+ */
+public class DepthMetrics {
+
+    // Static variables
+
+    /**
+     * The number of basis points in 1.
+     */
+    private final static double BPS_PER_UNIT = 10000.0d;
+
+    /**
+     * 2 as a BigDecimal, to compute the mid price.
+     */
+    private final static BigDecimal TWO = new BigDecimal( "2");
+
+
+    // Instance variables
+
+    /**
+     * The best buy order or null, if there are no buy orders.
+     */
+    private DepthOrder _bestBuy = null;
+
+    /**
+     * The best sell order or null, if there are no sell orders.
+     */
+    private DepthOrder _bestSell = null;
+
+    /**
+     * The prices of the buy orders, from the best to the worst price.
+     */
+    private double [] _buyPrices;
+
+    /**
+     * The cumulative volumes of the buy orders, from the best to the worst price.
+     */
+    private double [] _buyVolumes;
+
+    /**
+     * The depth, these metrics are computed for.
+     */
+    private Depth _depth;
+
+    /**
+     * The mid price as a double, to compute the price bands.
+     */
+    private double _midPrice = Double.NaN;
+
+    /**
+     * The prices of the sell orders, from the best to the worst price.
+     */
+    private double [] _sellPrices;
+
+    /**
+     * The cumulative volumes of the sell orders, from the best to the worst price.
+     */
+    private double [] _sellVolumes;
+
+
+    // Constructors
+
+    /**
+     * Compute the metrics of a depth.
+     *
+     * @param depth The depth to analyze.
+     */
+    public DepthMetrics( Depth depth) {
+
+	_depth = depth;
+
+	List<DepthOrder> buys = depth.getBuyOrders();
+	List<DepthOrder> sells = depth.getSellOrders();
+
+	if( ! buys.isEmpty()) {
+	    _bestBuy = buys.get( 0);
+	}
+
+	if( ! sells.isEmpty()) {
+	    _bestSell = sells.get( 0);
+	}
+
+	if( hasBothSides()) {
+	    _midPrice = ( _bestBuy.getPrice().doubleValue() + _bestSell.getPrice().doubleValue()) / 2.0d;
+	}
+
+	// Compute the prices and cumulative volumes of both sides in 1 pass.
+	_buyPrices = new double[ buys.size()];
+	_buyVolumes = new double[ buys.size()];
+	sumUpVolumes( buys, _buyPrices, _buyVolumes);
+
+	_sellPrices = new double[ sells.size()];
+	_sellVolumes = new double[ sells.size()];
+	sumUpVolumes( sells, _sellPrices, _sellVolumes);
+    }
+
+
+    // Methods
+
+    /**
+     * Check, that there are buy and sell orders in the depth.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    private final void checkBothSides() throws TradeDataNotAvailableException {
+
+	if( ! hasBothSides()) {
+	    throw new TradeDataNotAvailableException( "No buy and sell orders in the depth of "
+						      + ( _depth.getTradeSite() != null ? _depth.getTradeSite().getName() : "unknown trade site")
+						      + ( _depth.getCurrencyPair() != null ? " with currency pair " + _depth.getCurrencyPair().getCode() : ""));
+	}
+    }
+
+    /**
+     * Get the volume of the buy orders within a given distance from the mid price.
+     *
+     * @param bps The distance from the mid price in basis points (1/100 percent).
+     *
+     * @return The volume of the buy orders within the given distance.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public Amount getBuyVolumeWithin( double bps) throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return new Amount( getVolumeWithin( _buyPrices, _buyVolumes, _midPrice * ( 1.0d - bps / BPS_PER_UNIT), true));
+    }
+
+    /**
+     * Get the slope of the buy side, which is the volume per basis point of distance from the mid price.
+     * A steep slope means, that a lot of volume is close to the mid price.
+     *
+     * @return The slope of the buy side in volume per basis point.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public double getBuySlope() throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return getSlope( _buyPrices, _buyVolumes);
+    }
+
+    /**
+     * Get the depth, these metrics were computed for.
+     *
+     * @return The depth, these metrics were computed for.
+     */
+    public Depth getDepth() {
+	return _depth;
+    }
+
+    /**
+     * Get the imbalance of the whole depth. The imbalance is (buy volume - sell volume) / (buy volume + sell volume),
+     * so it's between -1 (only sell volume) and 1 (only buy volume).
+     *
+     * @return The imbalance of the total buy and sell volumes.
+     *
+     * @throws TradeDataNotAvailableException if the depth has no orders at all.
+     */
+    public double getImbalance() throws TradeDataNotAvailableException {
+
+	return getImbalance( getTotalVolume( _buyVolumes), getTotalVolume( _sellVolumes));
+    }
+
+    /**
+     * Get the imbalance of the volumes within a given distance from the mid price.
+     *
+     * @param bps The distance from the mid price in basis points (1/100 percent).
+     *
+     * @return The imbalance of the buy and sell volumes within the given distance.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty or there is no volume in the band.
+     */
+    public double getImbalance( double bps) throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return getImbalance( getVolumeWithin( _buyPrices, _buyVolumes, _midPrice * ( 1.0d - bps / BPS_PER_UNIT), true)
+			     , getVolumeWithin( _sellPrices, _sellVolumes, _midPrice * ( 1.0d + bps / BPS_PER_UNIT), false));
+    }
+
+    /**
+     * Compute the imbalance of 2 volumes.
+     *
+     * @param buyVolume The buy volume.
+     * @param sellVolume The sell volume.
+     *
+     * @return The imbalance of the 2 volumes.
+     *
+     * @throws TradeDataNotAvailableException if both volumes are 0.
+     */
+    private final double getImbalance( double buyVolume, double sellVolume) throws TradeDataNotAvailableException {
+
+	double totalVolume = buyVolume + sellVolume;
+
+	if( totalVolume <= 0.0d) {
+	    throw new TradeDataNotAvailableException( "Cannot compute the imbalance of a depth without volume");
+	}
+
+	return ( buyVolume - sellVolume) / totalVolume;
+    }
+
+    /**
+     * Get the mid price between the best buy and the best sell order.
+     *
+     * @return The mid price.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public Price getMidPrice() throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return new Price( _bestBuy.getPrice().add( _bestSell.getPrice()).divide( TWO, MathContext.DECIMAL128)
+			  , _bestSell.getPrice().getCurrency());
+    }
+
+    /**
+     * Get the volume of the sell orders within a given distance from the mid price.
+     *
+     * @param bps The distance from the mid price in basis points (1/100 percent).
+     *
+     * @return The volume of the sell orders within the given distance.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public Amount getSellVolumeWithin( double bps) throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return new Amount( getVolumeWithin( _sellPrices, _sellVolumes, _midPrice * ( 1.0d + bps / BPS_PER_UNIT), false));
+    }
+
+    /**
+     * Get the slope of the sell side, which is the volume per basis point of distance from the mid price.
+     * A steep slope means, that a lot of volume is close to the mid price.
+     *
+     * @return The slope of the sell side in volume per basis point.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public double getSellSlope() throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return getSlope( _sellPrices, _sellVolumes);
+    }
+
+    /**
+     * Compute the slope of a side of the depth as a least squares fit of the cumulative
+     * volume over the distance from the mid price (through the origin).
+     *
+     * @param prices The prices of the orders.
+     * @param cumulativeVolumes The cumulative volumes of the orders.
+     *
+     * @return The slope in volume per basis point.
+     */
+    private final double getSlope( double [] prices, double [] cumulativeVolumes) {
+
+	double sumDistanceVolume = 0.0d;
+	double sumSquaredDistance = 0.0d;
+
+	for( int i = 0; i < prices.length; ++i) {
+
+	    double distance = Math.abs( prices[ i] - _midPrice) / _midPrice * BPS_PER_UNIT;
+
+	    sumDistanceVolume += distance * cumulativeVolumes[ i];
+	    sumSquaredDistance += distance * distance;
+	}
+
+	return sumSquaredDistance > 0.0d ? sumDistanceVolume / sumSquaredDistance : 0.0d;
+    }
+
+    /**
+     * Get the spread between the best sell and the best buy order.
+     *
+     * @return The spread.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public Price getSpread() throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	return new Price( _bestSell.getPrice().subtract( _bestBuy.getPrice()), _bestSell.getPrice().getCurrency());
+    }
+
+    /**
+     * Get the total volume of a side from the cumulative volumes.
+     *
+     * @param cumulativeVolumes The cumulative volumes of the side.
+     *
+     * @return The total volume of the side.
+     */
+    private final double getTotalVolume( double [] cumulativeVolumes) {
+
+	return cumulativeVolumes.length > 0 ? cumulativeVolumes[ cumulativeVolumes.length - 1] : 0.0d;
+    }
+
+    /**
+     * Get the cumulative volume of the orders up to a given price.
+     *
+     * @param prices The prices of the orders, from the best to the worst price.
+     * @param cumulativeVolumes The cumulative volumes of the orders.
+     * @param limitPrice The worst price to include.
+     * @param buyOrders true, if the prices are buy prices (falling). False for sell prices (rising).
+     *
+     * @return The cumulative volume up to the given price.
+     */
+    private final double getVolumeWithin( double [] prices, double [] cumulativeVolumes, double limitPrice, boolean buyOrders) {
+
+	// Find the number of orders within the limit with a binary search.
+	// Buy prices are falling and sell prices are rising, so the comparison depends on the side.
+	int low = 0;
+	int high = prices.length;
+
+	while( low < high) {
+
+	    int middle = ( low + high) >>> 1;
+
+	    if( buyOrders ? prices[ middle] >= limitPrice : prices[ middle] <= limitPrice) {
+		low = middle + 1;
+	    } else {
+		high = middle;
+	    }
+	}
+
+	return low > 0 ? cumulativeVolumes[ low - 1] : 0.0d;
+    }
+
+    /**
+     * Get the volume weighted mid price of the best orders. The price moves towards the
+     * side with less volume, since this side is more likely to be filled first.
+     *
+     * @return The volume weighted mid price.
+     *
+     * @throws TradeDataNotAvailableException if one side of the depth is empty.
+     */
+    public Price getWeightedMidPrice() throws TradeDataNotAvailableException {
+
+	checkBothSides();
+
+	BigDecimal buyAmount = _bestBuy.getAmount();
+	BigDecimal sellAmount = _bestSell.getAmount();
+	BigDecimal totalAmount = buyAmount.add( sellAmount);
+
+	if( totalAmount.signum() == 0) {  // Should never happen, but avoid a division by 0.
+	    return getMidPrice();
+	}
+
+	return new Price( _bestBuy.getPrice().multiply( sellAmount).add( _bestSell.getPrice().multiply( buyAmount)).divide( totalAmount, MathContext.DECIMAL128)
+			  , _bestSell.getPrice().getCurrency());
+    }
+
+    /**
+     * Check, if the depth has buy and sell orders.
+     *
+     * @return true, if the depth has buy and sell orders.
+     */
+    public boolean hasBothSides() {
+	return ( _bestBuy != null) && ( _bestSell != null);
+    }
+
+    /**
+     * Fill the arrays of prices and cumulative volumes for a side of the depth.
+     *
+     * @param orders The orders of the side.
+     * @param prices The array for the prices.
+     * @param cumulativeVolumes The array for the cumulative volumes.
+     */
+    private final void sumUpVolumes( List<DepthOrder> orders, double [] prices, double [] cumulativeVolumes) {
+
+	double cumulativeVolume = 0.0d;
+
+	for( int i = 0; i < prices.length; ++i) {
+
+	    DepthOrder currentOrder = orders.get( i);
+
+	    prices[ i] = currentOrder.getPrice().doubleValue();
+
+	    cumulativeVolume += currentOrder.getAmount().doubleValue();
+	    cumulativeVolumes[ i] = cumulativeVolume;
+	}
+    }
+}
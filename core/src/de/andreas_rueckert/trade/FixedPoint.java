@@ -0,0 +1,545 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade;
+
+import de.andreas_rueckert.trade.currency.Currency;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A fixed point number with a long mantissa and a decimal scale. The value is mantissa / 10^scale.
+ *
+ * Price and Amount are BigDecimals, so every arithmetic operation allocates new objects.
+ * Loops over depths and trades can convert the values to mantissas once and then compute
+ * with primitive longs. The static methods work directly on mantissas, so they don't
+ * allocate anything. All operations throw an ArithmeticException instead of overflowing,
+ * so the callers can fall back to BigDecimal arithmetic in this case.
+ */
+public final class FixedPoint implements Comparable<FixedPoint> {
+
+    // Static variables
+
+    /**
+     * The default scale of a currency (8 decimals, like a satoshi).
+     */
+    public final static int DEFAULT_SCALE = 8;
+
+    /**
+     * The highest supported scale.
+     */
+    public final static int MAX_SCALE = 18;
+
+    /**
+     * The powers of 10, that fit into a long.
+     */
+    private final static long [] POWERS_OF_TEN = new long[ MAX_SCALE + 1];
+
+    /**
+     * The scales of the currencies, mapped by currency code.
+     */
+    private final static Map<String, Integer> _currencyScales = new ConcurrentHashMap<String, Integer>();
+
+    static {
+	POWERS_OF_TEN[ 0] = 1L;
+	for( int i = 1; i <= MAX_SCALE; ++i) {
+	    POWERS_OF_TEN[ i] = POWERS_OF_TEN[ i - 1] * 10L;
+	}
+    }
+
+
+    // Instance variables
+
+    /**
+     * The mantissa of this number.
+     */
+    private final long _mantissa;
+
+    /**
+     * The scale of this number.
+     */
+    private final int _scale;
+
+
+    // Constructors
+
+    /**
+     * Create a new fixed point number from a mantissa and a scale.
+     *
+     * @param mantissa The mantissa.
+     * @param scale The number of decimals.
+     */
+    public FixedPoint( long mantissa, int scale) {
+
+	checkScale( scale);
+
+	_mantissa = mantissa;
+	_scale = scale;
+    }
+
+    /**
+     * Create a new fixed point number from a BigDecimal.
+     *
+     * @param decimal The value as a BigDecimal.
+     * @param scale The number of decimals.
+     *
+     * @throws ArithmeticException if the value cannot be represented exactly with the given scale.
+     */
+    public FixedPoint( BigDecimal decimal, int scale) throws ArithmeticException {
+
+	this( toMantissa( decimal, scale), scale);
+    }
+
+
+    // Methods
+
+    /**
+     * Add another number to this number.
+     *
+     * @param number The number to add. It must have the same scale as this number.
+     *
+     * @return The sum as a new number.
+     *
+     * @throws ArithmeticException if the scales differ or the result overflows.
+     */
+    public FixedPoint add( FixedPoint number) throws ArithmeticException {
+
+	checkSameScale( number);
+
+	return new FixedPoint( add( _mantissa, number._mantissa), _scale);
+    }
+
+    /**
+     * Add 2 mantissas with the same scale.
+     *
+     * @param mantissa1 The first mantissa.
+     * @param mantissa2 The second mantissa.
+     *
+     * @return The sum of the mantissas.
+     *
+     * @throws ArithmeticException if the sum overflows.
+     */
+    public static long add( long mantissa1, long mantissa2) throws ArithmeticException {
+
+	long result = mantissa1 + mantissa2;
+
+	// The sum overflows, if both operands have the same sign and the result has another sign.
+	if( ( ( mantissa1 ^ result) & ( mantissa2 ^ result)) < 0L) {
+	    throw new ArithmeticException( "FixedPoint: overflow while adding " + mantissa1 + " and " + mantissa2);
+	}
+
+	return result;
+    }
+
+    /**
+     * Check, that a scale is supported.
+     *
+     * @param scale The scale to check.
+     */
+    private static void checkScale( int scale) {
+
+	if( ( scale < 0) || ( scale > MAX_SCALE)) {
+	    throw new IllegalArgumentException( "FixedPoint: scale " + scale + " is not between 0 and " + MAX_SCALE);
+	}
+    }
+
+    /**
+     * Check, that another number has the same scale as this number.
+     *
+     * @param number The other number.
+     *
+     * @throws ArithmeticException if the scales differ.
+     */
+    private final void checkSameScale( FixedPoint number) throws ArithmeticException {
+
+	if( number._scale != _scale) {
+	    throw new ArithmeticException( "FixedPoint: cannot combine the scales " + _scale + " and " + number._scale);
+	}
+    }
+
+    /**
+     * Compare this number to another number with the same scale.
+     *
+     * @param number The number to compare to.
+     *
+     * @return A negative value, if this number is smaller, 0 if it is equal and a positive value, if it is greater.
+     */
+    public int compareTo( FixedPoint number) {
+
+	checkSameScale( number);
+
+	return _mantissa < number._mantissa ? -1 : ( _mantissa == number._mantissa ? 0 : 1);
+    }
+
+    /**
+     * Divide a mantissa by another mantissa and shift the result by a given number of decimals,
+     * so the result is round( dividend * 10^shift / divisor).
+     *
+     * @param dividend The mantissa of the dividend.
+     * @param divisor The mantissa of the divisor.
+     * @param shift The number of decimals to shift the result.
+     *
+     * @return The rounded quotient.
+     *
+     * @throws ArithmeticException if the divisor is 0 or the result overflows.
+     */
+    public static long divide( long dividend, long divisor, int shift) throws ArithmeticException {
+
+	checkScale( shift);
+
+	if( divisor == 0L) {
+	    throw new ArithmeticException( "FixedPoint: division by 0");
+	}
+
+	if( ( dividend == Long.MIN_VALUE) || ( divisor == Long.MIN_VALUE)) {
+	    throw new ArithmeticException( "FixedPoint: overflow while dividing " + dividend + " by " + divisor);
+	}
+
+	boolean negative = ( dividend < 0L) != ( divisor < 0L);
+	long absDividend = Math.abs( dividend);
+	long absDivisor = Math.abs( divisor);
+
+	// Do a long division with one decimal per step, so no intermediate value overflows.
+	long quotient = absDividend / absDivisor;
+	long remainder = absDividend % absDivisor;
+
+	if( absDivisor > Long.MAX_VALUE / 10L) {
+	    throw new ArithmeticException( "FixedPoint: divisor " + divisor + " is too large");
+	}
+
+	for( int i = 0; i < shift; ++i) {
+
+	    remainder *= 10L;
+	    quotient = add( multiply( quotient, 10L), remainder / absDivisor);
+	    remainder %= absDivisor;
+	}
+
+	// Round half up.
+	if( remainder >= absDivisor - remainder) {
+	    quotient = add( quotient, 1L);
+	}
+
+	return negative ? -quotient : quotient;
+    }
+
+    /**
+     * Get the value of this number as a double.
+     *
+     * @return The value of this number as a double.
+     */
+    public double doubleValue() {
+	return toDouble( _mantissa, _scale);
+    }
+
+    /**
+     * Check, if this number equals another object.
+     *
+     * @param object The object to compare to.
+     *
+     * @return true, if the object is a fixed point number with the same mantissa and scale.
+     */
+    public boolean equals( Object object) {
+
+	if( object instanceof FixedPoint) {
+	    return ( ( (FixedPoint)object)._mantissa == _mantissa) && ( ( (FixedPoint)object)._scale == _scale);
+	}
+
+	return false;
+    }
+
+    /**
+     * Get the mantissa of this number.
+     *
+     * @return The mantissa of this number.
+     */
+    public long getMantissa() {
+	return _mantissa;
+    }
+
+    /**
+     * Get the scale of this number.
+     *
+     * @return The number of decimals of this number.
+     */
+    public int getScale() {
+	return _scale;
+    }
+
+    /**
+     * Get the scale of a currency.
+     *
+     * @param currency The currency or null for the default scale.
+     *
+     * @return The number of decimals to use for the currency.
+     */
+    public static int getScale( Currency currency) {
+
+	if( currency == null) {
+	    return DEFAULT_SCALE;
+	}
+
+	Integer scale = _currencyScales.get( currency.getCode());
+
+	return scale != null ? scale.intValue() : DEFAULT_SCALE;
+    }
+
+    /**
+     * Get the hash code of this number.
+     *
+     * @return The hash code of this number.
+     */
+    public int hashCode() {
+	return (int)( _mantissa ^ ( _mantissa >>> 32)) * 31 + _scale;
+    }
+
+    /**
+     * Multiply 2 numbers with the same scale.
+     *
+     * @param number The number to multiply with.
+     *
+     * @return The rounded product with the scale of this number.
+     *
+     * @throws ArithmeticException if the scales differ or the result overflows.
+     */
+    public FixedPoint multiply( FixedPoint number) throws ArithmeticException {
+
+	checkSameScale( number);
+
+	return new FixedPoint( multiply( _mantissa, number._mantissa, _scale), _scale);
+    }
+
+    /**
+     * Multiply 2 mantissas without any shift.
+     *
+     * @param factor1 The first factor.
+     * @param factor2 The second factor.
+     *
+     * @return The product.
+     *
+     * @throws ArithmeticException if the product overflows.
+     */
+    private static long multiply( long factor1, long factor2) throws ArithmeticException {
+
+	long result = factor1 * factor2;
+
+	if( ( factor1 != 0L) && ( ( result / factor1 != factor2) || ( ( factor1 == -1L) && ( factor2 == Long.MIN_VALUE)))) {
+	    throw new ArithmeticException( "FixedPoint: overflow while multiplying " + factor1 + " and " + factor2);
+	}
+
+	return result;
+    }
+
+    /**
+     * Multiply 2 mantissas and shift the result by a given number of decimals,
+     * so the result is round( factor1 * factor2 / 10^shift). The product of the factors
+     * may exceed a long, as long as the shifted result fits into a long.
+     *
+     * @param factor1 The first factor.
+     * @param factor2 The second factor.
+     * @param shift The number of decimals to shift the product.
+     *
+     * @return The rounded and shifted product.
+     *
+     * @throws ArithmeticException if the result overflows.
+     */
+    public static long multiply( long factor1, long factor2, int shift) throws ArithmeticException {
+
+	checkScale( shift);
+
+	if( ( factor1 == Long.MIN_VALUE) || ( factor2 == Long.MIN_VALUE)) {
+	    throw new ArithmeticException( "FixedPoint: overflow while multiplying " + factor1 + " and " + factor2);
+	}
+
+	boolean negative = ( factor1 < 0L) != ( factor2 < 0L);
+	long abs1 = Math.abs( factor1);
+	long abs2 = Math.abs( factor2);
+	long result;
+
+	if( shift <= 9) {
+
+	    // Split both factors at 10^shift, so no partial product overflows:
+	    // a * b / p = a1 * b1 * p + a1 * b0 + a0 * b1 + a0 * b0 / p
+	    long power = POWERS_OF_TEN[ shift];
+	    long high1 = abs1 / power, low1 = abs1 % power;
+	    long high2 = abs2 / power, low2 = abs2 % power;
+	    long lowProduct = low1 * low2;  // < 10^18, so this never overflows.
+	    long roundedLow = lowProduct / power;
+
+	    // Round half up.
+	    if( lowProduct % power >= power - lowProduct % power) {
+		++roundedLow;
+	    }
+
+	    result = add( add( multiply( multiply( high1, high2), power), multiply( high1, low2))
+			  , add( multiply( low1, high2), roundedLow));
+
+	} else {  // Larger shifts are rare, so just use BigIntegers here.
+
+	    BigInteger [] quotientAndRemainder = BigInteger.valueOf( abs1).multiply( BigInteger.valueOf( abs2)).divideAndRemainder( BigInteger.valueOf( POWERS_OF_TEN[ shift]));
+
+	    BigInteger quotient = quotientAndRemainder[ 0];
+
+	    if( quotientAndRemainder[ 1].shiftLeft( 1).compareTo( BigInteger.valueOf( POWERS_OF_TEN[ shift])) >= 0) {
+		quotient = quotient.add( BigInteger.ONE);
+	    }
+
+	    if( quotient.bitLength() > 63) {
+		throw new ArithmeticException( "FixedPoint: overflow while multiplying " + factor1 + " and " + factor2);
+	    }
+
+	    result = quotient.longValue();
+	}
+
+	return negative ? -result : result;
+    }
+
+    /**
+     * Set the scale for a currency.
+     *
+     * @param currency The currency.
+     * @param scale The number of decimals to use for this currency.
+     */
+    public static void setScale( Currency currency, int scale) {
+
+	checkScale( scale);
+
+	_currencyScales.put( currency.getCode(), scale);
+    }
+
+    /**
+     * Subtract another number from this number.
+     *
+     * @param number The number to subtract. It must have the same scale as this number.
+     *
+     * @return The difference as a new number.
+     *
+     * @throws ArithmeticException if the scales differ or the result overflows.
+     */
+    public FixedPoint subtract( FixedPoint number) throws ArithmeticException {
+
+	checkSameScale( number);
+
+	return new FixedPoint( subtract( _mantissa, number._mantissa), _scale);
+    }
+
+    /**
+     * Subtract a mantissa from another mantissa with the same scale.
+     *
+     * @param minuend The mantissa to subtract from.
+     * @param subtrahend The mantissa to subtract.
+     *
+     * @return The difference of the mantissas.
+     *
+     * @throws ArithmeticException if the difference overflows.
+     */
+    public static long subtract( long minuend, long subtrahend) throws ArithmeticException {
+
+	long result = minuend - subtrahend;
+
+	// The difference overflows, if the operands have different signs and the result has the sign of the subtrahend.
+	if( ( ( minuend ^ subtrahend) & ( minuend ^ result)) < 0L) {
+	    throw new ArithmeticException( "FixedPoint: overflow while subtracting " + subtrahend + " from " + minuend);
+	}
+
+	return result;
+    }
+
+    /**
+     * Convert this number to a BigDecimal.
+     *
+     * @return This number as a BigDecimal.
+     */
+    public BigDecimal toBigDecimal() {
+	return toBigDecimal( _mantissa, _scale);
+    }
+
+    /**
+     * Convert a mantissa to a BigDecimal. Trailing zero decimals are removed,
+     * so 1.50000000 is converted to 1.5, like the values parsed from the trade sites.
+     *
+     * @param mantissa The mantissa.
+     * @param scale The scale of the mantissa.
+     *
+     * @return The value as a BigDecimal.
+     */
+    public static BigDecimal toBigDecimal( long mantissa, int scale) {
+
+	while( ( scale > 0) && ( mantissa % 10L == 0L)) {
+	    mantissa /= 10L;
+	    --scale;
+	}
+
+	return BigDecimal.valueOf( mantissa, scale);
+    }
+
+    /**
+     * Convert a mantissa to a double.
+     *
+     * @param mantissa The mantissa.
+     * @param scale The scale of the mantissa.
+     *
+     * @return The value as a double.
+     */
+    public static double toDouble( long mantissa, int scale) {
+	return (double)mantissa / (double)POWERS_OF_TEN[ scale];
+    }
+
+    /**
+     * Convert a BigDecimal to a mantissa with a given scale.
+     * The conversion is exact, so values with more decimals than the scale are rejected.
+     *
+     * @param decimal The value to convert.
+     * @param scale The scale of the mantissa.
+     *
+     * @return The mantissa.
+     *
+     * @throws ArithmeticException if the value cannot be represented exactly as a long with the given scale.
+     */
+    public static long toMantissa( BigDecimal decimal, int scale) throws ArithmeticException {
+
+	checkScale( scale);
+
+	BigInteger mantissa = decimal.setScale( scale, RoundingMode.UNNECESSARY).unscaledValue();
+
+	if( mantissa.bitLength() > 63) {
+	    throw new ArithmeticException( "FixedPoint: " + decimal + " is too large for scale " + scale);
+	}
+
+	return mantissa.longValue();
+    }
+
+    /**
+     * Convert this number to a string.
+     *
+     * @return This number as a string.
+     */
+    public String toString() {
+	return toBigDecimal().toPlainString();
+    }
+}
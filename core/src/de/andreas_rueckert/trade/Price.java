@@ -107,7 +107,7 @@ public class Price extends BigDecimal{
      * @param decimal The BigDecimal with the initial value.
      */
     public Price( BigDecimal decimal) {
-	this( decimal.toString());
+	super( decimal.unscaledValue(), decimal.scale(), MathContext.DECIMAL128);  // Avoid formatting and parsing a string.
     }
 
     /**
@@ -0,0 +1,180 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.arbitrage;
+
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.site.TradeSite;
+
+
+/**
+ * A cycle of trades on one trade site, that starts and ends with the same currency.
+ * If the product of the exchange rates (after fees) is above 1, the cycle is profitable.
+ */
+public class ArbitrageCycle implements Comparable<ArbitrageCycle> {
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The currency codes of the cycle. The first code is the start and end currency.
+     */
+    private String [] _currencyCodes;
+
+    /**
+     * The currency pairs, that are traded in the cycle.
+     */
+    private CurrencyPair [] _currencyPairs;
+
+    /**
+     * The order types of the trades in the cycle.
+     */
+    private OrderType [] _orderTypes;
+
+    /**
+     * The product of all the exchange rates of the cycle after fees.
+     */
+    private double _profitFactor;
+
+    /**
+     * The trade site, where the cycle is traded.
+     */
+    private TradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Create a new arbitrage cycle.
+     *
+     * @param tradeSite The trade site, where the cycle is traded.
+     * @param currencyCodes The currency codes of the cycle, starting with the start currency.
+     * @param currencyPairs The traded currency pairs.
+     * @param orderTypes The order types of the trades.
+     * @param profitFactor The product of all the exchange rates after fees.
+     */
+    public ArbitrageCycle( TradeSite tradeSite
+			   , String [] currencyCodes
+			   , CurrencyPair [] currencyPairs
+			   , OrderType [] orderTypes
+			   , double profitFactor) {
+	_tradeSite = tradeSite;
+	_currencyCodes = currencyCodes;
+	_currencyPairs = currencyPairs;
+	_orderTypes = orderTypes;
+	_profitFactor = profitFactor;
+    }
+
+
+    // Methods
+
+    /**
+     * Compare this cycle to another cycle, so the most profitable cycle comes first.
+     *
+     * @param cycle The cycle to compare to.
+     *
+     * @return A negative value, if this cycle is more profitable. A positive value, if it is less profitable.
+     */
+    public int compareTo( ArbitrageCycle cycle) {
+	return Double.compare( cycle._profitFactor, _profitFactor);
+    }
+
+    /**
+     * Get the currency codes of the cycle. The first code is the start and end currency.
+     *
+     * @return The currency codes of the cycle.
+     */
+    public String [] getCurrencyCodes() {
+	return _currencyCodes;
+    }
+
+    /**
+     * Get the traded currency pairs of the cycle.
+     *
+     * @return The traded currency pairs.
+     */
+    public CurrencyPair [] getCurrencyPairs() {
+	return _currencyPairs;
+    }
+
+    /**
+     * Get the order types of the trades of the cycle.
+     *
+     * @return The order types of the trades.
+     */
+    public OrderType [] getOrderTypes() {
+	return _orderTypes;
+    }
+
+    /**
+     * Get the relative profit of the cycle (0.01 is 1 percent).
+     *
+     * @return The relative profit of the cycle.
+     */
+    public double getProfit() {
+	return _profitFactor - 1.0d;
+    }
+
+    /**
+     * Get the product of all the exchange rates after fees.
+     *
+     * @return The product of all the exchange rates after fees.
+     */
+    public double getProfitFactor() {
+	return _profitFactor;
+    }
+
+    /**
+     * Get the trade site, where the cycle is traded.
+     *
+     * @return The trade site, where the cycle is traded.
+     */
+    public TradeSite getTradeSite() {
+	return _tradeSite;
+    }
+
+    /**
+     * Convert this cycle to a string.
+     *
+     * @return The cycle as a string.
+     */
+    public String toString() {
+
+	StringBuffer result = new StringBuffer( _tradeSite.getName());
+
+	result.append( ": ");
+
+	for( int i = 0; i < _currencyPairs.length; ++i) {
+	    result.append( _currencyCodes[ i]).append( " -(").append( _orderTypes[ i]).append( " ").append( _currencyPairs[ i].getCode()).append( ")-> ");
+	}
+
+	result.append( _currencyCodes[ 0]).append( " profit: ").append( getProfit());
+
+	return result.toString();
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.arbitrage;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+
+
+/**
+ * An executable arbitrage opportunity between 2 trade sites: buy a currency
+ * on one site and sell it on another site.
+ */
+public class CrossVenueArbitrageOpportunity {
+
+    // Instance variables
+
+    /**
+     * The amount, that can be bought and sold with a profit.
+     */
+    private Amount _amount;
+
+    /**
+     * The worst price, that is paid on the buy site.
+     */
+    private Price _buyLimitPrice;
+
+    /**
+     * The trade site to buy the currency.
+     */
+    private TradeSite _buySite;
+
+    /**
+     * The traded currency pair.
+     */
+    private CurrencyPair _currencyPair;
+
+    /**
+     * The profit in the payment currency after fees and withdrawal costs.
+     */
+    private Price _profit;
+
+    /**
+     * The worst price, that is received on the sell site.
+     */
+    private Price _sellLimitPrice;
+
+    /**
+     * The trade site to sell the currency.
+     */
+    private TradeSite _sellSite;
+
+    /**
+     * The GMT relative microsecond timestamp of the older depth, this opportunity was computed from.
+     */
+    private long _timestamp;
+
+
+    // Constructors
+
+    /**
+     * Create a new arbitrage opportunity.
+     *
+     * @param currencyPair The traded currency pair.
+     * @param buySite The trade site to buy the currency.
+     * @param buyLimitPrice The worst price, that is paid on the buy site.
+     * @param sellSite The trade site to sell the currency.
+     * @param sellLimitPrice The worst price, that is received on the sell site.
+     * @param amount The amount, that can be bought and sold with a profit.
+     * @param profit The profit in the payment currency after fees and withdrawal costs.
+     * @param timestamp The timestamp of the older depth.
+     */
+    public CrossVenueArbitrageOpportunity( CurrencyPair currencyPair
+					   , TradeSite buySite
+					   , Price buyLimitPrice
+					   , TradeSite sellSite
+					   , Price sellLimitPrice
+					   , Amount amount
+					   , Price profit
+					   , long timestamp) {
+	_currencyPair = currencyPair;
+	_buySite = buySite;
+	_buyLimitPrice = buyLimitPrice;
+	_sellSite = sellSite;
+	_sellLimitPrice = sellLimitPrice;
+	_amount = amount;
+	_profit = profit;
+	_timestamp = timestamp;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the amount, that can be bought and sold with a profit.
+     *
+     * @return The amount, that can be bought and sold with a profit.
+     */
+    public Amount getAmount() {
+	return _amount;
+    }
+
+    /**
+     * Get the worst price, that is paid on the buy site.
+     *
+     * @return The limit price for the buy order.
+     */
+    public Price getBuyLimitPrice() {
+	return _buyLimitPrice;
+    }
+
+    /**
+     * Get the trade site to buy the currency.
+     *
+     * @return The trade site to buy the currency.
+     */
+    public TradeSite getBuySite() {
+	return _buySite;
+    }
+
+    /**
+     * Get the traded currency pair.
+     *
+     * @return The traded currency pair.
+     */
+    public CurrencyPair getCurrencyPair() {
+	return _currencyPair;
+    }
+
+    /**
+     * Get the profit in the payment currency after fees and withdrawal costs.
+     *
+     * @return The profit in the payment currency.
+     */
+    public Price getProfit() {
+	return _profit;
+    }
+
+    /**
+     * Get the worst price, that is received on the sell site.
+     *
+     * @return The limit price for the sell order.
+     */
+    public Price getSellLimitPrice() {
+	return _sellLimitPrice;
+    }
+
+    /**
+     * Get the trade site to sell the currency.
+     *
+     * @return The trade site to sell the currency.
+     */
+    public TradeSite getSellSite() {
+	return _sellSite;
+    }
+
+    /**
+     * Get the timestamp of the older depth, this opportunity was computed from.
+     *
+     * @return The GMT relative microsecond timestamp of the older depth.
+     */
+    public long getTimestamp() {
+	return _timestamp;
+    }
+
+    /**
+     * Convert this opportunity to a string.
+     *
+     * @return This opportunity as a string.
+     */
+    public String toString() {
+	return "Buy " + _amount + " " + _currencyPair.getCurrency().getCode()
+	    + " on " + _buySite.getName() + " up to " + _buyLimitPrice
+	    + ", sell on " + _sellSite.getName() + " down to " + _sellLimitPrice
+	    + ", profit: " + _profit + " " + _currencyPair.getPaymentCurrency().getCode();
+    }
+}
@@ -0,0 +1,502 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.arbitrage;
+
+import de.andreas_rueckert.NotYetImplementedException;
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import de.andreas_rueckert.trade.order.OrderRouter;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.ModuleLoader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * This class watches one currency pair on all the registered trade sites, that support it,
+ * and reports executable price differences between the sites to the listeners.
+ *
+ * Each trade site gets its own fetcher thread, that requests the depth as often as the
+ * minimum request interval of the site allows, so the depths of all sites are fetched
+ * in parallel. When a new depth arrives, only the site pairs with the updated site are
+ * evaluated again.
+ */
+public class CrossVenueArbitrageScanner {
+
+    // Inner classes
+
+    /**
+     * A thread, that fetches the depth of one trade site.
+     */
+    class DepthFetcherThread extends Thread {
+
+	// Instance variables
+
+	/**
+	 * The interval to sleep after every request in milliseconds.
+	 */
+	private long _sleepInterval;
+
+	/**
+	 * The trade site to query.
+	 */
+	private TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new fetcher thread for a trade site.
+	 *
+	 * @param tradeSite The trade site to query.
+	 */
+	DepthFetcherThread( TradeSite tradeSite) {
+	    super( "ArbitrageDepthFetcher-" + tradeSite.getName());
+
+	    _tradeSite = tradeSite;
+
+	    setDaemon( true);
+
+	    // Respect the request limit of the site and add some offset for additional security (not to get banned).
+	    long requestInterval;
+
+	    try {
+		requestInterval = tradeSite.getMinimumRequestInterval();
+	    } catch( NotYetImplementedException nyie) {
+		requestInterval = tradeSite.getUpdateInterval();
+	    }
+
+	    _sleepInterval = ( requestInterval / 1000) + 100;
+	}
+
+
+	// Methods
+
+	/**
+	 * The actual code of the thread.
+	 */
+	@Override public void run() {
+
+	    while( _fetcherThreads.contains( this)) {
+
+		try {
+
+		    depthUpdated( _tradeSite, _tradeSite.getDepth( _currencyPair));
+
+		} catch( RuntimeException re) {  // Just skip this depth and try again later.
+
+		    LogUtils.getInstance().getLogger().warn( "CrossVenueArbitrageScanner: cannot fetch the depth from "
+							     + _tradeSite.getName()
+							     + ": "
+							     + re);
+		}
+
+		try {
+		    Thread.sleep( _sleepInterval);  // Wait for the next request.
+		} catch( InterruptedException ie) {
+		    return;  // The scanner was stopped.
+		}
+	    }
+	}
+    }
+
+    /**
+     * The latest depth of a trade site with the fee rates of the site.
+     */
+    class VenueState {
+
+	// Instance variables
+
+	/**
+	 * The fee rate for buy orders or a negative value, if it is not known yet.
+	 */
+	double _buyFeeRate = -1.0d;
+
+	/**
+	 * The latest depth of the trade site.
+	 */
+	volatile Depth _depth = null;
+
+	/**
+	 * The fee rate for sell orders or a negative value, if it is not known yet.
+	 */
+	double _sellFeeRate = -1.0d;
+
+	/**
+	 * The trade site.
+	 */
+	TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new state for a trade site.
+	 *
+	 * @param tradeSite The trade site.
+	 */
+	VenueState( TradeSite tradeSite) {
+	    _tradeSite = tradeSite;
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the fee rate of this trade site for a given order type. The fee rate is
+	 * computed on the first call and then cached.
+	 *
+	 * @param orderType The order type.
+	 * @param price The price for a probe order.
+	 *
+	 * @return The fee rate as a fraction of the traded volume.
+	 */
+	final synchronized double getFeeRate( OrderType orderType, Price price) {
+
+	    if( orderType == OrderType.BUY) {
+
+		if( _buyFeeRate < 0.0d) {
+		    _buyFeeRate = OrderRouter.getInstance().getFeeRate( _tradeSite, null, orderType, price, _currencyPair, new Amount( "1"));
+		}
+
+		return _buyFeeRate;
+	    }
+
+	    if( _sellFeeRate < 0.0d) {
+		_sellFeeRate = OrderRouter.getInstance().getFeeRate( _tradeSite, null, orderType, price, _currencyPair, new Amount( "1"));
+	    }
+
+	    return _sellFeeRate;
+	}
+    }
+
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The traded currency pair.
+     */
+    private CurrencyPair _currencyPair;
+
+    /**
+     * The running fetcher threads.
+     */
+    private List<DepthFetcherThread> _fetcherThreads = new CopyOnWriteArrayList<DepthFetcherThread>();
+
+    /**
+     * The registered listeners.
+     */
+    private List<ArbitrageListener> _listeners = new CopyOnWriteArrayList<ArbitrageListener>();
+
+    /**
+     * The minimum relative profit of a reported opportunity (0.01 is 1 percent).
+     */
+    private volatile double _minProfit = 0.0d;
+
+    /**
+     * The states of the watched trade sites.
+     */
+    private List<VenueState> _venues = new CopyOnWriteArrayList<VenueState>();
+
+    /**
+     * The costs to withdraw the traded currency from a trade site, mapped by trade site name.
+     * The costs are given in the traded currency.
+     */
+    private Map<String, BigDecimal> _withdrawalCosts = new ConcurrentHashMap<String, BigDecimal>();
+
+
+    // Constructors
+
+    /**
+     * Create a new scanner for a currency pair.
+     *
+     * @param currencyPair The currency pair to watch.
+     */
+    public CrossVenueArbitrageScanner( CurrencyPair currencyPair) {
+	_currencyPair = currencyPair;
+    }
+
+
+    // Methods
+
+    /**
+     * Add a listener for arbitrage opportunities.
+     *
+     * @param listener The new listener.
+     */
+    public void addArbitrageListener( ArbitrageListener listener) {
+	_listeners.add( listener);
+    }
+
+    /**
+     * Process a new depth of a trade site and evaluate the site against all the other sites.
+     *
+     * @param tradeSite The trade site of the depth.
+     * @param depth The new depth.
+     */
+    public void depthUpdated( TradeSite tradeSite, Depth depth) {
+
+	VenueState updatedVenue = getVenueState( tradeSite);
+
+	if( updatedVenue == null) {  // Not a watched trade site?
+	    return;
+	}
+
+	updatedVenue._depth = depth;
+
+	// Only the pairs with the updated site can have changed, so evaluate just those.
+	for( VenueState currentVenue : _venues) {
+
+	    if( ( currentVenue != updatedVenue) && ( currentVenue._depth != null)) {
+
+		evaluate( updatedVenue, currentVenue);
+		evaluate( currentVenue, updatedVenue);
+	    }
+	}
+    }
+
+    /**
+     * Compute the executable opportunity for buying on one site and selling on another site
+     * and notify the listeners, if it's profitable.
+     *
+     * @param buyVenue The site to buy the currency.
+     * @param sellVenue The site to sell the currency.
+     */
+    private final void evaluate( VenueState buyVenue, VenueState sellVenue) {
+
+	Depth buyDepth = buyVenue._depth;
+	Depth sellDepth = sellVenue._depth;
+
+	// We buy from the sell orders and sell to the buy orders.
+	List<DepthOrder> asks = buyDepth.getSellOrders();
+	List<DepthOrder> bids = sellDepth.getBuyOrders();
+
+	if( asks.isEmpty() || bids.isEmpty()) {
+	    return;
+	}
+
+	double buyFactor = 1.0d + buyVenue.getFeeRate( OrderType.BUY, asks.get( 0).getPrice());
+	double sellFactor = 1.0d - sellVenue.getFeeRate( OrderType.SELL, bids.get( 0).getPrice());
+
+	// Quick check of the best orders, since most of the time there is no opportunity.
+	if( asks.get( 0).getPrice().doubleValue() * buyFactor >= bids.get( 0).getPrice().doubleValue() * sellFactor) {
+	    return;
+	}
+
+	// Walk both sides of the depths, while the sell price after fees is above the buy price after fees.
+	int askIndex = 0, bidIndex = 0;
+	double askLeft = asks.get( 0).getAmount().doubleValue();
+	double bidLeft = bids.get( 0).getAmount().doubleValue();
+	double amount = 0.0d;
+	double cost = 0.0d;
+	double profit = 0.0d;
+	Price buyLimitPrice = null;
+	Price sellLimitPrice = null;
+
+	while( ( askIndex < asks.size()) && ( bidIndex < bids.size())) {
+
+	    double askPrice = asks.get( askIndex).getPrice().doubleValue() * buyFactor;
+	    double bidPrice = bids.get( bidIndex).getPrice().doubleValue() * sellFactor;
+
+	    if( askPrice >= bidPrice) {
+		break;
+	    }
+
+	    double takenAmount = Math.min( askLeft, bidLeft);
+
+	    amount += takenAmount;
+	    cost += takenAmount * askPrice;
+	    profit += takenAmount * ( bidPrice - askPrice);
+	    buyLimitPrice = asks.get( askIndex).getPrice();
+	    sellLimitPrice = bids.get( bidIndex).getPrice();
+
+	    askLeft -= takenAmount;
+	    bidLeft -= takenAmount;
+
+	    if( askLeft <= 0.0d && ++askIndex < asks.size()) {
+		askLeft = asks.get( askIndex).getAmount().doubleValue();
+	    }
+
+	    if( bidLeft <= 0.0d && ++bidIndex < bids.size()) {
+		bidLeft = bids.get( bidIndex).getAmount().doubleValue();
+	    }
+	}
+
+	if( amount <= 0.0d) {
+	    return;
+	}
+
+	// Moving the bought currency to the sell site costs the withdrawal fee of the buy site.
+	BigDecimal withdrawalCost = _withdrawalCosts.get( buyVenue._tradeSite.getName());
+
+	if( withdrawalCost != null) {
+	    profit -= withdrawalCost.doubleValue() * sellLimitPrice.doubleValue();
+	}
+
+	if( ( profit <= 0.0d) || ( profit / cost <= _minProfit)) {
+	    return;
+	}
+
+	CrossVenueArbitrageOpportunity opportunity
+	    = new CrossVenueArbitrageOpportunity( _currencyPair
+						  , buyVenue._tradeSite
+						  , buyLimitPrice
+						  , sellVenue._tradeSite
+						  , sellLimitPrice
+						  , new Amount( amount)
+						  , new Price( profit, _currencyPair.getPaymentCurrency())
+						  , Math.min( buyDepth.getTimestamp(), sellDepth.getTimestamp()));
+
+	for( ArbitrageListener currentListener : _listeners) {
+	    currentListener.arbitrageOpportunity( opportunity);
+	}
+    }
+
+    /**
+     * Get the watched currency pair.
+     *
+     * @return The watched currency pair.
+     */
+    public CurrencyPair getCurrencyPair() {
+	return _currencyPair;
+    }
+
+    /**
+     * Get the minimum relative profit of a reported opportunity.
+     *
+     * @return The minimum relative profit (0.01 is 1 percent).
+     */
+    public double getMinProfit() {
+	return _minProfit;
+    }
+
+    /**
+     * Get the state of a watched trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The state of the trade site or null, if the site is not watched.
+     */
+    private final VenueState getVenueState( TradeSite tradeSite) {
+
+	for( VenueState currentVenue : _venues) {
+
+	    if( currentVenue._tradeSite == tradeSite) {
+		return currentVenue;
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Check, if the scanner is running.
+     *
+     * @return true, if the scanner is running.
+     */
+    public boolean isRunning() {
+	return ! _fetcherThreads.isEmpty();
+    }
+
+    /**
+     * Remove a listener for arbitrage opportunities.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeArbitrageListener( ArbitrageListener listener) {
+	_listeners.remove( listener);
+    }
+
+    /**
+     * Set the minimum relative profit of a reported opportunity.
+     *
+     * @param minProfit The minimum relative profit (0.01 is 1 percent).
+     */
+    public void setMinProfit( double minProfit) {
+	_minProfit = minProfit;
+    }
+
+    /**
+     * Set the cost to withdraw the traded currency from a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param withdrawalCost The withdrawal cost in the traded currency.
+     */
+    public void setWithdrawalCost( TradeSite tradeSite, Amount withdrawalCost) {
+	_withdrawalCosts.put( tradeSite.getName(), withdrawalCost);
+    }
+
+    /**
+     * Start watching the currency pair on all the registered trade sites, that support it.
+     */
+    public synchronized void start() {
+
+	if( isRunning()) {
+	    return;
+	}
+
+	_venues.clear();
+
+	for( TradeSite currentSite : ModuleLoader.getInstance().getRegisteredTradeSites().values()) {
+
+	    if( currentSite.isSupportedCurrencyPair( _currencyPair)) {
+		_venues.add( new VenueState( currentSite));
+	    }
+	}
+
+	for( VenueState currentVenue : _venues) {
+
+	    DepthFetcherThread fetcher = new DepthFetcherThread( currentVenue._tradeSite);
+
+	    _fetcherThreads.add( fetcher);
+	    fetcher.start();
+	}
+    }
+
+    /**
+     * Stop watching the currency pair.
+     */
+    public synchronized void stop() {
+
+	for( DepthFetcherThread currentFetcher : _fetcherThreads) {
+
+	    _fetcherThreads.remove( currentFetcher);
+	    currentFetcher.interrupt();
+	}
+    }
+}
@@ -0,0 +1,508 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.arbitrage;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.order.DepthOrder;
+import de.andreas_rueckert.trade.order.OrderRouter;
+import de.andreas_rueckert.trade.order.OrderType;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * This class scans the currency pairs of a trade site for profitable trade cycles.
+ * The currencies are the vertices of a graph and each currency pair adds 2 edges
+ * (sell the currency and buy the currency). The weight of an edge is the negative
+ * logarithm of the exchange rate after fees, so a profitable cycle is a negative cycle.
+ *
+ * All the triangles of the graph are computed once and indexed by currency pair, so
+ * after a depth update only the triangles with a changed currency pair are evaluated
+ * again. Longer cycles can be found with a full Bellman-Ford search.
+ */
+public class TriangularArbitrageScanner {
+
+    // Inner classes
+
+    /**
+     * An edge of the currency graph, which is a trade from one currency to another.
+     */
+    class Edge {
+
+	// Instance variables
+
+	/**
+	 * The currency pair, that is traded.
+	 */
+	CurrencyPair _currencyPair;
+
+	/**
+	 * The fee rate of the trade or a negative value, if the fee is not known yet.
+	 */
+	double _feeRate = -1.0d;
+
+	/**
+	 * The index of the currency, that is spent.
+	 */
+	int _from;
+
+	/**
+	 * The order type of the trade.
+	 */
+	OrderType _orderType;
+
+	/**
+	 * The exchange rate after fees or 0, if there is no order for this trade.
+	 */
+	double _rate = 0.0d;
+
+	/**
+	 * The index of the currency, that is received.
+	 */
+	int _to;
+
+	/**
+	 * The weight of the edge (-log( rate)) or positive infinity, if there is no rate.
+	 */
+	double _weight = Double.POSITIVE_INFINITY;
+
+
+	// Constructors
+
+	/**
+	 * Create a new edge.
+	 *
+	 * @param currencyPair The traded currency pair.
+	 * @param orderType The order type of the trade.
+	 * @param from The index of the spent currency.
+	 * @param to The index of the received currency.
+	 */
+	Edge( CurrencyPair currencyPair, OrderType orderType, int from, int to) {
+	    _currencyPair = currencyPair;
+	    _orderType = orderType;
+	    _from = from;
+	    _to = to;
+	}
+
+
+	// Methods
+
+	/**
+	 * Set the rate of this edge from the best order of a depth.
+	 *
+	 * @param order The best order, this trade is filled with, or null, if there is no order.
+	 *
+	 * @return true, if the rate of this edge changed.
+	 */
+	final boolean setBestOrder( DepthOrder order) {
+
+	    double previousRate = _rate;
+
+	    if( order == null) {
+		_rate = 0.0d;
+		_weight = Double.POSITIVE_INFINITY;
+		return _rate != previousRate;
+	    }
+
+	    if( _feeRate < 0.0d) {  // Get the fee only once per edge.
+		_feeRate = OrderRouter.getInstance().getFeeRate( _tradeSite, null, _orderType, order.getPrice(), _currencyPair, new Amount( "1"));
+	    }
+
+	    double price = order.getPrice().doubleValue();
+
+	    if( price <= 0.0d) {
+		return setBestOrder( null);
+	    }
+
+	    // A sell gives price units of the payment currency per currency unit,
+	    // while a buy gives 1 / price currency units per payment currency unit.
+	    _rate = ( _orderType == OrderType.SELL ? price : 1.0d / price) * ( 1.0d - _feeRate);
+	    _weight = -Math.log( _rate);
+
+	    return _rate != previousRate;
+	}
+    }
+
+
+    // Static variables
+
+
+    // Instance variables
+
+    /**
+     * The codes of the currencies in the graph, indexed by vertex.
+     */
+    private List<String> _currencyCodes = new ArrayList<String>();
+
+    /**
+     * The vertex indexes of the currencies, mapped by currency code.
+     */
+    private Map<String, Integer> _currencyIndexes = new HashMap<String, Integer>();
+
+    /**
+     * All the edges of the graph.
+     */
+    private List<Edge> _edges = new ArrayList<Edge>();
+
+    /**
+     * The sell and buy edge of each currency pair, mapped by currency pair code.
+     */
+    private Map<String, Edge []> _edgesByCurrencyPair = new HashMap<String, Edge []>();
+
+    /**
+     * The minimum relative profit of a reported cycle.
+     */
+    private double _minProfit = 0.0d;
+
+    /**
+     * The trade site, that is scanned.
+     */
+    private TradeSite _tradeSite;
+
+    /**
+     * The triangles of the graph, mapped by the codes of their currency pairs.
+     */
+    private Map<String, List<Edge []>> _trianglesByCurrencyPair = new HashMap<String, List<Edge []>>();
+
+
+    // Constructors
+
+    /**
+     * Create a new scanner for a trade site.
+     *
+     * @param tradeSite The trade site to scan.
+     */
+    public TriangularArbitrageScanner( TradeSite tradeSite) {
+
+	_tradeSite = tradeSite;
+
+	buildGraph();
+    }
+
+
+    // Methods
+
+    /**
+     * Add a currency to the graph, if it is not in the graph yet.
+     *
+     * @param currencyCode The code of the currency.
+     *
+     * @return The vertex index of the currency.
+     */
+    private final int addCurrency( String currencyCode) {
+
+	Integer index = _currencyIndexes.get( currencyCode);
+
+	if( index == null) {
+
+	    index = _currencyCodes.size();
+
+	    _currencyCodes.add( currencyCode);
+	    _currencyIndexes.put( currencyCode, index);
+	}
+
+	return index;
+    }
+
+    /**
+     * Build the graph of the supported currency pairs and compute all the triangles.
+     */
+    private final void buildGraph() {
+
+	for( CurrencyPair currentPair : _tradeSite.getSupportedCurrencyPairs()) {
+
+	    if( _edgesByCurrencyPair.containsKey( currentPair.getCode())) {  // Skip duplicate pairs.
+		continue;
+	    }
+
+	    int currency = addCurrency( currentPair.getCurrency().getCode());
+	    int paymentCurrency = addCurrency( currentPair.getPaymentCurrency().getCode());
+
+	    Edge sellEdge = new Edge( currentPair, OrderType.SELL, currency, paymentCurrency);
+	    Edge buyEdge = new Edge( currentPair, OrderType.BUY, paymentCurrency, currency);
+
+	    _edges.add( sellEdge);
+	    _edges.add( buyEdge);
+	    _edgesByCurrencyPair.put( currentPair.getCode(), new Edge [] { sellEdge, buyEdge });
+	}
+
+	// Collect the outgoing edges of each currency.
+	List<List<Edge>> outgoingEdges = new ArrayList<List<Edge>>();
+
+	for( int i = 0; i < _currencyCodes.size(); ++i) {
+	    outgoingEdges.add( new ArrayList<Edge>());
+	}
+
+	for( Edge currentEdge : _edges) {
+	    outgoingEdges.get( currentEdge._from).add( currentEdge);
+	}
+
+	// Find all the triangles a -> b -> c -> a. Each triangle is only stored
+	// once, starting with the currency with the lowest index.
+	for( Edge first : _edges) {
+
+	    int start = first._from;
+
+	    if( first._to < start) {
+		continue;
+	    }
+
+	    for( Edge second : outgoingEdges.get( first._to)) {
+
+		if( ( second._to <= start) || ( second._to == first._to)) {
+		    continue;
+		}
+
+		for( Edge third : outgoingEdges.get( second._to)) {
+
+		    if( third._to == start) {
+
+			Edge [] triangle = new Edge [] { first, second, third };
+
+			for( Edge currentEdge : triangle) {
+
+			    List<Edge []> triangles = _trianglesByCurrencyPair.get( currentEdge._currencyPair.getCode());
+
+			    if( triangles == null) {
+				triangles = new ArrayList<Edge []>();
+				_trianglesByCurrencyPair.put( currentEdge._currencyPair.getCode(), triangles);
+			    }
+
+			    triangles.add( triangle);
+			}
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Create an arbitrage cycle from a list of edges.
+     *
+     * @param edges The edges of the cycle.
+     * @param profitFactor The product of the rates of the edges.
+     *
+     * @return The arbitrage cycle.
+     */
+    private final ArbitrageCycle createCycle( List<Edge> edges, double profitFactor) {
+
+	String [] currencyCodes = new String[ edges.size()];
+	CurrencyPair [] currencyPairs = new CurrencyPair[ edges.size()];
+	OrderType [] orderTypes = new OrderType[ edges.size()];
+
+	for( int i = 0; i < edges.size(); ++i) {
+
+	    Edge currentEdge = edges.get( i);
+
+	    currencyCodes[ i] = _currencyCodes.get( currentEdge._from);
+	    currencyPairs[ i] = currentEdge._currencyPair;
+	    orderTypes[ i] = currentEdge._orderType;
+	}
+
+	return new ArbitrageCycle( _tradeSite, currencyCodes, currencyPairs, orderTypes, profitFactor);
+    }
+
+    /**
+     * Search the whole graph for a negative cycle with the Bellman-Ford algorithm.
+     * Other than the triangle evaluation, this search also finds longer cycles.
+     *
+     * @return A profitable cycle or null, if there is no profitable cycle.
+     */
+    public synchronized ArbitrageCycle findNegativeCycle() {
+
+	int currencies = _currencyCodes.size();
+
+	// Start from a virtual source with an edge of weight 0 to each currency.
+	double [] distances = new double[ currencies];
+	Edge [] predecessors = new Edge[ currencies];
+	int relaxedCurrency = -1;
+
+	for( int iteration = 0; iteration < currencies; ++iteration) {
+
+	    relaxedCurrency = -1;
+
+	    for( Edge currentEdge : _edges) {
+
+		if( ( currentEdge._weight != Double.POSITIVE_INFINITY)
+		    && ( distances[ currentEdge._from] + currentEdge._weight < distances[ currentEdge._to] - 1E-12)) {
+
+		    distances[ currentEdge._to] = distances[ currentEdge._from] + currentEdge._weight;
+		    predecessors[ currentEdge._to] = currentEdge;
+		    relaxedCurrency = currentEdge._to;
+		}
+	    }
+
+	    if( relaxedCurrency == -1) {  // No more changes, so there is no negative cycle.
+		return null;
+	    }
+	}
+
+	// An edge was relaxed in the last iteration, so there is a negative cycle.
+	// Walk back the predecessors to make sure, that we are on the cycle.
+	int cycleCurrency = relaxedCurrency;
+
+	for( int i = 0; i < currencies; ++i) {
+	    cycleCurrency = predecessors[ cycleCurrency]._from;
+	}
+
+	// Now collect the edges of the cycle.
+	List<Edge> cycleEdges = new ArrayList<Edge>();
+	double profitFactor = 1.0d;
+	int currentCurrency = cycleCurrency;
+
+	do {
+	    Edge currentEdge = predecessors[ currentCurrency];
+
+	    cycleEdges.add( currentEdge);
+	    profitFactor *= currentEdge._rate;
+	    currentCurrency = currentEdge._from;
+
+	} while( currentCurrency != cycleCurrency);
+
+	Collections.reverse( cycleEdges);
+
+	return ( profitFactor - 1.0d > _minProfit) ? createCycle( cycleEdges, profitFactor) : null;
+    }
+
+    /**
+     * Get the minimum relative profit of a reported cycle.
+     *
+     * @return The minimum relative profit of a reported cycle (0.01 is 1 percent).
+     */
+    public double getMinProfit() {
+	return _minProfit;
+    }
+
+    /**
+     * Get the trade site, that is scanned.
+     *
+     * @return The trade site, that is scanned.
+     */
+    public TradeSite getTradeSite() {
+	return _tradeSite;
+    }
+
+    /**
+     * Fetch the depths of all the supported currency pairs from the trade site
+     * and evaluate the cycles with changed currency pairs.
+     *
+     * @return The profitable triangles, the most profitable first.
+     *
+     * @throws TradeDataNotAvailableException if the depths could not be fetched.
+     */
+    public List<ArbitrageCycle> refresh() throws TradeDataNotAvailableException {
+
+	return update( _tradeSite.getDepths());
+    }
+
+    /**
+     * Set the minimum relative profit of a reported cycle.
+     *
+     * @param minProfit The minimum relative profit of a reported cycle (0.01 is 1 percent).
+     */
+    public void setMinProfit( double minProfit) {
+	_minProfit = minProfit;
+    }
+
+    /**
+     * Update the edges of the graph with new depths and evaluate all the triangles,
+     * that contain a currency pair with a changed best buy or sell price.
+     *
+     * @param depths The new depths. Null entries for pairs, that could not be fetched, are skipped.
+     *
+     * @return The profitable triangles, the most profitable first.
+     */
+    public synchronized List<ArbitrageCycle> update( List<Depth> depths) {
+
+	// Collect the affected triangles only once, even if several of their pairs changed.
+	Map<Edge [], Boolean> affectedTriangles = new IdentityHashMap<Edge [], Boolean>();
+
+	for( Depth currentDepth : depths) {
+
+	    if( ( currentDepth == null) || ( currentDepth.getCurrencyPair() == null)) {  // The depth of this pair could not be fetched.
+		continue;
+	    }
+
+	    String pairCode = currentDepth.getCurrencyPair().getCode();
+	    Edge [] pairEdges = _edgesByCurrencyPair.get( pairCode);
+
+	    if( pairEdges == null) {  // Not a supported currency pair?
+		continue;
+	    }
+
+	    // A sell is filled with the best buy order and a buy with the best sell order.
+	    boolean sellChanged = pairEdges[ 0].setBestOrder( currentDepth.getBuySize() > 0 ? currentDepth.getBuy( 0) : null);
+	    boolean buyChanged = pairEdges[ 1].setBestOrder( currentDepth.getSellSize() > 0 ? currentDepth.getSell( 0) : null);
+
+	    if( ! sellChanged && ! buyChanged) {  // The top of the book didn't move, so the triangles are still the same.
+		continue;
+	    }
+
+	    List<Edge []> triangles = _trianglesByCurrencyPair.get( pairCode);
+
+	    if( triangles != null) {
+		for( Edge [] currentTriangle : triangles) {
+		    affectedTriangles.put( currentTriangle, Boolean.TRUE);
+		}
+	    }
+	}
+
+	// Now evaluate the affected triangles. A triangle is profitable,
+	// if the sum of the weights is negative.
+	List<ArbitrageCycle> result = new ArrayList<ArbitrageCycle>();
+
+	for( Edge [] currentTriangle : affectedTriangles.keySet()) {
+
+	    double weight = currentTriangle[ 0]._weight + currentTriangle[ 1]._weight + currentTriangle[ 2]._weight;
+
+	    if( weight < 0.0d) {
+
+		double profitFactor = currentTriangle[ 0]._rate * currentTriangle[ 1]._rate * currentTriangle[ 2]._rate;
+
+		if( profitFactor - 1.0d > _minProfit) {
+
+		    List<Edge> cycleEdges = new ArrayList<Edge>();
+
+		    Collections.addAll( cycleEdges, currentTriangle);
+
+		    result.add( createCycle( cycleEdges, profitFactor));
+		}
+	    }
+	}
+
+	Collections.sort( result);
+
+	return result;
+    }
+}
@@ -25,7 +25,9 @@
 
 package de.andreas_rueckert.trade.chart;
 
+import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.FixedPoint;
 import de.andreas_rueckert.trade.NotEnoughTradesException;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
@@ -394,13 +396,31 @@ public class ChartAnalyzer {
 	    throw new NotEnoughTradesException( "There are not enough trades to compute the sma");
 	}
 
+	// Sum up the prices as fixed point numbers, so the loop doesn't create a Price object per trade.
+	Currency paymentCurrency = trades.get( 0).getPrice().getCurrency();
+	int scale = FixedPoint.getScale( paymentCurrency);
+	long mantissaSum = 0L;
+	boolean useFixedPoint = true;
+
 	for( Trade currentTrade : trades) {
 	    
 	    long currentTimestamp = currentTrade.getTimestamp();
 
 	    if( ( startTime == -1L) || ( currentTimestamp >= startTime)) {  // <= the -1L check is an ugly hack. Better do different loops for different parameters?
 		if( ( endTime == -1L) || ( currentTimestamp <= endTime)) {
-		    currentSum = currentSum.add( currentTrade.getPrice());
+
+		    if( useFixedPoint) {
+			try {
+			    mantissaSum = FixedPoint.add( mantissaSum, FixedPoint.toMantissa( currentTrade.getPrice(), scale));
+			} catch( ArithmeticException ae) {  // The price doesn't fit, so continue with BigDecimals.
+			    useFixedPoint = false;
+			    currentSum = new Price( FixedPoint.toBigDecimal( mantissaSum, scale));
+			}
+		    }
+
+		    if( ! useFixedPoint) {
+			currentSum = currentSum.add( currentTrade.getPrice());
+		    }
 		    ++nTrades;
 		} else {
 		    break;  // We assume the trades are sorted, so we can abort the addition here.
@@ -408,6 +428,10 @@ public class ChartAnalyzer {
 	    }
 	}
 
+	if( useFixedPoint) {
+	    currentSum = new Price( FixedPoint.toBigDecimal( mantissaSum, scale));
+	}
+
 	return new Price( currentSum.divide( new BigDecimal( nTrades), MathContext.DECIMAL128));  // Return the average of the trade prices.
     }
 
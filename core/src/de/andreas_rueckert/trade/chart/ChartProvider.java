@@ -30,14 +30,17 @@ package de.andreas_rueckert.trade.chart;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.DepthImpl;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.trade.site.request.BatchRequestHandler;
 import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
 import de.andreas_rueckert.util.ModuleLoader;
 import de.andreas_rueckert.util.TimeUtils;
@@ -48,6 +51,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -131,6 +135,101 @@ public class ChartProvider {
 	    return null;  // No previous result found.
 	}
 
+	/**
+	 * Try to get a valid depth from the cache. Since a depth with more levels
+	 * contains all the orders of a depth with less levels, any cached depth
+	 * with at least maxLevels levels can serve this request.
+	 *
+	 * @param tradeSite The trade site of the depth.
+	 * @param currencyPair The currency pair of the depth.
+	 * @param maxLevels The maximum number of orders on each side of the depth.
+	 *
+	 * @return A valid depth with at most maxLevels orders on each side or null.
+	 */
+	public synchronized Depth getValidCachedDepth( TradeSite tradeSite, CurrencyPair currencyPair, int maxLevels) {
+
+	    Map.Entry< TradeSiteCall, Object> deepestEntry = getDeepestValidDepthEntry( tradeSite, currencyPair);
+
+	    // Check, if the cached depth is deep enough for this request.
+	    if( ( deepestEntry == null) || ( getMaxLevels( deepestEntry.getKey()) < maxLevels)) {
+		return null;
+	    }
+
+	    // Just drop the orders, that were not requested.
+	    return DepthImpl.getLimitedDepth( (Depth)deepestEntry.getValue(), maxLevels);
+	}
+
+	/**
+	 * Get the deepest valid depth from the cache, no matter how many levels were requested.
+	 *
+	 * @param tradeSite The trade site of the depth.
+	 * @param currencyPair The currency pair of the depth.
+	 *
+	 * @return The deepest valid depth in the cache or null.
+	 */
+	public synchronized Depth getDeepestValidCachedDepth( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	    Map.Entry< TradeSiteCall, Object> deepestEntry = getDeepestValidDepthEntry( tradeSite, currencyPair);
+
+	    return deepestEntry == null ? null : (Depth)deepestEntry.getValue();
+	}
+
+	/**
+	 * Find the cached depth call with the most levels for a trade site and a currency pair.
+	 * Dated depth calls are removed from the cache on the way.
+	 *
+	 * @param tradeSite The trade site of the depth.
+	 * @param currencyPair The currency pair of the depth.
+	 *
+	 * @return The cache entry of the deepest valid depth or null.
+	 */
+	private Map.Entry< TradeSiteCall, Object> getDeepestValidDepthEntry( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	    ArrayList<TradeSiteCall> callsToRemove = new ArrayList<TradeSiteCall>();
+
+	    Map.Entry< TradeSiteCall, Object> result = null;
+
+	    for( Map.Entry< TradeSiteCall, Object> cachedCallEntry : _cachedCalls.entrySet()) {
+		
+		TradeSiteCall cachedCall = cachedCallEntry.getKey();
+
+		// Only depth calls to the same site and pair are of interest here.
+		if( ! "depth".equals( cachedCall.getMethod())
+		    || ! tradeSite.getName().equals( cachedCall.getTradeSite().getName())
+		    || ! currencyPair.equals( cachedCall.getArguments().get( 0))) {
+		    continue;
+		}
+
+		if( cachedCall.isDated()) {  // Remove this call from the cache after the loop(!)
+
+		    callsToRemove.add( cachedCall);
+
+		} else if( ( result == null) || ( getMaxLevels( cachedCall) > getMaxLevels( result.getKey()))) {
+
+		    result = cachedCallEntry;  // This is the deepest depth so far.
+		}
+	    }
+	    
+	    // Now remove all the deprecated calls.
+	    for( TradeSiteCall currentCall : callsToRemove) {
+		_cachedCalls.remove( currentCall);
+	    }
+
+	    return result;
+	}
+
+	/**
+	 * Get the requested number of levels from a cached depth call.
+	 *
+	 * @param depthCall The cached depth call.
+	 *
+	 * @return The maximum number of levels, that were requested.
+	 */
+	private int getMaxLevels( TradeSiteCall depthCall) {
+
+	    return ((Integer)depthCall.getArguments().get( 1)).intValue();
+	}
+
 	/**
 	 * Add a new trade site call along with the returned value to the cache.
 	 *
@@ -362,6 +461,12 @@ public class ChartProvider {
      */
     private Currency _currentPaymentCurrency;
 
+    /**
+     * The last depth, that was fetched for each trade site and currency pair. It's served,
+     * while the circuit breaker of the trade site is open.
+     */
+    private Map<String, Depth> _lastKnownDepths = new ConcurrentHashMap<String, Depth>();
+
     /**
      * The current log level.
      */
@@ -534,20 +639,42 @@ public class ChartProvider {
      *
      * @throws TradeDataNotAvailableException if the data are not available for the given parameters.
      */
-    public final synchronized Depth getDepth( TradeSite t, CurrencyPair currencyPair) throws TradeDataNotAvailableException {
+    public final Depth getDepth( TradeSite t, CurrencyPair currencyPair) throws TradeDataNotAvailableException {
+
+	return getDepth( t, currencyPair, Depth.ALL_LEVELS);  // Just request the full depth.
+    }
+
+    /**
+     * Get the (cached) depth of a given trade site with at most maxLevels orders on each side.
+     * A cached depth with more levels is used to serve requests with less levels.
+     * This method is not synchronized, so depths of several pairs and trade sites are
+     * requested in parallel.
+     *
+     * @param t The trade site to query.
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of buy and sell orders in the depth.
+     *
+     * @return The depth for the given trade site and the given currency pair.
+     *
+     * @throws TradeDataNotAvailableException if the data are not available for the given parameters.
+     */
+    public final Depth getDepth( TradeSite t, CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
 
 	// If the user wants logging, add some info on this call to the log.
 	if( getLogLevel() > LOGLEVEL_WARNING) {
 	    LogUtils.getInstance().getLogger().info( "Requesting depth from ChartProvider for tradesite " 
 						     + t.getName() 
 						     + " and currency pair "
-						     + currencyPair.getCode());
+						     + currencyPair.getCode()
+						     + " with max. "
+						     + maxLevels
+						     + " levels");
 	}
 
 	// Create a new TradeSiteCall object for the cache.
-	TradeSiteCall tradeSiteCall = new TradeSiteCall( t, "depth", currencyPair);
+	TradeSiteCall tradeSiteCall = new TradeSiteCall( t, "depth", currencyPair, Integer.valueOf( maxLevels));
 
-	Object cachedResult = _tradeSiteCache.getValidCacheResult( tradeSiteCall);
+	Depth cachedResult = _tradeSiteCache.getValidCachedDepth( t, currencyPair, maxLevels);
 
 	if( cachedResult != null) {       // If there is a valid cached result,
 
@@ -556,7 +683,7 @@ public class ChartProvider {
 		LogUtils.getInstance().getLogger().info( "Depth object found in ChartProvider-TradeSiteCall-Cache");
 	    }
 		
-	    return (Depth)cachedResult;  // return it.
+	    return cachedResult;  // return it.
 	}
 
 	// There is no cached result, so we have to call the trade site directly.
@@ -565,9 +692,27 @@ public class ChartProvider {
 	if( getLogLevel() > LOGLEVEL_WARNING) {
 	    LogUtils.getInstance().getLogger().info( "No matching depth oject found in ChartProvider.TradeSiteCall-Cache");
 	}
+
+	String depthKey = t.getName() + ":" + currencyPair.getCode();
+
+	// If the trade site seems to be down, don't wait for it, but serve the last known depth.
+	if( ! isTradeSiteAvailable( t)) {
+
+	    Depth lastKnownDepth = _lastKnownDepths.get( depthKey);
+
+	    if( lastKnownDepth != null) {
+
+		LogUtils.getInstance().getLogger().warn( t.getName() + " is not available, so using the last known depth for " + currencyPair.getCode());
+
+		return DepthImpl.getLimitedDepth( lastKnownDepth, maxLevels);
+	    }
+
+	    throw new TradeDataNotAvailableException( t.getName() + " is not available at the moment");
+	}
 	
-	// Do the actual request.
-	Depth callResult = t.getDepth( currencyPair);
+	// Do the actual request. Concurrent requests for several pairs of the same trade site
+	// are combined into a single request, if the trade site supports it.
+	Depth callResult = BatchRequestHandler.getInstance().getDepth( t, currencyPair, maxLevels);
 
 	// If this is a valid result, add it to the cache.
 	if( callResult != null) {
@@ -576,6 +721,8 @@ public class ChartProvider {
 	    tradeSiteCall.updateTimestamp();
 	    
 	    _tradeSiteCache.putCall( tradeSiteCall, callResult);  // Add the new result to the cache.
+
+	    _lastKnownDepths.put( depthKey, callResult);  // Keep it for outages of the trade site.
 	    
 	    return callResult;   // And return the result of the request.
 	}
@@ -583,6 +730,20 @@ public class ChartProvider {
 	throw new TradeDataNotAvailableException( "The depth is not available for the given parameters");
     }
 
+    /**
+     * Get a valid depth from the cache without requesting it from the trade site.
+     * This is meant for code, that has to react quickly and cannot wait for a HTTP request.
+     *
+     * @param t The trade site of the depth.
+     * @param currencyPair The currency pair of the depth.
+     *
+     * @return The deepest valid depth in the cache or null, if there is none.
+     */
+    public final Depth getCachedDepth( TradeSite t, CurrencyPair currencyPair) {
+
+	return _tradeSiteCache.getDeepestValidCachedDepth( t, currencyPair);
+    }
+
     /**
      * Get the only instance of this class (singleton pattern).
      *
@@ -643,15 +804,14 @@ public class ChartProvider {
 	// Get the current depth for the given parameters.
 	Depth currentDepth = getDepth( tradeSite, currencyPair);
 
-	  // If there are buy and sell orders
-        if( ( currentDepth.getBuySize() > 0) && ( currentDepth.getSellSize() > 0)) {
+	// If there are buy and sell orders, return the cached spread of the depth.
+	if( currentDepth.getMetrics().hasBothSides()) {
 
-            // Compute the current spreadvand return it.
-            Price currentSpread = currentDepth.getSell( 0).getPrice().subtract( currentDepth.getBuy( 0).getPrice());
+	    return currentDepth.getMetrics().getSpread();
 	}
 
 	// If there are not buy _and_ sell orders, throw an exception.
-	throw new TradeDataNotAvailableException( "No get and buy orders in the current spread of trade site " 
+	throw new TradeDataNotAvailableException( "No sell and buy orders in the current depth of trade site " 
 						  + tradeSite.getName() 
 						  + " with currency pair "
 						  + currencyPair.getCode());
@@ -733,6 +893,26 @@ public class ChartProvider {
 	throw new TradeDataNotAvailableException( "Trades for the given parameters not available");
     }
 
+    /**
+     * Check, if a trade site is available, or if its circuit breaker is open,
+     * because the last requests failed.
+     *
+     * @param tradeSite The trade site to check.
+     *
+     * @return true, if requests to the trade site are allowed.
+     */
+    public boolean isTradeSiteAvailable( TradeSite tradeSite) {
+
+	try {
+
+	    return ! HttpUtils.getCircuitBreaker( tradeSite).isOpen();
+
+	} catch( IllegalArgumentException iae) {  // No valid URL to check.
+
+	    return true;
+	}
+    }
+
     /**
      * Check, if a given currency pair on a given trade site is already cached.
      *
@@ -803,7 +983,7 @@ public class ChartProvider {
 		}
 		if( ! cached) {  // There's no ticker yet from that site.
 
-		    Ticker newTicker = t.getTicker( new CurrencyPairImpl( _currentCurrency, _currentPaymentCurrency));
+		    Ticker newTicker = t.getTicker( CurrencyPairRegistry.getInstance().getCurrencyPair( _currentCurrency, _currentPaymentCurrency));
 
 		    if( newTicker != null) {
 			_cachedTickers.add( newTicker);
@@ -41,11 +41,26 @@ public class CurrencyPairImpl implements CurrencyPair {
 
     // Instance variables
 
+    /**
+     * The cached code of this pair or null, if it was not computed yet.
+     */
+    private String _code = null;
+
     /**
      * The queried currency.
      */
     Currency _currency = null;
 
+    /**
+     * The cached hash code of this pair or 0, if it was not computed yet.
+     */
+    private int _hashCode = 0;
+
+    /**
+     * The id of this pair in the CurrencyPairRegistry or -1, if this pair is not interned.
+     */
+    private int _id = -1;
+
     /**
      * The currency, that is used for payments.
      */
@@ -75,6 +90,20 @@ public class CurrencyPairImpl implements CurrencyPair {
 	_currency = CurrencyProvider.getInstance().getCurrencyForCode( currencyCode);
 	_paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( paymentCurrencyCode);;
     }
+
+    /**
+     * Create a new interned currency pair object. Only the CurrencyPairRegistry should use this constructor.
+     *
+     * @param currency The queried currency.
+     * @param paymentCurrency The currency to be used for the payments.
+     * @param id The id of the pair in the registry.
+     */
+    CurrencyPairImpl( Currency currency, Currency paymentCurrency, int id) {
+	this( currency, paymentCurrency);
+
+	_id = id;
+	_hashCode = toString().hashCode();  // Precompute the hash code of interned pairs.
+    }
     
 
     // Methods
@@ -131,6 +160,15 @@ public class CurrencyPairImpl implements CurrencyPair {
 	}
 	System.out.flush(); */
 
+	if( currencyPair == this) {  // Interned pairs are usually compared by reference.
+	    return true;
+	}
+
+	// 2 interned pairs are only equal, if they are the same object.
+	if( ( _id >= 0) && ( currencyPair instanceof CurrencyPairImpl) && ( ( (CurrencyPairImpl)currencyPair)._id >= 0)) {
+	    return false;
+	}
+
 	return getCurrency().getCode().equals( currencyPair.getCurrency().getCode())
 	    && getPaymentCurrency().getCode().equals( currencyPair.getPaymentCurrency().getCode());
     }
@@ -168,8 +206,8 @@ public class CurrencyPairImpl implements CurrencyPair {
 	Currency currency = CurrencyProvider.getInstance().getCurrencyForCode( currencies[ 0]);
 	Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currencies[ 1]);
 
-	// Create a new currency pair and return it.
-	return new CurrencyPairImpl( currency, paymentCurrency);
+	// Return the interned currency pair.
+	return (CurrencyPairImpl)CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
     }
 
     /**
@@ -190,6 +228,15 @@ public class CurrencyPairImpl implements CurrencyPair {
 	return toString();
     }
 
+    /**
+     * Get the id of this pair in the CurrencyPairRegistry.
+     *
+     * @return The id of this pair or -1, if this pair is not interned.
+     */
+    public final int getId() {
+	return _id;
+    }
+
     /**
      * Get the name of this currency pair.
      *
@@ -217,8 +264,14 @@ public class CurrencyPairImpl implements CurrencyPair {
      */
     public int hashCode() {
 
-	// Just use the hash code of the string representation.
-	return toString().hashCode();
+	// Just use the hash code of the string representation and cache it.
+	int hashCode = _hashCode;
+
+	if( hashCode == 0) {
+	    _hashCode = hashCode = toString().hashCode();
+	}
+
+	return hashCode;
     }
 
     /**
@@ -228,8 +281,8 @@ public class CurrencyPairImpl implements CurrencyPair {
       */
     public CurrencyPair invert() {
 
-	// Just create a new pair with the currencies switched.
-	return new CurrencyPairImpl( getPaymentCurrency(), getCurrency());
+	// Just get the interned pair with the currencies switched.
+	return CurrencyPairRegistry.getInstance().getCurrencyPair( getPaymentCurrency(), getCurrency());
     }
 
     /**
@@ -238,6 +291,13 @@ public class CurrencyPairImpl implements CurrencyPair {
      * @return This currency pair as a string.
      */
     public final String toString() {
-	return getCurrency().getCode() + PAIR_DELIMITER + getPaymentCurrency().getCode();
+
+	String code = _code;
+
+	if( code == null) {  // Build the string only once.
+	    _code = code = getCurrency().getCode() + PAIR_DELIMITER + getPaymentCurrency().getCode();
+	}
+
+	return code;
     }
 }
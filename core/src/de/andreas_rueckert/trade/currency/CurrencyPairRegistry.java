@@ -0,0 +1,249 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.currency;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * This class hands out 1 canonical instance per currency pair. Each interned pair
+ * has a precomputed hash code and a dense int id, so pairs can be compared by reference
+ * or id and stored in arrays or bit sets.
+ */
+public class CurrencyPairRegistry {
+
+    // Static variables
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static CurrencyPairRegistry _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The interned pairs, indexed by id. The array is replaced, when it grows,
+     * so readers never need a lock.
+     */
+    private volatile CurrencyPairImpl [] _pairsById = new CurrencyPairImpl[ 64];
+
+    /**
+     * The interned pairs, mapped by the code of the currency and the code of the payment currency.
+     * The lookup doesn't need to create a key object this way.
+     */
+    private Map<String, Map<String, CurrencyPairImpl>> _pairsByCodes = new ConcurrentHashMap<String, Map<String, CurrencyPairImpl>>();
+
+    /**
+     * The number of interned pairs.
+     */
+    private volatile int _size = 0;
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private CurrencyPairRegistry() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the interned pair for 2 currencies.
+     *
+     * @param currency The queried currency.
+     * @param paymentCurrency The currency to be used for the payments.
+     *
+     * @return The interned currency pair.
+     */
+    public CurrencyPair getCurrencyPair( Currency currency, Currency paymentCurrency) {
+
+	Map<String, CurrencyPairImpl> paymentPairs = _pairsByCodes.get( currency.getCode());
+
+	if( paymentPairs != null) {
+
+	    CurrencyPairImpl pair = paymentPairs.get( paymentCurrency.getCode());
+
+	    if( pair != null) {
+		return pair;
+	    }
+	}
+
+	return register( currency, paymentCurrency);
+    }
+
+    /**
+     * Get the interned pair for 2 currency codes.
+     *
+     * @param currencyCode The code of the queried currency.
+     * @param paymentCurrencyCode The code of the payment currency.
+     *
+     * @return The interned currency pair.
+     */
+    public CurrencyPair getCurrencyPair( String currencyCode, String paymentCurrencyCode) {
+
+	Map<String, CurrencyPairImpl> paymentPairs = _pairsByCodes.get( currencyCode);
+
+	if( paymentPairs != null) {
+
+	    CurrencyPairImpl pair = paymentPairs.get( paymentCurrencyCode);
+
+	    if( pair != null) {
+		return pair;
+	    }
+	}
+
+	// The codes might differ in case or whitespace, so resolve them via the (lock free) currency provider first.
+	return getCurrencyPair( CurrencyProvider.getInstance().getCurrencyForCode( currencyCode)
+				, CurrencyProvider.getInstance().getCurrencyForCode( paymentCurrencyCode));
+    }
+
+    /**
+     * Get the interned pair with a given id.
+     *
+     * @param id The id of the pair.
+     *
+     * @return The interned pair with the given id or null, if there is no such pair.
+     */
+    public CurrencyPair getCurrencyPair( int id) {
+
+	CurrencyPairImpl [] pairsById = _pairsById;
+
+	return ( id >= 0) && ( id < pairsById.length) ? pairsById[ id] : null;
+    }
+
+    /**
+     * Get the id of a currency pair. The pair is interned, if it's not interned yet.
+     *
+     * @param currencyPair The currency pair.
+     *
+     * @return The id of the pair.
+     */
+    public int getId( CurrencyPair currencyPair) {
+
+	if( currencyPair instanceof CurrencyPairImpl) {
+
+	    int id = ( (CurrencyPairImpl)currencyPair).getId();
+
+	    if( id >= 0) {  // Already interned?
+		return id;
+	    }
+	}
+
+	return ( (CurrencyPairImpl)intern( currencyPair)).getId();
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized CurrencyPairRegistry getInstance() {
+
+	if( _instance == null) {                     // If there is no instance yet,
+
+	    _instance = new CurrencyPairRegistry();  // ..create one.
+	}
+
+	return _instance;  // Return the only instance.
+    }
+
+    /**
+     * Get the interned instance of a currency pair.
+     *
+     * @param currencyPair The currency pair.
+     *
+     * @return The interned instance of the pair.
+     */
+    public CurrencyPair intern( CurrencyPair currencyPair) {
+
+	if( ( currencyPair instanceof CurrencyPairImpl) && ( ( (CurrencyPairImpl)currencyPair).getId() >= 0)) {
+	    return currencyPair;
+	}
+
+	return getCurrencyPair( currencyPair.getCurrency(), currencyPair.getPaymentCurrency());
+    }
+
+    /**
+     * Register a new pair, if no other thread registered it in the meantime.
+     *
+     * @param currency The queried currency.
+     * @param paymentCurrency The currency to be used for the payments.
+     *
+     * @return The interned currency pair.
+     */
+    private synchronized CurrencyPairImpl register( Currency currency, Currency paymentCurrency) {
+
+	Map<String, CurrencyPairImpl> paymentPairs = _pairsByCodes.get( currency.getCode());
+
+	if( paymentPairs == null) {
+
+	    paymentPairs = new ConcurrentHashMap<String, CurrencyPairImpl>();
+
+	    _pairsByCodes.put( currency.getCode(), paymentPairs);
+	}
+
+	CurrencyPairImpl pair = paymentPairs.get( paymentCurrency.getCode());
+
+	if( pair == null) {  // Not registered by another thread?
+
+	    pair = new CurrencyPairImpl( currency, paymentCurrency, _size);
+
+	    // Grow the id array, if necessary. Readers still see the old array until the new one is complete.
+	    CurrencyPairImpl [] pairsById = _pairsById;
+
+	    if( _size == pairsById.length) {
+
+		CurrencyPairImpl [] newPairsById = new CurrencyPairImpl[ pairsById.length * 2];
+
+		System.arraycopy( pairsById, 0, newPairsById, 0, pairsById.length);
+
+		pairsById = newPairsById;
+	    }
+
+	    pairsById[ _size] = pair;
+	    _pairsById = pairsById;
+	    ++_size;
+
+	    paymentPairs.put( paymentCurrency.getCode(), pair);
+	}
+
+	return pair;
+    }
+
+    /**
+     * Get the number of interned pairs. All ids are lower than this number.
+     *
+     * @return The number of interned pairs.
+     */
+    public int size() {
+	return _size;
+    }
+}
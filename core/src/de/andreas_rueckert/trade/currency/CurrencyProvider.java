@@ -46,6 +46,126 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
 
     // Inner classes
 
+    /**
+     * An immutable snapshot of the registered currencies. The lookups only read the
+     * snapshot, so they need no lock. Adding a currency creates a new snapshot.
+     *
+     * The snapshot is an open addressing hash table with a case insensitive hash,
+     * so a lookup doesn't have to convert the code to upper case.
+     */
+    static class CurrencySnapshot {
+
+	// Instance variables
+
+	/**
+	 * The registered currencies, indexed by currency id.
+	 */
+	final Currency [] _currencies;
+
+	/**
+	 * The mask to compute a table index from a hash code.
+	 */
+	final int _mask;
+
+	/**
+	 * The hash table with the currency id + 1 in each used slot and 0 in each empty slot.
+	 */
+	final int [] _table;
+
+
+	// Constructors
+
+	/**
+	 * Create a new snapshot.
+	 *
+	 * @param currencies The registered currencies, indexed by currency id.
+	 */
+	CurrencySnapshot( Currency [] currencies) {
+
+	    _currencies = currencies;
+
+	    // Keep the table at most half full, so the probe sequences stay short.
+	    int tableSize = 8;
+	    while( tableSize < currencies.length * 2) {
+		tableSize <<= 1;
+	    }
+
+	    _table = new int[ tableSize];
+	    _mask = tableSize - 1;
+
+	    for( int id = 0; id < currencies.length; ++id) {
+
+		String code = currencies[ id].getCode();
+		int index = hashCode( code, 0, code.length()) & _mask;
+
+		while( _table[ index] != 0) {
+		    index = ( index + 1) & _mask;
+		}
+
+		_table[ index] = id + 1;
+	    }
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the id of a currency code.
+	 *
+	 * @param code The currency code. It's case insensitive and may have leading or trailing whitespace.
+	 *
+	 * @return The id of the currency or -1, if no currency with this code is registered.
+	 */
+	final int getId( String code) {
+
+	    // Skip leading and trailing whitespace like String.trim() does, but without creating a new string.
+	    int start = 0;
+	    int end = code.length();
+
+	    while( ( start < end) && ( code.charAt( start) <= ' ')) {
+		++start;
+	    }
+
+	    while( ( end > start) && ( code.charAt( end - 1) <= ' ')) {
+		--end;
+	    }
+
+	    int length = end - start;
+
+	    for( int index = hashCode( code, start, end) & _mask; _table[ index] != 0; index = ( index + 1) & _mask) {
+
+		String currentCode = _currencies[ _table[ index] - 1].getCode();
+
+		if( ( currentCode.length() == length) && currentCode.regionMatches( true, 0, code, start, length)) {
+		    return _table[ index] - 1;
+		}
+	    }
+
+	    return -1;  // No currency with this code.
+	}
+
+	/**
+	 * Compute a case insensitive hash code of a part of a currency code.
+	 *
+	 * @param code The currency code.
+	 * @param start The index of the first char.
+	 * @param end The index after the last char.
+	 *
+	 * @return The hash code of the upper case chars.
+	 */
+	static final int hashCode( String code, int start, int end) {
+
+	    int hash = 0;
+
+	    for( int i = start; i < end; ++i) {
+		hash = 31 * hash + Character.toUpperCase( code.charAt( i));
+	    }
+
+	    // Spread the bits, since the table index only uses the lower bits.
+	    return hash ^ ( hash >>> 16);
+	}
+    }
+
 
     // Static variables
     
@@ -68,6 +188,11 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
      */
     private Map< String, Currency> _registeredCurrencies = new HashMap< String, Currency>();
 
+    /**
+     * The current snapshot of the registered currencies for the lookups.
+     */
+    private volatile CurrencySnapshot _snapshot = new CurrencySnapshot( new Currency[ 0]);
+
 
     // Constructors
 
@@ -104,6 +229,15 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
 	// This code should always be unique.
 	_registeredCurrencies.put( currencyCode, newCurrency);
 
+	// Publish a new snapshot with the new currency as the last id.
+	Currency [] currencies = _snapshot._currencies;
+	Currency [] newCurrencies = new Currency[ currencies.length + 1];
+
+	System.arraycopy( currencies, 0, newCurrencies, 0, currencies.length);
+	newCurrencies[ currencies.length] = newCurrency;
+
+	_snapshot = new CurrencySnapshot( newCurrencies);
+
 	return true;  // Adding the new currency worked.
     }
 
@@ -154,9 +288,28 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
      *
      * @return The currency. If it has to be created, it won't contain a name or description. Just the code.
      */
-    public final synchronized Currency getCurrencyForCode( String code) {
+    public final Currency getCurrencyForCode( String code) {
 
-	// Try to get a registered currency for this code.
+	// Try to get a registered currency for this code without a lock.
+	Currency currency = getRegisteredCurrencyForCode( code);  
+
+	if( currency != null) {
+	    return currency;
+	}
+
+	return addCurrencyForCode( code);  // Only new currencies need the lock.
+    }
+
+    /**
+     * Get a currency for a given code, and create it, if it's not registered yet.
+     *
+     * @param code The ISO code of the currency.
+     *
+     * @return The currency. If it has to be created, it won't contain a name or description. Just the code.
+     */
+    private final synchronized Currency addCurrencyForCode( String code) {
+
+	// Check again, since another thread might have added the currency in the meantime.
 	Currency currency = getRegisteredCurrencyForCode( code);  
 
 	if( currency == null) {  // If this currency is not registered yet.
@@ -178,6 +331,41 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
 	return currency;  
     }
 
+    /**
+     * Get the currency with a given id.
+     *
+     * @param id The id of the currency.
+     *
+     * @return The currency with the given id or null, if there is no such currency.
+     */
+    public final Currency getCurrencyForId( int id) {
+
+	Currency [] currencies = _snapshot._currencies;
+
+	return ( id >= 0) && ( id < currencies.length) ? currencies[ id] : null;
+    }
+
+    /**
+     * Get the dense id of a currency. The ids start at 0 and are assigned in the order,
+     * the currencies are registered, so they can be used as array indexes.
+     *
+     * @param currency The currency.
+     *
+     * @return The id of the currency or -1, if the currency is not registered.
+     */
+    public final int getCurrencyId( Currency currency) {
+	return _snapshot.getId( currency.getCode());
+    }
+
+    /**
+     * Get the number of registered currencies. All currency ids are lower than this number.
+     *
+     * @return The number of registered currencies.
+     */
+    public final int getCurrencyCount() {
+	return _snapshot._currencies.length;
+    }
+
     /**
      * Get a list of SQL statements to drop the tables for this persistent object.
      *
@@ -218,10 +406,9 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
      *
      * @return The registered currencies as an array.
      */
-    @SuppressWarnings("unchecked")
-    public final synchronized Currency [] getRegisteredCurrencies() {
+    public final Currency [] getRegisteredCurrencies() {
 
-	return _registeredCurrencies.values().toArray( new Currency[ _registeredCurrencies.size()]);
+	return _snapshot._currencies.clone();  // Copy the array, so the snapshot is not modified.
     }
 
     /**
@@ -232,11 +419,14 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
      *
      * @return The registered currency, or null if no currency with this code is registered.
      */
-    public final synchronized Currency getRegisteredCurrencyForCode( String code) {
+    public final Currency getRegisteredCurrencyForCode( String code) {
+
+	// Get the currency from the current snapshot. Will return null, if no such 
+	// currency is registered.
+	CurrencySnapshot snapshot = _snapshot;
+	int id = snapshot.getId( code);
 
-	// Get the currency from the map. Will return null, if no such 
-	// currency is in the map.
-	return _registeredCurrencies.get( code.toUpperCase().trim());
+	return id >= 0 ? snapshot._currencies[ id] : null;
     }
     
     /**
@@ -253,7 +443,7 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
     /**
      * Load all the currencies.
      */
-    public void loadAll() {
+    public synchronized void loadAll() {
 	
 	// Read all the currencies and set the registered currencies from them.
 	_registeredCurrencies = readAll();
@@ -263,6 +453,31 @@ public class CurrencyProvider extends DatabasePersistenceImpl {
 
 	    _registeredCurrencies = new HashMap<String, Currency>();
 	}
+
+	// Keep the ids of the currencies, that were already registered, and append the new ones.
+	Currency [] currencies = _snapshot._currencies;
+	List<Currency> newCurrencies = new ArrayList<Currency>();
+
+	for( Currency currentCurrency : currencies) {
+
+	    Currency loadedCurrency = _registeredCurrencies.get( currentCurrency.getCode());
+
+	    if( loadedCurrency != null) {
+		newCurrencies.add( loadedCurrency);
+	    } else {  // Keep the currency, so its id stays valid.
+		newCurrencies.add( currentCurrency);
+		_registeredCurrencies.put( currentCurrency.getCode(), currentCurrency);
+	    }
+	}
+
+	for( Currency currentCurrency : _registeredCurrencies.values()) {
+
+	    if( _snapshot.getId( currentCurrency.getCode()) < 0) {
+		newCurrencies.add( currentCurrency);
+	    }
+	}
+
+	_snapshot = new CurrencySnapshot( newCurrencies.toArray( new Currency[ newCurrencies.size()]));
     }
 
     /**
@@ -25,7 +25,9 @@
 
 package de.andreas_rueckert.trade.order;
 
+import de.andreas_rueckert.trade.site.request.RequestRateLimiter;
 import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.util.LogUtils;
 import de.andreas_rueckert.util.TimeUtils;
 import java.util.ArrayList;
@@ -284,7 +286,19 @@ public abstract class OrderBook {
 
 	    TradeSite tradeSite = siteOrder.getTradeSite();  // Get the trade site of the order.
 
-	    return tradeSite.cancelOrder( siteOrder);  // Ask the trade site to cancel the order.
+	    // A cancel is a trading request, so it's sent before queued polls, if the rate limit is used up.
+	    TradeSiteRequestType previousType = RequestRateLimiter.getInstance().getRequestType();
+
+	    RequestRateLimiter.getInstance().setRequestType( TradeSiteRequestType.Order);
+
+	    try {
+
+		return tradeSite.cancelOrder( siteOrder);  // Ask the trade site to cancel the order.
+
+	    } finally {
+
+		RequestRateLimiter.getInstance().setRequestType( previousType);
+	    }
 	}
 
 	return false;  // Default is failure.
@@ -426,7 +440,20 @@ public abstract class OrderBook {
 
 		if( tradeSite != null) {
 
-		    OrderStatus newStatus = tradeSite.executeOrder( siteOrderToExecute); // If the order could be executed,
+		    // An order is sent before queued polls, if the rate limit of the site is used up.
+		    TradeSiteRequestType previousType = RequestRateLimiter.getInstance().getRequestType();
+		    OrderStatus newStatus;
+
+		    RequestRateLimiter.getInstance().setRequestType( TradeSiteRequestType.Order);
+
+		    try {
+
+			newStatus = tradeSite.executeOrder( siteOrderToExecute); // If the order could be executed,
+
+		    } finally {
+
+			RequestRateLimiter.getInstance().setRequestType( previousType);
+		    }
 
 		    // Log the executed order.
 		    LogUtils.getInstance().getLogger().info( "Executed order " + siteOrderToExecute.toString());
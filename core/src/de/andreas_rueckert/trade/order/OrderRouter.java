@@ -0,0 +1,387 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.order;
+
+import de.andreas_rueckert.trade.Amount;
+import de.andreas_rueckert.trade.chart.ChartProvider;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.NotEnoughOrdersException;
+import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.ModuleLoader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * This class splits an order across all the registered trade sites, so the
+ * order is filled at the best price after fees. Only the cached depths of the
+ * ChartProvider are used, so routing an order never waits for a HTTP request.
+ */
+public class OrderRouter {
+
+    // Inner classes
+
+    /**
+     * The side of the depth of one trade site, that an order is routed to.
+     */
+    class VenueBook {
+
+	// Instance variables
+
+	/**
+	 * The effective prices of the orders after fees.
+	 */
+	private double [] _effectivePrices;
+
+	/**
+	 * The index of the next order, that is not used yet.
+	 */
+	private int _nextLevel = 0;
+
+	/**
+	 * The orders of the depth side, from the best to the worst price.
+	 */
+	private List<DepthOrder> _orders;
+
+	/**
+	 * The amount, that is routed to this trade site so far.
+	 */
+	private BigDecimal _routedAmount = BigDecimal.ZERO;
+
+	/**
+	 * The worst price, that is used on this trade site so far.
+	 */
+	private Price _limitPrice = null;
+
+	/**
+	 * The trade site of this book.
+	 */
+	private TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new book for one trade site.
+	 *
+	 * @param tradeSite The trade site of the depth.
+	 * @param orders The orders of the depth side, that the order is filled from.
+	 * @param feeRate The fee of the trade site as a fraction of the traded volume.
+	 * @param buy true, if the routed order is a buy order.
+	 */
+	VenueBook( TradeSite tradeSite, List<DepthOrder> orders, double feeRate, boolean buy) {
+
+	    _tradeSite = tradeSite;
+	    _orders = orders;
+
+	    // Compute the effective prices once, so the routing just compares doubles.
+	    // A buy costs price plus fee, while a sell gets price minus fee.
+	    double feeFactor = buy ? 1.0d + feeRate : 1.0d - feeRate;
+
+	    _effectivePrices = new double[ orders.size()];
+	    for( int i = 0; i < _effectivePrices.length; ++i) {
+		_effectivePrices[ i] = orders.get( i).getPrice().doubleValue() * feeFactor;
+	    }
+	}
+
+
+	// Methods
+
+	/**
+	 * Check, if there are orders left in this book.
+	 *
+	 * @return true, if there are unused orders left.
+	 */
+	final boolean hasNextLevel() {
+	    return _nextLevel < _effectivePrices.length;
+	}
+
+	/**
+	 * Get the effective price of the next unused order.
+	 *
+	 * @return The effective price of the next unused order.
+	 */
+	final double getNextEffectivePrice() {
+	    return _effectivePrices[ _nextLevel];
+	}
+
+	/**
+	 * Use the next order of this book for up to a given amount.
+	 *
+	 * @param missingAmount The amount, that is still missing.
+	 *
+	 * @return The amount, that was taken from the next order.
+	 */
+	final BigDecimal takeNextLevel( BigDecimal missingAmount) {
+
+	    DepthOrder order = _orders.get( _nextLevel++);
+
+	    BigDecimal takenAmount = order.getAmount().compareTo( missingAmount) < 0 ? order.getAmount() : missingAmount;
+
+	    _routedAmount = _routedAmount.add( takenAmount);
+	    _limitPrice = order.getPrice();
+
+	    return takenAmount;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static OrderRouter _instance = null;
+
+
+    // Instance variables
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private OrderRouter() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the fee of a trade site as a fraction of the traded volume.
+     * The fee is computed for a probe order of the given amount at the given price,
+     * so flat fees are spread over the whole order.
+     *
+     * @param tradeSite The trade site to query.
+     * @param userAccount The user account to use or null for the default user account.
+     * @param orderType The type of the routed order.
+     * @param price The price of the best order on this site.
+     * @param currencyPair The traded currency pair.
+     * @param amount The amount of the routed order.
+     *
+     * @return The fee as a fraction of the traded volume.
+     */
+    public double getFeeRate( TradeSite tradeSite
+			      , TradeSiteUserAccount userAccount
+			      , OrderType orderType
+			      , Price price
+			      , CurrencyPair currencyPair
+			      , Amount amount) {
+
+	SiteOrder probeOrder = OrderFactory.createCryptoCoinTradeOrder( tradeSite, userAccount, orderType, price, currencyPair, amount);
+
+	try {
+
+	    Price fee = tradeSite.getFeeForOrder( probeOrder);
+
+	    if( fee == null) {
+		return 0.0d;
+	    }
+
+	    // The fee is either in the traded currency or in the payment currency.
+	    double tradedVolume = ( fee.getCurrency() != null) && fee.getCurrency().equals( currencyPair.getPaymentCurrency())
+		? amount.doubleValue() * price.doubleValue()
+		: amount.doubleValue();
+
+	    return fee.doubleValue() / tradedVolume;
+
+	} catch( RuntimeException re) {  // Many modules cannot compute all the fees yet.
+
+	    LogUtils.getInstance().getLogger().warn( "OrderRouter: cannot get the fee for "
+						     + tradeSite.getName()
+						     + ", so routing without fee: "
+						     + re);
+
+	    return 0.0d;
+	}
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static OrderRouter getInstance() {
+
+	if( _instance == null) {             // If there is no instance yet,
+
+	    _instance = new OrderRouter();   // ..create one.
+	}
+
+	return _instance;  // Return the only instance.
+    }
+
+    /**
+     * Split an order across all the registered trade sites, that support the currency pair,
+     * so it is filled at the best price after fees. Only trade sites with a valid cached depth
+     * in the ChartProvider are considered.
+     *
+     * @param orderType The type of the order (buy or sell).
+     * @param amount The amount to buy or sell.
+     * @param currencyPair The currency pair to trade.
+     *
+     * @return One limit order per trade site, that has to be used.
+     *
+     * @throws NotEnoughOrdersException if the cached depths do not have enough volume for the amount.
+     */
+    public List<SiteOrder> route( OrderType orderType, Amount amount, CurrencyPair currencyPair) throws NotEnoughOrdersException {
+
+	return route( orderType, amount, currencyPair, null);
+    }
+
+    /**
+     * Split an order across all the registered trade sites, that support the currency pair,
+     * so it is filled at the best price after fees. Only trade sites with a valid cached depth
+     * in the ChartProvider are considered.
+     *
+     * @param orderType The type of the order (buy or sell).
+     * @param amount The amount to buy or sell.
+     * @param currencyPair The currency pair to trade.
+     * @param userAccount The user account to use or null for the default user account.
+     *
+     * @return One limit order per trade site, that has to be used.
+     *
+     * @throws NotEnoughOrdersException if the cached depths do not have enough volume for the amount.
+     */
+    public List<SiteOrder> route( OrderType orderType
+				  , Amount amount
+				  , CurrencyPair currencyPair
+				  , TradeSiteUserAccount userAccount) throws NotEnoughOrdersException {
+
+	boolean buy = ( orderType == OrderType.BUY);
+
+	// Collect the depth sides of all the trade sites with a cached depth.
+	List<VenueBook> books = new ArrayList<VenueBook>();
+
+	for( TradeSite currentSite : ModuleLoader.getInstance().getRegisteredTradeSites().values()) {
+
+	    if( ! currentSite.isSupportedCurrencyPair( currencyPair)) {
+		continue;
+	    }
+
+	    Depth cachedDepth = ChartProvider.getInstance().getCachedDepth( currentSite, currencyPair);
+
+	    if( cachedDepth == null) {  // Don't wait for a request here.
+		continue;
+	    }
+
+	    // A buy order is filled from the sell orders and vice versa.
+	    List<DepthOrder> orders = buy ? cachedDepth.getSellOrders() : cachedDepth.getBuyOrders();
+
+	    if( ! orders.isEmpty()) {
+
+		double feeRate = getFeeRate( currentSite, userAccount, orderType, orders.get( 0).getPrice(), currencyPair, amount);
+
+		books.add( new VenueBook( currentSite, orders, feeRate, buy));
+	    }
+	}
+
+	// Now always take the order with the best effective price, until the amount is filled.
+	// Since the fees are proportional to the volume, this yields the cheapest split.
+	BigDecimal missingAmount = amount;
+
+	while( missingAmount.signum() > 0) {
+
+	    VenueBook bestBook = null;
+
+	    for( VenueBook currentBook : books) {
+
+		if( currentBook.hasNextLevel()
+		    && ( ( bestBook == null)
+			 || ( buy
+			      ? currentBook.getNextEffectivePrice() < bestBook.getNextEffectivePrice()
+			      : currentBook.getNextEffectivePrice() > bestBook.getNextEffectivePrice()))) {
+
+		    bestBook = currentBook;
+		}
+	    }
+
+	    if( bestBook == null) {  // No orders left on any trade site?
+
+		throw new NotEnoughOrdersException( "Cannot route an order for "
+						    + amount
+						    + " "
+						    + currencyPair.getCode()
+						    + ". Only "
+						    + amount.subtract( missingAmount)
+						    + " are available in the cached depths.");
+	    }
+
+	    missingAmount = missingAmount.subtract( bestBook.takeNextLevel( missingAmount));
+	}
+
+	// Create one limit order for each used trade site.
+	List<SiteOrder> result = new ArrayList<SiteOrder>();
+
+	for( VenueBook currentBook : books) {
+
+	    if( currentBook._routedAmount.signum() > 0) {
+
+		result.add( OrderFactory.createCryptoCoinTradeOrder( currentBook._tradeSite
+								     , userAccount
+								     , orderType
+								     , currentBook._limitPrice
+								     , currencyPair
+								     , new Amount( currentBook._routedAmount)));
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Route an order and add the resulting orders to the order book, so they are executed.
+     *
+     * @param orderType The type of the order (buy or sell).
+     * @param amount The amount to buy or sell.
+     * @param currencyPair The currency pair to trade.
+     * @param userAccount The user account to use or null for the default user account.
+     *
+     * @return The ids of the added orders in the order book.
+     *
+     * @throws NotEnoughOrdersException if the cached depths do not have enough volume for the amount.
+     */
+    public List<String> routeAndPlace( OrderType orderType
+				       , Amount amount
+				       , CurrencyPair currencyPair
+				       , TradeSiteUserAccount userAccount) throws NotEnoughOrdersException {
+
+	List<String> result = new ArrayList<String>();
+
+	for( SiteOrder currentOrder : route( orderType, amount, currencyPair, userAccount)) {
+
+	    result.add( CryptoCoinOrderBook.getInstance().add( currentOrder));
+	}
+
+	return result;
+    }
+}
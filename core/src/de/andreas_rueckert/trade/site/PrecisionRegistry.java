@@ -0,0 +1,336 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site;
+
+import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.FixedPoint;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * This class stores the number of decimals, that a trade site accepts for the prices
+ * and amounts of a currency pair, and formats prices and amounts for order requests.
+ * The trade site modules fill the registry from the metadata of the exchange.
+ *
+ * The formatting doesn't use DecimalFormat, which is not thread-safe and expensive to create.
+ * It rounds the value to the precision and writes the digits into a per-thread buffer.
+ */
+public class PrecisionRegistry {
+
+    // Inner classes
+
+    /**
+     * The precisions of one currency pair on one trade site.
+     */
+    static class Precision {
+
+	// Instance variables
+
+	/**
+	 * The number of decimals for amounts.
+	 */
+	final int _amountDecimals;
+
+	/**
+	 * The number of decimals for prices or -1, if the price precision is not known.
+	 */
+	final int _priceDecimals;
+
+
+	// Constructors
+
+	/**
+	 * Create a new precision.
+	 *
+	 * @param priceDecimals The number of decimals for prices or -1, if it's not known.
+	 * @param amountDecimals The number of decimals for amounts.
+	 */
+	Precision( int priceDecimals, int amountDecimals) {
+	    _priceDecimals = priceDecimals;
+	    _amountDecimals = amountDecimals;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The default number of decimals for amounts.
+     */
+    public final static int DEFAULT_AMOUNT_DECIMALS = FixedPoint.DEFAULT_SCALE;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static PrecisionRegistry _instance = null;
+
+    /**
+     * A buffer for each thread to format the numbers.
+     * 40 chars are enough for a sign, 19 digits, a decimal point and 18 decimals.
+     */
+    private final static ThreadLocal<char []> _formatBuffer = new ThreadLocal<char []>() {
+	    @Override protected char [] initialValue() {
+		return new char[ 40];
+	    }
+	};
+
+
+    // Instance variables
+
+    /**
+     * The precisions of the currency pairs, mapped by trade site.
+     */
+    private Map<TradeSite, Map<CurrencyPair, Precision>> _precisions = new ConcurrentHashMap<TradeSite, Map<CurrencyPair, Precision>>();
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private PrecisionRegistry() {
+    }
+
+
+    // Methods
+
+    /**
+     * Format a value with a given number of decimals. The value is rounded half even
+     * and trailing zero decimals are removed, like DecimalFormat( "#.########") does.
+     *
+     * @param value The value to format.
+     * @param decimals The maximum number of decimals.
+     *
+     * @return The formatted value.
+     */
+    public static String format( BigDecimal value, int decimals) {
+
+	BigDecimal rounded = value.scale() > decimals ? value.setScale( decimals, RoundingMode.HALF_EVEN) : value;
+
+	if( ( rounded.scale() < 0) || ( rounded.scale() > FixedPoint.MAX_SCALE)) {  // Should never happen for prices and amounts.
+	    return rounded.stripTrailingZeros().toPlainString();
+	}
+
+	BigInteger unscaled = rounded.unscaledValue();
+
+	if( unscaled.bitLength() > 63) {  // Too large for the fast formatting.
+	    return rounded.stripTrailingZeros().toPlainString();
+	}
+
+	return format( unscaled.longValue(), rounded.scale());
+    }
+
+    /**
+     * Format a fixed point mantissa. Trailing zero decimals are removed.
+     *
+     * @param mantissa The mantissa of the value.
+     * @param scale The number of decimals of the mantissa.
+     *
+     * @return The formatted value.
+     */
+    public static String format( long mantissa, int scale) {
+
+	char [] buffer = _formatBuffer.get();
+	int position = buffer.length;
+	boolean negative = mantissa < 0L;
+
+	// Work with the negative value, so Long.MIN_VALUE works, too.
+	long remaining = negative ? mantissa : -mantissa;
+
+	// Skip the trailing zero decimals.
+	while( ( scale > 0) && ( remaining % 10L == 0L)) {
+	    remaining /= 10L;
+	    --scale;
+	}
+
+	// Write the digits from the end of the buffer.
+	for( int i = 0; i < scale; ++i) {
+	    buffer[ --position] = (char)( '0' - ( remaining % 10L));
+	    remaining /= 10L;
+	}
+
+	if( scale > 0) {
+	    buffer[ --position] = '.';
+	}
+
+	do {
+	    buffer[ --position] = (char)( '0' - ( remaining % 10L));
+	    remaining /= 10L;
+	} while( remaining != 0L);
+
+	if( negative) {
+	    buffer[ --position] = '-';
+	}
+
+	return new String( buffer, position, buffer.length - position);
+    }
+
+    /**
+     * Format an amount for an order request.
+     *
+     * @param tradeSite The trade site of the order.
+     * @param currencyPair The currency pair of the order.
+     * @param amount The amount to format.
+     *
+     * @return The formatted amount.
+     */
+    public String formatAmount( TradeSite tradeSite, CurrencyPair currencyPair, BigDecimal amount) {
+
+	return format( amount, getAmountDecimals( tradeSite, currencyPair));
+    }
+
+    /**
+     * Format a price for an order request.
+     *
+     * @param tradeSite The trade site of the order.
+     * @param currencyPair The currency pair of the order.
+     * @param price The price to format.
+     *
+     * @return The formatted price.
+     *
+     * @throws CurrencyNotSupportedException if the price precision of the currency pair is not known.
+     */
+    public String formatPrice( TradeSite tradeSite, CurrencyPair currencyPair, BigDecimal price) throws CurrencyNotSupportedException {
+
+	int decimals = getPriceDecimals( tradeSite, currencyPair);
+
+	if( decimals < 0) {
+	    throw new CurrencyNotSupportedException( "The price precision of the currency pair "
+						     + currencyPair.getCode()
+						     + " is not known for "
+						     + tradeSite.getName());
+	}
+
+	return format( price, decimals);
+    }
+
+    /**
+     * Get the number of decimals for the amounts of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The number of decimals for amounts.
+     */
+    public int getAmountDecimals( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	Precision precision = getPrecision( tradeSite, currencyPair);
+
+	return precision != null ? precision._amountDecimals : DEFAULT_AMOUNT_DECIMALS;
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static PrecisionRegistry getInstance() {
+
+	if( _instance == null) {                  // If there is no instance yet,
+
+	    _instance = new PrecisionRegistry();  // ..create one.
+	}
+
+	return _instance;  // Return the only instance.
+    }
+
+    /**
+     * Get the precision of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The precision or null, if it is not registered.
+     */
+    private final Precision getPrecision( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	Map<CurrencyPair, Precision> sitePrecisions = _precisions.get( tradeSite);
+
+	return sitePrecisions != null ? sitePrecisions.get( currencyPair) : null;
+    }
+
+    /**
+     * Get the number of decimals for the prices of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return The number of decimals for prices or -1, if the precision is not known.
+     */
+    public int getPriceDecimals( TradeSite tradeSite, CurrencyPair currencyPair) {
+
+	Precision precision = getPrecision( tradeSite, currencyPair);
+
+	return precision != null ? precision._priceDecimals : -1;
+    }
+
+    /**
+     * Check, if the price precision of a currency pair on a trade site is known.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     *
+     * @return true, if the price precision is registered.
+     */
+    public boolean hasPricePrecision( TradeSite tradeSite, CurrencyPair currencyPair) {
+	return getPriceDecimals( tradeSite, currencyPair) >= 0;
+    }
+
+    /**
+     * Set the precision of a currency pair on a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param currencyPair The currency pair.
+     * @param priceDecimals The number of decimals for prices.
+     * @param amountDecimals The number of decimals for amounts.
+     */
+    public void setPrecision( TradeSite tradeSite, CurrencyPair currencyPair, int priceDecimals, int amountDecimals) {
+
+	Map<CurrencyPair, Precision> sitePrecisions = _precisions.get( tradeSite);
+
+	if( sitePrecisions == null) {
+
+	    synchronized( _precisions) {  // Make sure, that only 1 map per trade site is created.
+
+		sitePrecisions = _precisions.get( tradeSite);
+
+		if( sitePrecisions == null) {
+
+		    sitePrecisions = new ConcurrentHashMap<CurrencyPair, Precision>();
+
+		    _precisions.put( tradeSite, sitePrecisions);
+		}
+	    }
+	}
+
+	sitePrecisions.put( currencyPair, new Precision( priceDecimals, amountDecimals));
+    }
+}
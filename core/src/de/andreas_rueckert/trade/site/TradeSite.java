@@ -77,6 +77,15 @@ public interface TradeSite extends PersistentProperties {
      */
     public OrderStatus executeOrder( SiteOrder order);
 
+    /**
+     * Execute an order on the trade site without blocking the calling thread.
+     *
+     * @param order The order to execute.
+     *
+     * @return The pending new status of the order.
+     */
+    public TradeSiteFuture<OrderStatus> executeOrderAsync( SiteOrder order);
+
     /**
      * Get the accounts of the user on this trading site.
      *
@@ -97,6 +106,31 @@ public interface TradeSite extends PersistentProperties {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException;
 
+    /**
+     * Get the current market depth, but only the best orders on each side of the book.
+     * Implementations should pass the limit to the trade site, if the API supports it,
+     * or at least stop parsing the response after maxLevels orders.
+     *
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of buy and sell orders to return (Depth.ALL_LEVELS for the full depth).
+     *
+     * @return The current market depth with at most maxLevels orders on each side.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException;
+
+    /**
+     * Get the current market depth without blocking the calling thread.
+     * If the depth is not available, get() of the future throws an ExecutionException,
+     * that wraps the TradeDataNotAvailableException.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The pending market depth.
+     */
+    public TradeSiteFuture<Depth> getDepthAsync( CurrencyPair currencyPair);
+
     /**
      * Get the market depths for all supported currency pairs from the trade site.
      *
@@ -117,6 +151,19 @@ public interface TradeSite extends PersistentProperties {
      */
     public List<Depth> getDepths( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException;
 
+    /**
+     * Get the current market depths for a given list of currency pairs, but only the best
+     * orders on each side of the books.
+     *
+     * @param currencyPairs The currency pairs to query.
+     * @param maxLevels The maximum number of buy and sell orders per depth (Depth.ALL_LEVELS for the full depths).
+     *
+     * @return The current market depths for the given currency pairs.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs, int maxLevels) throws TradeDataNotAvailableException;
+
     /**
      * Get the fee for an order in the resulting currency.
      *
@@ -149,6 +196,15 @@ public interface TradeSite extends PersistentProperties {
      */
     public Collection<SiteOrder> getOpenOrders( TradeSiteUserAccount userAccount);
 
+    /**
+     * Get the open orders on this trade site without blocking the calling thread.
+     *
+     * @param userAccount The account of the user on the exchange.
+     *
+     * @return The pending open orders.
+     */
+    public TradeSiteFuture<Collection<SiteOrder>> getOpenOrdersAsync( TradeSiteUserAccount userAccount);
+
     /**
      * Get some info, if proxies are allowed for requests to this trade site.
      *
@@ -174,6 +230,26 @@ public interface TradeSite extends PersistentProperties {
      */
     public Ticker getTicker( CurrencyPair currencyPair) throws TradeDataNotAvailableException;
 
+    /**
+     * Get a current ticker from a trade site without blocking the calling thread.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The pending ticker.
+     */
+    public TradeSiteFuture<Ticker> getTickerAsync( CurrencyPair currencyPair);
+
+    /**
+     * Get the current tickers for a given list of currency pairs.
+     *
+     * @param currencyPairs The currency pairs to query.
+     *
+     * @return The current tickers for the given currency pairs. A ticker is null, if it is not available.
+     *
+     * @throws TradeDataNotAvailableException if the tickers are not available.
+     */
+    public List<Ticker> getTickers( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException;
+
     /**
      * Get a list of trades from the trading site.
      *
@@ -186,6 +262,16 @@ public interface TradeSite extends PersistentProperties {
      */
     public List<Trade> getTrades( long since_micros, CurrencyPair currencyPair) throws TradeDataNotAvailableException;
 
+    /**
+     * Get a list of trades from the trading site without blocking the calling thread.
+     *
+     * @param since_micros The GMT-relative epoch in microseconds.
+     * @param currencyPair The currency pair to use for the trades.
+     *
+     * @return The pending trades.
+     */
+    public TradeSiteFuture<List<Trade>> getTradesAsync( long since_micros, CurrencyPair currencyPair);
+
     /**
      * Get the interval, in which the trade site updates it's depth, ticker etc. 
      * in microseconds.
@@ -208,6 +294,17 @@ public interface TradeSite extends PersistentProperties {
      */
     public int hashCode();
 
+    /**
+     * Check, if the trade site can fetch the data of many currency pairs with a single request,
+     * so the requests for single pairs can be combined (i.e. by the BatchRequestHandler).
+     * Only Depth and Ticker requests can be batched via getDepths and getTickers.
+     *
+     * @param requestType The type of request.
+     *
+     * @return true, if many pairs can be fetched with a single request.
+     */
+    public boolean isBatchRequestSupported( TradeSiteRequestType requestType);
+
     /**
      * Check, if a trade site supports a given feature.
      *
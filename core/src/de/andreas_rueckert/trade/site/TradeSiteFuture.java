@@ -0,0 +1,143 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site;
+
+import de.andreas_rueckert.util.LogUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+
+/**
+ * The pending result of an asynchronous trade site request. Listeners can be added to
+ * compose the results of several requests without waiting for each of them in a thread.
+ *
+ * @param <T> The type of the result of the request.
+ */
+public class TradeSiteFuture<T> extends FutureTask<T> {
+
+    // Instance variables
+
+    /**
+     * The listeners to notify, when the request is complete, or null, if they were already notified.
+     */
+    private List<TradeSiteFutureListener<T>> _listeners = new ArrayList<TradeSiteFutureListener<T>>();
+
+    /**
+     * The trade site, that is queried.
+     */
+    private TradeSite _tradeSite;
+
+
+    // Constructors
+
+    /**
+     * Create a new pending request.
+     *
+     * @param tradeSite The trade site, that is queried.
+     * @param request The request, that computes the result.
+     */
+    public TradeSiteFuture( TradeSite tradeSite, Callable<T> request) {
+
+	super( request);
+
+	_tradeSite = tradeSite;
+    }
+
+
+    // Methods
+
+    /**
+     * Add a listener, that is notified, when the request is complete. If the request is
+     * already complete, the listener is notified immediately in the calling thread.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener( TradeSiteFutureListener<T> listener) {
+
+	synchronized( this) {
+
+	    if( _listeners != null) {  // Not complete yet?
+
+		_listeners.add( listener);
+
+		return;
+	    }
+	}
+
+	notifyListener( listener);
+    }
+
+    /**
+     * Notify the listeners, when the request is complete (or cancelled).
+     */
+    @Override
+    protected void done() {
+
+	List<TradeSiteFutureListener<T>> listeners;
+
+	synchronized( this) {
+
+	    listeners = _listeners;
+
+	    _listeners = null;  // Later listeners are notified immediately.
+	}
+
+	for( TradeSiteFutureListener<T> currentListener : listeners) {
+	    notifyListener( currentListener);
+	}
+    }
+
+    /**
+     * Get the trade site, that is queried.
+     *
+     * @return The trade site, that is queried.
+     */
+    public TradeSite getTradeSite() {
+	return _tradeSite;
+    }
+
+    /**
+     * Notify a listener, so an exception in the listener doesn't stop the notification of the other listeners.
+     *
+     * @param listener The listener to notify.
+     */
+    private void notifyListener( TradeSiteFutureListener<T> listener) {
+
+	try {
+
+	    listener.requestCompleted( this);
+
+	} catch( RuntimeException re) {
+
+	    LogUtils.getInstance().getLogger().error( "TradeSiteFuture: listener failed for request to "
+						      + _tradeSite.getName()
+						      + ": "
+						      + re);
+	}
+    }
+}
@@ -29,19 +29,46 @@ import de.andreas_rueckert.NotYetImplementedException;
 import de.andreas_rueckert.persistence.PersistentProperty;
 import de.andreas_rueckert.persistence.PersistentPropertyList;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.DepthImpl;
 import de.andreas_rueckert.trade.order.DepositOrder;
+import de.andreas_rueckert.trade.order.OrderStatus;
 import de.andreas_rueckert.trade.order.OrderType;
 import de.andreas_rueckert.trade.order.SiteOrder;
 import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
+import de.andreas_rueckert.trade.site.request.BatchRequestHandler;
+import de.andreas_rueckert.trade.site.request.ProxyLease;
+import de.andreas_rueckert.trade.site.request.ProxyRequestHandler;
+import de.andreas_rueckert.trade.site.request.RatedProxy;
+import de.andreas_rueckert.trade.site.request.RequestPolicy;
+import de.andreas_rueckert.trade.site.request.RequestRateLimiter;
 import de.andreas_rueckert.trade.site.request.TradeSiteProxyInfo;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.HttpUtils;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TimeUtils;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -50,6 +77,44 @@ import java.util.List;
  */
 public class TradeSiteImpl {
 
+    // Inner classes
+
+    /**
+     * The ids of the supported currency pairs as a bit set, so a support check is just a bit test.
+     */
+    static class SupportedCurrencyPairIds {
+
+	// Instance variables
+
+	/**
+	 * The ids of the supported currency pairs.
+	 */
+	final BitSet _ids = new BitSet();
+
+	/**
+	 * The array of supported currency pairs, the ids were computed for.
+	 */
+	final CurrencyPair [] _supportedCurrencyPairs;
+
+
+	// Constructors
+
+	/**
+	 * Compute the ids of the supported currency pairs.
+	 *
+	 * @param supportedCurrencyPairs The supported currency pairs.
+	 */
+	SupportedCurrencyPairIds( CurrencyPair [] supportedCurrencyPairs) {
+
+	    _supportedCurrencyPairs = supportedCurrencyPairs;
+
+	    for( CurrencyPair currentPair : supportedCurrencyPairs) {
+		_ids.set( CurrencyPairRegistry.getInstance().getId( currentPair));
+	    }
+	}
+    }
+
+
     // Static variables
 
     /**
@@ -64,6 +129,21 @@ public class TradeSiteImpl {
      * The maximum number of failures, while trying to fetch depths from this trade site.
      */
     private final static int MAX_FAILS_IN_ROW = 5;
+
+    /**
+     * The maximum number of proxies to try for a single depth request.
+     */
+    private final static int MAX_PROXY_ATTEMPTS = 5;
+
+    /**
+     * The number of threads for the asynchronous requests of all trade sites.
+     */
+    private final static int ASYNC_THREADS = 16;
+
+    /**
+     * The executor for the asynchronous requests of all trade sites or null, if it's not created yet.
+     */
+    private static ThreadPoolExecutor _asyncExecutor = null;
     
 
     // Instance variables
@@ -109,6 +189,12 @@ public class TradeSiteImpl {
      */
     protected CurrencyPair [] _supportedCurrencyPairs = null;
 
+    /**
+     * The ids of the supported currency pairs or null, if they are not computed yet.
+     * The ids are computed again, if a module replaces the array of supported currency pairs.
+     */
+    private volatile SupportedCurrencyPairIds _supportedCurrencyPairIds = null;
+
     /**
      * The url of the trading site.
      */
@@ -132,6 +218,56 @@ public class TradeSiteImpl {
 	_listeners.add( listener);
     }
 
+    /**
+     * Execute an order on the trade site without blocking the calling thread.
+     * This default implementation runs executeOrder in the shared executor.
+     *
+     * @param order The order to execute.
+     *
+     * @return The pending new status of the order.
+     */
+    public TradeSiteFuture<OrderStatus> executeOrderAsync( final SiteOrder order) {
+
+	return submitAsync( TradeSiteRequestType.Order, new Callable<OrderStatus>() {
+		public OrderStatus call() {
+		    return getTradeSite().executeOrder( order);
+		}
+	    });
+    }
+
+    /**
+     * Get the shared executor for the asynchronous requests. The number of threads is limited,
+     * so fanning out requests to many trade sites doesn't create a thread per request.
+     * Idle threads are stopped after a while.
+     *
+     * @return The shared executor for the asynchronous requests.
+     */
+    protected static synchronized ExecutorService getAsyncExecutor() {
+
+	if( _asyncExecutor == null) {  // If there is no executor yet, create one.
+
+	    _asyncExecutor = new ThreadPoolExecutor( ASYNC_THREADS
+						     , ASYNC_THREADS
+						     , 60L
+						     , TimeUnit.SECONDS
+						     , new LinkedBlockingQueue<Runnable>()
+						     , new ThreadFactory() {
+							     public Thread newThread( Runnable runnable) {
+
+								 Thread thread = new Thread( runnable, "TradeSite async request");
+
+								 thread.setDaemon( true);  // Don't keep the application alive.
+
+								 return thread;
+							     }
+							 });
+
+	    _asyncExecutor.allowCoreThreadTimeOut( true);
+	}
+
+	return _asyncExecutor;
+    }
+
     /**
      * Get the current market depth (minimal data of the orders).
      * This is just a dummy to compile the code. API implementations overwrite this method.
@@ -147,6 +283,44 @@ public class TradeSiteImpl {
 	throw new NotYetImplementedException( "Getting the depth is not implemented in this base class, but in the actual exchange API implementations");
     }
 
+    /**
+     * Get the current market depth with at most maxLevels orders on each side.
+     * This is just a default implementation, that fetches the full depth and drops
+     * the remaining orders. API implementations should overwrite this method to pass
+     * the limit to the server or at least stop parsing after maxLevels orders.
+     *
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @return The current market depth with at most maxLevels orders on each side.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
+	Depth depth = getDepth( currencyPair);
+
+	return depth == null ? null : DepthImpl.getLimitedDepth( depth, maxLevels);
+    }
+
+    /**
+     * Get the current market depth without blocking the calling thread.
+     * This default implementation runs getDepth in the shared executor, and combines
+     * concurrent requests for several pairs into one request, if the trade site supports it.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The pending market depth.
+     */
+    public TradeSiteFuture<Depth> getDepthAsync( final CurrencyPair currencyPair) {
+
+	return submitAsync( TradeSiteRequestType.Depth, new Callable<Depth>() {
+		public Depth call() {
+		    return BatchRequestHandler.getInstance().getDepth( getTradeSite(), currencyPair, Depth.ALL_LEVELS);
+		}
+	    });
+    }
+
     /**
      * Get the market depths for all supported currency pairs from the trade site.
      *
@@ -184,6 +358,36 @@ public class TradeSiteImpl {
 	    ? getDepthsSequentially( currencyPairs) 
 	    : getDepthsViaProxies( currencyPairs);
     }
+
+    /**
+     * Get the current market depths for a given list of currency pairs with at most maxLevels
+     * orders on each side. This is just a default implementation, that fetches the full depths
+     * and drops the remaining orders. API implementations should overwrite this method to pass
+     * the limit to the server.
+     *
+     * @param currencyPairs The currency pairs to query.
+     * @param maxLevels The maximum number of buy and sell orders per depth (Depth.ALL_LEVELS for the full depths).
+     *
+     * @return The current market depths for the given currency pairs.
+     *
+     * @throws TradeDataNotAvailableException if to many depths are not available.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs, int maxLevels) throws TradeDataNotAvailableException {
+
+	List<Depth> depths = getDepths( currencyPairs);
+
+	if( maxLevels == Depth.ALL_LEVELS) {  // Nothing to limit.
+	    return depths;
+	}
+
+	List<Depth> result = new ArrayList<Depth>( depths.size());
+
+	for( Depth currentDepth : depths) {
+	    result.add( currentDepth == null ? null : DepthImpl.getLimitedDepth( currentDepth, maxLevels));
+	}
+
+	return result;
+    }
        
     /**
      * Get the current market depths (minimal data of the orders) for a given list of currency pairs.
@@ -197,11 +401,6 @@ public class TradeSiteImpl {
      */
     public List<Depth> getDepthsSequentially( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
 
-	// Precalculate the sleeping time.
-	// sleep() works with miliseconds. The method returns microseconds,
-	// so divide by 1000.
-	long sleepInterval = getMinimumRequestInterval() / 1000 + 100;
-	
 	// Create an array for the result.
 	List<Depth> result = new ArrayList<Depth>();
 	int currentIndex = 0;
@@ -211,6 +410,19 @@ public class TradeSiteImpl {
 	    
 	// Just loop over the pairs and request them one after the other.
 	for( CurrencyPair currentPair : currencyPairs) {
+
+	    // Wait until the exchange allows another request. The rate limiter knows
+	    // the limits of the site, so there is no fixed pause between the requests.
+	    try {
+
+		Thread.sleep( RequestRateLimiter.getInstance().getWaitTime( getTradeSite(), TradeSiteRequestType.Depth) / 1000L);
+
+	    } catch( InterruptedException ie) {  // Return if the requests are interrupted.
+
+		return result;  // Return, what we got so far.
+	    }
+
+	    RequestRateLimiter.getInstance().setRequestType( TradeSiteRequestType.Depth);
 	    
 	    try {
 		
@@ -232,18 +444,11 @@ public class TradeSiteImpl {
 							      + _name
 							      + ", so I give up.");
 		}
-	    }
-		
 
-	    // Wait until the exchange allows another request.
-	    try {
-		    
-		Thread.sleep( sleepInterval);
-		    
-	    } catch( InterruptedException ie) {  // Return if the requests are interrupted.
+	    } finally {
 
-		return result;  // Return, what we got so far.
-	    }	    
+		RequestRateLimiter.getInstance().setRequestType( null);
+	    }
 
 	    ++currentIndex;
 	}
@@ -252,23 +457,193 @@ public class TradeSiteImpl {
 	return result;
     }
 
-   /**
+    /**
      * Get the current market depths (minimal data of the orders) for a given list of currency pairs.
-     * This implementation uses proxies, if they are available.
+     * This implementation requests the depths in parallel via the proxies of the ProxyRequestHandler.
      *
      * @param currencyPairs The currency pairs to query.
      *
-     * @return The current market depths for the given currency pairs.
+     * @return The current market depths for the given currency pairs. A depth is null, if it could not be fetched.
      *
-     * @throws TradeDataNotAvailableException if to many depths are not available.
+     * @throws TradeDataNotAvailableException if none of the depths is available.
      */
     public List<Depth> getDepthsViaProxies( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
-	
-	// The actual API must implement this method, since we don't know the URL etc.
-	throw new NotYetImplementedException( "The API client " 
-					      + _name 
-					      + " seems to allow proxy requests, but does not implement getDepthsViaProxies.");
-    }	
+
+	// Create an array for the result.
+	List<Depth> result = new ArrayList<Depth>();
+
+	int failures = 0;
+
+	// The futures are in the order of the pairs, so just wait for them one after the other.
+	for( TradeSiteFuture<Depth> currentFuture : getDepthsViaProxiesAsync( currencyPairs)) {
+
+	    Depth depth = null;
+
+	    // Run the request in this thread, if no worker started it yet. So a caller, that
+	    // runs in the shared executor itself, can't starve the workers.
+	    currentFuture.run();
+
+	    try {
+
+		depth = currentFuture.get();
+
+	    } catch( ExecutionException ee) {  // Fetching this pair did not work, so just set this depth to null.
+
+		LogUtils.getInstance().getLogger().error( "Cannot fetch depth from " + _name + " via proxies: " + ee.getCause());
+
+	    } catch( InterruptedException ie) {  // Return, what we got so far.
+
+		Thread.currentThread().interrupt();
+
+		return result;
+	    }
+
+	    if( depth == null) {
+		++failures;
+	    }
+
+	    result.add( depth);
+	}
+
+	if( ( failures > 0) && ( failures == result.size())) {
+	    throw new TradeDataNotAvailableException( "Cannot fetch any depth from " + _name + " via proxies");
+	}
+
+	return result;  // Return the depths in the order of the pairs.
+    }
+
+    /**
+     * Request the current market depths for a given list of currency pairs in parallel via the
+     * proxies of the ProxyRequestHandler without blocking the calling thread. Each pair is
+     * requested with getDepth, and a failed request is repeated with another proxy.
+     * The requests of each proxy keep the minimum request interval of this trade site.
+     * The requests run in the shared executor, but only as many at once as the proxy
+     * info of this trade site allows.
+     *
+     * @param currencyPairs The currency pairs to query.
+     *
+     * @return The pending depths in the order of the pairs. Each depth is complete as soon as it arrived,
+     *         so listeners of the futures can process the depths in the order of their arrival.
+     */
+    public List<TradeSiteFuture<Depth>> getDepthsViaProxiesAsync( CurrencyPair [] currencyPairs) {
+
+	List<TradeSiteFuture<Depth>> result = new ArrayList<TradeSiteFuture<Depth>>();
+
+	if( currencyPairs.length == 0) {
+	    return result;
+	}
+
+	// Limit the number of concurrent requests to the limit of the proxy info.
+	int threads = getProxyInfo() == null ? 1 : Math.max( 1, getProxyInfo().getMaxNumberOfParallelProxyRequests());
+
+	// The requests, that no worker has taken yet.
+	final Queue<TradeSiteFuture<Depth>> pendingRequests = new ConcurrentLinkedQueue<TradeSiteFuture<Depth>>();
+
+	for( final CurrencyPair currentPair : currencyPairs) {
+
+	    TradeSiteFuture<Depth> future = new TradeSiteFuture<Depth>( getTradeSite(), new Callable<Depth>() {
+		    public Depth call() {
+			return getDepthViaProxy( currentPair);
+		    }
+		});
+
+	    pendingRequests.add( future);
+
+	    result.add( future);
+	}
+
+	// Each worker runs the pending requests one after the other, until none is left.
+	Runnable worker = new Runnable() {
+		public void run() {
+
+		    TradeSiteFuture<Depth> nextRequest;
+
+		    while( ( nextRequest = pendingRequests.poll()) != null) {
+			nextRequest.run();
+		    }
+		}
+	    };
+
+	for( int currentWorker = 0; currentWorker < Math.min( threads, currencyPairs.length); ++currentWorker) {
+	    getAsyncExecutor().execute( worker);
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the current market depth via the proxies of the ProxyRequestHandler.
+     * If a request fails, it is repeated with another proxy.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The current market depth.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available via any proxy.
+     */
+    private Depth getDepthViaProxy( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
+
+	// The proxies, that were already tried for this pair.
+	Set<RatedProxy> triedProxies = new HashSet<RatedProxy>();
+
+	// Most requests work with the first proxy, so lease only a single one first.
+	List<ProxyLease> leases = new ArrayList<ProxyLease>();
+
+	leases.add( ProxyRequestHandler.getInstance().leaseProxy( getTradeSite()));
+
+	int nextLease = 0;  // The index of the first lease, that is not used yet.
+
+	try {
+
+	    for( int batch = 0; batch < 2; ++batch) {
+
+		while( ( nextLease < leases.size()) && ( triedProxies.size() < MAX_PROXY_ATTEMPTS)) {
+
+		    ProxyLease currentLease = leases.get( nextLease++);
+
+		    if( ! triedProxies.add( currentLease.getProxy())) {  // Don't try a failed proxy again.
+
+			currentLease.release();
+
+			continue;
+		    }
+
+		    // Wait until this proxy may send another request to this trade site.
+		    if( ! currentLease.waitForRequestTime()) {
+
+			currentLease.release();
+
+			throw new TradeDataNotAvailableException( "Interrupted while waiting for a proxy for the " + currencyPair + " depth from " + _name);
+		    }
+
+		    Depth depth = requestDepthViaProxy( currentLease.getProxy(), currencyPair);
+
+		    if( depth != null) {
+			return depth;
+		    }
+		}
+
+		if( batch == 0) {
+
+		    // The first proxy failed, so lease different proxies for the remaining attempts at once.
+		    // The failed proxy might be among them, so it doesn't count as an attempt.
+		    leases = ProxyRequestHandler.getInstance().leaseProxies( getTradeSite(), MAX_PROXY_ATTEMPTS);
+
+		    nextLease = 0;
+		}
+	    }
+
+	} finally {
+
+	    // Hand the unused leases back, so the proxies are available for other requests at once.
+	    for( ProxyLease currentLease : leases.subList( nextLease, leases.size())) {
+		currentLease.release();
+	    }
+	}
+
+	throw new TradeDataNotAvailableException( "Cannot fetch the " + currencyPair + " depth from " + _name + " via proxies");
+    }
+
 
     /**
      * Get the fee for deposits as percent.
@@ -368,6 +743,23 @@ public class TradeSiteImpl {
 	return _name;
     }
 
+    /**
+     * Get the open orders on this trade site without blocking the calling thread.
+     * This default implementation runs getOpenOrders in the shared executor.
+     *
+     * @param userAccount The account of the user on the exchange.
+     *
+     * @return The pending open orders.
+     */
+    public TradeSiteFuture<Collection<SiteOrder>> getOpenOrdersAsync( final TradeSiteUserAccount userAccount) {
+
+	return submitAsync( TradeSiteRequestType.Account, new Callable<Collection<SiteOrder>>() {
+		public Collection<SiteOrder> call() {
+		    return getTradeSite().getOpenOrders( userAccount);
+		}
+	    });
+    }
+
     /**
      * Get some info, if proxies are allowed for requests to this trade site.
      * I provide a default implementation here, so API implementations just have
@@ -380,6 +772,15 @@ public class TradeSiteImpl {
 	return _proxyInfo;   // Just return the _proxyInfo variables as the default.
     }
     
+    /**
+     * Get the policy for requests, that exceed the rate limits of this trade site.
+     *
+     * @return The policy for requests, that exceed the rate limits of this trade site.
+     */
+    public RequestPolicy getRequestPolicy() {
+	return RequestRateLimiter.getInstance().getRequestPolicy( getTradeSite());
+    }
+
     /**
      * Get some of the settings of a trading site.
      *
@@ -406,6 +807,82 @@ public class TradeSiteImpl {
 	return _supportedCurrencyPairs;
     }
 
+    /**
+     * Get a current ticker without blocking the calling thread.
+     * This default implementation runs getTicker in the shared executor, and combines
+     * concurrent requests for several pairs into one request, if the trade site supports it.
+     *
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The pending ticker.
+     */
+    public TradeSiteFuture<Ticker> getTickerAsync( final CurrencyPair currencyPair) {
+
+	return submitAsync( TradeSiteRequestType.Ticker, new Callable<Ticker>() {
+		public Ticker call() {
+		    return BatchRequestHandler.getInstance().getTicker( getTradeSite(), currencyPair);
+		}
+	    });
+    }
+
+    /**
+     * Get the current tickers for a given list of currency pairs.
+     * This is just a slow default implementation, that fetches one ticker after the other.
+     * Trade sites with an API method for many tickers should overwrite this method.
+     *
+     * @param currencyPairs The currency pairs to query.
+     *
+     * @return The current tickers for the given currency pairs. A ticker is null, if it is not available.
+     *
+     * @throws TradeDataNotAvailableException if the tickers are not available.
+     */
+    public List<Ticker> getTickers( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
+
+	List<Ticker> result = new ArrayList<Ticker>();
+
+	for( CurrencyPair currentPair : currencyPairs) {
+
+	    try {
+
+		result.add( getTradeSite().getTicker( currentPair));
+
+	    } catch( TradeDataNotAvailableException tdnae) {
+
+		result.add( null);  // Keep the order of the requested pairs.
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Get this object as a trade site. All the API implementations extend this class
+     * and implement the TradeSite interface.
+     *
+     * @return This object as a trade site.
+     */
+    protected final TradeSite getTradeSite() {
+	return (TradeSite)this;
+    }
+
+    /**
+     * Get a list of trades without blocking the calling thread.
+     * This default implementation runs getTrades in the shared executor.
+     *
+     * @param since_micros The GMT-relative epoch in microseconds.
+     * @param currencyPair The currency pair to use for the trades.
+     *
+     * @return The pending trades.
+     */
+    public TradeSiteFuture<List<Trade>> getTradesAsync( final long since_micros, final CurrencyPair currencyPair) {
+
+	return submitAsync( TradeSiteRequestType.Trades, new Callable<List<Trade>>() {
+		public List<Trade> call() {
+		    return getTradeSite().getTrades( since_micros, currencyPair);
+		}
+	    });
+    }
+
     /**
      * Get the URL of the trading site.
      *
@@ -426,6 +903,20 @@ public class TradeSiteImpl {
 	return getName().hashCode();
     }
 
+    /**
+     * Check, if the trade site can fetch the data of many currency pairs with a single request.
+     * This is just a default implementation, that should be overwritten by trade sites, that
+     * implement getDepths or getTickers with a single request.
+     *
+     * @param requestType The type of request.
+     *
+     * @return true, if many pairs can be fetched with a single request.
+     */
+    public boolean isBatchRequestSupported( TradeSiteRequestType requestType) {
+
+	return false;  // Default is, that each pair needs an own request.
+    }
+
     /**
      * Check, if a trade site supports a given feature.
      * This is just a default implementation. Should be overwritten by the
@@ -440,6 +931,21 @@ public class TradeSiteImpl {
 	return false;  // Default is, that no specific features are supported.
     }
 
+    /**
+     * Check, if some request type is allowed at the moment. Most
+     * trade site have limits on the number of request per time interval.
+     * This default implementation asks the RequestRateLimiter, so API implementations
+     * should configure their limits via setRequestRateLimit instead of overwriting it.
+     *
+     * @param requestType The type of request (trades, depth, ticker, order etc).
+     *
+     * @return true, if the given type of request is possible at the moment.
+     */
+    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
+
+	return RequestRateLimiter.getInstance().isRequestAllowed( getTradeSite(), requestType);
+    }
+
     /**
      * Check, if a given currency pair is supported on this site.
      *
@@ -448,14 +954,22 @@ public class TradeSiteImpl {
      * @return true, if the currency pair is supported. False otherwise.
      */
     public boolean isSupportedCurrencyPair( CurrencyPair currencyPair) {
-	if( _supportedCurrencyPairs != null) {
-	    for( int i = 0; i < _supportedCurrencyPairs.length; ++i) {
-		if( currencyPair.equals( _supportedCurrencyPairs[ i])) {  // Is this currency pair in the list of
-		    return true;  // supported currency pairs => return true.
-		}
-	    }
+
+	CurrencyPair [] supportedCurrencyPairs = _supportedCurrencyPairs;
+
+	if( supportedCurrencyPairs == null) {
+	    return false;  // No supported currency pairs yet.
 	}
-	return false;  // Currency pair seems not supported here.
+
+	SupportedCurrencyPairIds supportedIds = _supportedCurrencyPairIds;
+
+	// Compute the ids, if the supported currency pairs were not converted yet or were replaced.
+	if( ( supportedIds == null) || ( supportedIds._supportedCurrencyPairs != supportedCurrencyPairs)) {
+	    _supportedCurrencyPairIds = supportedIds = new SupportedCurrencyPairIds( supportedCurrencyPairs);
+	}
+
+	// Just test the bit of the currency pair id.
+	return supportedIds._ids.get( CurrencyPairRegistry.getInstance().getId( currencyPair));
     }
    
     /**
@@ -469,6 +983,85 @@ public class TradeSiteImpl {
 	_listeners.remove( listener);
     }
  
+    /**
+     * Request the current market depth via a proxy and update the statistics of the proxy.
+     *
+     * @param proxy The proxy to use.
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The current market depth or null, if the request failed.
+     */
+    private Depth requestDepthViaProxy( RatedProxy proxy, CurrencyPair currencyPair) {
+
+	HttpUtils.setRequestProxy( proxy);
+
+	long requestTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	long requestStart = System.nanoTime();
+	Depth depth = null;
+
+	try {
+
+	    depth = getTradeSite().getDepth( currencyPair);
+
+	} catch( TradeDataNotAvailableException tdnae) {
+
+	    // The caller tries another proxy.
+
+	} finally {
+
+	    HttpUtils.setRequestProxy( null);
+
+	    // Update the statistics of the proxy, so the fastest healthy proxies are leased first.
+	    proxy.recordRequest( getTradeSite(), requestTime, ( System.nanoTime() - requestStart) / 1000L, depth != null);
+	}
+
+	return depth;
+    }
+
+    /**
+     * Run a request in the shared executor.
+     *
+     * @param request The request to run.
+     *
+     * @return The pending result of the request.
+     */
+    protected <T> TradeSiteFuture<T> submitAsync( Callable<T> request) {
+
+	TradeSiteFuture<T> result = new TradeSiteFuture<T>( getTradeSite(), request);
+
+	getAsyncExecutor().execute( result);
+
+	return result;
+    }
+
+    /**
+     * Run a request of a known type in the shared executor, so the rate limiter can
+     * count it against the limit of its type.
+     *
+     * @param requestType The type of the request.
+     * @param request The request to run.
+     *
+     * @return The pending result of the request.
+     */
+    protected <T> TradeSiteFuture<T> submitAsync( final TradeSiteRequestType requestType, final Callable<T> request) {
+
+	return submitAsync( new Callable<T>() {
+		public T call() throws Exception {
+
+		    RequestRateLimiter.getInstance().setRequestType( requestType);
+
+		    try {
+
+			return request.call();
+
+		    } finally {
+
+			RequestRateLimiter.getInstance().setRequestType( null);
+		    }
+		}
+	    });
+    }
+
     /**
      * Get the fee for deposits as percent.
      *
@@ -496,6 +1089,30 @@ public class TradeSiteImpl {
 	_feeForWithdrawal = fee;
 	}*/
 
+    /**
+     * Set the policy for requests, that exceed the rate limits of this trade site.
+     * The default is to wait until a request is allowed.
+     *
+     * @param policy The new request policy.
+     */
+    public void setRequestPolicy( RequestPolicy policy) {
+	RequestRateLimiter.getInstance().setRequestPolicy( getTradeSite(), policy);
+    }
+
+    /**
+     * Set a rate limit of this trade site. By default, there is a limit of 1 request per
+     * minimum request interval for all the requests. API implementations can replace
+     * it with the documented limits of the exchange, i.e. in their constructor after
+     * setting the URL.
+     *
+     * @param requestType The type of the limited requests or null for the limit of all the requests.
+     * @param requests The number of requests, that can be sent at once.
+     * @param interval The time in microseconds, until another request is allowed.
+     */
+    protected void setRequestRateLimit( TradeSiteRequestType requestType, int requests, long interval) {
+	RequestRateLimiter.getInstance().setRateLimit( getTradeSite(), requestType, requests, interval);
+    }
+
     /**
      * Set new settings for the trading site client.
      *
@@ -512,4 +1129,14 @@ public class TradeSiteImpl {
 	currentFee = settings.getStringProperty( "Fee for withdrawal");
 	setFeeForWithdrawal( currentFee != null ? new BigDecimal( currentFee) : BigDecimal.ZERO); */
     }
+
+    /**
+     * Set the share of the general rate limit of this trade site, that only orders may use.
+     * So market data polls cannot use up the budget for trading. The default is a quarter.
+     *
+     * @param share The reserved share of the general limit (0.25 is a quarter).
+     */
+    protected void setTradingReserve( double share) {
+	RequestRateLimiter.getInstance().setTradingReserve( getTradeSite(), share);
+    }
 }
@@ -29,4 +29,4 @@ package de.andreas_rueckert.trade.site;
 /**
  * The type of a trade.
  */
-public enum TradeSiteRequestType { Depth, Order, Ticker, Trades }
+public enum TradeSiteRequestType { Account, Depth, Order, Ticker, Trades }
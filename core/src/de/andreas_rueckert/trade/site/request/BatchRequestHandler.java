@@ -0,0 +1,486 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.request;
+
+import de.andreas_rueckert.trade.currency.CurrencyPair;
+import de.andreas_rueckert.trade.Depth;
+import de.andreas_rueckert.trade.DepthImpl;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteRequestType;
+import de.andreas_rueckert.trade.Ticker;
+import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class combines concurrent depth and ticker requests for several currency pairs of
+ * the same trade site into a single request, if the trade site has an API method for many
+ * pairs (see TradeSite.isBatchRequestSupported). A request, that comes in while other requests
+ * of the trade site are pending, opens a batch and waits a short time for more pairs. A request
+ * without any other pending requests is fetched at once. The batch is fetched with a single
+ * getDepths or getTickers call and the results are handed out to all the waiting callers.
+ * Requests for the same pair within a batch share the result, too.
+ *
+ * Requests for trade sites without such an API method are done directly.
+ */
+public class BatchRequestHandler {
+
+    // Inner classes
+
+    /**
+     * A batch of currency pairs, that are fetched with a single request.
+     */
+    class Batch {
+
+	// Instance variables
+
+	/**
+	 * Flag to indicate, that no more pairs can be added to this batch.
+	 */
+	private boolean _closed = false;
+
+	/**
+	 * Flag to indicate, that the results are available.
+	 */
+	private boolean _done = false;
+
+	/**
+	 * The error of the request or null, if it worked.
+	 */
+	private RuntimeException _error = null;
+
+	/**
+	 * The key of this batch in the map of open batches.
+	 */
+	private String _key;
+
+	/**
+	 * The maximum number of depth levels, that a caller wants.
+	 */
+	private int _maxLevels = 0;
+
+	/**
+	 * The currency pairs of this batch.
+	 */
+	private List<CurrencyPair> _pairs = new ArrayList<CurrencyPair>();
+
+	/**
+	 * The type of the request.
+	 */
+	private TradeSiteRequestType _requestType;
+
+	/**
+	 * The results of the request, keyed by currency pair.
+	 */
+	private Map<CurrencyPair, Object> _results = new HashMap<CurrencyPair, Object>();
+
+	/**
+	 * The trade site to query.
+	 */
+	private TradeSite _tradeSite;
+
+
+	// Constructors
+
+	/**
+	 * Create a new open batch.
+	 *
+	 * @param key The key of this batch in the map of open batches.
+	 * @param tradeSite The trade site to query.
+	 * @param requestType The type of the request.
+	 */
+	Batch( String key, TradeSite tradeSite, TradeSiteRequestType requestType) {
+
+	    _key = key;
+	    _tradeSite = tradeSite;
+	    _requestType = requestType;
+	}
+
+
+	// Methods
+
+	/**
+	 * Add a currency pair to this batch.
+	 *
+	 * @param currencyPair The currency pair to add.
+	 * @param maxLevels The maximum number of depth levels, that the caller wants.
+	 *
+	 * @return true, if the pair was added. False, if the batch is closed already.
+	 */
+	synchronized boolean add( CurrencyPair currencyPair, int maxLevels) {
+
+	    if( _closed) {
+		return false;
+	    }
+
+	    if( ! _pairs.contains( currencyPair)) {
+		_pairs.add( currencyPair);
+	    }
+
+	    _maxLevels = Math.max( _maxLevels, maxLevels);
+
+	    if( _pairs.size() >= _maxBatchSize) {  // Don't wait for more pairs, if the batch is full.
+		close();
+	    }
+
+	    return true;
+	}
+
+	/**
+	 * Close this batch, so no more pairs are added.
+	 */
+	synchronized void close() {
+
+	    _closed = true;
+
+	    // Remove the batch in any case, since a batch might be full before it's registered.
+	    _openBatches.remove( _key, this);
+
+	    notifyAll();  // Wake up the thread, that waits for more pairs.
+	}
+
+	/**
+	 * Wait for more pairs, then fetch the data of all the pairs of this batch.
+	 *
+	 * @param waitForPairs true, if the batch should wait for more pairs. False to fetch it at once.
+	 */
+	void execute( boolean waitForPairs) {
+
+	    synchronized( this) {
+
+		long end = System.currentTimeMillis() + ( waitForPairs ? _batchWindow : 0L);
+		long remaining;
+
+		try {
+
+		    while( ! _closed && ( ( remaining = end - System.currentTimeMillis()) > 0L)) {
+			wait( remaining);
+		    }
+
+		} catch( InterruptedException ie) {  // Just fetch the pairs, that we have so far.
+
+		    Thread.currentThread().interrupt();
+		}
+
+		close();
+	    }
+
+	    // The pairs can't change anymore, so they are used without a lock now.
+	    Map<CurrencyPair, Object> results = new HashMap<CurrencyPair, Object>();
+	    RuntimeException error = null;
+
+	    try {
+
+		if( _pairs.size() == 1) {  // There is nothing to combine.
+
+		    CurrencyPair currencyPair = _pairs.get( 0);
+
+		    if( _requestType == TradeSiteRequestType.Depth) {
+			results.put( currencyPair, _maxLevels == Depth.ALL_LEVELS ? _tradeSite.getDepth( currencyPair) : _tradeSite.getDepth( currencyPair, _maxLevels));
+		    } else {
+			results.put( currencyPair, _tradeSite.getTicker( currencyPair));
+		    }
+
+		} else {
+
+		    CurrencyPair [] currencyPairs = _pairs.toArray( new CurrencyPair[ _pairs.size()]);
+
+		    if( _requestType == TradeSiteRequestType.Depth) {
+
+			for( Depth currentDepth : _tradeSite.getDepths( currencyPairs, _maxLevels)) {
+			    if( currentDepth != null) {
+				results.put( currentDepth.getCurrencyPair(), currentDepth);
+			    }
+			}
+
+		    } else {
+
+			for( Ticker currentTicker : _tradeSite.getTickers( currencyPairs)) {
+			    if( currentTicker != null) {
+				results.put( currentTicker.getCurrencyPair(), currentTicker);
+			    }
+			}
+		    }
+		}
+
+	    } catch( RuntimeException re) {
+
+		error = re;
+	    }
+
+	    synchronized( this) {
+
+		_results = results;
+		_error = error;
+		_done = true;
+
+		notifyAll();  // Wake up the callers, that wait for the results.
+	    }
+	}
+
+	/**
+	 * Wait for the result of a currency pair.
+	 *
+	 * @param currencyPair The currency pair.
+	 *
+	 * @return The depth or ticker of the pair.
+	 *
+	 * @throws TradeDataNotAvailableException if the data of the pair are not available.
+	 */
+	synchronized Object getResult( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
+
+	    try {
+
+		while( ! _done) {
+		    wait();
+		}
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();
+
+		throw new TradeDataNotAvailableException( "Interrupted while waiting for the " + _requestType + " of " + currencyPair.getCode());
+	    }
+
+	    if( _error != null) {
+		throw _error;
+	    }
+
+	    Object result = _results.get( currencyPair);
+
+	    if( result == null) {
+		throw new TradeDataNotAvailableException( _tradeSite.getName() + " did not return the " + _requestType + " of " + currencyPair.getCode());
+	    }
+
+	    return result;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The default time in milliseconds, that a batch waits for more pairs.
+     */
+    private final static long DEFAULT_BATCH_WINDOW = 25L;
+
+    /**
+     * The default maximum number of pairs in a batch.
+     */
+    private final static int DEFAULT_MAX_BATCH_SIZE = 32;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static BatchRequestHandler _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The time in milliseconds, that a batch waits for more pairs.
+     */
+    private volatile long _batchWindow = DEFAULT_BATCH_WINDOW;
+
+    /**
+     * The maximum number of pairs in a batch.
+     */
+    private volatile int _maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+    /**
+     * The batches, that still accept pairs, keyed by trade site and request type.
+     */
+    private ConcurrentMap<String, Batch> _openBatches = new ConcurrentHashMap<String, Batch>();
+
+    /**
+     * The number of pending requests, keyed by trade site and request type.
+     */
+    private ConcurrentMap<String, AtomicInteger> _pendingRequests = new ConcurrentHashMap<String, AtomicInteger>();
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private BatchRequestHandler() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the current depth of a currency pair. The request is combined with concurrent
+     * depth requests of the same trade site, if the trade site supports it.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @return The current depth.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( TradeSite tradeSite, CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
+	// Unsupported pairs would spoil the whole batch, so let the trade site reject them directly.
+	if( ! tradeSite.isBatchRequestSupported( TradeSiteRequestType.Depth) || ! tradeSite.isSupportedCurrencyPair( currencyPair)) {
+
+	    return maxLevels == Depth.ALL_LEVELS ? tradeSite.getDepth( currencyPair) : tradeSite.getDepth( currencyPair, maxLevels);
+	}
+
+	Depth depth = (Depth)request( tradeSite, TradeSiteRequestType.Depth, currencyPair, maxLevels);
+
+	// The batch might have fetched more levels for other callers.
+	return maxLevels == Depth.ALL_LEVELS ? depth : DepthImpl.getLimitedDepth( depth, maxLevels);
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized BatchRequestHandler getInstance() {
+
+	if( _instance == null) {                    // If there is no instance yet,
+
+	    _instance = new BatchRequestHandler();  // ..create one.
+	}
+
+	return _instance;  // Return the only instance.
+    }
+
+    /**
+     * Get the current ticker of a currency pair. The request is combined with concurrent
+     * ticker requests of the same trade site, if the trade site supports it.
+     *
+     * @param tradeSite The trade site to query.
+     * @param currencyPair The currency pair to query.
+     *
+     * @return The current ticker.
+     *
+     * @throws TradeDataNotAvailableException if the ticker is not available.
+     */
+    public Ticker getTicker( TradeSite tradeSite, CurrencyPair currencyPair) throws TradeDataNotAvailableException {
+
+	if( ! tradeSite.isBatchRequestSupported( TradeSiteRequestType.Ticker) || ! tradeSite.isSupportedCurrencyPair( currencyPair)) {
+	    return tradeSite.getTicker( currencyPair);
+	}
+
+	return (Ticker)request( tradeSite, TradeSiteRequestType.Ticker, currencyPair, Depth.ALL_LEVELS);
+    }
+
+    /**
+     * Add a currency pair to the open batch of a trade site and wait for the result.
+     * If there is no open batch, this call opens one and fetches it.
+     *
+     * @param tradeSite The trade site to query.
+     * @param requestType The type of the request.
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of depth levels, that the caller wants.
+     *
+     * @return The depth or ticker of the pair.
+     *
+     * @throws TradeDataNotAvailableException if the data of the pair are not available.
+     */
+    private Object request( TradeSite tradeSite, TradeSiteRequestType requestType, CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
+	String key = tradeSite.getName() + ":" + requestType;
+
+	AtomicInteger pendingRequests = _pendingRequests.get( key);
+
+	if( pendingRequests == null) {
+
+	    _pendingRequests.putIfAbsent( key, new AtomicInteger());
+
+	    pendingRequests = _pendingRequests.get( key);
+	}
+
+	int otherPendingRequests = pendingRequests.getAndIncrement();
+
+	try {
+
+	    while( true) {
+
+		Batch batch = _openBatches.get( key);
+
+		if( batch == null) {  // There is no open batch, so try to open one.
+
+		    Batch newBatch = new Batch( key, tradeSite, requestType);
+
+		    newBatch.add( currencyPair, maxLevels);
+
+		    if( _openBatches.putIfAbsent( key, newBatch) == null) {
+
+			// Wait for more pairs only, if other requests are pending. Otherwise
+			// there is nobody to join this batch soon.
+			newBatch.execute( otherPendingRequests > 0);  // This call fetches the batch.
+
+			return newBatch.getResult( currencyPair);
+		    }
+
+		    continue;  // Another thread opened a batch in the meantime.
+		}
+
+		if( batch.add( currencyPair, maxLevels)) {  // Join the open batch.
+
+		    return batch.getResult( currencyPair);
+		}
+
+		// The batch was just closed, so try again.
+	    }
+
+	} finally {
+
+	    pendingRequests.decrementAndGet();
+	}
+    }
+
+    /**
+     * Set the time, that a batch waits for more pairs. A longer window combines more
+     * requests, but delays all the requests of a batchable trade site a bit.
+     *
+     * @param batchWindow The time in milliseconds, that a batch waits for more pairs.
+     */
+    public void setBatchWindow( long batchWindow) {
+	_batchWindow = batchWindow;
+    }
+
+    /**
+     * Set the maximum number of pairs in a batch (i.e. to limit the URL length).
+     *
+     * @param maxBatchSize The maximum number of pairs in a batch.
+     */
+    public void setMaxBatchSize( int maxBatchSize) {
+	_maxBatchSize = maxBatchSize;
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.request;
+
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TimeUtils;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class keeps the liveness of the proxies up to date in the background, so the
+ * requests can trust the active flag of a proxy and don't have to check the proxy first.
+ *
+ * The active proxies are tested often, since they are used for requests. The inactive
+ * proxies are only tested, when their last test is outdated in the proxy registry.
+ */
+public class ProxyHealthProber {
+
+    // Static variables
+
+    /**
+     * The default age in microseconds, after which an active proxy is tested again.
+     */
+    private final static long DEFAULT_ACTIVE_PROBE_AGE = 5L * 60L * 1000000L;
+
+    /**
+     * The default interval in milliseconds between the checks for proxies to test.
+     */
+    private final static long DEFAULT_PROBE_INTERVAL = 60L * 1000L;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static ProxyHealthProber _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The age in microseconds, after which an active proxy is tested again.
+     */
+    private volatile long _activeProbeAge = DEFAULT_ACTIVE_PROBE_AGE;
+
+    /**
+     * The interval in milliseconds between the checks for proxies to test.
+     */
+    private long _probeInterval = DEFAULT_PROBE_INTERVAL;
+
+    /**
+     * The scheduler of the probes or null, if the prober is stopped.
+     */
+    private ScheduledExecutorService _scheduler = null;
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private ProxyHealthProber() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the age, after which an active proxy is tested again.
+     *
+     * @return The age in microseconds.
+     */
+    public long getActiveProbeAge() {
+	return _activeProbeAge;
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized ProxyHealthProber getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet,
+
+	    _instance = new ProxyHealthProber();  // create one.
+	}
+
+	return _instance;
+    }
+
+    /**
+     * Get the interval between the checks for proxies to test.
+     *
+     * @return The interval in milliseconds.
+     */
+    public synchronized long getProbeInterval() {
+	return _probeInterval;
+    }
+
+    /**
+     * Get the proxies, that should be tested now.
+     *
+     * @param proxies The proxies to check.
+     *
+     * @return The active proxies with a test older than the active probe age and
+     *         the inactive proxies with an outdated test.
+     */
+    public List<RatedProxy> getProxiesToProbe( Collection<RatedProxy> proxies) {
+
+	long now = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	long oldestActiveTestTime = now - _activeProbeAge;
+	long oldestInactiveTestTime = now - ProxyRegistry.getInstance().getMaxTestAge();
+
+	List<RatedProxy> result = new ArrayList<RatedProxy>();
+
+	for( RatedProxy currentProxy : proxies) {
+
+	    // Never tested proxies have -1.
+	    if( currentProxy.getLastTestTime() < ( currentProxy.isActive() ? oldestActiveTestTime : oldestInactiveTestTime)) {
+		result.add( currentProxy);
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Check, if the prober is running.
+     *
+     * @return true, if the prober is running.
+     */
+    public synchronized boolean isRunning() {
+	return _scheduler != null;
+    }
+
+    /**
+     * Test the proxies, that are due, once. The results are recorded in the proxies and the registry.
+     *
+     * @return The number of tested proxies.
+     */
+    public int probe() {
+
+	List<RatedProxy> proxiesToProbe = getProxiesToProbe( ProxyRequestHandler.getInstance().getProxyServers());
+
+	if( ! proxiesToProbe.isEmpty()) {
+
+	    int workingProxies = ProxyRegistry.getInstance().test( proxiesToProbe).size();
+
+	    LogUtils.getInstance().getLogger().info( "ProxyHealthProber: " + workingProxies + " of " + proxiesToProbe.size() + " proxies are working");
+	}
+
+	return proxiesToProbe.size();
+    }
+
+    /**
+     * Set the age, after which an active proxy is tested again.
+     *
+     * @param activeProbeAge The age in microseconds.
+     */
+    public void setActiveProbeAge( long activeProbeAge) {
+	_activeProbeAge = activeProbeAge;
+    }
+
+    /**
+     * Set the interval between the checks for proxies to test. A running prober is restarted.
+     *
+     * @param probeInterval The interval in milliseconds.
+     */
+    public synchronized void setProbeInterval( long probeInterval) {
+
+	if( probeInterval <= 0L) {
+	    throw new IllegalArgumentException( "ProxyHealthProber: the probe interval must be positive");
+	}
+
+	_probeInterval = probeInterval;
+
+	if( isRunning()) {
+	    stop();
+	    start();
+	}
+    }
+
+    /**
+     * Start the prober. The first check runs immediately.
+     */
+    public synchronized void start() {
+
+	if( isRunning()) {
+	    return;
+	}
+
+	_scheduler = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+		public Thread newThread( Runnable runnable) {
+
+		    Thread thread = new Thread( runnable, "Proxy health prober");
+
+		    thread.setDaemon( true);  // Don't keep the application alive.
+
+		    return thread;
+		}
+	    });
+
+	// A fixed delay, so a long test run doesn't overlap with the next one.
+	_scheduler.scheduleWithFixedDelay( new Runnable() {
+		public void run() {
+
+		    try {
+
+			probe();
+
+		    } catch( RuntimeException re) {  // Keep the prober running.
+
+			LogUtils.getInstance().getLogger().error( "ProxyHealthProber: probe failed: " + re);
+		    }
+		}
+	    }, 0L, _probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the prober. A running test is interrupted.
+     */
+    public synchronized void stop() {
+
+	if( _scheduler != null) {
+
+	    _scheduler.shutdownNow();
+
+	    _scheduler = null;
+	}
+    }
+}
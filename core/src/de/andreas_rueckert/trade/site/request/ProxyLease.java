@@ -0,0 +1,154 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.request;
+
+import de.andreas_rueckert.util.TimeUtils;
+
+
+/**
+ * A proxy, that was handed out for a request to a trade site, and the time,
+ * when the request may be sent without violating the minimum request interval.
+ */
+public class ProxyLease {
+
+    // Instance variables
+
+    /**
+     * The leased proxy.
+     */
+    private RatedProxy _proxy;
+
+    /**
+     * The proxy list, that handed out this lease, or null, if the lease can't be released (anymore).
+     */
+    private TradeSiteProxyList _proxyList = null;
+
+    /**
+     * The queue entry of the proxy, that reserves the request of this lease.
+     */
+    private TradeSiteProxyList.QueueEntry _queueEntry = null;
+
+    /**
+     * The microsecond timestamp, when the request may be sent.
+     */
+    private long _requestTime;
+
+
+    // Constructors
+
+    /**
+     * Create a new lease of a proxy.
+     *
+     * @param proxy The leased proxy.
+     * @param requestTime The microsecond timestamp, when the request may be sent.
+     */
+    public ProxyLease( RatedProxy proxy, long requestTime) {
+
+	// Store the data in the instance.
+	_proxy = proxy;
+	_requestTime = requestTime;
+    }
+
+    /**
+     * Create a new lease of a proxy, that can be released, if the request is not sent.
+     *
+     * @param proxy The leased proxy.
+     * @param requestTime The microsecond timestamp, when the request may be sent.
+     * @param proxyList The proxy list, that handed out this lease.
+     * @param queueEntry The queue entry of the proxy, that reserves the request of this lease.
+     */
+    ProxyLease( RatedProxy proxy, long requestTime, TradeSiteProxyList proxyList, TradeSiteProxyList.QueueEntry queueEntry) {
+
+	this( proxy, requestTime);
+
+	_proxyList = proxyList;
+	_queueEntry = queueEntry;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the leased proxy.
+     *
+     * @return The leased proxy.
+     */
+    public RatedProxy getProxy() {
+	return _proxy;
+    }
+
+    /**
+     * Get the time, when the request may be sent.
+     *
+     * @return The microsecond timestamp, when the request may be sent.
+     */
+    public long getRequestTime() {
+	return _requestTime;
+    }
+
+    /**
+     * Release this lease without sending the request, so the proxy can be leased again for
+     * the reserved request time. If the proxy was leased again in the meantime, the reserved
+     * request is just dropped. Releasing a lease more than once has no effect.
+     */
+    public synchronized void release() {
+
+	if( _proxyList != null) {
+
+	    _proxyList.release( this, _queueEntry);
+
+	    _proxyList = null;  // Release the lease only once.
+	    _queueEntry = null;
+	}
+    }
+
+    /**
+     * Wait until the request may be sent.
+     *
+     * @return true, if the request may be sent now. False, if the waiting thread was interrupted.
+     */
+    public boolean waitForRequestTime() {
+
+	long delay = _requestTime - TimeUtils.getInstance().getCurrentGMTTimeMicros();
+
+	if( delay > 0L) {
+
+	    try {
+
+		// To make sure, that we don't run into rounding problems, add 1 millisecond.
+		Thread.sleep( delay / 1000 + 1);
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();  // Keep the interrupt flag for the caller.
+
+		return false;
+	    }
+	}
+
+	return true;
+    }
+}
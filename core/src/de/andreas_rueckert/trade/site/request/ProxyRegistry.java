@@ -0,0 +1,450 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.request;
+
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TimeUtils;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * This class keeps the proxies, their test results and their request statistics
+ * on disk, so they survive a restart. The registry is a text file with one proxy
+ * per line and tab separated fields:
+ *
+ * type, IP address, port, active, rating, last test time, last test passed, last test latency,
+ * followed by one field per trade site: site name=requests,failures,success rate,latency,last request time
+ *
+ * The addresses are stored as IP addresses, so loading the registry needs no DNS requests.
+ */
+public class ProxyRegistry {
+
+    // Static variables
+
+    /**
+     * The default age in microseconds, after which a proxy test is outdated.
+     */
+    private final static long DEFAULT_MAX_TEST_AGE = 6L * 60L * 60L * 1000000L;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static ProxyRegistry _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The age in microseconds, after which a proxy test is outdated.
+     */
+    private volatile long _maxTestAge = DEFAULT_MAX_TEST_AGE;
+
+    /**
+     * The file of the registry.
+     */
+    private File _registryFile = new File( System.getProperty( "user.home") + "/.tradeapp/proxies.txt");
+
+    /**
+     * Flag to indicate, if the outdated proxies are retested at the moment.
+     */
+    private AtomicBoolean _retestRunning = new AtomicBoolean( false);
+
+    /**
+     * Flag to indicate, if the registry is saved, when the application exits.
+     */
+    private boolean _saveOnExit = false;
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private ProxyRegistry() {
+    }
+
+
+    // Methods
+
+    /**
+     * Convert a proxy to a line of the registry file.
+     *
+     * @param proxy The proxy.
+     *
+     * @return The line for the registry file.
+     */
+    private String formatProxy( RatedProxy proxy) {
+
+	InetSocketAddress address = (InetSocketAddress)proxy.address();
+
+	StringBuilder line = new StringBuilder();
+
+	line.append( proxy.type()).append( '\t')
+	    .append( address.isUnresolved() ? address.getHostName() : address.getAddress().getHostAddress()).append( '\t')
+	    .append( address.getPort()).append( '\t')
+	    .append( proxy.isActive()).append( '\t')
+	    .append( proxy.getRating()).append( '\t')
+	    .append( proxy.getLastTestTime()).append( '\t')
+	    .append( proxy.isLastTestPassed()).append( '\t')
+	    .append( proxy.getLastTestLatency());
+
+	for( Map.Entry< String, ProxySiteStatistics> currentEntry : proxy.getStatisticsBySiteName().entrySet()) {
+	    line.append( '\t').append( currentEntry.getKey()).append( '=').append( currentEntry.getValue().toPersistentString());
+	}
+
+	return line.toString();
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized ProxyRegistry getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet,
+
+	    _instance = new ProxyRegistry();  // create one.
+	}
+
+	return _instance;
+    }
+
+    /**
+     * Get the age, after which a proxy test is outdated.
+     *
+     * @return The age in microseconds.
+     */
+    public long getMaxTestAge() {
+	return _maxTestAge;
+    }
+
+    /**
+     * Get the file of the registry.
+     *
+     * @return The file of the registry.
+     */
+    public synchronized File getRegistryFile() {
+	return _registryFile;
+    }
+
+    /**
+     * Get the proxies, that were never tested or whose last test is outdated.
+     *
+     * @param proxies The proxies to check.
+     *
+     * @return The proxies, that should be tested.
+     */
+    public List<RatedProxy> getStaleProxies( Collection<RatedProxy> proxies) {
+
+	long oldestTestTime = TimeUtils.getInstance().getCurrentGMTTimeMicros() - _maxTestAge;
+
+	List<RatedProxy> result = new ArrayList<RatedProxy>();
+
+	for( RatedProxy currentProxy : proxies) {
+
+	    if( currentProxy.getLastTestTime() < oldestTestTime) {  // Never tested proxies have -1.
+		result.add( currentProxy);
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Check, if a host string is an IP address, so it can be converted without a DNS request.
+     *
+     * @param host The host string.
+     *
+     * @return true, if the host string is an IPv4 or IPv6 address.
+     */
+    private boolean isIPAddress( String host) {
+
+	return host.contains( ":") || host.matches( "[0-9]{1,3}(\\.[0-9]{1,3}){3}");
+    }
+
+    /**
+     * Load the proxies of the registry file into a proxy handler.
+     *
+     * @param handler The proxy handler, that gets the proxies.
+     *
+     * @return The number of loaded proxies.
+     */
+    public int load( ProxyRequestHandler handler) {
+
+	File registryFile = getRegistryFile();
+
+	installSaveOnExit();
+
+	if( ! registryFile.isFile()) {  // No earlier session.
+	    return 0;
+	}
+
+	int loadedProxies = 0;
+
+	try {
+
+	    BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( registryFile), "UTF-8"));
+
+	    try {
+
+		String currentLine;
+
+		while( ( currentLine = reader.readLine()) != null) {
+
+		    if( currentLine.trim().isEmpty()) {
+			continue;
+		    }
+
+		    try {
+
+			handler.addProxyServer( parseProxy( currentLine));
+
+			++loadedProxies;
+
+		    } catch( IllegalArgumentException iae) {  // Skip invalid lines.
+
+			LogUtils.getInstance().getLogger().warn( "ProxyRegistry: invalid line in " + registryFile + ": " + iae.getMessage());
+		    }
+		}
+
+	    } finally {
+
+		reader.close();
+	    }
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().warn( "ProxyRegistry: cannot read " + registryFile + ": " + ioe);
+	}
+
+	return loadedProxies;
+    }
+
+    /**
+     * Save the registry, when the application exits, so the latest statistics are kept.
+     */
+    private synchronized void installSaveOnExit() {
+
+	if( _saveOnExit) {  // Already installed.
+	    return;
+	}
+
+	_saveOnExit = true;
+
+	Runtime.getRuntime().addShutdownHook( new Thread( "Proxy registry saver") {
+		@Override public void run() {
+		    save();
+		}
+	    });
+    }
+
+    /**
+     * Convert a line of the registry file to a proxy.
+     *
+     * @param line The line of the registry file.
+     *
+     * @return The proxy.
+     *
+     * @throws IllegalArgumentException if the line is not valid.
+     */
+    private RatedProxy parseProxy( String line) {
+
+	String [] fields = line.split( "\t");
+
+	if( fields.length < 8) {
+	    throw new IllegalArgumentException( "missing fields in " + line);
+	}
+
+	try {
+
+	    int port = Integer.parseInt( fields[ 2]);
+
+	    // IP addresses are converted without a DNS request.
+	    InetSocketAddress address = isIPAddress( fields[ 1]) 
+		? new InetSocketAddress( InetAddress.getByName( fields[ 1]), port)
+		: InetSocketAddress.createUnresolved( fields[ 1], port);
+
+	    RatedProxy proxy = new RatedProxy( Proxy.Type.valueOf( fields[ 0]), address);
+
+	    proxy.setActive( Boolean.parseBoolean( fields[ 3]));
+	    proxy.setRating( Integer.parseInt( fields[ 4]));
+
+	    long lastTestTime = Long.parseLong( fields[ 5]);
+
+	    if( lastTestTime != -1L) {  // Don't change the active status of the proxy.
+		proxy.recordTest( lastTestTime, Boolean.parseBoolean( fields[ 6]), Long.parseLong( fields[ 7]));
+		proxy.setActive( Boolean.parseBoolean( fields[ 3]));
+	    }
+
+	    for( int currentIndex = 8; currentIndex < fields.length; ++currentIndex) {
+
+		int separatorIndex = fields[ currentIndex].lastIndexOf( '=');
+
+		if( separatorIndex > 0) {
+		    proxy.restoreStatistics( fields[ currentIndex].substring( 0, separatorIndex), new ProxySiteStatistics( fields[ currentIndex].substring( separatorIndex + 1)));
+		}
+	    }
+
+	    return proxy;
+
+	} catch( IOException ioe) {  // An invalid IP address.
+
+	    throw new IllegalArgumentException( "invalid address " + fields[ 1]);
+	}
+    }
+
+    /**
+     * Retest the proxies, that were never tested or whose last test is outdated, in a background thread.
+     * The registry is saved, once the tests are complete.
+     *
+     * @param proxies The proxies to check.
+     */
+    public void retestStaleProxies( Collection<RatedProxy> proxies) {
+
+	final List<RatedProxy> staleProxies = getStaleProxies( proxies);
+
+	// Start only one retest at a time.
+	if( staleProxies.isEmpty() || ! _retestRunning.compareAndSet( false, true)) {
+	    return;
+	}
+
+	Thread retestThread = new Thread( "Proxy retest") {
+		@Override public void run() {
+		    try {
+			test( staleProxies);
+		    } finally {
+			_retestRunning.set( false);
+		    }
+		}
+	    };
+
+	retestThread.setDaemon( true);  // Don't keep the application alive.
+	retestThread.start();
+    }
+
+    /**
+     * Save all the proxies of the proxy handler to the registry file.
+     */
+    public void save() {
+	save( ProxyRequestHandler.getInstance().getProxyServers());
+    }
+
+    /**
+     * Save a list of proxies to the registry file. The file is written to a temporary
+     * file first, so an interrupted save doesn't destroy the registry.
+     *
+     * @param proxies The proxies to save.
+     */
+    public synchronized void save( Collection<RatedProxy> proxies) {
+
+	File temporaryFile = new File( _registryFile.getPath() + ".tmp");
+
+	try {
+
+	    File directory = _registryFile.getParentFile();
+
+	    if( ( directory != null) && ! directory.isDirectory() && ! directory.mkdirs()) {
+		throw new IOException( "cannot create directory " + directory);
+	    }
+
+	    BufferedWriter writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( temporaryFile), "UTF-8"));
+
+	    try {
+
+		for( RatedProxy currentProxy : proxies) {
+		    writer.write( formatProxy( currentProxy));
+		    writer.newLine();
+		}
+
+	    } finally {
+
+		writer.close();
+	    }
+
+	    if( ! temporaryFile.renameTo( _registryFile) && ( ! _registryFile.delete() || ! temporaryFile.renameTo( _registryFile))) {
+		throw new IOException( "cannot rename " + temporaryFile + " to " + _registryFile);
+	    }
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().warn( "ProxyRegistry: cannot write " + _registryFile + ": " + ioe);
+	}
+    }
+
+    /**
+     * Set the age, after which a proxy test is outdated.
+     *
+     * @param maxTestAge The age in microseconds.
+     */
+    public void setMaxTestAge( long maxTestAge) {
+	_maxTestAge = maxTestAge;
+    }
+
+    /**
+     * Set the file of the registry. This should be done before the proxy handler is created.
+     *
+     * @param registryFile The file of the registry.
+     */
+    public synchronized void setRegistryFile( File registryFile) {
+	_registryFile = registryFile;
+    }
+
+    /**
+     * Test a list of proxies, record the results in the proxies and save the registry.
+     *
+     * @param proxies The proxies to test.
+     *
+     * @return The working proxies.
+     */
+    public Collection<RatedProxy> test( Collection<RatedProxy> proxies) {
+
+	Collection<RatedProxy> result = ProxyTester.getInstance().test( proxies, new ProxyTestListener() {
+		public void proxyTested( RatedProxy proxy, boolean working, long latency) {
+		    proxy.recordTest( TimeUtils.getInstance().getCurrentGMTTimeMicros(), working, latency);
+		}
+	    });
+
+	save();
+
+	return result;
+    }
+}
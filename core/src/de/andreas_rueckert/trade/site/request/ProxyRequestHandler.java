@@ -25,7 +25,6 @@
 
 package de.andreas_rueckert.trade.site.request;
 
-import de.andreas_rueckert.NotYetImplementedException;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.util.LogUtils;
 import de.andreas_rueckert.util.TimeUtils;
@@ -40,9 +39,16 @@ import java.net.Proxy;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 
 /**
@@ -60,19 +66,35 @@ public class ProxyRequestHandler {
      */
     private static ProxyRequestHandler _instance = null;
 
+    /**
+     * The number of threads, that resolve the host names of imported proxies.
+     */
+    private static final int RESOLVER_THREADS = 32;
+
 
     // Instance variables
 
     /**
      * A map to assign a proxy list to each trade site.
      */
-    private Map< TradeSite, TradeSiteProxyList> _tradeSiteProxies = new HashMap< TradeSite, TradeSiteProxyList>();
+    private Map< TradeSite, TradeSiteProxyList> _tradeSiteProxies = new ConcurrentHashMap< TradeSite, TradeSiteProxyList>();
 
     /**
      * A list of available proxy servers.
      */
     private ArrayList<RatedProxy> _proxyServers = new ArrayList<RatedProxy>();
 
+    /**
+     * The available proxy servers, mapped by their socket address.
+     */
+    private Map< InetSocketAddress, RatedProxy> _proxiesByAddress = new ConcurrentHashMap< InetSocketAddress, RatedProxy>();
+
+    /**
+     * The available proxy servers, mapped by their IP address. If there are several
+     * proxies with the same IP address, only the first one is mapped.
+     */
+    private Map< InetAddress, RatedProxy> _proxiesByHost = new ConcurrentHashMap< InetAddress, RatedProxy>();
+
 
     // Constructors
 
@@ -80,6 +102,10 @@ public class ProxyRequestHandler {
      * Private constructor for singleton pattern.
      */
     private ProxyRequestHandler() {
+
+	// Load the proxies of the earlier sessions and keep their liveness up to date in the background.
+	ProxyRegistry.getInstance().load( this);
+	ProxyHealthProber.getInstance().start();
     }
 
 
@@ -90,14 +116,21 @@ public class ProxyRequestHandler {
      *
      * @param newProxyServer The new proxy server to add.
      */
-    public final void addProxyServer( RatedProxy newProxyServer) {
+    public final synchronized void addProxyServer( RatedProxy newProxyServer) {
+
+	InetSocketAddress address = (InetSocketAddress)newProxyServer.address();
 
 	// Check against the complete list of proxies, if this proxy
 	// was not already made available to the handler.
-	if( ! _proxyServers.contains( newProxyServer)) {
+	if( ! _proxiesByAddress.containsKey( address)) {
 
 	    // Add the new server to the list of proxy servers.
 	    _proxyServers.add( newProxyServer);
+	    _proxiesByAddress.put( address, newProxyServer);
+
+	    if( ( address.getAddress() != null) && ! _proxiesByHost.containsKey( address.getAddress())) {
+		_proxiesByHost.put( address.getAddress(), newProxyServer);
+	    }
 
 	    // Make the new proxy server available for all the trade site.
 	    for( TradeSiteProxyList proxyList  : _tradeSiteProxies.values()) {
@@ -107,12 +140,85 @@ public class ProxyRequestHandler {
 	}
     }
 
+    /**
+     * Add a list of new proxy servers, i.e. from an imported proxy list. The host names
+     * of the proxies are resolved in parallel, and proxies with an IP address, that is
+     * already registered, are skipped, since the exchanges sort (and ban) the users by IP address.
+     *
+     * @param newProxyServers The new proxy servers with resolved or unresolved addresses.
+     *
+     * @return The number of added proxy servers.
+     */
+    public int addProxyServers( Collection<RatedProxy> newProxyServers) {
+
+	ExecutorService resolver = Executors.newFixedThreadPool( RESOLVER_THREADS, new ThreadFactory() {
+		public Thread newThread( Runnable runnable) {
+
+		    Thread thread = new Thread( runnable, "Proxy resolver");
+
+		    thread.setDaemon( true);  // Don't keep the application alive.
+
+		    return thread;
+		}
+	    });
+
+	List< Future< RatedProxy>> resolvedProxies = new ArrayList< Future< RatedProxy>>();
+
+	// Resolve all the addresses at once, since most of the time is spent waiting for DNS servers.
+	for( final RatedProxy currentProxy : newProxyServers) {
+
+	    resolvedProxies.add( resolver.submit( new Callable< RatedProxy>() {
+		    public RatedProxy call() {
+			return resolveProxy( currentProxy);
+		    }
+		}));
+	}
+
+	resolver.shutdown();
+
+	int addedProxies = 0;
+
+	for( Future< RatedProxy> currentFuture : resolvedProxies) {
+
+	    try {
+
+		RatedProxy resolvedProxy = currentFuture.get();
+
+		// Skip unresolvable proxies and proxies with an already registered IP address.
+		if( ( resolvedProxy != null) && ( searchProxy( ( (InetSocketAddress)resolvedProxy.address()).getAddress()) == null)) {
+
+		    addProxyServer( resolvedProxy);
+
+		    ++addedProxies;
+		}
+
+	    } catch( ExecutionException ee) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot resolve proxy: " + ee.getCause());
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();
+
+		resolver.shutdownNow();
+
+		break;
+	    }
+	}
+
+	if( addedProxies > 0) {  // Keep the new proxies for the next session.
+	    ProxyRegistry.getInstance().save();
+	}
+
+	return addedProxies;
+    }
+
     /**
      * Add a new trade site to deliver proxies for.
      *
      * @param tradeSite The new trade site add.
      */
-    public final void addTradeSite( TradeSite tradeSite) {
+    public final synchronized void addTradeSite( TradeSite tradeSite) {
 
 	// Create a new proxy list for this trade site.
 	TradeSiteProxyList proxyList = new TradeSiteProxyList( tradeSite);
@@ -133,7 +239,7 @@ public class ProxyRequestHandler {
      *
      * @return The only instance of this class (singleton pattern.
      */
-    public static ProxyRequestHandler getInstance() {
+    public static synchronized ProxyRequestHandler getInstance() {
 
 	if( _instance == null) {   // If there is no instance yet,
 
@@ -157,15 +263,13 @@ public class ProxyRequestHandler {
     }
 
     /**
-     * Get a proxy for a given trade site.
+     * Get the proxy list of a trade site. Trade sites without a list are added quietly.
      *
      * @param tradeSite The trade site, we want to query.
      *
-     * @return A proxy to use for this trade site.
-     *
-     * @throws NoProxyAvailableException if no proxy for this trade site is avaiable.
+     * @return The proxy list of the trade site.
      */
-    public RatedProxy recommendProxy( TradeSite tradeSite) throws NoProxyAvailableException {
+    private TradeSiteProxyList getProxyList( TradeSite tradeSite) {
 
 	// Get the proxy list for this trade site.
 	TradeSiteProxyList proxyList = _tradeSiteProxies.get( tradeSite);
@@ -173,24 +277,73 @@ public class ProxyRequestHandler {
 	// Check if this trade site is already supported.
 	if( proxyList == null) {
 
-	    // Nope => just add the trade site quietly.
-	    addTradeSite( tradeSite);
+	    synchronized( this) {
 
-	    // Now do another attempt to get a proxy list.
-	    proxyList = _tradeSiteProxies.get( tradeSite);
-
-	    // If it still doesn't work, give up.
-	    if( proxyList == null) {
+		// Nope => just add the trade site quietly, unless another thread was faster.
+		if( ! _tradeSiteProxies.containsKey( tradeSite)) {
+		    addTradeSite( tradeSite);
+		}
 
-		throw new NoProxyAvailableException( "There is no proxy list for " 
-						     + tradeSite.getName()
-						     + " in the ProxyRequestHandler and I cannot create one. Giving up!");
+		proxyList = _tradeSiteProxies.get( tradeSite);
 	    }
 	}
 
-	// Get a recommendation from the proxy list. This might also throw an exception, if we
-	// cannot find a proxy, that works.
-	return proxyList.recommendProxy();
+	return proxyList;
+    }
+
+    /**
+     * Get all the registered proxy servers.
+     *
+     * @return A copy of the list of registered proxy servers.
+     */
+    public synchronized List<RatedProxy> getProxyServers() {
+
+	return new ArrayList<RatedProxy>( _proxyServers);
+    }
+
+    /**
+     * Lease a proxy for the next request to a given trade site. The lease reserves the next
+     * allowed request of the proxy, so the caller has to wait until the request time of the lease.
+     *
+     * @param tradeSite The trade site, we want to query.
+     *
+     * @return The lease of the proxy, that could be used first.
+     *
+     * @throws NoProxyAvailableException if no proxy for this trade site is avaiable.
+     */
+    public ProxyLease leaseProxy( TradeSite tradeSite) throws NoProxyAvailableException {
+
+	return getProxyList( tradeSite).leaseProxy();
+    }
+
+    /**
+     * Lease a number of different proxies for the next requests to a given trade site.
+     * If not enough working proxies are available, less leases are returned.
+     *
+     * @param tradeSite The trade site, we want to connect to.
+     * @param numberOfProxies The number of proxies, we need for our requests.
+     *
+     * @return The leases of the proxies, ordered by their request time.
+     */
+    public List<ProxyLease> leaseProxies( TradeSite tradeSite, int numberOfProxies) {
+
+	return getProxyList( tradeSite).leaseProxies( numberOfProxies);
+    }
+
+    /**
+     * Get a proxy for a given trade site.
+     *
+     * @param tradeSite The trade site, we want to query.
+     *
+     * @return A proxy to use for this trade site.
+     *
+     * @throws NoProxyAvailableException if no proxy for this trade site is avaiable.
+     *
+     * @see #leaseProxy(TradeSite)
+     */
+    public RatedProxy recommendProxy( TradeSite tradeSite) throws NoProxyAvailableException {
+
+	return leaseProxy( tradeSite).getProxy();
     }
 
     /**
@@ -201,23 +354,25 @@ public class ProxyRequestHandler {
      * @param numberOfProxies The number of proxies, we need for our requests.
      *
      * @return An array with proxies. The number might be smaller than the requested number of proxies.
-     *         And the requesting code must check the timestamp of the last request and wait eventually
-     *         until the next request is done!
+     *         And the requesting code must wait until the minimum request interval of the trade site
+     *         has passed since the previous request via the proxy! Use leaseProxies to get the request times.
      */
     public RatedProxy [] recommendProxies( TradeSite tradeSite, int numberOfProxies) {
 
-	// Record the returned proxies in the request list, although we don't really know yet,
-	// if they are used actually. But the client might request more proxies even before
-	// they are used, and the handler should return different proxies then.
+	List<ProxyLease> leases = leaseProxies( tradeSite, numberOfProxies);
+
+	RatedProxy [] result = new RatedProxy[ leases.size()];
 
-	// Sort the proxies according to their last requests, so the first proxy is 
-	// the one, that could be used first.
+	for( int currentIndex = 0; currentIndex < result.length; ++currentIndex) {
+	    result[ currentIndex] = leases.get( currentIndex).getProxy();
+	}
 
-	throw new NotYetImplementedException( "Getting a proxy is not yet implemented");
+	return result;
     }
 
     /**
-     * Read a CSV file from checkedproxylists.org.
+     * Read a CSV file from checkedproxylists.org. The file is parsed first, and the host
+     * names of the proxies are resolved in parallel afterwards.
      *
      * @param file The CSV file.
      *
@@ -227,6 +382,9 @@ public class ProxyRequestHandler {
 	
 	String delimiter = ";";
 
+	// The proxies of the file with unresolved addresses.
+	List<RatedProxy> newProxies = new ArrayList<RatedProxy>();
+
 	try {
 	    BufferedReader reader = new BufferedReader( new FileReader( file));
 
@@ -261,27 +419,8 @@ public class ProxyRequestHandler {
 
 		    if( type != null) {  // Only add the proxy, if all required data are available.
 
-			// Check if a proxy with this IP address is already registered.
-			// ToDo: better remove the older (registered) proxy?
-
-			try {
-			    InetAddress currentAddress = InetAddress.getByName( fields[0]);
-
-			    // If a proxy with this IP is not already registered
-			    if( searchProxy( currentAddress) == null) {
-
-				// add it to the list.
-				addProxyServer( new RatedProxy( type, new InetSocketAddress( fields[0], parsedPort)));
-			    }
-
-			} catch( UnknownHostException uhe) {  // Cannot resolve this proxy host?
-
-			    // Since these proxy addresses are very volatile, I do not consider this an actual error.
-			    LogUtils.getInstance().getLogger().info( "Cannot resolve (and therefore add) proxy with address '" 
-								     + fields[0]
-								     + "' : " 
-								     + uhe);
-			}
+			// The address is resolved later, together with the other proxies.
+			newProxies.add( new RatedProxy( type, InetSocketAddress.createUnresolved( fields[0], parsedPort)));
 		    }
 		}
 
@@ -292,8 +431,6 @@ public class ProxyRequestHandler {
 
 	    reader.close();  // Close the CSV file.
 
-	    return true;  // Reading successful!
-
 	} catch( FileNotFoundException fnfe) {
 
 	    LogUtils.getInstance().getLogger().error( "CSV file not found in ProxyRequestHandler: " + fnfe);
@@ -306,6 +443,43 @@ public class ProxyRequestHandler {
 
 	    return false;
 	}
+
+	// Check if a proxy with the same IP address is already registered and add the others.
+	// ToDo: better remove the older (registered) proxy?
+	addProxyServers( newProxies);
+
+	return true;  // Reading successful!
+    }
+
+    /**
+     * Resolve the address of a proxy.
+     *
+     * @param proxy The proxy with a resolved or unresolved address.
+     *
+     * @return The proxy with a resolved address or null, if the address cannot be resolved.
+     */
+    private RatedProxy resolveProxy( RatedProxy proxy) {
+
+	InetSocketAddress address = (InetSocketAddress)proxy.address();
+
+	if( ! address.isUnresolved()) {  // Nothing to do.
+	    return proxy;
+	}
+
+	try {
+
+	    return new RatedProxy( proxy.type(), new InetSocketAddress( InetAddress.getByName( address.getHostName()), address.getPort()));
+
+	} catch( UnknownHostException uhe) {  // Cannot resolve this proxy host?
+
+	    // Since these proxy addresses are very volatile, I do not consider this an actual error.
+	    LogUtils.getInstance().getLogger().info( "Cannot resolve (and therefore add) proxy with address '" 
+						     + address.getHostName()
+						     + "' : " 
+						     + uhe);
+
+	    return null;
+	}
     }
 
     /**
@@ -319,16 +493,8 @@ public class ProxyRequestHandler {
      */
     public RatedProxy searchProxy( InetAddress address) {
 
-	// Just llop over the registered servers and compare the IP address.
-	for( RatedProxy currentProxy : _proxyServers) {
-
-	    if( ( (InetSocketAddress)currentProxy.address()).getAddress().equals( address)) {
-
-		return currentProxy;  // Return the proxy with the matching IP address.
-	    }
-	}
-
-	return null;  // No matching proxy server found.
+	// Just look up the registered servers by IP address.
+	return _proxiesByHost.get( address);
     }
 
     /**
@@ -336,9 +502,11 @@ public class ProxyRequestHandler {
      */
     public void testRegisteredProxies() {
 
-	System.out.println( "Testing " + _proxyServers.size() + " proxy servers");
+	List<RatedProxy> proxies = getProxyServers();
+
+	System.out.println( "Testing " + proxies.size() + " proxy servers");
 
-	Collection result = ProxyTester.getInstance().test( _proxyServers);
+	Collection result = ProxyRegistry.getInstance().test( proxies);
 
 	System.out.println( "Found " + result.size() + " working after test");
     }
@@ -0,0 +1,288 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.request;
+
+import de.andreas_rueckert.util.TimeUtils;
+
+
+/**
+ * The statistics of the requests via one proxy to one trade site.
+ * Latency and success rate are exponentially weighted moving averages,
+ * so they follow changes of the proxy quickly. Without requests, the
+ * success rate slowly recovers, so an unhealthy proxy gets another try.
+ */
+public class ProxySiteStatistics {
+
+    // Static variables
+
+    /**
+     * The weight of a new request in the moving averages.
+     */
+    private final static double EWMA_WEIGHT = 0.2;
+
+    /**
+     * The assumed latency in microseconds of a proxy, that never completed a request.
+     */
+    private final static long FAILED_PROXY_LATENCY = 10L * 1000000L;
+
+    /**
+     * The minimum success rate of a healthy proxy.
+     */
+    private final static double MIN_HEALTHY_SUCCESS_RATE = 0.5;
+
+    /**
+     * The minimum success rate for the cost computation, so the cost of a failing proxy is finite.
+     */
+    private final static double MIN_SUCCESS_RATE = 0.01;
+
+    /**
+     * The time in microseconds without requests, that halves the distance of the success rate to 1.
+     */
+    private final static long SUCCESS_RATE_HALF_LIFE = 60L * 1000000L;
+
+
+    // Instance variables
+
+    /**
+     * The number of failed requests.
+     */
+    private long _failures = 0L;
+
+    /**
+     * The average latency of the successful requests in microseconds or -1, if no request succeeded yet.
+     */
+    private double _latency = -1.0;
+
+    /**
+     * The microsecond timestamp of the last request or -1, if there was no request yet.
+     */
+    private long _lastRequestTime = -1L;
+
+    /**
+     * The number of requests.
+     */
+    private long _requests = 0L;
+
+    /**
+     * The average success rate between 0 and 1.
+     */
+    private double _successRate = 1.0;
+
+    /**
+     * The microsecond timestamp of the last update of the success rate. It's not saved, so
+     * the success rate of restored statistics recovers from the start of the session.
+     */
+    private long _successRateTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+
+
+    // Constructors
+
+    /**
+     * Create new statistics without any requests.
+     */
+    public ProxySiteStatistics() {
+    }
+
+    /**
+     * Restore statistics, that were saved with toPersistentString().
+     *
+     * @param persistentString The saved statistics.
+     *
+     * @throws IllegalArgumentException if the string is not valid.
+     */
+    public ProxySiteStatistics( String persistentString) {
+
+	String [] fields = persistentString.split( ",");
+
+	if( fields.length != 5) {
+	    throw new IllegalArgumentException( "Invalid proxy statistics: " + persistentString);
+	}
+
+	try {
+
+	    _requests = Long.parseLong( fields[ 0]);
+	    _failures = Long.parseLong( fields[ 1]);
+	    _successRate = Double.parseDouble( fields[ 2]);
+	    _latency = Double.parseDouble( fields[ 3]);
+	    _lastRequestTime = Long.parseLong( fields[ 4]);
+
+	} catch( NumberFormatException nfe) {
+
+	    throw new IllegalArgumentException( "Invalid proxy statistics: " + persistentString);
+	}
+    }
+
+
+    // Methods
+
+    /**
+     * Forget the timestamp of the last request.
+     */
+    public synchronized void clearLastRequestTime() {
+	_lastRequestTime = -1L;
+    }
+
+    /**
+     * Get the expected cost of a request via this proxy, which is the expected time in
+     * microseconds until a request succeeds. Proxies without requests have no cost,
+     * so they are tried first.
+     *
+     * @return The expected cost of a request in microseconds.
+     */
+    public synchronized long getExpectedCost() {
+
+	if( _requests == 0L) {
+	    return 0L;
+	}
+
+	double latency = _latency < 0.0 ? FAILED_PROXY_LATENCY : _latency;
+
+	return (long)( latency / Math.max( getSuccessRate(), MIN_SUCCESS_RATE));
+    }
+
+    /**
+     * Get the number of failed requests.
+     *
+     * @return The number of failed requests.
+     */
+    public synchronized long getFailureCount() {
+	return _failures;
+    }
+
+    /**
+     * Get the timestamp of the last request.
+     *
+     * @return The microsecond timestamp of the last request or -1, if there was no request yet.
+     */
+    public synchronized long getLastRequestTime() {
+	return _lastRequestTime;
+    }
+
+    /**
+     * Get the average latency of the successful requests.
+     *
+     * @return The average latency in microseconds or -1, if no request succeeded yet.
+     */
+    public synchronized long getLatency() {
+	return (long)_latency;
+    }
+
+    /**
+     * Get the number of requests.
+     *
+     * @return The number of requests.
+     */
+    public synchronized long getRequestCount() {
+	return _requests;
+    }
+
+    /**
+     * Get the average success rate, including the recovery since the last request.
+     *
+     * @return The average success rate between 0 and 1.
+     */
+    public synchronized double getSuccessRate() {
+
+	long idleTime = TimeUtils.getInstance().getCurrentGMTTimeMicros() - _successRateTime;
+
+	if( idleTime <= 0L) {
+	    return _successRate;
+	}
+
+	// Halve the distance to a perfect success rate after each half life without requests.
+	return 1.0 - ( 1.0 - _successRate) * Math.pow( 0.5, (double)idleTime / SUCCESS_RATE_HALF_LIFE);
+    }
+
+    /**
+     * Check, if the proxy seems to be healthy. A new proxy is healthy, until several requests
+     * in a row failed. An unhealthy proxy becomes healthy again after at most 1 half life of
+     * the success rate without requests, or after a passed test, so it gets a trial request.
+     * Several successes in a row keep it healthy, while another failure makes it unhealthy again.
+     *
+     * @return true, if the proxy seems to be healthy.
+     */
+    public synchronized boolean isHealthy() {
+	return getSuccessRate() >= MIN_HEALTHY_SUCCESS_RATE;
+    }
+
+    /**
+     * Record a request via the proxy.
+     *
+     * @param requestTime The microsecond timestamp, when the request was sent.
+     * @param latency The time in microseconds until the request was complete.
+     * @param success true, if the request succeeded.
+     */
+    public synchronized void recordRequest( long requestTime, long latency, boolean success) {
+
+	++_requests;
+
+	if( requestTime > _lastRequestTime) {
+	    _lastRequestTime = requestTime;
+	}
+
+	// Start from the recovered success rate, so a failed trial request makes the proxy unhealthy again.
+	_successRate = getSuccessRate();
+	_successRate += EWMA_WEIGHT * ( ( success ? 1.0 : 0.0) - _successRate);
+	_successRateTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+
+	if( success) {  // The latency of a failure is mostly a timeout, so it's only part of the success rate.
+
+	    _latency = _latency < 0.0 ? latency : _latency + EWMA_WEIGHT * ( latency - _latency);
+
+	} else {
+
+	    ++_failures;
+	}
+    }
+
+    /**
+     * Make an unhealthy proxy healthy again (i.e. after it passed a test), so it gets a trial request.
+     * A failure of that request makes the proxy unhealthy again.
+     */
+    public synchronized void resetHealth() {
+
+	_successRate = Math.max( getSuccessRate(), MIN_HEALTHY_SUCCESS_RATE);
+	_successRateTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+    }
+
+    /**
+     * Get the statistics as a string, that can be restored with the constructor.
+     *
+     * @return The statistics as a comma separated string.
+     */
+    public synchronized String toPersistentString() {
+	return _requests + "," + _failures + "," + getSuccessRate() + "," + _latency + "," + _lastRequestTime;
+    }
+
+    /**
+     * Get a string representation of the statistics.
+     *
+     * @return The statistics as a string.
+     */
+    public synchronized String toString() {
+	return _requests + " requests, " + _failures + " failures, success rate " + (int)( getSuccessRate() * 100.0) + "%, latency " + ( (long)_latency / 1000L) + "ms";
+    }
+}
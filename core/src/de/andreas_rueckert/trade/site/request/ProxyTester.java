@@ -27,73 +27,199 @@ package de.andreas_rueckert.trade.site.request;
 
 import de.andreas_rueckert.util.LogUtils;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
-import java.net.URL;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.Vector;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 
 /**
  * This class implements methods to test proxy servers.
+ * All the tests of a list run in the calling thread with non-blocking sockets, so
+ * thousands of proxies can be tested with a single thread. The number of concurrent
+ * tests is limited, and each stage of a test (connecting to the proxy, waiting for a
+ * reply of the proxy) has its own timeout.
+ *
+ * HTTP proxies are asked for the test website directly. SOCKS proxies have to speak
+ * SOCKS5 without authentication.
  */
 class ProxyTester {
 
     // Inner classes
 
-     /**
-     * Order monitor thread.
+    /**
+     * The stages of a proxy test.
+     */
+    enum TestStage { CONNECT, SOCKS_GREETING, SOCKS_CONNECT, HTTP_REPLY }
+
+    /**
+     * The requests of a test run, that are sent to the proxies.
      */
-    class ProxyTestThread extends Thread {
+    static class TestRequests {
 
-        // Instance variables
+	// Instance variables
 
 	/**
-	 * The proxy to test.
+	 * The request for the test website without a proxy (behind a SOCKS proxy).
 	 */
-	private RatedProxy _proxy;
+	byte [] _directRequest;
 
+	/**
+	 * The request for the test website via a HTTP proxy.
+	 */
+	byte [] _proxyRequest;
+
+	/**
+	 * The SOCKS5 request to connect to the test website.
+	 */
+	byte [] _socksConnect;
 
-        // Constructors
+
+	// Constructors
 
 	/**
-	 * Create a new thread to test a proxy.
+	 * Create the requests for a test website.
 	 *
-	 * @param proxy The proxy to test.
+	 * @param testWebsite The URL of the test website.
+	 *
+	 * @throws IllegalArgumentException if the URL is not valid.
 	 */
-	ProxyTestThread( RatedProxy proxy) {
+	TestRequests( String testWebsite) {
 
-	    _proxy = proxy;
-	}
+	    try {
+
+		URI testURI = new URI( testWebsite);
 
-	
-        // Methods
+		String host = testURI.getHost();
+		int port = testURI.getPort() == -1 ? 80 : testURI.getPort();
+		String path = ( testURI.getRawPath() == null) || testURI.getRawPath().isEmpty() ? "/" : testURI.getRawPath();
+
+		if( testURI.getRawQuery() != null) {
+		    path += "?" + testURI.getRawQuery();
+		}
 
-        /**
-         * The actual code of the the thread.
-         */
-        @Override public void run() {
+		String headers = " HTTP/1.0\r\nHost: " + host + ( port == 80 ? "" : ":" + port) 
+		    + "\r\nUser-Agent: " + USER_AGENT 
+		    + "\r\nConnection: close\r\n\r\n";
 
-	    if( ProxyTester.this.test( _proxy)) {  // If the proxy passes the test
+		// HTTP proxies get the absolute URL, the test website behind a SOCKS proxy gets the path.
+		_proxyRequest = ( "GET " + testURI.toASCIIString() + headers).getBytes( "ISO-8859-1");
+		_directRequest = ( "GET " + path + headers).getBytes( "ISO-8859-1");
 
-		ProxyTester.this._resultBuffer.add( _proxy);  // add it to the result buffer.
+		// A SOCKS5 connect request with the host name, so the proxy resolves it.
+		byte [] hostBytes = host.getBytes( "ISO-8859-1");
+
+		_socksConnect = new byte[ 7 + hostBytes.length];
+		_socksConnect[ 0] = 5;  // Version.
+		_socksConnect[ 1] = 1;  // Connect.
+		_socksConnect[ 2] = 0;  // Reserved.
+		_socksConnect[ 3] = 3;  // Domain name.
+		_socksConnect[ 4] = (byte)hostBytes.length;
+		System.arraycopy( hostBytes, 0, _socksConnect, 5, hostBytes.length);
+		_socksConnect[ 5 + hostBytes.length] = (byte)( port >> 8);
+		_socksConnect[ 6 + hostBytes.length] = (byte)port;
+
+	    } catch( URISyntaxException use) {
+
+		throw new IllegalArgumentException( "Illegal URL of the proxy test website: " + testWebsite);
+
+	    } catch( UnsupportedEncodingException uee) {  // Should never happen.
+
+		throw new IllegalStateException( "Cannot encode the proxy test request: " + uee);
 	    }
-	    
-	    // Remove this thread from the list of running threads.
-	    ProxyTester.this._runningTestThreads.remove( this);
-	}	
+	}
+    }
+
+    /**
+     * The state of a running proxy test.
+     */
+    class ProxyTest {
+
+	// Instance variables
+
+	/**
+	 * The socket channel to the proxy.
+	 */
+	SocketChannel _channel = null;
+
+	/**
+	 * The time in milliseconds, when the current stage times out.
+	 */
+	long _deadline;
+
+	/**
+	 * The buffer for the reply of the proxy.
+	 */
+	ByteBuffer _input = ByteBuffer.allocate( MAX_REPLY_SIZE);
+
+	/**
+	 * The data to send to the proxy.
+	 */
+	ByteBuffer _output = null;
+
+	/**
+	 * The tested proxy.
+	 */
+	RatedProxy _proxy;
+
+	/**
+	 * The current stage of the test.
+	 */
+	TestStage _stage = TestStage.CONNECT;
+
+	/**
+	 * The nanosecond time, when the test was started.
+	 */
+	long _startTime = System.nanoTime();
+
+
+	// Constructors
+
+	/**
+	 * Create a new test for a proxy.
+	 *
+	 * @param proxy The proxy to test.
+	 */
+	ProxyTest( RatedProxy proxy) {
+
+	    _proxy = proxy;
+	}
     }
 
 
     // Static variables
 
     /**
-     * A maximal number to concurrent proxy test threads.
+     * The default timeout for the connection to the proxy in milliseconds.
+     */
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+
+    /**
+     * The default maximum number of concurrent proxy tests.
      */
-    private static final int MAX_TEST_THREADS = 1200;
+    private static final int DEFAULT_MAX_CONCURRENT_TESTS = 512;
+
+    /**
+     * The default timeout for each reply of the proxy in milliseconds.
+     */
+    private static final int DEFAULT_REPLY_TIMEOUT = 10000;
+
+    /**
+     * The maximum size of the part of the reply, that is read to check the status.
+     */
+    private static final int MAX_REPLY_SIZE = 1024;
 
     /**
      * The URL of a site to connect to, so we can see, if
@@ -101,6 +227,11 @@ class ProxyTester {
      */
     private static String TEST_SITE = "http://blanksite.com/";
 
+    /**
+     * The user agent string of the test requests.
+     */
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows; U; Windows NT 6.0; en-US; rv:1.9.1.2) Gecko/20090729 Firefox/3.5.2 (.NET CLR 3.5.30729)";
+
     /**
      * The only instance of this class (singleton pattern).
      */
@@ -110,14 +241,24 @@ class ProxyTester {
     // Instance variables
 
     /**
-     * Use a vector for the result buffer, since it is synchronized.
+     * The timeout for the connection to a proxy in milliseconds.
      */
-    private Vector< RatedProxy> _resultBuffer = new Vector< RatedProxy>();
+    private volatile int _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
 
     /**
-     * Create a new list to store all the running test threads.
+     * The maximum number of concurrent proxy tests.
      */
-    private Vector <ProxyTestThread> _runningTestThreads = new Vector< ProxyTestThread>();
+    private volatile int _maxConcurrentTests = DEFAULT_MAX_CONCURRENT_TESTS;
+
+    /**
+     * The timeout for each reply of a proxy in milliseconds.
+     */
+    private volatile int _replyTimeout = DEFAULT_REPLY_TIMEOUT;
+
+    /**
+     * The URL of the test website.
+     */
+    private volatile String _testWebsite = TEST_SITE;
 
 
     // Constructors
@@ -125,12 +266,60 @@ class ProxyTester {
     
     // Methods
 
+    /**
+     * Complete a test, close its connection and notify the listener.
+     *
+     * @param test The test to complete.
+     * @param working true, if the proxy passed the test.
+     * @param runningTests The running tests.
+     * @param workingProxies The working proxies.
+     * @param listener The listener for the results or null.
+     */
+    private void finishTest( ProxyTest test, boolean working, Set<ProxyTest> runningTests, List<RatedProxy> workingProxies, ProxyTestListener listener) {
+
+	runningTests.remove( test);
+
+	if( test._channel != null) {
+
+	    try {
+		test._channel.close();  // This also cancels the selection key.
+	    } catch( IOException ioe) {
+		// The test is over anyway.
+	    }
+	}
+
+	if( working) {
+	    workingProxies.add( test._proxy);
+	}
+
+	if( listener != null) {
+
+	    try {
+
+		listener.proxyTested( test._proxy, working, working ? ( System.nanoTime() - test._startTime) / 1000L : -1L);
+
+	    } catch( RuntimeException re) {  // Don't let a listener stop the other tests.
+
+		LogUtils.getInstance().getLogger().error( "Proxy test listener failed: " + re);
+	    }
+	}
+    }
+
+    /**
+     * Get the timeout for the connection to a proxy.
+     *
+     * @return The timeout in milliseconds.
+     */
+    public int getConnectTimeout() {
+	return _connectTimeout;
+    }
+
     /**
      * Get the only instance of this class (singleton pattern).
      *
      * @return The only instance of this class.
      */
-    public static ProxyTester getInstance() {
+    public static synchronized ProxyTester getInstance() {
 
 	if( _instance == null) {  // If there is no instance yet,
 
@@ -140,6 +329,24 @@ class ProxyTester {
 	return _instance;
     }
 
+    /**
+     * Get the maximum number of concurrent proxy tests.
+     *
+     * @return The maximum number of concurrent proxy tests.
+     */
+    public int getMaxConcurrentTests() {
+	return _maxConcurrentTests;
+    }
+
+    /**
+     * Get the timeout for each reply of a proxy.
+     *
+     * @return The timeout in milliseconds.
+     */
+    public int getReplyTimeout() {
+	return _replyTimeout;
+    }
+
     /** 
      * Get the URL of a test website to connect to.
      *
@@ -149,71 +356,332 @@ class ProxyTester {
 
 	// It might be smart to use a website, that is close to the proxy server,
 	// but for now I just use always the same site.
-	return TEST_SITE;
+	return _testWebsite;
     }
-    
+
     /**
-     * Test a list of proxies, if they are working.
+     * Handle the reply of a proxy, that was read so far.
      *
-     * @param proxies The proxies to test.
+     * @param test The test of the proxy.
+     * @param key The selection key of the test.
+     * @param requests The requests of the test run.
      *
-     * @param A collection with the working proxies as a list.
+     * @return TRUE or FALSE, if the test is complete, or null, if more data are needed.
      */
-    public final synchronized Collection<RatedProxy> test( ArrayList<RatedProxy> proxies) {
-	
-	// Set the number of running threads to 0.
-	_runningTestThreads.clear();
-	
-	// Clear the result buffer.
-	_resultBuffer.clear();
+    private Boolean handleReply( ProxyTest test, SelectionKey key, TestRequests requests) {
+
+	ByteBuffer input = test._input;
+	int length = input.position();
+
+	switch( test._stage) {
+
+	case SOCKS_GREETING:
+
+	    if( length < 2) {
+		return null;
+	    }
+
+	    if( ( input.get( 0) != 5) || ( input.get( 1) != 0)) {  // No SOCKS5 proxy without authentication.
+		return Boolean.FALSE;
+	    }
+
+	    startStage( test, key, TestStage.SOCKS_CONNECT, requests._socksConnect);
 
-	// Loop over the proxies to test.
-	for( RatedProxy currentProxy : proxies) {
+	    return null;
 
-	    // While there are already too many test threads running.
-	    while( _runningTestThreads.size() >= MAX_TEST_THREADS) {
+	case SOCKS_CONNECT:
 
-		try {
-		    Thread.sleep( 100);   // Wait for test threads to be finished.
+	    if( length < 5) {
+		return null;
+	    }
+
+	    if( ( input.get( 0) != 5) || ( input.get( 1) != 0)) {  // The proxy refused the connection.
+		return Boolean.FALSE;
+	    }
+
+	    // The length of the reply depends on the type of the bound address.
+	    int addressLength;
+
+	    switch( input.get( 3)) {
+	    case 1:  addressLength = 4; break;
+	    case 3:  addressLength = 1 + ( input.get( 4) & 0xff); break;
+	    case 4:  addressLength = 16; break;
+	    default: return Boolean.FALSE;
+	    }
+
+	    if( length < 4 + addressLength + 2) {
+		return null;
+	    }
+
+	    startStage( test, key, TestStage.HTTP_REPLY, requests._directRequest);
 
-		} catch( InterruptedException ie) {
+	    return null;
 
-		    // No need to do anything here, I guess.
+	case HTTP_REPLY:
+
+	    // Check the status line of the reply.
+	    for( int currentIndex = 0; currentIndex < length; ++currentIndex) {
+
+		if( input.get( currentIndex) == '\n') {
+
+		    String [] statusLine = new String( input.array(), 0, currentIndex).trim().split( " ");
+
+		    return Boolean.valueOf( ( statusLine.length >= 2) && statusLine[ 0].startsWith( "HTTP/") && "200".equals( statusLine[ 1]));
 		}
 	    }
 
-	    // Start another test thread.
-	    ProxyTestThread newTestThread = new ProxyTestThread( currentProxy);
-	    newTestThread.start();
+	    return input.hasRemaining() ? null : Boolean.FALSE;  // A status line should fit into the buffer.
 
-	    // Add this thread to the list of running threads.
-	    _runningTestThreads.add( newTestThread);
-	    
-	    // Wait a bit after every new test thread.
-	    // This is just, so we don't overload the internet...and the exchange... :o)
-	    try {
-		Thread.sleep( 10);  
-		    
-	    } catch( InterruptedException ie) {
-		
-		// No need to do anything here, I guess.
+	default:
+
+	    return Boolean.FALSE;
+	}
+    }
+
+    /**
+     * Set the timeout for the connection to a proxy.
+     *
+     * @param connectTimeout The timeout in milliseconds.
+     */
+    public void setConnectTimeout( int connectTimeout) {
+	_connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Set the maximum number of concurrent proxy tests, which is also the maximum
+     * number of open sockets of a test run.
+     *
+     * @param maxConcurrentTests The maximum number of concurrent proxy tests.
+     */
+    public void setMaxConcurrentTests( int maxConcurrentTests) {
+	_maxConcurrentTests = Math.max( 1, maxConcurrentTests);
+    }
+
+    /**
+     * Set the timeout for each reply of a proxy.
+     *
+     * @param replyTimeout The timeout in milliseconds.
+     */
+    public void setReplyTimeout( int replyTimeout) {
+	_replyTimeout = replyTimeout;
+    }
+
+    /**
+     * Set the URL of the test website, i.e. a StandInExchangeServer for local tests.
+     * Only http URLs are supported.
+     *
+     * @param testWebsite The URL of the test website.
+     */
+    public void setTestWebsite( String testWebsite) {
+	_testWebsite = testWebsite;
+    }
+
+    /**
+     * Start the first request to a connected proxy.
+     *
+     * @param test The test.
+     * @param key The selection key of the test.
+     * @param requests The requests of the test run.
+     */
+    private void startRequest( ProxyTest test, SelectionKey key, TestRequests requests) {
+
+	if( test._proxy.type() == Proxy.Type.SOCKS) {
+
+	    // Offer SOCKS5 without authentication.
+	    startStage( test, key, TestStage.SOCKS_GREETING, new byte [] { 5, 1, 0 });
+
+	} else {  // A HTTP proxy gets the request for the test website.
+
+	    startStage( test, key, TestStage.HTTP_REPLY, requests._proxyRequest);
+	}
+    }
+
+    /**
+     * Start a new stage of a test, that begins with sending some data to the proxy.
+     *
+     * @param test The test.
+     * @param key The selection key of the test.
+     * @param stage The new stage.
+     * @param output The data to send to the proxy.
+     */
+    private void startStage( ProxyTest test, SelectionKey key, TestStage stage, byte [] output) {
+
+	test._stage = stage;
+	test._output = ByteBuffer.wrap( output);
+	test._input.clear();
+	test._deadline = System.currentTimeMillis() + _replyTimeout;
+
+	key.interestOps( SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Start a test with a non-blocking connect to the proxy.
+     *
+     * @param test The test to start.
+     * @param selector The selector for the sockets of the tests.
+     * @param requests The requests of the test run.
+     *
+     * @return true, if the test was started. False, if it failed immediately.
+     */
+    private boolean startTest( ProxyTest test, Selector selector, TestRequests requests) {
+
+	if( ( test._proxy.type() == Proxy.Type.DIRECT) 
+	    || ! ( test._proxy.address() instanceof InetSocketAddress)
+	    || ( (InetSocketAddress)test._proxy.address()).isUnresolved()) {
+
+	    return false;  // Nothing to connect to.
+	}
+
+	try {
+
+	    test._channel = SocketChannel.open();
+	    test._channel.configureBlocking( false);
+	    test._deadline = System.currentTimeMillis() + _connectTimeout;
+
+	    boolean connected = test._channel.connect( test._proxy.address());
+
+	    SelectionKey key = test._channel.register( selector, SelectionKey.OP_CONNECT, test);
+
+	    if( connected) {  // A local proxy might accept the connection immediately.
+		startRequest( test, key, requests);
 	    }
+
+	    return true;
+
+	} catch( IOException ioe) {
+
+	    return false;
+	}
+    }
+
+    /**
+     * Test a list of proxies, if they are working.
+     *
+     * @param proxies The proxies to test.
+     *
+     * @return A collection with the working proxies as a list.
+     */
+    public final Collection<RatedProxy> test( Collection<RatedProxy> proxies) {
+
+	return test( proxies, null);
+    }
+
+    /**
+     * Test a list of proxies, if they are working. The tests run concurrently in the
+     * calling thread, and the listener is notified as soon as each proxy is tested.
+     *
+     * @param proxies The proxies to test.
+     * @param listener The listener for the results or null.
+     *
+     * @return A collection with the working proxies as a list.
+     */
+    public final Collection<RatedProxy> test( Collection<RatedProxy> proxies, ProxyTestListener listener) {
+
+	List<RatedProxy> workingProxies = new ArrayList<RatedProxy>();
+	Set<ProxyTest> runningTests = new HashSet<ProxyTest>();
+
+	TestRequests requests = new TestRequests( getTestWebsite());
+
+	Selector selector;
+
+	try {
+
+	    selector = Selector.open();
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Cannot open a selector for the proxy tests: " + ioe);
+
+	    return workingProxies;
 	}
 
-	// Now finish the last running test threads.
-	while( _runningTestThreads.size() > 0) {
+	Iterator<RatedProxy> pendingProxies = proxies.iterator();
+
+	try {
+
+	    while( pendingProxies.hasNext() || ! runningTests.isEmpty()) {
+
+		// Start new tests, while the limit is not reached.
+		while( pendingProxies.hasNext() && ( runningTests.size() < _maxConcurrentTests)) {
+
+		    ProxyTest newTest = new ProxyTest( pendingProxies.next());
+
+		    runningTests.add( newTest);
+
+		    if( ! startTest( newTest, selector, requests)) {
+			finishTest( newTest, false, runningTests, workingProxies, listener);
+		    }
+		}
+
+		if( runningTests.isEmpty()) {
+		    continue;
+		}
+
+		// Wait for the sockets, but not beyond the next timeout.
+		long nextDeadline = Long.MAX_VALUE;
+
+		for( ProxyTest currentTest : runningTests) {
+		    nextDeadline = Math.min( nextDeadline, currentTest._deadline);
+		}
+
+		selector.select( Math.max( 1L, Math.min( 1000L, nextDeadline - System.currentTimeMillis())));
+
+		for( SelectionKey currentKey : selector.selectedKeys()) {
+
+		    ProxyTest currentTest = (ProxyTest)currentKey.attachment();
+
+		    Boolean result;
+
+		    try {
+
+			result = updateTest( currentTest, currentKey, requests);
+
+		    } catch( IOException ioe) {  // Connection refused, reset etc.
+
+			result = Boolean.FALSE;
+
+		    } catch( java.nio.channels.CancelledKeyException cke) {  // The test was already complete.
+
+			continue;
+		    }
+
+		    if( result != null) {
+			finishTest( currentTest, result.booleanValue(), runningTests, workingProxies, listener);
+		    }
+		}
+
+		selector.selectedKeys().clear();
+
+		// Cancel the tests, that timed out.
+		long currentTime = System.currentTimeMillis();
+
+		for( ProxyTest currentTest : new ArrayList<ProxyTest>( runningTests)) {
+
+		    if( currentTest._deadline <= currentTime) {
+			finishTest( currentTest, false, runningTests, workingProxies, listener);
+		    }
+		}
+	    }
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "Proxy test failed: " + ioe);
+
+	} finally {
+
+	    // Close the connections of the tests, that were interrupted.
+	    for( ProxyTest currentTest : new ArrayList<ProxyTest>( runningTests)) {
+		finishTest( currentTest, false, runningTests, workingProxies, listener);
+	    }
 
-	    // Just wait a bit until more threads have finished. No join necessary?
 	    try {
-		Thread.sleep( 10);  
-		    
-	    } catch( InterruptedException ie) {
-		
-		// No need to do anything here, I guess.
+		selector.close();
+	    } catch( IOException ioe) {
+		// Nothing to do here.
 	    }
 	}
 
-	return _resultBuffer;  // Return the result buffer.
+	return workingProxies;
     }
 
     /**
@@ -226,59 +694,55 @@ class ProxyTester {
      * @return true, if the proxy worked. False otherwise.
      */
     public final boolean test( RatedProxy proxy) {
-	
-	try {
 
-	    // Start with a check, if the proxy address is reachable.
-	    if( ! ( (InetSocketAddress)( proxy.address())).getAddress().isReachable(10000)) {  // Started with 15000, but it's quite slow.
-		
-		return false;  // Cannot connect to proxy.
-	    }
+	return ! test( Collections.singletonList( proxy)).isEmpty();
+    } 
 
-	    /* System.out.println( "Using proxy: " 
-				+ ((InetSocketAddress)proxy.address()).getAddress() 
-				+ " with port " 
-				+ ((InetSocketAddress)proxy.address()).getPort()); */
-
-	    // Create a connection to the test URL, so we can see if the proxy works.
-	    HttpURLConnection connection = (HttpURLConnection)( new URL( getTestWebsite()).openConnection( proxy));	
-       
-	    if( connection != null) {
-		
-		// Set some connection properties, so the connection will most likely go through
-		// and will timeout otherwise in an reasonable amount of time.
-		connection.setFollowRedirects( false);
-		connection.setConnectTimeout( 10 * 1000);
-		connection.setReadTimeout( 10 * 1000);
-		connection.setRequestMethod("GET");
-		connection.setRequestProperty("User-Agent","Mozilla/5.0 (Windows; U; Windows NT 6.0; en-US; rv:1.9.1.2) Gecko/20090729 Firefox/3.5.2 (.NET CLR 3.5.30729)");
-
-		// Try to connect to the test website.
-		connection.connect();
-
-		// Check, if we are actually using a proxy, or the handler ignored the proxy argument.
-		if( ! connection.usingProxy()) {
-
-		    connection.disconnect();  // Terminate the connection.
-
-		    return false;  // Proxy usage failed.
-		}
+    /**
+     * Continue a test, once its socket is ready.
+     *
+     * @param test The test.
+     * @param key The selection key of the test.
+     * @param requests The requests of the test run.
+     *
+     * @return TRUE or FALSE, if the test is complete, or null, if it's still running.
+     *
+     * @throws IOException if the connection failed.
+     */
+    private Boolean updateTest( ProxyTest test, SelectionKey key, TestRequests requests) throws IOException {
+
+	if( key.isConnectable()) {
+
+	    test._channel.finishConnect();  // Throws an exception, if the connection was refused.
 
-		// Get the response code from the code.
-		int responseCode = connection.getResponseCode();
-	    
-		// Disconnect from the test website.
-		connection.disconnect();
-		
-		// If the response worked, return true. False otherwise.
-		return ( responseCode == HttpURLConnection.HTTP_OK);
+	    startRequest( test, key, requests);
+
+	    return null;
+	}
+
+	if( key.isWritable()) {
+
+	    test._channel.write( test._output);
+
+	    if( ! test._output.hasRemaining()) {  // Wait for the reply, once the request is sent.
+		key.interestOps( SelectionKey.OP_READ);
 	    }
-	    
-	    return false;  // No connection => proy server doesn't seem to work.
 
-	} catch( IOException ioe) {
+	    return null;
+	}
+
+	if( key.isReadable()) {
+
+	    if( test._channel.read( test._input) < 0) {  // The proxy closed the connection.
 
-	    return false;  // Ignore the details of the error. Just return false.
+		Boolean result = handleReply( test, key, requests);
+
+		return result == null ? Boolean.FALSE : result;
+	    }
+
+	    return handleReply( test, key, requests);
 	}
-    } 
-}
\ No newline at end of file
+
+	return null;
+    }
+}
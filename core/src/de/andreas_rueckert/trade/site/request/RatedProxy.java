@@ -33,6 +33,7 @@ import java.net.Proxy;
 import java.net.UnknownHostException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -59,12 +60,22 @@ public class RatedProxy extends Proxy {
      * Flag to indicate, if this proxy is active at the moment. Proxies might disappear after
      * a while, but might get active at some point again.
      */
-    private boolean _active = true;
+    private volatile boolean _active = true;
 
     /**
-     * The timestamp of the last request of this proxy to a given trade site. -1 if we had no request with this proxy yet.
+     * The latency of the last successful test in microseconds or -1.
      */
-    private Map< TradeSite, Long> _lastRequests = new HashMap< TradeSite, Long>();
+    private volatile long _lastTestLatency = -1L;
+
+    /**
+     * Flag to indicate, if the last test of this proxy was successful.
+     */
+    private volatile boolean _lastTestPassed = false;
+
+    /**
+     * The microsecond timestamp of the last test of this proxy or -1, if it was never tested.
+     */
+    private volatile long _lastTestTime = -1L;
 
     /**
      * The rating for this proxy server (0 = neutral, > 0 positive).
@@ -72,6 +83,17 @@ public class RatedProxy extends Proxy {
      */
     private int _rating = 0;
 
+    /**
+     * The request statistics of this proxy, mapped by trade site.
+     */
+    private ConcurrentHashMap< TradeSite, ProxySiteStatistics> _statistics = new ConcurrentHashMap< TradeSite, ProxySiteStatistics>();
+
+    /**
+     * The statistics, that were loaded from the proxy registry, mapped by the name of the trade site.
+     * They are used, once the trade site is queried via this proxy.
+     */
+    private ConcurrentHashMap< String, ProxySiteStatistics> _savedStatistics = new ConcurrentHashMap< String, ProxySiteStatistics>();
+
 
     // Constructors
 
@@ -127,7 +149,31 @@ public class RatedProxy extends Proxy {
      */
     public Long getLastRequestTimestamp( TradeSite tradeSite) {
 
-	return _lastRequests.get( tradeSite);
+	ProxySiteStatistics statistics = _statistics.get( tradeSite);
+
+	if( ( statistics == null) || ( statistics.getLastRequestTime() == -1L)) {
+	    return null;
+	}
+
+	return statistics.getLastRequestTime();
+    }
+
+    /**
+     * Get the latency of the last successful test.
+     *
+     * @return The latency in microseconds or -1, if the last test failed.
+     */
+    public long getLastTestLatency() {
+	return _lastTestLatency;
+    }
+
+    /**
+     * Get the time of the last test.
+     *
+     * @return The microsecond timestamp of the last test or -1, if this proxy was never tested.
+     */
+    public long getLastTestTime() {
+	return _lastTestTime;
     }
 
     /**
@@ -135,11 +181,57 @@ public class RatedProxy extends Proxy {
      *
      * @return The rating of this proxy server.
      */
-    public int getRating() {
+    public synchronized int getRating() {
 
 	return _rating;
     }
 
+    /**
+     * Get the request statistics of this proxy for a given trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The request statistics for the trade site.
+     */
+    public ProxySiteStatistics getStatistics( TradeSite tradeSite) {
+
+	ProxySiteStatistics statistics = _statistics.get( tradeSite);
+
+	if( statistics == null) {  // No request to this trade site yet.
+
+	    // Continue the statistics of an earlier session, if there are any.
+	    ProxySiteStatistics newStatistics = _savedStatistics.remove( tradeSite.getName());
+
+	    if( newStatistics == null) {
+		newStatistics = new ProxySiteStatistics();
+	    }
+
+	    statistics = _statistics.putIfAbsent( tradeSite, newStatistics);
+
+	    if( statistics == null) {  // No other thread was faster.
+		statistics = newStatistics;
+	    }
+	}
+
+	return statistics;
+    }
+
+    /**
+     * Get the statistics of all the trade sites, mapped by the name of the trade site.
+     *
+     * @return The statistics of all the trade sites.
+     */
+    public Map< String, ProxySiteStatistics> getStatisticsBySiteName() {
+
+	Map< String, ProxySiteStatistics> result = new HashMap< String, ProxySiteStatistics>( _savedStatistics);
+
+	for( Map.Entry< TradeSite, ProxySiteStatistics> currentEntry : _statistics.entrySet()) {
+	    result.put( currentEntry.getKey().getName(), currentEntry.getValue());
+	}
+
+	return result;
+    }
+
     /**
      * Check, if this proxy is active at the moment.
      *
@@ -150,10 +242,19 @@ public class RatedProxy extends Proxy {
 	return _active;
     }
 
+    /**
+     * Check, if the last test of this proxy was successful.
+     *
+     * @return true, if the last test was successful.
+     */
+    public boolean isLastTestPassed() {
+	return _lastTestPassed;
+    }
+
     /**
      * Give this proxy a worse rating.
      */
-    public final void rateDown() {
+    public final synchronized void rateDown() {
 
 	if( --_rating < -10) {  // -10 should be the worst rating possible.
 
@@ -164,7 +265,7 @@ public class RatedProxy extends Proxy {
     /**
      * Give this proxy a better rating.
      */
-    public final void rateUp() {
+    public final synchronized void rateUp() {
 
 	if( ++_rating > 10) {  // 10 should be the best possible rating.
 
@@ -172,6 +273,50 @@ public class RatedProxy extends Proxy {
 	}
     }
 
+    /**
+     * Record a request via this proxy to a trade site and rate the proxy accordingly.
+     *
+     * @param tradeSite The trade site of the request.
+     * @param requestTime The microsecond timestamp, when the request was sent.
+     * @param latency The time in microseconds until the request was complete.
+     * @param success true, if the request succeeded.
+     */
+    public void recordRequest( TradeSite tradeSite, long requestTime, long latency, boolean success) {
+
+	getStatistics( tradeSite).recordRequest( requestTime, latency, success);
+
+	if( success) {
+	    rateUp();
+	} else {
+	    rateDown();
+	}
+    }
+
+    /**
+     * Record the result of a test of this proxy. The proxy is activated or deactivated
+     * according to the result. A passed test makes the proxy healthy again for all the
+     * trade sites, so each trade site gives it a trial request.
+     *
+     * @param testTime The microsecond timestamp of the test.
+     * @param passed true, if the proxy passed the test.
+     * @param latency The latency of the test in microseconds or -1, if the test failed.
+     */
+    public void recordTest( long testTime, boolean passed, long latency) {
+
+	_lastTestTime = testTime;
+	_lastTestPassed = passed;
+	_lastTestLatency = passed ? latency : -1L;
+
+	if( passed) {
+
+	    for( ProxySiteStatistics currentStatistics : _statistics.values()) {
+		currentStatistics.resetHealth();
+	    }
+	}
+
+	setActive( passed);
+    }
+
     /**
      * Remove the last request timestamp for a given tradesite.
      *
@@ -179,7 +324,21 @@ public class RatedProxy extends Proxy {
      */
     public void removeLastRequestTimestamp( TradeSite tradeSite) {
 
-	_lastRequests.remove( tradeSite);
+	ProxySiteStatistics statistics = _statistics.get( tradeSite);
+
+	if( statistics != null) {
+	    statistics.clearLastRequestTime();
+	}
+    }
+
+    /**
+     * Restore the statistics of a trade site from an earlier session.
+     *
+     * @param siteName The name of the trade site.
+     * @param statistics The statistics of the trade site.
+     */
+    public void restoreStatistics( String siteName, ProxySiteStatistics statistics) {
+	_savedStatistics.put( siteName, statistics);
     }
 
     /**
@@ -197,7 +356,7 @@ public class RatedProxy extends Proxy {
      *
      * @param rating The new rating for this server.
      */
-    public void setRating( int rating) {
+    public synchronized void setRating( int rating) {
 
 	_rating = rating;
     }
@@ -0,0 +1,743 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.request;
+
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteRequestType;
+import de.andreas_rueckert.util.LatencyHistogram;
+import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.TokenBucket;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class limits the request rate of the trade sites, so the app doesn't get banned.
+ *
+ * Each trade site has a token bucket for all of its requests, that allows 1 request per minimum request
+ * interval by default. The API implementations can configure other limits and own limits per request
+ * type. HttpUtils asks the limiter before each direct request to the host of a trade site. The request
+ * type is set per thread by the callers, that know it. POST requests count as account queries, if no type
+ * is set, since orders and cancels set their type.
+ *
+ * If the budget of a trade site is used up, the request policy of the site decides, if the request
+ * waits for a token (WAIT), fails (BLOCK) or is sent via a proxy, that has its own IP (PROXY).
+ *
+ * Waiting requests are queued by priority class: orders first, then account queries, then market data
+ * polls. A share of the general bucket is reserved for orders, so polls cannot use up the budget,
+ * and polls are shed, if too many of them are waiting already.
+ */
+public class RequestRateLimiter {
+
+    // Inner classes
+
+    /**
+     * The limits of a trade site.
+     */
+    static class SiteLimits {
+
+	// Instance variables
+
+	/**
+	 * The maximum number of market data polls, that wait for a token. Further polls are shed.
+	 */
+	private volatile int _maxQueuedPolls = 16;
+
+	/**
+	 * The policy for requests, that exceed the limits.
+	 */
+	private volatile RequestPolicy _policy = RequestPolicy.WAIT;
+
+	/**
+	 * The waiting requests, mapped by priority class. Guarded by this.
+	 */
+	private Map< RequestPriority, LinkedList< Object>> _queues = new EnumMap< RequestPriority, LinkedList< Object>>( RequestPriority.class);
+
+	/**
+	 * The times, that the requests waited for a token, mapped by priority class.
+	 */
+	private Map< RequestPriority, LatencyHistogram> _queueWaits = new EnumMap< RequestPriority, LatencyHistogram>( RequestPriority.class);
+
+	/**
+	 * The number of requests, that were shed, mapped by priority class.
+	 */
+	private Map< RequestPriority, AtomicLong> _shedRequests = new EnumMap< RequestPriority, AtomicLong>( RequestPriority.class);
+
+	/**
+	 * The bucket for all the requests of the trade site or null, if the site has no general limit.
+	 */
+	private volatile TokenBucket _siteBucket;
+
+	/**
+	 * The trade site.
+	 */
+	private TradeSite _tradeSite;
+
+	/**
+	 * The share of the site bucket, that only trading requests may take (0.25 is a quarter).
+	 */
+	private volatile double _tradingReserve = DEFAULT_TRADING_RESERVE;
+
+	/**
+	 * The buckets for single request types, mapped by request type.
+	 */
+	private Map< TradeSiteRequestType, TokenBucket> _typeBuckets = new ConcurrentHashMap< TradeSiteRequestType, TokenBucket>();
+
+
+	// Constructors
+
+	/**
+	 * Create the default limits for a trade site.
+	 *
+	 * @param tradeSite The trade site.
+	 * @param siteBucket The bucket for all the requests of the trade site or null for no general limit.
+	 */
+	SiteLimits( TradeSite tradeSite, TokenBucket siteBucket) {
+
+	    _tradeSite = tradeSite;
+	    _siteBucket = siteBucket;
+
+	    for( RequestPriority currentPriority : RequestPriority.values()) {
+
+		_queues.put( currentPriority, new LinkedList< Object>());
+		_queueWaits.put( currentPriority, new LatencyHistogram());
+		_shedRequests.put( currentPriority, new AtomicLong());
+	    }
+	}
+
+
+	// Methods
+
+	/**
+	 * Wait in the queue of a priority class, until the request gets its tokens. A request
+	 * only gets tokens, if no request of the same or a higher class waits before it.
+	 *
+	 * @param requestType The type of the request or null, if it's unknown.
+	 * @param priority The priority class of the request.
+	 * @param deadline The time in milliseconds, when the request has to be complete, or 0 for no deadline.
+	 *
+	 * @throws RequestLimitExceededException if the request is shed, would wait beyond its deadline or is interrupted.
+	 */
+	final synchronized void await( TradeSiteRequestType requestType, RequestPriority priority, long deadline) {
+
+	    LinkedList< Object> queue = _queues.get( priority);
+
+	    if( ( priority == RequestPriority.MARKET_DATA) && ( queue.size() >= _maxQueuedPolls)) {
+
+		_shedRequests.get( priority).incrementAndGet();
+
+		throw new RequestLimitExceededException( _tradeSite.getName() + " " + ( requestType == null ? "request" : requestType) + " was shed, because too many polls are waiting");
+	    }
+
+	    Object waiter = new Object();
+	    long queuedAt = System.nanoTime();
+
+	    queue.addLast( waiter);
+
+	    try {
+
+		while( true) {
+
+		    long waitTime = 0L;  // Wait until a request before this one is done.
+
+		    if( isFirstInQueue( waiter, priority)) {
+
+			if( take( requestType, priority)) {
+
+			    _queueWaits.get( priority).record( System.nanoTime() - queuedAt);
+
+			    return;
+			}
+
+			waitTime = Math.max( 1000000L, getWaitTime( requestType, priority));
+		    }
+
+		    if( deadline != 0L) {
+
+			long remainingTime = deadline - System.currentTimeMillis();
+
+			if( ( remainingTime <= 0L) || ( waitTime / 1000000L >= remainingTime)) {
+
+			    throw new RequestLimitExceededException( _tradeSite.getName() + " " + ( requestType == null ? "request" : requestType) + " would wait beyond its deadline");
+			}
+
+			if( waitTime == 0L) {
+			    waitTime = remainingTime * 1000000L;
+			}
+		    }
+
+		    wait( ( waitTime + 999999L) / 1000000L);  // 0 waits until another request is done.
+		}
+
+	    } catch( InterruptedException ie) {
+
+		Thread.currentThread().interrupt();  // Keep the interrupt flag for the caller.
+
+		throw new RequestLimitExceededException( _tradeSite.getName() + " request was interrupted while waiting");
+
+	    } finally {
+
+		queue.remove( waiter);
+
+		notifyAll();  // The next request might be first in its queue now.
+	    }
+	}
+
+	/**
+	 * Get the number of tokens in the site bucket, that a request must not take. If the reserve is
+	 * only a fraction of a token (i.e. for a bucket with a single token), other requests have to wait
+	 * this fraction of the refill interval longer than orders, so they only get a share of the rate.
+	 *
+	 * @param siteBucket The bucket for all the requests of the trade site.
+	 * @param priority The priority class of the request.
+	 *
+	 * @return The number of tokens, that have to stay in the site bucket for trading requests.
+	 */
+	private double getReservedTokens( TokenBucket siteBucket, RequestPriority priority) {
+
+	    if( priority == RequestPriority.TRADING) {
+		return 0.0d;
+	    }
+
+	    return _tradingReserve * siteBucket.getCapacity();
+	}
+
+	/**
+	 * Get the time until a request of a type has enough tokens.
+	 *
+	 * @param requestType The type of the request or null, if it's unknown.
+	 * @param priority The priority class of the request.
+	 *
+	 * @return The time in nanoseconds until the request is allowed. 0, if it's allowed now.
+	 */
+	final long getWaitTime( TradeSiteRequestType requestType, RequestPriority priority) {
+
+	    TokenBucket siteBucket = _siteBucket;
+	    TokenBucket typeBucket = requestType == null ? null : _typeBuckets.get( requestType);
+
+	    return Math.max( siteBucket == null ? 0L : siteBucket.getWaitTime( getReservedTokens( siteBucket, priority))
+			     , typeBucket == null ? 0L : typeBucket.getWaitTime());
+	}
+
+	/**
+	 * Check, if a request is the first waiting request of its class and no request of a higher class waits.
+	 *
+	 * @param waiter The waiting request.
+	 * @param priority The priority class of the request.
+	 *
+	 * @return true, if the request is the next one to get tokens.
+	 */
+	private boolean isFirstInQueue( Object waiter, RequestPriority priority) {
+
+	    for( RequestPriority currentPriority : RequestPriority.values()) {
+
+		if( currentPriority == priority) {
+		    return _queues.get( priority).getFirst() == waiter;
+		}
+
+		if( ! _queues.get( currentPriority).isEmpty()) {  // A more important request waits.
+		    return false;
+		}
+	    }
+
+	    return false;
+	}
+
+	/**
+	 * Take the tokens for a request, if they are available now.
+	 *
+	 * @param requestType The type of the request or null, if it's unknown.
+	 * @param priority The priority class of the request.
+	 *
+	 * @return true, if the tokens were taken.
+	 */
+	private boolean take( TradeSiteRequestType requestType, RequestPriority priority) {
+
+	    TokenBucket siteBucket = _siteBucket;
+	    TokenBucket typeBucket = requestType == null ? null : _typeBuckets.get( requestType);
+
+	    double reservedTokens = siteBucket == null ? 0.0d : getReservedTokens( siteBucket, priority);
+
+	    if( ( siteBucket != null) && ! siteBucket.tryAcquire( reservedTokens)) {
+		return false;
+	    }
+
+	    if( ( typeBucket != null) && ! typeBucket.tryAcquire()) {
+
+		if( siteBucket != null) {
+		    siteBucket.release();  // The request is not sent yet.
+		}
+
+		return false;
+	    }
+
+	    return true;
+	}
+
+	/**
+	 * Take the tokens for a request, if they are available now and no request of
+	 * the same or a higher class waits.
+	 *
+	 * @param requestType The type of the request or null, if it's unknown.
+	 * @param priority The priority class of the request.
+	 *
+	 * @return true, if the tokens were taken.
+	 */
+	final synchronized boolean tryAcquire( TradeSiteRequestType requestType, RequestPriority priority) {
+
+	    for( RequestPriority currentPriority : RequestPriority.values()) {
+
+		if( currentPriority.compareTo( priority) > 0) {
+		    break;
+		}
+
+		if( ! _queues.get( currentPriority).isEmpty()) {  // Don't overtake a waiting request.
+		    return false;
+		}
+	    }
+
+	    if( take( requestType, priority)) {
+
+		_queueWaits.get( priority).record( 0L);
+
+		return true;
+	    }
+
+	    return false;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The default share of the general bucket of a trade site, that only trading requests may take.
+     */
+    private final static double DEFAULT_TRADING_RESERVE = 0.25d;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static RequestRateLimiter _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The limits of the trade sites, mapped by the host of the trade site.
+     */
+    private Map< String, SiteLimits> _limitsByHost = new ConcurrentHashMap< String, SiteLimits>();
+
+    /**
+     * The type of the requests of the current thread.
+     */
+    private ThreadLocal< TradeSiteRequestType> _requestType = new ThreadLocal< TradeSiteRequestType>();
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private RequestRateLimiter() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the permission for a direct request to a host. If the host belongs to a trade site with
+     * an exceeded limit, the request policy of the site decides, what happens.
+     *
+     * @param host The host of the request.
+     * @param defaultType The type of the request, if the current thread has no request type, or null.
+     * @param proxyAllowed Flag to indicate, if the request can be sent via a proxy (i.e. not for private API calls).
+     * @param deadline The time in milliseconds, when the request has to be complete, or 0 for no deadline.
+     *
+     * @return The proxy to send the request with or null, if the request is sent directly.
+     *
+     * @throws RequestLimitExceededException if the request must not be sent.
+     */
+    public Proxy acquire( String host, TradeSiteRequestType defaultType, boolean proxyAllowed, long deadline) {
+
+	SiteLimits limits = _limitsByHost.get( host.toLowerCase());
+
+	if( limits == null) {  // Not a registered trade site.
+	    return null;
+	}
+
+	TradeSiteRequestType requestType = getRequestType() != null ? getRequestType() : defaultType;
+	RequestPriority priority = getPriority( requestType);
+
+	if( limits.tryAcquire( requestType, priority)) {  // The request is within the limits.
+	    return null;
+	}
+
+	RequestPolicy policy = limits._policy;
+
+	if( ( policy == RequestPolicy.PROXY) && proxyAllowed) {
+
+	    Proxy proxy = leaseProxy( limits._tradeSite);  // The request doesn't use the IP of this app then.
+
+	    if( proxy != null) {
+		return proxy;
+	    }
+
+	    // No proxy available, so wait for the direct request after all.
+
+	} else if( policy == RequestPolicy.BLOCK) {
+
+	    throw new RequestLimitExceededException( limits._tradeSite.getName() + " " + ( requestType == null ? "request" : requestType));
+	}
+
+	limits.await( requestType, priority, deadline);
+
+	return null;
+    }
+
+    /**
+     * Log the queue waits and the shed requests of all the trade sites.
+     */
+    public void dump() {
+
+	StringBuilder message = new StringBuilder( "Request queues:");
+
+	for( SiteLimits currentLimits : _limitsByHost.values()) {
+
+	    for( RequestPriority currentPriority : RequestPriority.values()) {
+
+		LatencyHistogram queueWaits = currentLimits._queueWaits.get( currentPriority);
+		long shedRequests = currentLimits._shedRequests.get( currentPriority).get();
+
+		if( ( queueWaits.getCount() > 0L) || ( shedRequests > 0L)) {
+
+		    message.append( "\n  ").append( currentLimits._tradeSite.getName()).append( " ").append( currentPriority)
+			.append( ": wait ").append( queueWaits).append( " shed=").append( shedRequests);
+		}
+	    }
+	}
+
+	LogUtils.getInstance().getLogger().info( message.toString());
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized RequestRateLimiter getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet,
+
+	    _instance = new RequestRateLimiter();  // create one.
+	}
+
+	return _instance;
+    }
+
+    /**
+     * Get the limits of a trade site. The site is registered with its default limits, if necessary.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The limits of the trade site.
+     */
+    private SiteLimits getLimits( TradeSite tradeSite) {
+
+	String host = getHost( tradeSite);
+
+	SiteLimits limits = _limitsByHost.get( host);
+
+	if( limits == null) {
+
+	    synchronized( this) {
+
+		limits = _limitsByHost.get( host);
+
+		if( limits == null) {
+
+		    TokenBucket siteBucket = null;
+
+		    try {
+
+			long minimumRequestInterval = tradeSite.getMinimumRequestInterval();
+
+			if( minimumRequestInterval > 0L) {
+			    siteBucket = new TokenBucket( 1, minimumRequestInterval);
+			}
+
+		    } catch( RuntimeException re) {  // Some API implementations don't know their interval.
+
+			LogUtils.getInstance().getLogger().warn( "RequestRateLimiter: no minimum request interval for " + tradeSite.getName());
+		    }
+
+		    limits = new SiteLimits( tradeSite, siteBucket);
+
+		    _limitsByHost.put( host, limits);
+		}
+	    }
+	}
+
+	return limits;
+    }
+
+    /**
+     * Get the host of a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The host of the trade site.
+     *
+     * @throws IllegalArgumentException if the trade site has no valid URL.
+     */
+    private String getHost( TradeSite tradeSite) {
+
+	try {
+
+	    return new URL( tradeSite.getURL()).getHost().toLowerCase();
+
+	} catch( MalformedURLException me) {
+
+	    throw new IllegalArgumentException( "RequestRateLimiter: invalid URL of " + tradeSite.getName() + ": " + tradeSite.getURL());
+
+	} catch( NullPointerException npe) {
+
+	    throw new IllegalArgumentException( "RequestRateLimiter: no URL for " + tradeSite.getName());
+	}
+    }
+
+    /**
+     * Get the priority class of a request type.
+     *
+     * @param requestType The type of the request or null, if it's unknown.
+     *
+     * @return The priority class of the request. Unknown requests are market data polls.
+     */
+    public static RequestPriority getPriority( TradeSiteRequestType requestType) {
+
+	if( requestType == TradeSiteRequestType.Order) {
+	    return RequestPriority.TRADING;
+	}
+
+	if( requestType == TradeSiteRequestType.Account) {
+	    return RequestPriority.ACCOUNT;
+	}
+
+	return RequestPriority.MARKET_DATA;
+    }
+
+    /**
+     * Get the times, that the requests of a priority class waited for their tokens.
+     *
+     * @param tradeSite The trade site.
+     * @param priority The priority class.
+     *
+     * @return The histogram of the queue waits. Requests, that didn't wait, are recorded with 0.
+     */
+    public LatencyHistogram getQueueWaits( TradeSite tradeSite, RequestPriority priority) {
+	return getLimits( tradeSite)._queueWaits.get( priority);
+    }
+
+    /**
+     * Get the request policy of a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The request policy of the trade site.
+     */
+    public RequestPolicy getRequestPolicy( TradeSite tradeSite) {
+	return getLimits( tradeSite)._policy;
+    }
+
+    /**
+     * Get the type of the requests of the current thread.
+     *
+     * @return The type of the requests of the current thread or null, if it's unknown.
+     */
+    public TradeSiteRequestType getRequestType() {
+	return _requestType.get();
+    }
+
+    /**
+     * Get the number of requests of a priority class, that were shed, because too many of them were waiting.
+     *
+     * @param tradeSite The trade site.
+     * @param priority The priority class.
+     *
+     * @return The number of shed requests.
+     */
+    public long getShedRequests( TradeSite tradeSite, RequestPriority priority) {
+	return getLimits( tradeSite)._shedRequests.get( priority).get();
+    }
+
+    /**
+     * Get the time until a request to a trade site is allowed.
+     *
+     * @param tradeSite The trade site.
+     * @param requestType The type of the request or null, if only the general limit should be checked.
+     *
+     * @return The time in microseconds until the request is allowed. 0, if it's allowed now.
+     */
+    public long getWaitTime( TradeSite tradeSite, TradeSiteRequestType requestType) {
+
+	long waitTime = getLimits( tradeSite).getWaitTime( requestType, getPriority( requestType));
+
+	return ( waitTime + 999L) / 1000L;  // Don't round a short wait down to 0.
+    }
+
+    /**
+     * Check, if a request to a trade site is allowed now.
+     *
+     * @param tradeSite The trade site.
+     * @param requestType The type of the request or null, if only the general limit should be checked.
+     *
+     * @return true, if the request is within the limits of the trade site.
+     */
+    public boolean isRequestAllowed( TradeSite tradeSite, TradeSiteRequestType requestType) {
+	return getLimits( tradeSite).getWaitTime( requestType, getPriority( requestType)) == 0L;
+    }
+
+    /**
+     * Lease a proxy for a trade site and wait until it may send the request.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The proxy or null, if the site doesn't allow proxies or no proxy is available.
+     */
+    private Proxy leaseProxy( TradeSite tradeSite) {
+
+	if( ( tradeSite.getProxyInfo() == null) || ! tradeSite.getProxyInfo().isProxyAllowed()) {
+	    return null;
+	}
+
+	try {
+
+	    ProxyLease lease = ProxyRequestHandler.getInstance().leaseProxy( tradeSite);
+
+	    return lease.waitForRequestTime() ? lease.getProxy() : null;
+
+	} catch( NoProxyAvailableException npae) {
+
+	    return null;
+	}
+    }
+
+    /**
+     * Register a trade site with its default limits, so the requests to its host are limited.
+     *
+     * @param tradeSite The trade site.
+     */
+    public void register( TradeSite tradeSite) {
+
+	try {
+
+	    getLimits( tradeSite);
+
+	} catch( IllegalArgumentException iae) {  // The requests to this site are not limited then.
+
+	    LogUtils.getInstance().getLogger().warn( iae.getMessage());
+	}
+    }
+
+    /**
+     * Set the maximum number of market data polls of a trade site, that wait for a token.
+     * Further polls fail, so they don't delay more important requests.
+     *
+     * @param tradeSite The trade site.
+     * @param maxQueuedPolls The maximum number of waiting polls.
+     */
+    public void setMaxQueuedPolls( TradeSite tradeSite, int maxQueuedPolls) {
+	getLimits( tradeSite)._maxQueuedPolls = maxQueuedPolls;
+    }
+
+    /**
+     * Set the rate limit of a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param requestType The type of the limited requests or null for the general limit of all the requests.
+     * @param requests The number of requests, that can be sent at once (the size of the bucket).
+     * @param interval The time in microseconds, until another request is allowed.
+     */
+    public void setRateLimit( TradeSite tradeSite, TradeSiteRequestType requestType, int requests, long interval) {
+
+	SiteLimits limits = getLimits( tradeSite);
+
+	TokenBucket bucket = new TokenBucket( requests, interval);
+
+	if( requestType == null) {
+	    limits._siteBucket = bucket;
+	} else {
+	    limits._typeBuckets.put( requestType, bucket);
+	}
+    }
+
+    /**
+     * Set the policy for the requests to a trade site, that exceed the limits.
+     *
+     * @param tradeSite The trade site.
+     * @param policy The new request policy.
+     */
+    public void setRequestPolicy( TradeSite tradeSite, RequestPolicy policy) {
+	getLimits( tradeSite)._policy = policy;
+    }
+
+    /**
+     * Set the share of the general bucket of a trade site, that only trading requests may take.
+     *
+     * @param tradeSite The trade site.
+     * @param share The reserved share of the bucket (0.25 is a quarter). It has to be at least 0 and below 1.
+     *
+     * @throws IllegalArgumentException if the share is not within the allowed range.
+     */
+    public void setTradingReserve( TradeSite tradeSite, double share) {
+
+	if( ( share < 0.0d) || ( share >= 1.0d)) {
+	    throw new IllegalArgumentException( "RequestRateLimiter: invalid trading reserve " + share + " for " + tradeSite.getName());
+	}
+
+	getLimits( tradeSite)._tradingReserve = share;
+    }
+
+    /**
+     * Set the type of the requests of the current thread.
+     *
+     * @param requestType The type of the following requests or null, if the type is unknown.
+     */
+    public void setRequestType( TradeSiteRequestType requestType) {
+
+	if( requestType == null) {
+	    _requestType.remove();
+	} else {
+	    _requestType.set( requestType);
+	}
+    }
+}
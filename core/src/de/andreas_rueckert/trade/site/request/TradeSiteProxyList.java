@@ -27,106 +27,125 @@ package de.andreas_rueckert.trade.site.request;
 
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.util.TimeUtils;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
  * This class handles the proxies for 1 given trade site.
+ * The proxies are kept in a queue, that is ordered by the time of the next allowed
+ * request to the trade site and by the expected cost of a request via the proxy.
+ * Of the proxies, that could be used now, the fastest healthy proxy is leased first.
+ * The queue is lock-free, so many threads can lease proxies at the same time.
  */
 class TradeSiteProxyList {
 
     // Inner classes
 
     /**
-     * The data of a proxy, that was returned to query a given
-     * trade site.
+     * An entry of the proxy queue. The entries are immutable, so a proxy is
+     * removed and added again with a new entry, when it's leased.
      */
-    class RecommendedProxy {
+    static class QueueEntry implements Comparable<QueueEntry> {
 
 	// Instance variables
 
 	/**
-	 * The returned proxy.
+	 * The expected cost of a request via the proxy in microseconds, when the entry was created.
 	 */
-	private RatedProxy _proxy = null;
+	final long _cost;
 
 	/**
-	 * The microsecond timestamp, when this proxy was returned
-	 * to the API client.
+	 * The microsecond timestamp of the next allowed request via this proxy.
 	 */
-	private long _timestamp = -1L;
-	
-	
-	// Constructors
+	final long _nextRequestTime;
 
 	/**
-	 * Create a new recommendation for a proxy to use.
-	 *
-	 * @param proxy The returned proxy.
+	 * The proxy.
 	 */
-	public RecommendedProxy( RatedProxy proxy) {
-
-	    // Store the data in the instance
-	    _proxy = proxy;
+	final RatedProxy _proxy;
 
-	    // Add the current timestamp.
-	    _timestamp = TimeUtils.getInstance().getCurrentGMTTimeMicros();
-	}
+	/**
+	 * A unique sequence number, so entries with the same time and rating are not equal.
+	 */
+	final long _sequence = _sequenceCounter.incrementAndGet();
 
 
-	// Methods
+	// Constructors
 
 	/**
-	 * Get the returned proxy.
+	 * Create a new queue entry.
 	 *
-	 * @return The proxy, that was returned.
+	 * @param proxy The proxy.
+	 * @param nextRequestTime The microsecond timestamp of the next allowed request via this proxy.
+	 * @param cost The expected cost of a request via the proxy in microseconds.
 	 */
-	public RatedProxy getProxy() {
+	QueueEntry( RatedProxy proxy, long nextRequestTime, long cost) {
 
-	    return _proxy;
+	    _proxy = proxy;
+	    _nextRequestTime = nextRequestTime;
+	    _cost = cost;
 	}
 
-	/**
-	 * Get the timestamp of this proxy return.
-	 *
-	 * @return The timestamp, when this proxy was recommended.
-	 */
-	public long getTimestamp() {
 
-	    return _timestamp;
-	}
+	// Methods
 
 	/**
-	 * If the recommendation is older than the current time - minimum request interval of the exchange,
-	 * we can use this proxy for another request to this exchange.
-	 * So we can remove this recommendation from the log of recent recommendations.
+	 * Compare this entry to another entry. Proxies, that could be used earlier,
+	 * come first. If 2 proxies could be used at the same time, the cheaper
+	 * proxy comes first.
+	 *
+	 * @param entry The other entry.
 	 *
-	 * @return true, if the recommendation could be removed. False otherwise.
+	 * @return A negative number, if this entry comes first, or a positive number otherwise.
 	 */
-	public boolean isOutdated() {
-	    
-	    // This is not a very efficient implementation (because the GMT time is requested for each entry as an
-	    // example), but a very clean one.
-	    // So I leave this for further optimization. :-)
-	    return ( ( getTimestamp() + getTradeSite().getMinimumRequestInterval()) < TimeUtils.getInstance().getCurrentGMTTimeMicros());
+	public int compareTo( QueueEntry entry) {
+
+	    if( _nextRequestTime != entry._nextRequestTime) {
+		return _nextRequestTime < entry._nextRequestTime ? -1 : 1;
+	    }
+
+	    if( _cost != entry._cost) {
+		return _cost < entry._cost ? -1 : 1;
+	    }
+
+	    return _sequence < entry._sequence ? -1 : ( _sequence == entry._sequence ? 0 : 1);
 	}
     }
 
 
     // Static variables
-    
+
+    /**
+     * The time in microseconds, until an inactive or unhealthy proxy is checked again.
+     */
+    private final static long INACTIVE_PROXY_DELAY = 60L * 1000000L;
+
+    /**
+     * The maximum number of usable proxies, that are compared to find the cheapest one.
+     */
+    private final static int MAX_COMPARED_PROXIES = 16;
+
+    /**
+     * The counter for the sequence numbers of the queue entries.
+     */
+    private final static AtomicLong _sequenceCounter = new AtomicLong();
+
 
     // Instance variables
 
     /**
-     * The FIFO queue for the available proxies.
+     * All the proxies of this list, so a proxy is added only once.
      */
-    private LinkedList<RatedProxy> _availableProxies = new LinkedList<RatedProxy>();
+    private ConcurrentHashMap<RatedProxy, Boolean> _proxies = new ConcurrentHashMap<RatedProxy, Boolean>();
 
     /**
-     * The FIFO queue for the returned proxies, that where hopefully used.
+     * The queue of the proxies, ordered by the time of the next allowed request and the rating.
      */
-    private LinkedList<RecommendedProxy> _recommendedProxies = new LinkedList<RecommendedProxy>();
+    private ConcurrentSkipListSet<QueueEntry> _queue = new ConcurrentSkipListSet<QueueEntry>();
 
     /**
      * The trade site, that we want to connect to.
@@ -156,35 +175,22 @@ class TradeSiteProxyList {
      */
     public void addProxy( RatedProxy newProxy) {
 
-	// If the new proxy is not already in the list of available proxies,
-	// add it to the list.
-	// ToDo: this code will only work, if the proxy was not already used
-	// and moved to the recommended proxies. But since we also check
-	// against the complete list of the handler, this should work 99% of 
-	// the time (hopefully).
-	if( ! _availableProxies.contains( newProxy)) {
+	// If the new proxy is not already in the list, it can be used immediately.
+	if( _proxies.putIfAbsent( newProxy, Boolean.TRUE) == null) {
 
-	    // Add the new proxy to the list of available proxies.
-	    _availableProxies.add( newProxy);
+	    _queue.add( new QueueEntry( newProxy, 0L, getCost( newProxy)));
 	}
     }
 
     /**
-     * Remove logs from recommendations, that are older than the minimum request
-     * interval, so we can reuse those proxies again with no delay.
+     * Get the expected cost of a request via a proxy to the trade site.
+     *
+     * @param proxy The proxy.
+     *
+     * @return The expected cost of a request in microseconds.
      */
-    private synchronized void cleanRecommendationList() {
-
-	// While there are proxies, that were already recommended, clean their logs.
-	while( ! _recommendedProxies.isEmpty() &&  _recommendedProxies.getFirst().isOutdated()) {  // While the oldest elements are outdated,
-		
-	    RatedProxy proxy =_recommendedProxies.removeFirst().getProxy();  // Get the proxy from this recommendation.
-	    
-	    if( proxy.isActive()) {  // If this proxy is still active,
-		
-		_availableProxies.add( proxy);  // add this proxy to the list of available proxies.
-	    }
-	}
+    private long getCost( RatedProxy proxy) {
+	return proxy.getStatistics( _tradeSite).getExpectedCost();
     }
 
     /**
@@ -198,74 +204,155 @@ class TradeSiteProxyList {
     }
 
     /**
-     * Try to get a proxy for a trade site request.
+     * Lease a number of different proxies for the next requests to the trade site.
+     * Each lease reserves the next allowed request of the proxy, so the proxy is
+     * handed out again only after the minimum request interval of the trade site.
+     * Inactive and unhealthy proxies are skipped and checked again later.
      *
-     * @return A proxy for the next trade site request.
+     * @param numberOfProxies The number of proxies, we need for our requests.
      *
-     * @throws NoProxyAvailableException If there's no proxy available for the request.
+     * @return The leases of the proxies. The number might be smaller than the requested number,
+     *         if not enough active proxies are available.
      */
-    public synchronized RatedProxy recommendProxy() throws NoProxyAvailableException {
+    public List<ProxyLease> leaseProxies( int numberOfProxies) {
+
+	long currentTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	long requestInterval = _tradeSite.getMinimumRequestInterval();
+
+	List<QueueEntry> leasedEntries = new ArrayList<QueueEntry>();
+	int skippedProxies = 0;
 
-	RatedProxy proxy;  // Buffer for the result.
+	// Take the proxies from the queue first, so the same proxy is not leased twice.
+	while( leasedEntries.size() < numberOfProxies) {
 
-	while( true) {  // While we have not given up...
-	
-	    // If there are new proxies available, get the next proxy from there.
-	    if( ! _availableProxies.isEmpty()) {
+	    QueueEntry entry = pollCheapestEntry( currentTime);
 
-		// Get the first of the available proxies.
-		proxy = _availableProxies.removeFirst();
+	    if( entry == null) {  // All the proxies are leased.
+		break;
+	    }
 
-		if( proxy.isActive()) {  // If this proxy is active,
+	    if( entry._proxy.isActive() && entry._proxy.getStatistics( _tradeSite).isHealthy()) {
 
-		    // Add a new recommendation to our internal list.
-		    _recommendedProxies.add( new RecommendedProxy( proxy));
+		leasedEntries.add( entry);
 
-		    // And return this proxy.
-		    return proxy;
+	    } else {  // Move inactive and unhealthy proxies to the end of the queue, so they are checked again later.
 
-		} else {  // If the proxy is not active at the moment, it is just removed and might be re-added later, once it's activated again...
+		_queue.add( new QueueEntry( entry._proxy, Math.max( currentTime, entry._nextRequestTime) + INACTIVE_PROXY_DELAY, entry._cost));
 
-		    continue;  // Try to get another active proxy from the available proxies.
+		if( ++skippedProxies >= _proxies.size()) {  // Every proxy was checked once.
+		    break;
 		}
+	    }
+	}
 
-	    } else {  // There are no new proxies, so check out earlier recommendations, if those
-		      // proxies are available again with no delay.
-	    
-		// Remove those recommendation, that are older than the minimum request interval of the trade site.
-		cleanRecommendationList();  
+	List<ProxyLease> result = new ArrayList<ProxyLease>( leasedEntries.size());
 
-		// Now recheck, if there are new proxies available again.
-		if( ! _availableProxies.isEmpty()) {
+	// Reserve the next request of each proxy and put it back into the queue.
+	for( QueueEntry currentEntry : leasedEntries) {
 
-		    // Yes! => try to find an available proxy again.
-		    continue;
+	    long requestTime = Math.max( currentTime, currentEntry._nextRequestTime);
 
-		} else { // We have to reuse a proxy, that was used recently... :-( 
+	    // The proxy might have been used for this trade site without a lease.
+	    Long lastRequestTime = currentEntry._proxy.getLastRequestTimestamp( _tradeSite);
 
-		    // If there are proxies in the recommendation list.
-		    while( ! _recommendedProxies.isEmpty()) {
+	    if( lastRequestTime != null) {
+		requestTime = Math.max( requestTime, lastRequestTime + requestInterval);
+	    }
 
-			// Get the proxy, that was recommended first and reuse it.
-			proxy = _recommendedProxies.removeFirst().getProxy();
+	    QueueEntry reservingEntry = new QueueEntry( currentEntry._proxy, requestTime + requestInterval, getCost( currentEntry._proxy));
 
-			if( ! proxy.isActive()) {  // Should rarely happen, so it's ok, even if it's not very efficient...
+	    _queue.add( reservingEntry);
 
-			    continue;
+	    result.add( new ProxyLease( currentEntry._proxy, requestTime, this, reservingEntry));
+	}
 
-			} else {
-	
-			    // Add a new recommendation to our internal list.
-			    _recommendedProxies.add( new RecommendedProxy( proxy));
+	return result;
+    }
+
+    /**
+     * Lease a proxy for the next request to the trade site.
+     *
+     * @return The lease of the proxy, that could be used first.
+     *
+     * @throws NoProxyAvailableException If there's no active proxy available for the request.
+     */
+    public ProxyLease leaseProxy() throws NoProxyAvailableException {
+
+	List<ProxyLease> leases = leaseProxies( 1);
+
+	if( leases.isEmpty()) {
+	    throw new NoProxyAvailableException( "no proxy available in TradeSiteProxyList.leaseProxy()");
+	}
+
+	return leases.get( 0);
+    }
+
+    /**
+     * Remove the cheapest of the proxies, that could be used now, from the queue.
+     * If no proxy could be used now, the proxy, that could be used first, is removed.
+     *
+     * @param currentTime The current time as a microsecond timestamp.
+     *
+     * @return The removed entry or null, if the queue is empty.
+     */
+    private QueueEntry pollCheapestEntry( long currentTime) {
+
+	while( true) {
+
+	    QueueEntry cheapestEntry = null;
+	    int comparedEntries = 0;
+
+	    // The queue is ordered by the request time, so the usable proxies are at the start.
+	    for( QueueEntry currentEntry : _queue) {
+
+		if( cheapestEntry == null) {
+
+		    cheapestEntry = currentEntry;
 
-			    return proxy;  // Return the fetched proxy.
-			}
-		    }
+		} else if( ( currentEntry._nextRequestTime > currentTime) || ( comparedEntries >= MAX_COMPARED_PROXIES)) {
 
-		    // If no proxy was available so far, we have to throw an exception to indicate that.
-		    throw new NoProxyAvailableException( "no proxy available in TradeSiteProxyList.recommendProxy()");
+		    break;
+
+		} else if( currentEntry._cost < cheapestEntry._cost) {
+
+		    cheapestEntry = currentEntry;
 		}
+
+		++comparedEntries;
+	    }
+
+	    if( cheapestEntry == null) {  // The queue is empty.
+		return null;
 	    }
+
+	    if( _queue.remove( cheapestEntry)) {  // Another thread might have leased this proxy in the meantime.
+		return cheapestEntry;
+	    }
+	}
+    }
+
+    /**
+     * Give the request of an unused lease back, so the proxy can be used at the
+     * reserved request time again.
+     *
+     * @param lease The unused lease.
+     * @param reservingEntry The queue entry, that was added for the lease.
+     */
+    void release( ProxyLease lease, QueueEntry reservingEntry) {
+
+	// If the proxy was leased again in the meantime, the next request is already reserved.
+	if( _queue.remove( reservingEntry)) {
+
+	    _queue.add( new QueueEntry( reservingEntry._proxy, lease.getRequestTime(), reservingEntry._cost));
 	}
     }
-}
\ No newline at end of file
+
+    /**
+     * Get the number of proxies in this list.
+     *
+     * @return The number of proxies in this list (active or not).
+     */
+    public int size() {
+	return _proxies.size();
+    }
+}
@@ -0,0 +1,1182 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.andreas_rueckert.util.HttpUtils;
+import de.andreas_rueckert.util.LogUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * A local HTTP server, that answers the public REST requests of some exchanges
+ * (BTC-e, Bitstamp, Kraken and Poloniex) with recorded or synthetic data. It is
+ * meant for load tests and for developing without hitting the real exchanges.
+ *
+ * The server can be started within the application or as a separate JVM via main().
+ * Once the URL overrides of HttpUtils point to this server, the modules use it
+ * without any change.
+ *
+ * Recorded replies are taken from the fixture directory, if one is set. The file name
+ * is the exchange name followed by the request path and query, with all characters
+ * except letters, digits, '.', '-' and '_' replaced by '_' . So a recorded reply for
+ * /btc-e/api/3/depth/btc_usd would be in btc-e_api_3_depth_btc_usd.json .
+ */
+public class StandInExchangeServer {
+
+    // Inner classes
+
+    /**
+     * The handler for all the requests of this server.
+     */
+    class ExchangeHandler implements HttpHandler {
+
+	// Methods
+
+	/**
+	 * Handle a request.
+	 *
+	 * @param exchange The HTTP exchange to handle.
+	 */
+	public void handle( HttpExchange exchange) throws IOException {
+
+	    try {
+
+		_requestCount.incrementAndGet();
+
+		simulateLatency();
+
+		// Simulate a failing server.
+		if( ( _errorRate > 0.0d) && ( nextRandom() < _errorRate)) {
+
+		    _errorCount.incrementAndGet();
+
+		    sendReply( exchange, nextRandom() < 0.5d ? 500 : 503, "{\"error\":\"simulated server error\"}");
+
+		    return;
+		}
+
+		String path = exchange.getRequestURI().getPath();
+		String query = exchange.getRequestURI().getRawQuery();
+
+		// Remove the leading slash and split the exchange name from the rest of the path.
+		String trimmedPath = path.startsWith( "/") ? path.substring( 1) : path;
+		int slashIndex = trimmedPath.indexOf( '/');
+		String exchangeName = slashIndex < 0 ? trimmedPath : trimmedPath.substring( 0, slashIndex);
+		String requestPath = slashIndex < 0 ? "" : trimmedPath.substring( slashIndex + 1);
+
+		// Recorded replies have priority over synthetic data.
+		String reply = getFixture( exchangeName, requestPath, query);
+
+		if( reply == null) {
+
+		    if( "btc-e".equals( exchangeName)) {
+			reply = createBtcEReply( requestPath, query);
+		    } else if( "bitstamp".equals( exchangeName)) {
+			reply = createBitstampReply( requestPath, query);
+		    } else if( "kraken".equals( exchangeName)) {
+			reply = createKrakenReply( requestPath, query);
+		    } else if( "poloniex".equals( exchangeName)) {
+			reply = createPoloniexReply( requestPath, query);
+		    }
+		}
+
+		if( reply == null) {
+
+		    sendReply( exchange, 404, "{\"error\":\"unknown request " + path + "\"}");
+
+		} else {
+
+		    sendReply( exchange, 200, reply);
+		}
+
+	    } catch( RuntimeException re) {
+
+		LogUtils.getInstance().getLogger().error( "StandInExchangeServer: cannot handle request " + exchange.getRequestURI() + ": " + re);
+
+		sendReply( exchange, 500, "{\"error\":\"" + re + "\"}");
+
+	    } finally {
+
+		exchange.close();
+	    }
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The exchange names of this server and the base URLs of the real exchanges.
+     */
+    private final static String [][] BASE_URLS = { { "btc-e", "https://btc-e.com/", "btc-e/" }
+						   , { "bitstamp", "https://www.bitstamp.net/", "bitstamp/" }
+						   , { "kraken", "https://api.kraken.com/", "kraken/" }
+						   , { "poloniex", "https://poloniex.com/public", "poloniex/public" } };
+
+    /**
+     * The BTC-e currency pairs with their start prices.
+     */
+    private final static String [][] BTC_E_PAIRS = { { "btc_usd", "350.0" }
+						     , { "btc_eur", "280.0" }
+						     , { "ltc_btc", "0.0095" }
+						     , { "ltc_usd", "3.4" }
+						     , { "nmc_btc", "0.0025" }
+						     , { "ppc_btc", "0.0028" } };
+
+    /**
+     * The Kraken currency pairs with their start prices.
+     */
+    private final static String [][] KRAKEN_PAIRS = { { "XXBTZUSD", "XXBT", "ZUSD", "350.0" }
+						      , { "XXBTZEUR", "XXBT", "ZEUR", "280.0" }
+						      , { "XLTCZUSD", "XLTC", "ZUSD", "3.4" }
+						      , { "XXBTXLTC", "XXBT", "XLTC", "105.0" } };
+
+    /**
+     * The Poloniex currency pairs with their start prices.
+     */
+    private final static String [][] POLONIEX_PAIRS = { { "BTC_LTC", "0.0095" }
+							, { "BTC_NXT", "0.000055" }
+							, { "BTC_XMR", "0.0045" }
+							, { "BTC_DOGE", "0.0000004" } };
+
+
+    // Instance variables
+
+    /**
+     * The number of requests, that were answered with a simulated error.
+     */
+    private AtomicLong _errorCount = new AtomicLong();
+
+    /**
+     * The fraction of requests (0.0 - 1.0), that are answered with a server error.
+     */
+    private volatile double _errorRate = 0.0d;
+
+    /**
+     * The number of price levels in a synthetic depth.
+     */
+    private volatile int _depthLevels = 150;
+
+    /**
+     * The executor for the requests.
+     */
+    private ExecutorService _executor = null;
+
+    /**
+     * The directory with the recorded replies or null, if only synthetic data are used.
+     */
+    private volatile File _fixtureDirectory = null;
+
+    /**
+     * The maximum simulated latency in milliseconds.
+     */
+    private volatile long _maxLatency = 0L;
+
+    /**
+     * The minimum simulated latency in milliseconds.
+     */
+    private volatile long _minLatency = 0L;
+
+    /**
+     * The current synthetic prices, keyed by exchange and pair name.
+     */
+    private Map<String, Double> _prices = new ConcurrentHashMap<String, Double>();
+
+    /**
+     * The random generator for the synthetic data.
+     */
+    private Random _random = new Random();
+
+    /**
+     * The port of this server.
+     */
+    private int _port;
+
+    /**
+     * The number of handled requests.
+     */
+    private AtomicLong _requestCount = new AtomicLong();
+
+    /**
+     * The HTTP server or null, if the server is not running.
+     */
+    private HttpServer _server = null;
+
+    /**
+     * The number of threads, that handle requests.
+     */
+    private int _threads = 16;
+
+    /**
+     * The number of trades in a synthetic trade list.
+     */
+    private volatile int _tradeCount = 150;
+
+    /**
+     * The id of the next synthetic trade.
+     */
+    private AtomicLong _nextTradeId = new AtomicLong( 1000000L);
+
+
+    // Constructors
+
+    /**
+     * Create a new stand-in server.
+     *
+     * @param port The port to listen on or 0 for any free port.
+     */
+    public StandInExchangeServer( int port) {
+
+	_port = port;
+    }
+
+
+    // Methods
+
+    /**
+     * Append a synthetic depth side as a JSON array of [price, amount] entries.
+     *
+     * @param buffer The buffer to append to.
+     * @param price The best price of the side.
+     * @param ask true, if the prices should go up (sell orders).
+     * @param levels The number of levels.
+     * @param quoted true, if the numbers should be quoted as strings.
+     * @param withTimestamp true, if a timestamp should be appended to each level.
+     */
+    private void appendDepthSide( StringBuilder buffer, double price, boolean ask, int levels, boolean quoted, boolean withTimestamp) {
+
+	double step = price * 0.0005d;
+	long now = System.currentTimeMillis() / 1000L;
+
+	buffer.append( '[');
+
+	for( int i = 0; i < levels; ++i) {
+
+	    if( i > 0) {
+		buffer.append( ',');
+	    }
+
+	    buffer.append( '[');
+	    appendNumber( buffer, ask ? price + i * step : price - i * step, quoted);
+	    buffer.append( ',');
+	    appendNumber( buffer, 0.01d + nextRandom() * 10.0d, quoted);
+	    if( withTimestamp) {
+		buffer.append( ',').append( now - i);
+	    }
+	    buffer.append( ']');
+	}
+
+	buffer.append( ']');
+    }
+
+    /**
+     * Append a number to a JSON buffer.
+     *
+     * @param buffer The buffer to append to.
+     * @param value The value to append.
+     * @param quoted true, if the number should be quoted as a string.
+     */
+    private final void appendNumber( StringBuilder buffer, double value, boolean quoted) {
+
+	if( quoted) {
+	    buffer.append( '"');
+	}
+
+	buffer.append( formatNumber( value));
+
+	if( quoted) {
+	    buffer.append( '"');
+	}
+    }
+
+    /**
+     * Create the reply of a BTC-e request.
+     *
+     * @param path The request path after the exchange name.
+     * @param query The query of the request or null.
+     *
+     * @return The reply or null, if the request is not known.
+     */
+    private String createBtcEReply( String path, String query) {
+
+	String [] parts = path.split( "/");
+
+	if( ( parts.length >= 3) && "api".equals( parts[ 0]) && "3".equals( parts[ 1])) {
+
+	    if( "info".equals( parts[ 2])) {
+
+		StringBuilder buffer = new StringBuilder();
+
+		buffer.append( "{\"server_time\":").append( System.currentTimeMillis() / 1000L).append( ",\"pairs\":{");
+		for( int i = 0; i < BTC_E_PAIRS.length; ++i) {
+		    if( i > 0) {
+			buffer.append( ',');
+		    }
+		    buffer.append( '"').append( BTC_E_PAIRS[ i][ 0])
+			.append( "\":{\"decimal_places\":5,\"min_price\":0.00001,\"max_price\":10000,\"min_amount\":0.01,\"hidden\":0,\"fee\":0.2}");
+		}
+		buffer.append( "}}");
+
+		return buffer.toString();
+	    }
+
+	    if( parts.length < 4) {
+		return null;
+	    }
+
+	    // API v3 allows several pairs, separated by '-'.
+	    String [] pairs = parts[ 3].split( "-");
+	    int limit = getIntParameter( query, "limit", "depth".equals( parts[ 2]) ? _depthLevels : _tradeCount);
+
+	    StringBuilder buffer = new StringBuilder( "{");
+
+	    for( int i = 0; i < pairs.length; ++i) {
+
+		if( getStartPrice( BTC_E_PAIRS, pairs[ i], 1) == null) {
+		    return "{\"success\":0,\"error\":\"Invalid pair name: " + pairs[ i] + "\"}";
+		}
+
+		if( i > 0) {
+		    buffer.append( ',');
+		}
+		buffer.append( '"').append( pairs[ i]).append( "\":");
+
+		double price = getPrice( "btc-e", pairs[ i], getStartPrice( BTC_E_PAIRS, pairs[ i], 1));
+
+		if( "depth".equals( parts[ 2])) {
+		    appendBtcEDepth( buffer, price, limit);
+		} else if( "ticker".equals( parts[ 2])) {
+		    appendBtcETicker( buffer, price);
+		} else if( "trades".equals( parts[ 2])) {
+		    appendBtcETrades( buffer, price, limit);
+		} else {
+		    return null;
+		}
+	    }
+
+	    return buffer.append( '}').toString();
+	}
+
+	// API v2: api/2/<pair>/<method>
+	if( ( parts.length >= 4) && "api".equals( parts[ 0]) && "2".equals( parts[ 1])) {
+
+	    String startPrice = getStartPrice( BTC_E_PAIRS, parts[ 2], 1);
+
+	    if( startPrice == null) {
+		return "{\"error\":\"invalid pair\"}";
+	    }
+
+	    double price = getPrice( "btc-e", parts[ 2], startPrice);
+	    StringBuilder buffer = new StringBuilder();
+
+	    if( "depth".equals( parts[ 3])) {
+		appendBtcEDepth( buffer, price, _depthLevels);
+	    } else if( "ticker".equals( parts[ 3])) {
+		buffer.append( "{\"ticker\":");
+		appendBtcETicker( buffer, price);
+		buffer.append( '}');
+	    } else if( "trades".equals( parts[ 3])) {
+		appendBtcETrades( buffer, price, _tradeCount);
+	    } else {
+		return null;
+	    }
+
+	    return buffer.toString();
+	}
+
+	return null;
+    }
+
+    /**
+     * Append a BTC-e depth.
+     *
+     * @param buffer The buffer to append to.
+     * @param price The current price.
+     * @param levels The number of levels per side.
+     */
+    private void appendBtcEDepth( StringBuilder buffer, double price, int levels) {
+
+	buffer.append( "{\"asks\":");
+	appendDepthSide( buffer, price * 1.001d, true, levels, false, false);
+	buffer.append( ",\"bids\":");
+	appendDepthSide( buffer, price * 0.999d, false, levels, false, false);
+	buffer.append( '}');
+    }
+
+    /**
+     * Append a BTC-e ticker.
+     *
+     * @param buffer The buffer to append to.
+     * @param price The current price.
+     */
+    private void appendBtcETicker( StringBuilder buffer, double price) {
+
+	long now = System.currentTimeMillis() / 1000L;
+
+	buffer.append( "{\"high\":").append( formatNumber( price * 1.02d))
+	    .append( ",\"low\":").append( formatNumber( price * 0.98d))
+	    .append( ",\"avg\":").append( formatNumber( price))
+	    .append( ",\"vol\":").append( formatNumber( price * 1234.5d))
+	    .append( ",\"vol_cur\":1234.5")
+	    .append( ",\"last\":").append( formatNumber( price))
+	    .append( ",\"buy\":").append( formatNumber( price * 0.999d))
+	    .append( ",\"sell\":").append( formatNumber( price * 1.001d))
+	    .append( ",\"updated\":").append( now)
+	    .append( ",\"server_time\":").append( now)
+	    .append( '}');
+    }
+
+    /**
+     * Append a list of BTC-e trades.
+     *
+     * @param buffer The buffer to append to.
+     * @param price The current price.
+     * @param count The number of trades.
+     */
+    private void appendBtcETrades( StringBuilder buffer, double price, int count) {
+
+	long now = System.currentTimeMillis() / 1000L;
+	long tid = _nextTradeId.addAndGet( count);
+
+	buffer.append( '[');
+
+	for( int i = 0; i < count; ++i) {
+
+	    if( i > 0) {
+		buffer.append( ',');
+	    }
+
+	    buffer.append( "{\"type\":\"").append( nextRandom() < 0.5d ? "ask" : "bid")
+		.append( "\",\"price\":").append( formatNumber( price * ( 0.995d + nextRandom() * 0.01d)))
+		.append( ",\"amount\":").append( formatNumber( 0.01d + nextRandom() * 5.0d))
+		.append( ",\"tid\":").append( tid - i)
+		.append( ",\"timestamp\":").append( now - i * 10)
+		.append( '}');
+	}
+
+	buffer.append( ']');
+    }
+
+    /**
+     * Create the reply of a Bitstamp request. Bitstamp only trades BTC/USD here.
+     *
+     * @param path The request path after the exchange name.
+     * @param query The query of the request or null.
+     *
+     * @return The reply or null, if the request is not known.
+     */
+    private String createBitstampReply( String path, String query) {
+
+	double price = getPrice( "bitstamp", "btc_usd", "350.0");
+	long now = System.currentTimeMillis() / 1000L;
+	StringBuilder buffer = new StringBuilder();
+
+	if( path.startsWith( "api/order_book")) {
+
+	    buffer.append( "{\"timestamp\":\"").append( now).append( "\",\"bids\":");
+	    appendDepthSide( buffer, price * 0.999d, false, _depthLevels, true, false);
+	    buffer.append( ",\"asks\":");
+	    appendDepthSide( buffer, price * 1.001d, true, _depthLevels, true, false);
+	    buffer.append( '}');
+
+	} else if( path.startsWith( "api/ticker")) {
+
+	    buffer.append( "{\"high\":\"").append( formatNumber( price * 1.02d))
+		.append( "\",\"last\":\"").append( formatNumber( price))
+		.append( "\",\"timestamp\":\"").append( now)
+		.append( "\",\"bid\":\"").append( formatNumber( price * 0.999d))
+		.append( "\",\"volume\":\"1234.5")
+		.append( "\",\"low\":\"").append( formatNumber( price * 0.98d))
+		.append( "\",\"ask\":\"").append( formatNumber( price * 1.001d))
+		.append( "\"}");
+
+	} else if( path.startsWith( "api/transactions")) {
+
+	    long tid = _nextTradeId.addAndGet( _tradeCount);
+
+	    buffer.append( '[');
+	    for( int i = 0; i < _tradeCount; ++i) {
+		if( i > 0) {
+		    buffer.append( ',');
+		}
+		buffer.append( "{\"date\":\"").append( now - i * 10)
+		    .append( "\",\"tid\":").append( tid - i)
+		    .append( ",\"price\":\"").append( formatNumber( price * ( 0.995d + nextRandom() * 0.01d)))
+		    .append( "\",\"amount\":\"").append( formatNumber( 0.01d + nextRandom() * 5.0d))
+		    .append( "\"}");
+	    }
+	    buffer.append( ']');
+
+	} else {
+
+	    return null;
+	}
+
+	return buffer.toString();
+    }
+
+    /**
+     * Create the reply of a Kraken request.
+     *
+     * @param path The request path after the exchange name.
+     * @param query The query of the request or null.
+     *
+     * @return The reply or null, if the request is not known.
+     */
+    private String createKrakenReply( String path, String query) {
+
+	StringBuilder buffer = new StringBuilder( "{\"error\":[],\"result\":{");
+
+	if( "0/public/AssetPairs".equals( path)) {
+
+	    for( int i = 0; i < KRAKEN_PAIRS.length; ++i) {
+		if( i > 0) {
+		    buffer.append( ',');
+		}
+		buffer.append( '"').append( KRAKEN_PAIRS[ i][ 0])
+		    .append( "\":{\"altname\":\"").append( KRAKEN_PAIRS[ i][ 0])
+		    .append( "\",\"aclass_base\":\"currency\",\"base\":\"").append( KRAKEN_PAIRS[ i][ 1])
+		    .append( "\",\"aclass_quote\":\"currency\",\"quote\":\"").append( KRAKEN_PAIRS[ i][ 2])
+		    .append( "\",\"lot\":\"unit\",\"pair_decimals\":5,\"lot_decimals\":8,\"lot_multiplier\":1")
+		    .append( ",\"fees\":[[0,0.26],[50000,0.24],[100000,0.22]],\"fee_volume_currency\":\"ZUSD\",\"margin_call\":80,\"margin_stop\":40}");
+	    }
+
+	    return buffer.append( "}}").toString();
+	}
+
+	String pairName = getParameter( query, "pair");
+	String startPrice = getStartPrice( KRAKEN_PAIRS, pairName, 3);
+
+	if( startPrice == null) {
+	    return "{\"error\":[\"EQuery:Unknown asset pair\"]}";
+	}
+
+	double price = getPrice( "kraken", pairName, startPrice);
+
+	buffer.append( '"').append( pairName).append( "\":");
+
+	if( "0/public/Depth".equals( path)) {
+
+	    int levels = getIntParameter( query, "count", _depthLevels);
+
+	    buffer.append( "{\"asks\":");
+	    appendDepthSide( buffer, price * 1.001d, true, levels, true, true);
+	    buffer.append( ",\"bids\":");
+	    appendDepthSide( buffer, price * 0.999d, false, levels, true, true);
+	    buffer.append( '}');
+
+	} else if( "0/public/Ticker".equals( path)) {
+
+	    String last = formatNumber( price);
+
+	    buffer.append( "{\"a\":[\"").append( formatNumber( price * 1.001d)).append( "\",\"1\",\"1.000\"]")
+		.append( ",\"b\":[\"").append( formatNumber( price * 0.999d)).append( "\",\"1\",\"1.000\"]")
+		.append( ",\"c\":[\"").append( last).append( "\",\"0.10000000\"]")
+		.append( ",\"v\":[\"1234.5\",\"2345.6\"]")
+		.append( ",\"p\":[\"").append( last).append( "\",\"").append( last).append( "\"]")
+		.append( ",\"t\":[1200,2400]")
+		.append( ",\"l\":[\"").append( formatNumber( price * 0.98d)).append( "\",\"").append( formatNumber( price * 0.97d)).append( "\"]")
+		.append( ",\"h\":[\"").append( formatNumber( price * 1.02d)).append( "\",\"").append( formatNumber( price * 1.03d)).append( "\"]")
+		.append( ",\"o\":\"").append( last).append( "\"}");
+
+	} else {
+
+	    return null;
+	}
+
+	return buffer.append( "}}").toString();
+    }
+
+    /**
+     * Create the reply of a Poloniex request.
+     *
+     * @param path The request path after the exchange name.
+     * @param query The query of the request or null.
+     *
+     * @return The reply or null, if the request is not known.
+     */
+    private String createPoloniexReply( String path, String query) {
+
+	if( ! "public".equals( path)) {
+	    return null;
+	}
+
+	String command = getParameter( query, "command");
+	StringBuilder buffer = new StringBuilder( "{");
+
+	if( "returnOrderBook".equals( command) && "all".equals( getParameter( query, "currencyPair"))) {
+
+	    int levels = getIntParameter( query, "depth", _depthLevels);
+
+	    for( int i = 0; i < POLONIEX_PAIRS.length; ++i) {
+
+		double price = getPrice( "poloniex", POLONIEX_PAIRS[ i][ 0], POLONIEX_PAIRS[ i][ 1]);
+
+		if( i > 0) {
+		    buffer.append( ',');
+		}
+		buffer.append( '"').append( POLONIEX_PAIRS[ i][ 0]).append( "\":{\"asks\":");
+		appendDepthSide( buffer, price * 1.001d, true, levels, false, false);
+		buffer.append( ",\"bids\":");
+		appendDepthSide( buffer, price * 0.999d, false, levels, false, false);
+		buffer.append( ",\"isFrozen\":\"0\"}");
+	    }
+
+	} else if( "returnOrderBook".equals( command)) {
+
+	    String pairName = getParameter( query, "currencyPair");
+	    String startPrice = getStartPrice( POLONIEX_PAIRS, pairName, 1);
+
+	    if( startPrice == null) {
+		return "{\"error\":\"Invalid currency pair.\"}";
+	    }
+
+	    double price = getPrice( "poloniex", pairName, startPrice);
+	    int levels = getIntParameter( query, "depth", _depthLevels);
+
+	    buffer.append( "\"asks\":");
+	    appendDepthSide( buffer, price * 1.001d, true, levels, false, false);
+	    buffer.append( ",\"bids\":");
+	    appendDepthSide( buffer, price * 0.999d, false, levels, false, false);
+	    buffer.append( ",\"isFrozen\":\"0\"");
+
+	} else if( "returnTicker".equals( command)) {
+
+	    for( int i = 0; i < POLONIEX_PAIRS.length; ++i) {
+
+		double price = getPrice( "poloniex", POLONIEX_PAIRS[ i][ 0], POLONIEX_PAIRS[ i][ 1]);
+
+		if( i > 0) {
+		    buffer.append( ',');
+		}
+		buffer.append( '"').append( POLONIEX_PAIRS[ i][ 0])
+		    .append( "\":{\"last\":\"").append( formatNumber( price))
+		    .append( "\",\"lowestAsk\":\"").append( formatNumber( price * 1.001d))
+		    .append( "\",\"highestBid\":\"").append( formatNumber( price * 0.999d))
+		    .append( "\",\"percentChange\":\"0.01\",\"baseVolume\":\"").append( formatNumber( price * 1234.5d))
+		    .append( "\",\"quoteVolume\":\"1234.5\",\"isFrozen\":\"0\"}");
+	    }
+
+	} else if( "return24hVolume".equals( command)) {
+
+	    double total = 0.0d;
+
+	    for( int i = 0; i < POLONIEX_PAIRS.length; ++i) {
+
+		double price = getPrice( "poloniex", POLONIEX_PAIRS[ i][ 0], POLONIEX_PAIRS[ i][ 1]);
+		String [] currencies = POLONIEX_PAIRS[ i][ 0].split( "_");
+
+		total += price * 1234.5d;
+
+		buffer.append( '"').append( POLONIEX_PAIRS[ i][ 0])
+		    .append( "\":{\"").append( currencies[ 0]).append( "\":\"").append( formatNumber( price * 1234.5d))
+		    .append( "\",\"").append( currencies[ 1]).append( "\":\"1234.5\"},");
+	    }
+
+	    buffer.append( "\"totalBTC\":\"").append( formatNumber( total)).append( '"');
+
+	} else {
+
+	    return null;
+	}
+
+	return buffer.append( '}').toString();
+    }
+
+    /**
+     * Format a number for a JSON reply.
+     *
+     * @param value The value to format.
+     *
+     * @return The formatted value with 8 decimals.
+     */
+    private final String formatNumber( double value) {
+
+	return String.format( Locale.US, "%.8f", value);
+    }
+
+    /**
+     * Get the number of requests, that were answered with a simulated error.
+     *
+     * @return The number of simulated errors.
+     */
+    public long getErrorCount() {
+	return _errorCount.get();
+    }
+
+    /**
+     * Get a recorded reply from the fixture directory.
+     *
+     * @param exchangeName The name of the exchange.
+     * @param path The request path after the exchange name.
+     * @param query The query of the request or null.
+     *
+     * @return The recorded reply or null, if there is no recorded reply.
+     */
+    private String getFixture( String exchangeName, String path, String query) {
+
+	File fixtureDirectory = _fixtureDirectory;
+
+	if( fixtureDirectory == null) {
+	    return null;
+	}
+
+	String requestName = exchangeName + "_" + path + ( query != null ? "_" + query : "");
+
+	// Try the exact request first, then the request without the query.
+	File fixtureFile = new File( fixtureDirectory, requestName.replaceAll( "[^A-Za-z0-9._-]", "_") + ".json");
+
+	if( ! fixtureFile.isFile()) {
+
+	    fixtureFile = new File( fixtureDirectory, ( exchangeName + "_" + path).replaceAll( "[^A-Za-z0-9._-]", "_") + ".json");
+
+	    if( ! fixtureFile.isFile()) {
+		return null;
+	    }
+	}
+
+	InputStream fixtureStream = null;
+
+	try {
+
+	    fixtureStream = new FileInputStream( fixtureFile);
+
+	    ByteArrayOutputStream buffer = new ByteArrayOutputStream( (int)fixtureFile.length());
+	    byte [] chunk = new byte[ 8192];
+	    int bytesRead;
+
+	    while( ( bytesRead = fixtureStream.read( chunk)) > 0) {
+		buffer.write( chunk, 0, bytesRead);
+	    }
+
+	    return buffer.toString( "UTF-8");
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "StandInExchangeServer: cannot read fixture " + fixtureFile + ": " + ioe);
+
+	    return null;
+
+	} finally {
+
+	    if( fixtureStream != null) {
+		try {
+		    fixtureStream.close();
+		} catch( IOException ioe) {}
+	    }
+	}
+    }
+
+    /**
+     * Get an integer parameter from a query.
+     *
+     * @param query The query of the request or null.
+     * @param name The name of the parameter.
+     * @param defaultValue The value to use, if there is no valid parameter.
+     *
+     * @return The value of the parameter.
+     */
+    private int getIntParameter( String query, String name, int defaultValue) {
+
+	String value = getParameter( query, name);
+
+	if( value != null) {
+	    try {
+		return Math.max( 1, Integer.parseInt( value));
+	    } catch( NumberFormatException nfe) {}
+	}
+
+	return defaultValue;
+    }
+
+    /**
+     * Get a parameter from a query.
+     *
+     * @param query The query of the request or null.
+     * @param name The name of the parameter.
+     *
+     * @return The value of the parameter or null, if there is no such parameter.
+     */
+    private String getParameter( String query, String name) {
+
+	if( query != null) {
+	    for( String currentParameter : query.split( "&")) {
+		if( currentParameter.startsWith( name + "=")) {
+		    return currentParameter.substring( name.length() + 1);
+		}
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Get the port of this server. If the server was created with port 0,
+     * this is the actually used port once the server is running.
+     *
+     * @return The port of this server.
+     */
+    public int getPort() {
+	return _port;
+    }
+
+    /**
+     * Get the current synthetic price of a pair. Each call moves the price
+     * a little bit, so consecutive requests see a changing market.
+     *
+     * @param exchangeName The name of the exchange.
+     * @param pairName The name of the pair.
+     * @param startPrice The price to start with.
+     *
+     * @return The current price.
+     */
+    private double getPrice( String exchangeName, String pairName, String startPrice) {
+
+	String key = exchangeName + ":" + pairName;
+	Double price = _prices.get( key);
+
+	double newPrice = ( price == null ? Double.parseDouble( startPrice) : price.doubleValue()) * ( 0.999d + nextRandom() * 0.002d);
+
+	_prices.put( key, newPrice);
+
+	return newPrice;
+    }
+
+    /**
+     * Get the number of handled requests.
+     *
+     * @return The number of handled requests.
+     */
+    public long getRequestCount() {
+	return _requestCount.get();
+    }
+
+    /**
+     * Get the start price of a pair from a pair table.
+     *
+     * @param pairs The table of pairs with the pair name in column 0.
+     * @param pairName The name of the pair.
+     * @param priceColumn The column of the start price.
+     *
+     * @return The start price or null, if the pair is not in the table.
+     */
+    private final String getStartPrice( String [][] pairs, String pairName, int priceColumn) {
+
+	if( pairName != null) {
+	    for( String [] currentPair : pairs) {
+		if( currentPair[ 0].equalsIgnoreCase( pairName)) {
+		    return currentPair[ priceColumn];
+		}
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Get the URL prefix of this server for an exchange.
+     *
+     * @param exchangeName The name of the exchange (btc-e, bitstamp, kraken or poloniex).
+     *
+     * @return The URL prefix, that replaces the base URL of the real exchange.
+     */
+    public String getURL( String exchangeName) {
+
+	for( String [] currentExchange : BASE_URLS) {
+	    if( currentExchange[ 0].equals( exchangeName)) {
+		return "http://localhost:" + _port + "/" + currentExchange[ 2];
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Get the URL overrides for all the exchanges of this server in the format
+     * of the http.urlOverrides system property.
+     *
+     * @return The URL overrides as a string.
+     */
+    public String getURLOverrides() {
+
+	StringBuilder result = new StringBuilder();
+
+	for( String [] currentExchange : BASE_URLS) {
+
+	    if( result.length() > 0) {
+		result.append( ',');
+	    }
+	    result.append( currentExchange[ 1]).append( '=').append( getURL( currentExchange[ 0]));
+	}
+
+	return result.toString();
+    }
+
+    /**
+     * Let HttpUtils send the requests of all the exchanges of this server to this server.
+     */
+    public void installURLOverrides() {
+
+	for( String [] currentExchange : BASE_URLS) {
+	    HttpUtils.addURLOverride( currentExchange[ 1], getURL( currentExchange[ 0]));
+	}
+    }
+
+    /**
+     * Run this server as a separate JVM.
+     * Arguments: [port [latency in ms [error rate [fixture directory]]]]
+     *
+     * @param args The command line arguments.
+     */
+    public static void main( String [] args) {
+
+	StandInExchangeServer server = new StandInExchangeServer( args.length > 0 ? Integer.parseInt( args[ 0]) : 8089);
+
+	if( args.length > 1) {
+	    long latency = Long.parseLong( args[ 1]);
+	    server.setLatency( latency / 2, latency * 3 / 2);
+	}
+
+	if( args.length > 2) {
+	    server.setErrorRate( Double.parseDouble( args[ 2]));
+	}
+
+	if( args.length > 3) {
+	    server.setFixtureDirectory( new File( args[ 3]));
+	}
+
+	server.startService();
+
+	System.out.println( "Stand-in exchange server is running. Start the clients with");
+	System.out.println( "-Dhttp.urlOverrides=" + server.getURLOverrides());
+    }
+
+    /**
+     * Get a random number between 0.0 and 1.0 .
+     *
+     * @return A random number.
+     */
+    private final double nextRandom() {
+
+	return _random.nextDouble();  // java.util.Random is thread safe.
+    }
+
+    /**
+     * Remove the URL overrides of this server from HttpUtils.
+     */
+    public void removeURLOverrides() {
+
+	for( String [] currentExchange : BASE_URLS) {
+	    HttpUtils.removeURLOverride( currentExchange[ 1]);
+	}
+    }
+
+    /**
+     * Send a reply. The reply is gzipped, if the client accepts it.
+     *
+     * @param exchange The HTTP exchange.
+     * @param responseCode The HTTP response code.
+     * @param reply The body of the reply.
+     */
+    private void sendReply( HttpExchange exchange, int responseCode, String reply) throws IOException {
+
+	byte [] body = reply.getBytes( "UTF-8");
+	Headers requestHeaders = exchange.getRequestHeaders();
+	Headers responseHeaders = exchange.getResponseHeaders();
+
+	responseHeaders.set( "Content-Type", "application/json; charset=utf-8");
+
+	String acceptedEncoding = requestHeaders.getFirst( "Accept-Encoding");
+
+	if( ( acceptedEncoding != null) && acceptedEncoding.contains( "gzip")) {
+
+	    ByteArrayOutputStream compressedBody = new ByteArrayOutputStream( body.length / 4 + 64);
+	    GZIPOutputStream gzipStream = new GZIPOutputStream( compressedBody);
+
+	    gzipStream.write( body);
+	    gzipStream.close();
+
+	    body = compressedBody.toByteArray();
+
+	    responseHeaders.set( "Content-Encoding", "gzip");
+	}
+
+	exchange.sendResponseHeaders( responseCode, body.length);
+
+	OutputStream responseStream = exchange.getResponseBody();
+	responseStream.write( body);
+	responseStream.close();
+    }
+
+    /**
+     * Set the number of levels of the synthetic depths, if the request does not
+     * ask for a number of levels. This is the main control of the payload size.
+     *
+     * @param depthLevels The number of levels per depth side.
+     */
+    public void setDepthLevels( int depthLevels) {
+	_depthLevels = depthLevels;
+    }
+
+    /**
+     * Set the fraction of requests, that are answered with a server error (500 or 503).
+     *
+     * @param errorRate The error rate between 0.0 and 1.0 .
+     */
+    public void setErrorRate( double errorRate) {
+	_errorRate = errorRate;
+    }
+
+    /**
+     * Set the directory with the recorded replies.
+     *
+     * @param fixtureDirectory The directory with the recorded replies or null for synthetic data only.
+     */
+    public void setFixtureDirectory( File fixtureDirectory) {
+	_fixtureDirectory = fixtureDirectory;
+    }
+
+    /**
+     * Set the simulated latency of the replies. Each reply is delayed by a random
+     * time between the minimum and the maximum.
+     *
+     * @param minLatency The minimum latency in milliseconds.
+     * @param maxLatency The maximum latency in milliseconds.
+     */
+    public void setLatency( long minLatency, long maxLatency) {
+
+	_minLatency = minLatency;
+	_maxLatency = Math.max( minLatency, maxLatency);
+    }
+
+    /**
+     * Set the number of threads, that handle requests. This has to be set
+     * before the server is started.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads( int threads) {
+	_threads = threads;
+    }
+
+    /**
+     * Set the number of trades in the synthetic trade lists, if the request
+     * does not ask for a number of trades.
+     *
+     * @param tradeCount The number of trades.
+     */
+    public void setTradeCount( int tradeCount) {
+	_tradeCount = tradeCount;
+    }
+
+    /**
+     * Delay the current request by the simulated latency.
+     */
+    private void simulateLatency() {
+
+	long latency = _minLatency;
+
+	if( _maxLatency > _minLatency) {
+	    latency += (long)( nextRandom() * ( _maxLatency - _minLatency));
+	}
+
+	if( latency > 0L) {
+	    try {
+		Thread.sleep( latency);
+	    } catch( InterruptedException ie) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Start this server.
+     */
+    public synchronized void startService() {
+
+	if( _server != null) {  // Already running?
+	    return;
+	}
+
+	// Send the header and the body of a reply without waiting for an ACK of the client,
+	// otherwise each reply is delayed by Nagle's algorithm and the latencies are useless.
+	if( System.getProperty( "sun.net.httpserver.nodelay") == null) {
+	    System.setProperty( "sun.net.httpserver.nodelay", "true");
+	}
+
+	try {
+
+	    _server = HttpServer.create( new InetSocketAddress( "localhost", _port), 0);
+
+	} catch( IOException ioe) {
+
+	    throw new IllegalStateException( "Cannot start the stand-in exchange server on port " + _port + ": " + ioe);
+	}
+
+	_port = _server.getAddress().getPort();  // In case port 0 was used.
+
+	_executor = Executors.newFixedThreadPool( _threads);
+
+	_server.createContext( "/", new ExchangeHandler());
+	_server.setExecutor( _executor);
+	_server.start();
+
+	LogUtils.getInstance().getLogger().info( "StandInExchangeServer: listening on port " + _port);
+    }
+
+    /**
+     * Stop this server.
+     */
+    public synchronized void stopService() {
+
+	if( _server != null) {
+
+	    _server.stop( 0);
+	    _executor.shutdownNow();
+
+	    _server = null;
+	    _executor = null;
+	}
+    }
+}
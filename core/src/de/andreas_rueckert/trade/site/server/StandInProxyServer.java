@@ -0,0 +1,466 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.trade.site.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.andreas_rueckert.trade.site.request.RatedProxy;
+import de.andreas_rueckert.util.LogUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A local HTTP proxy for tests of the proxy code. GET requests with an absolute URL
+ * are forwarded to the target server (i.e. a StandInExchangeServer) or answered
+ * by the proxy itself, if forwarding is disabled. Like the stand-in exchange server,
+ * the proxy can simulate latency and failures.
+ *
+ * The server can be started within the application or as a separate JVM via main().
+ */
+public class StandInProxyServer {
+
+    // Inner classes
+
+    /**
+     * The handler for all the requests of this proxy.
+     */
+    class ProxyHandler implements HttpHandler {
+
+	// Methods
+
+	/**
+	 * Handle a request.
+	 *
+	 * @param exchange The HTTP exchange to handle.
+	 */
+	public void handle( HttpExchange exchange) throws IOException {
+
+	    try {
+
+		_requestCount.incrementAndGet();
+
+		simulateLatency();
+
+		URI target = exchange.getRequestURI();
+
+		// A proxy request has an absolute URL, a plain server request only a path.
+		if( ! "GET".equals( exchange.getRequestMethod()) || ( target.getScheme() == null)) {
+
+		    sendReply( exchange, 400, null, null, "Bad proxy request".getBytes( "UTF-8"));
+
+		    return;
+		}
+
+		// Simulate a failing proxy.
+		if( ( _errorRate > 0.0d) && ( nextRandom() < _errorRate)) {
+
+		    _errorCount.incrementAndGet();
+
+		    sendReply( exchange, 502, null, null, "Simulated proxy error".getBytes( "UTF-8"));
+
+		    return;
+		}
+
+		if( ! _forwardRequests) {
+
+		    sendReply( exchange, 200, "text/html", null, "<html></html>".getBytes( "UTF-8"));
+
+		    return;
+		}
+
+		forwardRequest( exchange, target);
+
+	    } catch( RuntimeException re) {
+
+		LogUtils.getInstance().getLogger().error( "StandInProxyServer: cannot handle request " + exchange.getRequestURI() + ": " + re);
+
+		sendReply( exchange, 500, null, null, ( "" + re).getBytes( "UTF-8"));
+
+	    } finally {
+
+		exchange.close();
+	    }
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The timeout for the connections to the target servers in milliseconds.
+     */
+    private final static int FORWARD_TIMEOUT = 15000;
+
+
+    // Instance variables
+
+    /**
+     * The number of simulated errors.
+     */
+    private AtomicLong _errorCount = new AtomicLong();
+
+    /**
+     * The fraction of requests, that are answered with a simulated proxy error.
+     */
+    private volatile double _errorRate = 0.0d;
+
+    /**
+     * The executor for the request handlers.
+     */
+    private ExecutorService _executor = null;
+
+    /**
+     * Flag to indicate, if the requests are forwarded to the target server.
+     */
+    private volatile boolean _forwardRequests = true;
+
+    /**
+     * The maximum simulated latency in milliseconds.
+     */
+    private volatile long _maxLatency = 0L;
+
+    /**
+     * The minimum simulated latency in milliseconds.
+     */
+    private volatile long _minLatency = 0L;
+
+    /**
+     * The port of this proxy.
+     */
+    private int _port;
+
+    /**
+     * Random generator for the simulated latency and errors.
+     */
+    private Random _random = new Random();
+
+    /**
+     * The number of handled requests.
+     */
+    private AtomicLong _requestCount = new AtomicLong();
+
+    /**
+     * The HTTP server or null, if the proxy is not running.
+     */
+    private HttpServer _server = null;
+
+    /**
+     * The number of threads, that handle requests.
+     */
+    private int _threads = 16;
+
+
+    // Constructors
+
+    /**
+     * Create a new stand-in proxy.
+     *
+     * @param port The port to listen on or 0 for any free port.
+     */
+    public StandInProxyServer( int port) {
+
+	_port = port;
+    }
+
+
+    // Methods
+
+    /**
+     * Forward a request to the target server and send its reply back to the client.
+     *
+     * @param exchange The HTTP exchange.
+     * @param target The absolute URL of the request.
+     */
+    private void forwardRequest( HttpExchange exchange, URI target) throws IOException {
+
+	HttpURLConnection connection = (HttpURLConnection)target.toURL().openConnection( Proxy.NO_PROXY);
+
+	connection.setConnectTimeout( FORWARD_TIMEOUT);
+	connection.setReadTimeout( FORWARD_TIMEOUT);
+
+	String acceptedEncoding = exchange.getRequestHeaders().getFirst( "Accept-Encoding");
+
+	if( acceptedEncoding != null) {  // Pass compressed replies through.
+	    connection.setRequestProperty( "Accept-Encoding", acceptedEncoding);
+	}
+
+	int responseCode;
+	InputStream body;
+
+	try {
+
+	    responseCode = connection.getResponseCode();
+
+	    body = responseCode >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+	} catch( IOException ioe) {  // The target server is not reachable.
+
+	    sendReply( exchange, 502, null, null, ( "Cannot reach " + target.getHost() + ": " + ioe).getBytes( "UTF-8"));
+
+	    return;
+	}
+
+	ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+	if( body != null) {
+
+	    byte [] readBuffer = new byte[ 8192];
+	    int bytesRead;
+
+	    try {
+
+		while( ( bytesRead = body.read( readBuffer)) >= 0) {
+		    buffer.write( readBuffer, 0, bytesRead);
+		}
+
+	    } finally {
+
+		body.close();
+	    }
+	}
+
+	sendReply( exchange, responseCode, connection.getContentType(), connection.getContentEncoding(), buffer.toByteArray());
+    }
+
+    /**
+     * Get the number of simulated errors.
+     *
+     * @return The number of simulated errors.
+     */
+    public long getErrorCount() {
+	return _errorCount.get();
+    }
+
+    /**
+     * Get the port of this proxy.
+     *
+     * @return The port of this proxy (the actual port, if 0 was given and the proxy is running).
+     */
+    public int getPort() {
+	return _port;
+    }
+
+    /**
+     * Get a proxy object for the proxy handler or the proxy tester.
+     *
+     * @return A proxy object for this proxy.
+     */
+    public RatedProxy getProxy() {
+	return new RatedProxy( Proxy.Type.HTTP, new InetSocketAddress( "127.0.0.1", _port));
+    }
+
+    /**
+     * Get the number of handled requests.
+     *
+     * @return The number of handled requests.
+     */
+    public long getRequestCount() {
+	return _requestCount.get();
+    }
+
+    /**
+     * Run this proxy as a separate JVM.
+     * Arguments: [port [latency in ms [error rate]]]
+     *
+     * @param args The command line arguments.
+     */
+    public static void main( String [] args) {
+
+	StandInProxyServer server = new StandInProxyServer( args.length > 0 ? Integer.parseInt( args[ 0]) : 8090);
+
+	if( args.length > 1) {
+	    long latency = Long.parseLong( args[ 1]);
+	    server.setLatency( latency / 2, latency * 3 / 2);
+	}
+
+	if( args.length > 2) {
+	    server.setErrorRate( Double.parseDouble( args[ 2]));
+	}
+
+	server.startService();
+
+	System.out.println( "Stand-in proxy is running on port " + server.getPort());
+    }
+
+    /**
+     * Get a random number between 0.0 and 1.0 .
+     *
+     * @return A random number.
+     */
+    private final double nextRandom() {
+
+	return _random.nextDouble();  // java.util.Random is thread safe.
+    }
+
+    /**
+     * Send a reply.
+     *
+     * @param exchange The HTTP exchange.
+     * @param responseCode The HTTP response code.
+     * @param contentType The content type of the body or null.
+     * @param contentEncoding The content encoding of the body or null.
+     * @param body The body of the reply.
+     */
+    private void sendReply( HttpExchange exchange, int responseCode, String contentType, String contentEncoding, byte [] body) throws IOException {
+
+	if( contentType != null) {
+	    exchange.getResponseHeaders().set( "Content-Type", contentType);
+	}
+
+	if( contentEncoding != null) {
+	    exchange.getResponseHeaders().set( "Content-Encoding", contentEncoding);
+	}
+
+	exchange.sendResponseHeaders( responseCode, body.length);
+
+	OutputStream responseStream = exchange.getResponseBody();
+	responseStream.write( body);
+	responseStream.close();
+    }
+
+    /**
+     * Set the fraction of requests, that are answered with a simulated proxy error (502).
+     *
+     * @param errorRate The error rate between 0.0 and 1.0 .
+     */
+    public void setErrorRate( double errorRate) {
+	_errorRate = errorRate;
+    }
+
+    /**
+     * Set, if the requests are forwarded to the target server. Otherwise the proxy
+     * answers each request with an empty page, i.e. for a proxy test without network.
+     *
+     * @param forwardRequests true, if the requests should be forwarded.
+     */
+    public void setForwardRequests( boolean forwardRequests) {
+	_forwardRequests = forwardRequests;
+    }
+
+    /**
+     * Set the simulated latency of the proxy. Each request is delayed by a random
+     * time between the minimum and the maximum.
+     *
+     * @param minLatency The minimum latency in milliseconds.
+     * @param maxLatency The maximum latency in milliseconds.
+     */
+    public void setLatency( long minLatency, long maxLatency) {
+
+	_minLatency = minLatency;
+	_maxLatency = Math.max( minLatency, maxLatency);
+    }
+
+    /**
+     * Set the number of threads, that handle requests. This has to be set
+     * before the proxy is started.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads( int threads) {
+	_threads = threads;
+    }
+
+    /**
+     * Delay the current request by the simulated latency.
+     */
+    private void simulateLatency() {
+
+	long latency = _minLatency;
+
+	if( _maxLatency > _minLatency) {
+	    latency += (long)( nextRandom() * ( _maxLatency - _minLatency));
+	}
+
+	if( latency > 0L) {
+	    try {
+		Thread.sleep( latency);
+	    } catch( InterruptedException ie) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    /**
+     * Start this proxy.
+     */
+    public synchronized void startService() {
+
+	if( _server != null) {  // Already running?
+	    return;
+	}
+
+	// Don't delay the replies by Nagle's algorithm, so the measured latencies are useful.
+	if( System.getProperty( "sun.net.httpserver.nodelay") == null) {
+	    System.setProperty( "sun.net.httpserver.nodelay", "true");
+	}
+
+	try {
+
+	    _server = HttpServer.create( new InetSocketAddress( "127.0.0.1", _port), 0);
+
+	} catch( IOException ioe) {
+
+	    throw new IllegalStateException( "Cannot start the stand-in proxy on port " + _port + ": " + ioe);
+	}
+
+	_port = _server.getAddress().getPort();  // In case port 0 was used.
+
+	_executor = Executors.newFixedThreadPool( _threads);
+
+	_server.createContext( "/", new ProxyHandler());
+	_server.setExecutor( _executor);
+	_server.start();
+
+	LogUtils.getInstance().getLogger().info( "StandInProxyServer: listening on port " + _port);
+    }
+
+    /**
+     * Stop this proxy.
+     */
+    public synchronized void stopService() {
+
+	if( _server != null) {
+
+	    _server.stop( 0);
+	    _executor.shutdownNow();
+
+	    _server = null;
+	    _executor = null;
+	}
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+
+/**
+ * A circuit breaker for the requests to a host. After a number of failed requests in a row,
+ * the breaker opens and requests fail fast without waiting for the server. After a while,
+ * a single trial request is allowed. If it works, the breaker closes again.
+ */
+public class CircuitBreaker {
+
+    // Inner classes
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+
+	CLOSED,     // Requests are allowed.
+	OPEN,       // Requests fail fast.
+	HALF_OPEN;  // A trial request is running.
+    }
+
+
+    // Instance variables
+
+    /**
+     * The number of failed requests in a row.
+     */
+    private int _failuresInRow = 0;
+
+    /**
+     * The name of the host for the log messages.
+     */
+    private String _host;
+
+    /**
+     * The time in milliseconds, when the breaker was opened or the last trial request was allowed.
+     */
+    private long _openedAt = 0L;
+
+    /**
+     * The policy with the threshold and the open interval.
+     */
+    private HttpPolicy _policy;
+
+    /**
+     * The current state of the breaker.
+     */
+    private State _state = State.CLOSED;
+
+
+    // Constructors
+
+    /**
+     * Create a new closed circuit breaker.
+     *
+     * @param host The name of the host for the log messages.
+     * @param policy The policy with the threshold and the open interval.
+     */
+    public CircuitBreaker( String host, HttpPolicy policy) {
+
+	_host = host;
+	_policy = policy;
+    }
+
+
+    // Methods
+
+    /**
+     * Check, if a request is allowed now. If the breaker is open and the open interval
+     * is over, this request is the trial request. If a trial request didn't report back
+     * within the open interval, another trial request is allowed.
+     *
+     * @return true, if the request is allowed. False, if it should fail fast.
+     */
+    public synchronized boolean allowRequest() {
+
+	switch( _state) {
+
+	case CLOSED: 
+	    return true;
+
+	case OPEN:
+
+	    if( System.currentTimeMillis() - _openedAt >= _policy.getOpenInterval()) {
+
+		_state = State.HALF_OPEN;  // Let this request test the server.
+		_openedAt = System.currentTimeMillis();
+
+		return true;
+	    }
+
+	    return false;
+
+	default:  // A trial request is running already.
+
+	    if( System.currentTimeMillis() - _openedAt >= _policy.getOpenInterval()) {
+
+		_openedAt = System.currentTimeMillis();  // The trial never reported back, so let another request test the server.
+
+		return true;
+	    }
+
+	    return false;
+	}
+    }
+
+    /**
+     * Get the current state of the breaker.
+     *
+     * @return The current state of the breaker.
+     */
+    public synchronized State getState() {
+	return _state;
+    }
+
+    /**
+     * Check, if requests currently fail fast.
+     *
+     * @return true, if requests currently fail fast.
+     */
+    public synchronized boolean isOpen() {
+
+	return ( _state == State.HALF_OPEN) 
+	    || ( ( _state == State.OPEN) && ( System.currentTimeMillis() - _openedAt < _policy.getOpenInterval()));
+    }
+
+    /**
+     * Record a failed request.
+     */
+    public synchronized void recordFailure() {
+
+	++_failuresInRow;
+
+	if( ( _state == State.HALF_OPEN) || ( ( _state == State.CLOSED) && ( _failuresInRow >= _policy.getFailureThreshold()))) {
+
+	    if( _state == State.CLOSED) {
+		LogUtils.getInstance().getLogger().warn( "CircuitBreaker: " + _failuresInRow + " failed requests to " + _host + " in a row, so failing fast now");
+	    }
+
+	    _state = State.OPEN;
+	    _openedAt = System.currentTimeMillis();
+	}
+    }
+
+    /**
+     * Record a successful request.
+     */
+    public synchronized void recordSuccess() {
+
+	if( _state != State.CLOSED) {
+	    LogUtils.getInstance().getLogger().info( "CircuitBreaker: " + _host + " is available again");
+	}
+
+	_failuresInRow = 0;
+	_state = State.CLOSED;
+    }
+
+    /**
+     * Set the policy with the threshold and the open interval.
+     *
+     * @param policy The new policy.
+     */
+    public synchronized void setPolicy( HttpPolicy policy) {
+	_policy = policy;
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+
+/**
+ * The timeouts, retries and circuit breaker settings for the HTTP requests to a trade site.
+ * All the times are in milliseconds.
+ */
+public class HttpPolicy {
+
+    // Instance variables
+
+    /**
+     * The timeout for connecting to a server.
+     */
+    private volatile int _connectTimeout = 15 * 1000;  // 15 seconds should be enough for a working exchange.
+
+    /**
+     * The number of failed requests in a row, that open the circuit breaker.
+     */
+    private volatile int _failureThreshold = 5;
+
+    /**
+     * The number of retries for a failed GET request. POST requests are never retried,
+     * since they might not be idempotent (i.e. orders).
+     */
+    private volatile int _maxRetries = 2;
+
+    /**
+     * The time, that an open circuit breaker fails requests fast, before a trial request is allowed.
+     */
+    private volatile long _openInterval = 30L * 1000L;
+
+    /**
+     * The timeout for waiting on data from a server.
+     */
+    private volatile int _readTimeout = 30 * 1000;
+
+    /**
+     * The delay before the first retry. It's doubled for each further retry.
+     */
+    private volatile long _retryDelay = 500L;
+
+    /**
+     * The maximum delay before a retry.
+     */
+    private volatile long _retryMaxDelay = 8L * 1000L;
+
+    /**
+     * The timeout for a complete request including all retries and the waits for a free connection.
+     * 0 means no total timeout.
+     */
+    private volatile int _totalTimeout = 60 * 1000;
+
+
+    // Constructors
+
+    /**
+     * Create a new policy with the default settings.
+     */
+    public HttpPolicy() {
+    }
+
+    /**
+     * Create a copy of a policy.
+     *
+     * @param policy The policy to copy.
+     */
+    public HttpPolicy( HttpPolicy policy) {
+
+	_connectTimeout = policy._connectTimeout;
+	_failureThreshold = policy._failureThreshold;
+	_maxRetries = policy._maxRetries;
+	_openInterval = policy._openInterval;
+	_readTimeout = policy._readTimeout;
+	_retryDelay = policy._retryDelay;
+	_retryMaxDelay = policy._retryMaxDelay;
+	_totalTimeout = policy._totalTimeout;
+    }
+
+
+    // Methods
+
+    /**
+     * Get the timeout for connecting to a server.
+     *
+     * @return The timeout for connecting to a server. 0 means no timeout.
+     */
+    public int getConnectTimeout() {
+	return _connectTimeout;
+    }
+
+    /**
+     * Get the number of failed requests in a row, that open the circuit breaker.
+     *
+     * @return The number of failed requests in a row, that open the circuit breaker.
+     */
+    public int getFailureThreshold() {
+	return _failureThreshold;
+    }
+
+    /**
+     * Get the number of retries for a failed GET request.
+     *
+     * @return The number of retries for a failed GET request.
+     */
+    public int getMaxRetries() {
+	return _maxRetries;
+    }
+
+    /**
+     * Get the time, that an open circuit breaker fails requests fast.
+     *
+     * @return The time, that an open circuit breaker fails requests fast.
+     */
+    public long getOpenInterval() {
+	return _openInterval;
+    }
+
+    /**
+     * Get the timeout for waiting on data from a server.
+     *
+     * @return The timeout for waiting on data from a server. 0 means no timeout.
+     */
+    public int getReadTimeout() {
+	return _readTimeout;
+    }
+
+    /**
+     * Get the delay before a retry. The delay grows exponentially with the number of
+     * the retry and a random jitter is added, so clients don't retry in lockstep.
+     *
+     * @param retry The number of the retry, starting with 0.
+     *
+     * @return The delay before this retry.
+     */
+    public long getRetryDelay( int retry) {
+
+	long delay = Math.min( _retryMaxDelay, _retryDelay << Math.min( retry, 30));
+
+	// Use a random delay between the half and the full delay.
+	return delay / 2 + (long)( Math.random() * ( delay / 2 + 1));
+    }
+
+    /**
+     * Get the timeout for a complete request.
+     *
+     * @return The timeout for a complete request. 0 means no total timeout.
+     */
+    public int getTotalTimeout() {
+	return _totalTimeout;
+    }
+
+    /**
+     * Set the timeout for connecting to a server.
+     *
+     * @param connectTimeout The timeout for connecting to a server. 0 means no timeout.
+     */
+    public void setConnectTimeout( int connectTimeout) {
+	_connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Set the number of failed requests in a row, that open the circuit breaker.
+     *
+     * @param failureThreshold The number of failed requests in a row, that open the circuit breaker.
+     */
+    public void setFailureThreshold( int failureThreshold) {
+	_failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Set the number of retries for a failed GET request.
+     *
+     * @param maxRetries The number of retries for a failed GET request.
+     */
+    public void setMaxRetries( int maxRetries) {
+	_maxRetries = maxRetries;
+    }
+
+    /**
+     * Set the time, that an open circuit breaker fails requests fast.
+     *
+     * @param openInterval The time, that an open circuit breaker fails requests fast.
+     */
+    public void setOpenInterval( long openInterval) {
+	_openInterval = openInterval;
+    }
+
+    /**
+     * Set the timeout for waiting on data from a server.
+     *
+     * @param readTimeout The timeout for waiting on data from a server. 0 means no timeout.
+     */
+    public void setReadTimeout( int readTimeout) {
+	_readTimeout = readTimeout;
+    }
+
+    /**
+     * Set the delays before the retries.
+     *
+     * @param retryDelay The delay before the first retry.
+     * @param retryMaxDelay The maximum delay before a retry.
+     */
+    public void setRetryDelay( long retryDelay, long retryMaxDelay) {
+
+	_retryDelay = retryDelay;
+	_retryMaxDelay = retryMaxDelay;
+    }
+
+    /**
+     * Set the timeout for a complete request.
+     *
+     * @param totalTimeout The timeout for a complete request. 0 means no total timeout.
+     */
+    public void setTotalTimeout( int totalTimeout) {
+	_totalTimeout = totalTimeout;
+    }
+}
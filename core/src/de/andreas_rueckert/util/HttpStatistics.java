@@ -0,0 +1,677 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.request.RequestRateLimiter;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+
+/**
+ * Statistics of the HTTP requests per endpoint (host and path of the URL, without the query and with
+ * * for the currency pairs and ids in the path).
+ * For each endpoint, there are latency histograms for the phases of a request and counters
+ * for the requests, the errors and the transferred bytes. So slow trade sites and slow
+ * phases (i.e. DNS or the server time to the first byte) can be found on evidence.
+ *
+ * The statistics can be queried via getStatistics or logged periodically via startDump.
+ * If the system property http.statisticsInterval is set (in seconds), the statistics are
+ * logged from the start.
+ */
+public class HttpStatistics {
+
+    // Inner classes
+
+    /**
+     * The phases of a request.
+     */
+    public enum Phase {
+
+	DNS,         // Resolving the host name.
+	CONNECT,     // Opening the connection including the TLS handshake. Almost 0 for a kept-alive connection.
+	FIRST_BYTE,  // Sending the request and waiting for the reply header.
+	READ,        // Reading the body of the reply.
+	PARSE,       // Parsing the reply, as reported by the trade site.
+	TOTAL;       // The complete request without the parsing.
+    }
+
+    /**
+     * The statistics of a single endpoint.
+     */
+    public static class EndpointStatistics {
+
+	// Instance variables
+
+	/**
+	 * The number of received bytes (as sent over the network, so compressed replies count compressed).
+	 */
+	private AtomicLong _bytesReceived = new AtomicLong();
+
+	/**
+	 * The number of sent body bytes.
+	 */
+	private AtomicLong _bytesSent = new AtomicLong();
+
+	/**
+	 * The name of the endpoint (host and path).
+	 */
+	private String _endpoint;
+
+	/**
+	 * The number of failed requests.
+	 */
+	private AtomicLong _errors = new AtomicLong();
+
+	/**
+	 * The histograms of the phases, indexed by the ordinal of the phase.
+	 */
+	private LatencyHistogram [] _histograms = new LatencyHistogram[ Phase.values().length];
+
+	/**
+	 * The host of the endpoint.
+	 */
+	private String _host;
+
+	/**
+	 * The number of requests.
+	 */
+	private AtomicLong _requests = new AtomicLong();
+
+
+	// Constructors
+
+	/**
+	 * Create new statistics for an endpoint.
+	 *
+	 * @param host The host of the endpoint.
+	 * @param endpoint The name of the endpoint (host and path).
+	 */
+	EndpointStatistics( String host, String endpoint) {
+
+	    _host = host;
+	    _endpoint = endpoint;
+
+	    for( int i = 0; i < _histograms.length; ++i) {
+		_histograms[ i] = new LatencyHistogram();
+	    }
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the number of received bytes.
+	 *
+	 * @return The number of received bytes.
+	 */
+	public long getBytesReceived() {
+	    return _bytesReceived.get();
+	}
+
+	/**
+	 * Get the number of sent body bytes.
+	 *
+	 * @return The number of sent body bytes.
+	 */
+	public long getBytesSent() {
+	    return _bytesSent.get();
+	}
+
+	/**
+	 * Get the name of the endpoint.
+	 *
+	 * @return The host and path of the endpoint.
+	 */
+	public String getEndpoint() {
+	    return _endpoint;
+	}
+
+	/**
+	 * Get the number of failed requests.
+	 *
+	 * @return The number of failed requests.
+	 */
+	public long getErrorCount() {
+	    return _errors.get();
+	}
+
+	/**
+	 * Get the histogram of a phase.
+	 *
+	 * @param phase The phase of the requests.
+	 *
+	 * @return The histogram of the phase.
+	 */
+	public LatencyHistogram getHistogram( Phase phase) {
+	    return _histograms[ phase.ordinal()];
+	}
+
+	/**
+	 * Get the host of the endpoint.
+	 *
+	 * @return The host of the endpoint.
+	 */
+	public String getHost() {
+	    return _host;
+	}
+
+	/**
+	 * Get the number of requests.
+	 *
+	 * @return The number of requests.
+	 */
+	public long getRequestCount() {
+	    return _requests.get();
+	}
+
+	/**
+	 * Remove all the recorded values.
+	 */
+	void reset() {
+
+	    for( LatencyHistogram currentHistogram : _histograms) {
+		currentHistogram.reset();
+	    }
+
+	    _requests.set( 0L);
+	    _errors.set( 0L);
+	    _bytesReceived.set( 0L);
+	    _bytesSent.set( 0L);
+	}
+
+	/**
+	 * Get the statistics as a string for the log.
+	 *
+	 * @return The statistics as a string with one line per phase.
+	 */
+	public String toString() {
+
+	    StringBuilder result = new StringBuilder();
+
+	    result.append( _endpoint)
+		.append( ": requests=").append( getRequestCount())
+		.append( " errors=").append( getErrorCount())
+		.append( " received=").append( getBytesReceived())
+		.append( " sent=").append( getBytesSent());
+
+	    for( Phase currentPhase : Phase.values()) {
+
+		LatencyHistogram histogram = getHistogram( currentPhase);
+
+		if( histogram.getCount() > 0L) {
+		    result.append( "\n    ").append( currentPhase).append( ": ").append( histogram);
+		}
+	    }
+
+	    return result.toString();
+	}
+    }
+
+    /**
+     * The timer of a single request. It records the time since the last finished phase,
+     * when the next phase is done. A timer is used by a single request, so it is not thread safe.
+     */
+    public static class RequestTimer {
+
+	// Instance variables
+
+	/**
+	 * The number of received bytes of this request.
+	 */
+	private long _bytesReceived = 0L;
+
+	/**
+	 * Flag to indicate, that the request is finished.
+	 */
+	private boolean _finished = false;
+
+	/**
+	 * The time in nanoseconds, when the last phase was done.
+	 */
+	private long _phaseStart;
+
+	/**
+	 * The time in nanoseconds, when the request was started.
+	 */
+	private long _start;
+
+	/**
+	 * The statistics of the endpoint.
+	 */
+	private EndpointStatistics _statistics;
+
+
+	// Constructors
+
+	/**
+	 * Start a new timer for a request.
+	 *
+	 * @param statistics The statistics of the endpoint.
+	 */
+	RequestTimer( EndpointStatistics statistics) {
+
+	    _statistics = statistics;
+	    _start = _phaseStart = System.nanoTime();
+	}
+
+
+	// Methods
+
+	/**
+	 * Add sent body bytes.
+	 *
+	 * @param bytes The number of sent bytes.
+	 */
+	public void addBytesSent( long bytes) {
+	    _statistics._bytesSent.addAndGet( bytes);
+	}
+
+	/**
+	 * Count the bytes, that are read from a stream.
+	 *
+	 * @param stream The stream to count.
+	 *
+	 * @return A stream, that counts the read bytes for this request.
+	 */
+	public InputStream countReceivedBytes( InputStream stream) {
+
+	    return new FilterInputStream( stream) {
+
+		@Override
+		public int read() throws IOException {
+
+		    int result = super.read();
+
+		    if( result >= 0) {
+			++_bytesReceived;
+		    }
+
+		    return result;
+		}
+
+		@Override
+		public int read( byte [] buffer, int offset, int length) throws IOException {
+
+		    int result = super.read( buffer, offset, length);
+
+		    if( result > 0) {
+			_bytesReceived += result;
+		    }
+
+		    return result;
+		}
+	    };
+	}
+
+	/**
+	 * Finish the request. Only the first call is recorded.
+	 *
+	 * @param success true, if the request was successful.
+	 */
+	public void finish( boolean success) {
+
+	    if( _finished) {
+		return;
+	    }
+
+	    _finished = true;
+
+	    _statistics.getHistogram( Phase.TOTAL).record( System.nanoTime() - _start);
+	    _statistics._requests.incrementAndGet();
+	    _statistics._bytesReceived.addAndGet( _bytesReceived);
+
+	    if( ! success) {
+		_statistics._errors.incrementAndGet();
+	    }
+	}
+
+	/**
+	 * Record the time of a phase, that is done now.
+	 *
+	 * @param phase The phase, that is done.
+	 */
+	public void phaseDone( Phase phase) {
+
+	    long now = System.nanoTime();
+
+	    _statistics.getHistogram( phase).record( now - _phaseStart);
+
+	    _phaseStart = now;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static HttpStatistics _instance = null;
+
+    /**
+     * The maximum number of endpoints with own statistics. Further endpoints share the statistics of their host.
+     */
+    private final static int MAX_ENDPOINTS = 256;
+
+    /**
+     * The path segments, that are replaced in the endpoint keys: currency pairs (i.e. ltc_btc,
+     * btc_usd-ltc_btc or BTCUSD) and numeric or hex ids. Otherwise each pair or order would get
+     * its own statistics.
+     */
+    private final static Pattern VARIABLE_SEGMENT = Pattern.compile( "[A-Za-z0-9]{2,8}([_-][A-Za-z0-9]{2,8})+|[A-Z]{6}|[0-9]{4,}|[0-9a-fA-F-]{16,}");
+
+
+    // Instance variables
+
+    /**
+     * The scheduled dump of the statistics or null, if the statistics are not dumped.
+     */
+    private ScheduledFuture<?> _dump = null;
+
+    /**
+     * The timer for the dumps.
+     */
+    private ScheduledExecutorService _dumpTimer = null;
+
+    /**
+     * The statistics of the endpoints, keyed by host and normalized path.
+     */
+    private ConcurrentMap<String, EndpointStatistics> _endpoints = new ConcurrentHashMap<String, EndpointStatistics>();
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private HttpStatistics() {
+
+	String dumpInterval = System.getProperty( "http.statisticsInterval");
+
+	if( dumpInterval != null) {
+
+	    try {
+
+		startDump( Long.parseLong( dumpInterval.trim()) * 1000L);
+
+	    } catch( NumberFormatException nfe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot parse http.statisticsInterval: " + dumpInterval);
+	    }
+	}
+    }
+
+
+    // Methods
+
+    /**
+     * Log the statistics of all the endpoints and the request queues of the trade sites.
+     */
+    public void dump() {
+
+	StringBuilder message = new StringBuilder( "HTTP statistics:");
+
+	for( EndpointStatistics currentStatistics : getStatistics().values()) {
+	    message.append( "\n  ").append( currentStatistics);
+	}
+
+	LogUtils.getInstance().getLogger().info( message.toString());
+
+	RequestRateLimiter.getInstance().dump();  // The queue waits of the rate limited trade sites.
+    }
+
+    /**
+     * Get the key of the endpoint of an URL.
+     *
+     * @param url The URL.
+     *
+     * @return The host and path of the URL with * for the currency pairs and ids in the path.
+     */
+    private static String getEndpoint( URL url) {
+
+	StringBuilder result = new StringBuilder( url.getHost().toLowerCase());
+
+	if( url.getPort() != -1) {
+	    result.append( ':').append( url.getPort());
+	}
+
+	for( String currentSegment : url.getPath().split( "/", -1)) {
+
+	    if( currentSegment.length() == 0) {  // The part before the leading slash.
+		continue;
+	    }
+
+	    result.append( '/').append( VARIABLE_SEGMENT.matcher( currentSegment).matches() ? "*" : currentSegment);
+	}
+
+	if( url.getPath().endsWith( "/")) {
+	    result.append( '/');
+	}
+
+	return result.toString();
+    }
+
+    /**
+     * Get the statistics of the endpoint of an URL and create them, if necessary.
+     *
+     * @param url The URL of the request.
+     *
+     * @return The statistics of the endpoint.
+     */
+    private EndpointStatistics getEndpointStatistics( URL url) {
+
+	String endpoint = getEndpoint( url);
+	EndpointStatistics result = _endpoints.get( endpoint);
+
+	if( ( result == null) && ( _endpoints.size() >= MAX_ENDPOINTS)) {  // Too many endpoints, so use the statistics of the host.
+
+	    endpoint = url.getHost().toLowerCase() + "/...";
+	    result = _endpoints.get( endpoint);
+	}
+
+	if( result == null) {
+
+	    EndpointStatistics newStatistics = new EndpointStatistics( url.getHost().toLowerCase(), endpoint);
+
+	    result = _endpoints.putIfAbsent( endpoint, newStatistics);
+
+	    if( result == null) {
+		result = newStatistics;
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized HttpStatistics getInstance() {
+
+	if( _instance == null) {               // If there is no instance yet,
+
+	    _instance = new HttpStatistics();  // ..create one.
+	}
+
+	return _instance;  // Return the only instance.
+    }
+
+    /**
+     * Get the statistics of all the endpoints.
+     *
+     * @return The statistics of all the endpoints, sorted by host and path.
+     */
+    public Map<String, EndpointStatistics> getStatistics() {
+	return new TreeMap<String, EndpointStatistics>( _endpoints);
+    }
+
+    /**
+     * Get the statistics of the endpoint of an URL.
+     *
+     * @param url The URL of the requests.
+     *
+     * @return The statistics of the endpoint or null, if there were no requests to it.
+     */
+    public EndpointStatistics getStatistics( String url) {
+
+	try {
+
+	    return _endpoints.get( getEndpoint( new URL( HttpUtils.getEffectiveURL( url))));
+
+	} catch( MalformedURLException me) {
+
+	    return null;
+	}
+    }
+
+    /**
+     * Get the statistics of all the endpoints of a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The statistics of the endpoints on the host of the trade site.
+     */
+    public List<EndpointStatistics> getStatistics( TradeSite tradeSite) {
+
+	List<EndpointStatistics> result = new ArrayList<EndpointStatistics>();
+
+	try {
+
+	    String host = new URL( HttpUtils.getEffectiveURL( tradeSite.getURL())).getHost().toLowerCase();
+
+	    for( EndpointStatistics currentStatistics : getStatistics().values()) {
+		if( currentStatistics.getHost().equals( host)) {
+		    result.add( currentStatistics);
+		}
+	    }
+
+	} catch( MalformedURLException me) {
+
+	    LogUtils.getInstance().getLogger().error( "HttpStatistics: invalid URL of " + tradeSite.getName() + ": " + tradeSite.getURL());
+	}
+
+	return result;
+    }
+
+    /**
+     * Record the time, that a trade site needed to parse a reply.
+     *
+     * @param url The URL of the request.
+     * @param nanos The time to parse the reply in nanoseconds.
+     */
+    public void recordParseTime( String url, long nanos) {
+
+	try {
+
+	    getEndpointStatistics( new URL( HttpUtils.getEffectiveURL( url))).getHistogram( Phase.PARSE).record( nanos);
+
+	} catch( MalformedURLException me) {
+	}
+    }
+
+    /**
+     * Remove all the recorded values.
+     */
+    public void reset() {
+
+	for( EndpointStatistics currentStatistics : _endpoints.values()) {
+	    currentStatistics.reset();
+	}
+    }
+
+    /**
+     * Start timing a request.
+     *
+     * @param url The URL of the request.
+     *
+     * @return The timer for the phases of the request.
+     */
+    public RequestTimer startRequest( URL url) {
+	return new RequestTimer( getEndpointStatistics( url));
+    }
+
+    /**
+     * Log the statistics periodically.
+     *
+     * @param interval The interval between the dumps in milliseconds.
+     */
+    public synchronized void startDump( long interval) {
+
+	stopDump();
+
+	if( _dumpTimer == null) {
+
+	    _dumpTimer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+		    public Thread newThread( Runnable runnable) {
+
+			Thread thread = new Thread( runnable, "HttpStatistics dump");
+
+			thread.setDaemon( true);  // Don't keep the application alive.
+
+			return thread;
+		    }
+		});
+	}
+
+	_dump = _dumpTimer.scheduleAtFixedRate( new Runnable() {
+		public void run() {
+		    dump();
+		}
+	    }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the periodic dumps of the statistics.
+     */
+    public synchronized void stopDump() {
+
+	if( _dump != null) {
+
+	    _dump.cancel( false);
+
+	    _dump = null;
+	}
+    }
+}
@@ -25,25 +25,34 @@
 
 package de.andreas_rueckert.util;
 
-import java.io.BufferedReader;
+import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.TradeSiteRequestType;
+import de.andreas_rueckert.trade.site.request.RequestLimitExceededException;
+import de.andreas_rueckert.trade.site.request.RequestRateLimiter;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.MalformedURLException; 
 import java.net.ProtocolException;
-import java.net.UnknownHostException;
+import java.net.Proxy;
 import java.net.URL;
-import java.net.URLEncoder;
 import java.security.cert.X509Certificate;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -54,316 +63,1000 @@ import javax.net.ssl.X509TrustManager;
 
 /**
  * Class to handle HTTP requests.
+ *
+ * The requests are not serialized, so requests to different hosts run in parallel.
+ * The connections are not disconnected after a request, but the responses are read
+ * completely and the streams are closed, so the JVM keeps the connections alive and
+ * reuses them for the next request to the same host. The number of concurrent
+ * connections per host is limited, so this works like a connection pool per host.
+ *
+ * Each host (trade site) can have an own HttpPolicy with timeouts and retries for
+ * GET requests, and a circuit breaker, that fails requests fast, while the host is down.
+ *
+ * The base URLs of the trade sites can be redirected (i.e. to a local stand-in server for
+ * load tests) via addURLOverride or the http.urlOverrides system property, which has the
+ * form 'https://btc-e.com/=http://localhost:8080/btc-e/,...'.
+ *
+ * The direct requests to the host of a trade site stay within the limits of the RequestRateLimiter.
+ *
+ * The phases, errors and transferred bytes of all the requests are recorded in HttpStatistics.
  */
 public class HttpUtils {
 
+    // Inner classes
+
+    /**
+     * The body of a reply, that holds a connection to the host until it's closed.
+     */
+    static class ResponseStream extends FilterInputStream {
+
+	// Instance variables
+
+	/**
+	 * The connection of the request.
+	 */
+	private HttpURLConnection _connection;
+
+	/**
+	 * The permits of the host, that the connection permit has to be released to or null, if it's released.
+	 */
+	private Semaphore _permits;
+
+	/**
+	 * The scheduled abort of the request or null for no deadline.
+	 */
+	private ScheduledFuture<?> _timeout;
+
+	/**
+	 * The flag, that is set, when the request is aborted.
+	 */
+	private AtomicBoolean _timedOut;
+
+	/**
+	 * The timer of the request.
+	 */
+	private HttpStatistics.RequestTimer _timer;
+
+
+	// Constructors
+
+	/**
+	 * Create a new stream for the body of a reply.
+	 *
+	 * @param connection The connection of the request.
+	 * @param body The stream of the body.
+	 * @param permits The permits of the host, that the connection permit has to be released to.
+	 * @param timeout The scheduled abort of the request or null for no deadline.
+	 * @param timedOut The flag, that is set, when the request is aborted.
+	 * @param timer The timer of the request, that is finished, when the stream is closed.
+	 */
+	ResponseStream( HttpURLConnection connection
+			, InputStream body
+			, Semaphore permits
+			, ScheduledFuture<?> timeout
+			, AtomicBoolean timedOut
+			, HttpStatistics.RequestTimer timer) {
+
+	    super( body);
+
+	    _connection = connection;
+	    _permits = permits;
+	    _timeout = timeout;
+	    _timedOut = timedOut;
+	    _timer = timer;
+	}
+
+
+	// Methods
+
+	/**
+	 * Close the stream and release the connection, so it can be reused for the next request.
+	 */
+	@Override
+	public synchronized void close() {
+
+	    if( _permits == null) {  // Already closed?
+		return;
+	    }
+
+	    try {
+
+		in.close();
+
+	    } catch( IOException ioe) {  // The connection is not reused then.
+
+	    } finally {
+
+		if( _timeout != null) {
+		    _timeout.cancel( false);
+		}
+
+		_permits.release();
+		_permits = null;
+
+		_timer.phaseDone( HttpStatistics.Phase.READ);
+		_timer.finish( ! _timedOut.get());
+	    }
+	}
+
+	/**
+	 * Get the connection of the request, i.e. to read the status code or the header fields of the reply.
+	 *
+	 * @return The connection of the request.
+	 */
+	final HttpURLConnection getConnection() {
+	    return _connection;
+	}
+
+	/**
+	 * Check, if the request was aborted, because it exceeded the total timeout.
+	 *
+	 * @return true, if the request was aborted.
+	 */
+	final boolean isTimedOut() {
+	    return _timedOut.get();
+	}
+    }
+
+
     // Static variables
 
+    /**
+     * The default number of concurrent connections per host.
+     */
+    private final static int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+
+    /**
+     * The maximum size of the read buffer, that is kept for the next response of a thread.
+     */
+    private final static int MAX_KEPT_BUFFER_SIZE = 4 * 1024 * 1024;
+
     /**
      * Flag to indicate, if the SSL certs shouldn't be checked,
      * The Intersango cert is causing issues, that's this code is for.
      */
     private static boolean TRUST_ALL_SSL_CERTS = true;
 
-
-    // Instance variables
-
     /**
      * A hostname verifier, that accepts all host names.
      */
     private static HostnameVerifier _allHostsValid = null;
 
     /**
-     * A trust manager, that doesn't check SSL certs.
+     * The circuit breakers, mapped by host.
      */
-    private static TrustManager [] _trustAllCerts = null;
+    private static Map<String, CircuitBreaker> _circuitBreakers = new ConcurrentHashMap<String, CircuitBreaker>();
 
+    /**
+     * The policy for all the hosts without an own policy.
+     */
+    private static HttpPolicy _defaultPolicy = new HttpPolicy();
 
-    // Constructors
+    /**
+     * The replacements of base URLs, mapped by the original base URL.
+     */
+    private static Map<String, String> _urlOverrides = new ConcurrentHashMap<String, String>();
 
+    /**
+     * The permits for the concurrent connections, mapped by host.
+     */
+    private static volatile Map<String, Semaphore> _hostPermits = new ConcurrentHashMap<String, Semaphore>();
 
-    // Methods
+    /**
+     * The maximum number of concurrent connections per host.
+     */
+    private static volatile int _maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
 
     /**
-     * Perform a HTTP get request.
-     *
-     * @param url The url to query.
-     *
-     * @return The reply as a string, or null if an error occured.
+     * The policies of the hosts with an own policy, mapped by host.
      */
-    public synchronized static String httpGet( String url) {
+    private static Map<String, HttpPolicy> _policies = new ConcurrentHashMap<String, HttpPolicy>();
 
-	// Execute HTTP GET request with no further header lines.
-	return httpGet( url, null);
-    }
+    /**
+     * The proxy for the GET requests of the current thread or null, if the requests are sent directly.
+     */
+    private static ThreadLocal<Proxy> _requestProxy = new ThreadLocal<Proxy>();
 
     /**
-     * Perform a HTTP get request.
-     *
-     * @param url The url to query.
-     * @param headerlines Optional header lines for the request.
-     *
-     * @return The reply as a string, or null if an error occured.
+     * A read buffer per thread, so reading a response doesn't allocate a new buffer each time.
      */
-    public synchronized static String httpGet( String url, Map< String, String> headerlines) {
-      URL requestURL;
-      HttpURLConnection connection;
-      // String agent = "Mozilla/4.0";  // Bitstamp seems to require this as an example.
-      String agent = "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:24.0) Gecko/20100101 Firefox/24.0";
-      BufferedReader reader;
-      String currentLine;
-      StringBuffer result = new StringBuffer();
+    private static ThreadLocal<byte []> _readBuffer = new ThreadLocal<byte []>() {
+	@Override
+	protected byte [] initialValue() {
+	    return new byte[ 64 * 1024];
+	}
+    };
 
-      // Check, if we should trust all SSL certs and enable the fix if necessary.
-      if( TRUST_ALL_SSL_CERTS && ( _trustAllCerts == null)) {
-	  installAllCertsTruster();
-      }
+    /**
+     * The timer to abort requests, that exceed the total timeout.
+     */
+    private static ScheduledExecutorService _timeoutTimer = null;
 
-      try { 
+    /**
+     * A trust manager, that doesn't check SSL certs.
+     */
+    private static TrustManager [] _trustAllCerts = null;
 
-         requestURL = new URL( url);
 
-      } catch( MalformedURLException me) {
+    // Static initializer
 
-	  LogUtils.getInstance().getLogger().error( "URL format error: " + url);
+    static {
 
-	  return null;
-      }
+	// The JVM reads the size of its keep-alive cache only once, so set it before the first connection.
+	if( System.getProperty( "http.maxConnections") == null) {
+	    System.setProperty( "http.maxConnections", "" + DEFAULT_MAX_CONNECTIONS_PER_HOST);
+	}
 
-      try {
+	// Read the URL overrides from the command line, so modules can be redirected without code changes.
+	String urlOverrides = System.getProperty( "http.urlOverrides");
 
-         connection = (HttpURLConnection)requestURL.openConnection();
+	if( urlOverrides != null) {
 
-	 // HttpURLConnection.setFollowRedirects( false);
+	    for( String currentOverride : urlOverrides.split( ",")) {
 
-	 connection.setConnectTimeout( 15 * 1000);  // 15 seconds should be enough for a working exchange.
-	                                            // @see http://stackoverflow.com/questions/3163693/java-urlconnection-timeout
+		int separatorIndex = currentOverride.indexOf( '=');
 
-      } catch( IOException ioe) {
+		if( separatorIndex > 0) {
+		    addURLOverride( currentOverride.substring( 0, separatorIndex).trim(), currentOverride.substring( separatorIndex + 1).trim());
+		}
+	    }
+	}
+    }
 
-	  LogUtils.getInstance().getLogger().error( "Cannot open URL: " + url);
 
-	  return null;
-      }
+    // Constructors
 
-      connection.setRequestProperty( "User-Agent", agent );
-      
-      // Add the additional headerlines, if there were any given.
-      if( headerlines != null) {
-	  for( Map.Entry<String, String> entry : headerlines.entrySet()) {
-	      connection.setRequestProperty( entry.getKey(), entry.getValue());
-	  }
-      }
-	
-      try {
-	  connection.setRequestMethod("GET");
- 
-	  reader = new BufferedReader( new InputStreamReader( connection.getInputStream()));
 
-	  while( ( currentLine = reader.readLine()) != null) {
-	      result.append( currentLine);
-	  }
-	  reader.close();
+    // Methods
 
-      } catch( FileNotFoundException fnfe) {  // Some site return this as an error (i.e. coins-e and MintPal).
+    /**
+     * Get a permit for a new connection to the host of an URL. Requests via a proxy
+     * are limited per proxy, since the connection goes to the proxy.
+     *
+     * @param url The requested URL.
+     * @param proxy The proxy for the request or null, if the request is sent directly.
+     * @param deadline The time in milliseconds, when the request has to be complete, or 0 for no deadline.
+     *
+     * @return The semaphore, that the permit was taken from, or null, if no permit was available in time.
+     */
+    private static Semaphore acquireHostPermit( URL url, Proxy proxy, long deadline) {
 
-	  LogUtils.getInstance().getLogger().error( "File not found exception for URL: " + fnfe.toString());
+	Map<String, Semaphore> hostPermits = _hostPermits;
 
-	  result = null;  // return null
+	String host = proxy == null ? url.getHost() + ":" + url.getPort() : proxy.address().toString();
 
-      } catch( ProtocolException pe) {
+	Semaphore permits = hostPermits.get( host);
 
-	  LogUtils.getInstance().getLogger().error( "Wrong protocol for URL: " + pe.toString());
+	if( permits == null) {
 
-	  result = null;  // return null
+	    synchronized( hostPermits) {
 
-      } catch( IOException ioe) {
+		permits = hostPermits.get( host);
 
-	  LogUtils.getInstance().getLogger().error( "I/O error while reading from URL: " + url + "\n" + ioe.toString());
+		if( permits == null) {
 
-	  /*
-	  Scanner scanner = new Scanner( connection.getErrorStream());  // Get a stream for the error message.
+		    permits = new Semaphore( _maxConnectionsPerHost, true);
 
-	  scanner.useDelimiter("\\Z");
+		    hostPermits.put( host, permits);
+		}
+	    }
+	}
 
-	  String response = scanner.next();  // Get the error message as text.
+	try {
 
-	  System.out.println( "DEBUG: Server error: " + response); */
+	    if( deadline == 0L) {
 
-	  result = null;  // return null
+		permits.acquire();
 
-      } finally {
+		return permits;
+	    }
 
-	  if( connection != null) { 
-	      connection.disconnect();
-	  }
-      } 
+	    return permits.tryAcquire( deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS) ? permits : null;
 
-      return result != null ? result.toString() : null;
-   }
+	} catch( InterruptedException ie) {
 
+	    Thread.currentThread().interrupt();  // Keep the interrupt flag for the caller.
 
-    /** 
-     * Send a HTTP Post request with some post data and return the response as a string.
-     *
-     * @param url The post to post the data to.
-     * @param headerlines Additional lines for the HTTP Post header or null, if no lines should be added.
-     * @param postData The data to send to the server.
+	    return null;
+	}
+    }
+
+    /**
+     * Redirect all the requests to a base URL to another base URL.
      *
-     * @return The response as a string or null, of the request failed.
+     * @param baseURL The original base URL, i.e. 'https://btc-e.com/'.
+     * @param replacementURL The replacement, i.e. 'http://localhost:8080/btc-e/'.
      */
-    public synchronized static String httpPost( String url, Map<String, String> headerlines, String postData) {
-	URL requestURL;
-	HttpURLConnection connection;
-	String agent = "Mozilla/4.0";
-	String type = "application/x-www-form-urlencoded; charset=UTF-8";
-	String encodedData;
-	String currentLine;
-	StringBuffer result = new StringBuffer();
+    public static void addURLOverride( String baseURL, String replacementURL) {
+	_urlOverrides.put( baseURL, replacementURL);
+    }
+
+    /**
+     * Check, if we should trust all SSL certs and enable the fix if necessary.
+     */
+    private static synchronized void checkSSLCertsTruster() {
 
-	// Check, if we should trust all SSL certs and enable the fix if necessary.
 	if( TRUST_ALL_SSL_CERTS && ( _trustAllCerts == null)) {
 	    installAllCertsTruster();
 	}
+    }
+
+    /**
+     * Read the rest of a stream and close it, so the connection can be reused.
+     *
+     * @param stream The stream to discard or null.
+     */
+    private static void discardStream( InputStream stream) {
+
+	if( stream == null) {
+	    return;
+	}
 
 	try {
-	    encodedData = URLEncoder.encode( postData, "UTF-8" );
-	} catch( UnsupportedEncodingException uee) {
 
-	    LogUtils.getInstance().getLogger().error( "Cannot encode post data as UTF-8: " + uee.toString());
+	    byte [] buffer = new byte[ 1024];
 
-	    return null;
+	    while( stream.read( buffer) >= 0) {
+	    }
+
+	    stream.close();
+
+	} catch( IOException ioe) {  // The connection is not reused then.
 	}
+    }
 
-	try { 
-	    requestURL = new URL( url);
-	} catch( MalformedURLException me) {
+    /**
+     * Get the body of a reply as a stream, that decompresses the body, if the server compressed it.
+     *
+     * @param connection The connection of the request.
+     * @param timer The timer of the request, that counts the received bytes.
+     *
+     * @return The body of the reply as a stream.
+     *
+     * @throws IOException if the reply cannot be read.
+     */
+    private static InputStream getBodyStream( HttpURLConnection connection, HttpStatistics.RequestTimer timer) throws IOException {
 
-	    LogUtils.getInstance().getLogger().error( "URL format error: " + url);
+	InputStream stream = timer.countReceivedBytes( connection.getInputStream());
 
-	    return null;
+	if( connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {  // There is no body to decompress.
+	    return stream;
 	}
 
-	try {
-	    connection = (HttpURLConnection)requestURL.openConnection();
-	} catch( IOException ioe) {
+	return "gzip".equalsIgnoreCase( connection.getContentEncoding()) ? new GZIPInputStream( stream) : stream;
+    }
 
-	    LogUtils.getInstance().getLogger().error( "Cannot open URL: " + url);
+    /**
+     * Get the circuit breaker for the host of an URL.
+     *
+     * @param url The URL.
+     *
+     * @return The circuit breaker for the host of the URL.
+     */
+    public static CircuitBreaker getCircuitBreaker( String url) {
+	return getCircuitBreakerForHost( getHost( url));
+    }
 
-	    return null;
-	}
+    /**
+     * Get the circuit breaker for the host of a trade site.
+     *
+     * @param tradeSite The trade site.
+     *
+     * @return The circuit breaker for the host of the trade site.
+     */
+    public static CircuitBreaker getCircuitBreaker( TradeSite tradeSite) {
+	return getCircuitBreaker( tradeSite.getURL());
+    }
 
-	try {
-	    connection.setRequestMethod( "POST" );
-	    connection.setRequestProperty( "User-Agent", agent );
-	    connection.setRequestProperty( "Content-Type", type );
-	    connection.setRequestProperty( "Content-Length", "" + encodedData.length());
+    /**
+     * Get the circuit breaker for the host of an URL.
+     *
+     * @param url The URL.
+     *
+     * @return The circuit breaker for the host of the URL.
+     */
+    private static CircuitBreaker getCircuitBreaker( URL url) {
+	return getCircuitBreakerForHost( url.getHost().toLowerCase());
+    }
 
-	    // Add the additional headerlines, if there were any given.
-	    if( headerlines != null) {
-		for( Map.Entry<String, String> entry : headerlines.entrySet()) {
-		    connection.setRequestProperty( entry.getKey(), entry.getValue());
+    /**
+     * Get the circuit breaker for a host and create it, if it doesn't exist yet.
+     *
+     * @param host The host in lower case.
+     *
+     * @return The circuit breaker for the host.
+     */
+    private static CircuitBreaker getCircuitBreakerForHost( String host) {
+
+	CircuitBreaker circuitBreaker = _circuitBreakers.get( host);
+
+	if( circuitBreaker == null) {
+
+	    synchronized( _circuitBreakers) {
+
+		circuitBreaker = _circuitBreakers.get( host);
+
+		if( circuitBreaker == null) {
+
+		    circuitBreaker = new CircuitBreaker( host, getPolicyForHost( host));
+
+		    _circuitBreakers.put( host, circuitBreaker);
 		}
 	    }
-	
-	    connection.setUseCaches( false);
-	    connection.setDoInput( true);
-	    connection.setDoOutput( true);
+	}
 
-	    OutputStream os = connection.getOutputStream();
-	    os.write( postData.getBytes( "UTF-8") );
-	    os.flush();
-	    os.close();
-	} catch( ProtocolException pe) {
+	return circuitBreaker;
+    }
 
-	    LogUtils.getInstance().getLogger().error( "Cannot set protocol to HTTP POST: " + pe.toString());
+    /**
+     * Get the timeout for connecting to a server.
+     *
+     * @return The timeout for connecting to a server in milliseconds.
+     */
+    public static int getConnectTimeout() {
+	return _defaultPolicy.getConnectTimeout();
+    }
 
-	    result = null;
+    /**
+     * Get the URL, that is actually requested, if the base URL is overridden.
+     * If several overrides match, the longest base URL is used.
+     *
+     * @param url The URL.
+     *
+     * @return The URL with the overridden base URL or the original URL, if no override matches.
+     */
+    public static String getEffectiveURL( String url) {
 
-	} catch( IOException ioe) {
+	if( _urlOverrides.isEmpty()) {  // The usual case.
+	    return url;
+	}
 
-	    LogUtils.getInstance().getLogger().error( "Cannot write HTTP post data to output stream: " + ioe.toString());
+	String matchingBaseURL = null;
 
-	    result = null;
+	for( String currentBaseURL : _urlOverrides.keySet()) {
 
-	} finally {
-	    if( connection != null) {
-		connection.disconnect();
+	    if( url.startsWith( currentBaseURL) && ( ( matchingBaseURL == null) || ( currentBaseURL.length() > matchingBaseURL.length()))) {
+		matchingBaseURL = currentBaseURL;
 	    }
 	}
 
-	if( result == null) {  // Check for errors so far...
-	    return null;     // An error occured...
+	if( matchingBaseURL == null) {
+	    return url;
 	}
 
-	try {
-	    int rc = connection.getResponseCode();
+	String replacementURL = _urlOverrides.get( matchingBaseURL);
 
-	    if( rc == 200) {
+	return replacementURL != null ? replacementURL + url.substring( matchingBaseURL.length()) : url;
+    }
 
-		//Get Response	
-		InputStream is = connection.getInputStream();
-		BufferedReader reader = new BufferedReader( new InputStreamReader(is));
-		while((currentLine = reader.readLine()) != null) {
-		    result.append( currentLine);
-		}
-		reader.close();
-	    } else {
-		result = null;  // Posting resulted in an error.
-	    }
-	} catch( IOException ioe) {
+    /**
+     * Get the host of an URL as the key for the policies and circuit breakers.
+     *
+     * @param url The URL.
+     *
+     * @return The host of the URL in lower case.
+     */
+    private static String getHost( String url) {
 
-	    LogUtils.getInstance().getLogger().error( "Cannot read HTTP POST response: " + ioe.toString());
+	try {
 
-	    result = null;
+	    return new URL( getEffectiveURL( url)).getHost().toLowerCase();
 
-	} finally {
-	    if(connection != null) {
-		connection.disconnect(); 
-	    }
+	} catch( MalformedURLException me) {
+
+	    throw new IllegalArgumentException( "HttpUtils: cannot get the host of URL " + url);
 	}
+    }
 
-	return result != null ? result.toString() : null;
+    /**
+     * Get the maximum number of concurrent connections per host.
+     *
+     * @return The maximum number of concurrent connections per host.
+     */
+    public static int getMaxConnectionsPerHost() {
+	return _maxConnectionsPerHost;
     }
 
     /**
-     * Don't check SSL certs anymore.
+     * Get the policy for the host of an URL.
      *
-     * @see <a href="http://www.rgagnon.com/javadetails/java-fix-certificate-problem-in-HTTPS.html">Fix certificate problem in java</a>
+     * @param url The URL.
+     *
+     * @return The policy of the host or the default policy, if the host has no own policy.
      */
-    private static void installAllCertsTruster() {
-	
-	_trustAllCerts = new TrustManager [] {
-	    new X509TrustManager() {
-		public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-		    return null;
-		}
-		
-		public void checkClientTrusted(X509Certificate[] certs, String authType) {  }
-		
-		public void checkServerTrusted(X509Certificate[] certs, String authType) {  }
-		
-	    }
-	};
+    public static HttpPolicy getPolicy( String url) {
+	return getPolicyForHost( getHost( url));
+    }
 
+    /**
+     * Get the policy for the host of an URL.
+     *
+     * @param url The URL.
+     *
+     * @return The policy of the host or the default policy, if the host has no own policy.
+     */
+    private static HttpPolicy getPolicy( URL url) {
+	return getPolicyForHost( url.getHost().toLowerCase());
+    }
 
-	try {
-	    SSLContext sc = SSLContext.getInstance( "SSL");
-	    sc.init ( null, _trustAllCerts, new java.security.SecureRandom());
-	    HttpsURLConnection.setDefaultSSLSocketFactory( sc.getSocketFactory());
-	} catch( KeyManagementException kme) {
+    /**
+     * Get the policy for a host.
+     *
+     * @param host The host in lower case.
+     *
+     * @return The policy of the host or the default policy, if the host has no own policy.
+     */
+    private static HttpPolicy getPolicyForHost( String host) {
 
-	    LogUtils.getInstance().getLogger().error( "Can't get key in SSL fix installer: " + kme.toString());
+	HttpPolicy policy = _policies.get( host);
 
-	    System.exit( 1);
+	return policy != null ? policy : _defaultPolicy;
+    }
 
-	} catch( NoSuchAlgorithmException nsae) {
+    /**
+     * Get the timeout for waiting on data from a server.
+     *
+     * @return The timeout for waiting on data from a server in milliseconds.
+     */
+    public static int getReadTimeout() {
+	return _defaultPolicy.getReadTimeout();
+    }
 
-	    LogUtils.getInstance().getLogger().error( "Can't get algorithm in SSL fix installer: " + nsae.toString());
+    /**
+     * Perform a HTTP get request and return the body of the reply as a stream.
+     * Failed requests are retried with a growing delay according to the policy of the host.
+     * If the circuit breaker of the host is open, the request fails immediately.
+     *
+     * @param url The url to query.
+     * @param headerlines Optional header lines for the request.
+     *
+     * @return The body of the reply as a stream, or null if an error occured.
+     */
+    static ResponseStream getResponseStream( String url, Map< String, String> headerlines) {
+	URL requestURL;
+	String limitedHost;  // The host of the trade site, even if the URL is redirected.
 
-	    System.exit( 1);
+	checkSSLCertsTruster();
 
-	}
+	try { 
+
+	    limitedHost = new URL( url).getHost();
+
+	    url = getEffectiveURL( url);
+
+	    requestURL = new URL( url);
+
+	} catch( MalformedURLException me) {
+
+	    LogUtils.getInstance().getLogger().error( "URL format error: " + url);
+
+	    return null;
+	}
+
+	HttpPolicy policy = getPolicy( requestURL);
+	CircuitBreaker circuitBreaker = getCircuitBreaker( requestURL);
+	Proxy proxy = _requestProxy.get();
+
+	long deadline = policy.getTotalTimeout() > 0 ? System.currentTimeMillis() + policy.getTotalTimeout() : 0L;
+
+	if( proxy == null) {
+
+	    // Fail fast, while the server seems to be down, without using up a request of the rate limit.
+	    if( circuitBreaker.isOpen()) {
+
+		LogUtils.getInstance().getLogger().warn( "Circuit breaker is open for URL: " + url);
+
+		return null;
+	    }
+
+	    try {
+
+		// Stay within the rate limits of the trade site. Depending on the request policy
+		// of the site, a request beyond the limit waits or is sent via a proxy.
+		proxy = RequestRateLimiter.getInstance().acquire( limitedHost, null, true, deadline);
+
+	    } catch( RequestLimitExceededException rlee) {
+
+		LogUtils.getInstance().getLogger().warn( rlee.getMessage() + " for URL: " + url);
+
+		return null;
+	    }
+	}
+
+	// A failing proxy says nothing about the server, so proxy requests bypass the circuit breaker.
+	// Another thread might have started the trial request of the breaker in the meantime.
+	if( ( proxy == null) && ! circuitBreaker.allowRequest()) {  // Fail fast, while the server seems to be down.
+
+	    LogUtils.getInstance().getLogger().warn( "Circuit breaker is open for URL: " + url);
+
+	    return null;
+	}
+
+	// The caller of a proxy request retries it with another proxy.
+	int maxRetries = proxy == null ? policy.getMaxRetries() : 0;
+
+	boolean serverAvailable = false;  // Set, if the server replied, even if it was an error.
+
+	try {
+
+	    for( int retry = 0; ; ++retry) {
+
+		try {
+
+		    if( retry > 0) {  // A retry counts as a request, too. The first request got its permission already.
+			RequestRateLimiter.getInstance().acquire( limitedHost, null, false, deadline);
+		    }
+
+		    ResponseStream result = requestOnce( requestURL, headerlines, proxy, policy, deadline);
+
+		    serverAvailable = true;
+
+		    return result;
+
+		} catch( IOException ioe) {
+
+		    LogUtils.getInstance().getLogger().error( "I/O error while reading from URL: " + url + "\n" + ioe.toString());
+
+		} catch( RequestLimitExceededException rlee) {
+
+		    LogUtils.getInstance().getLogger().warn( rlee.getMessage() + " for URL: " + url);
+
+		    break;
+		}
+
+		if( retry >= maxRetries) {
+		    break;
+		}
+
+		// Wait before the next attempt, but not beyond the deadline.
+		long delay = policy.getRetryDelay( retry);
+
+		if( ( deadline != 0L) && ( System.currentTimeMillis() + delay >= deadline)) {
+		    break;
+		}
+
+		try {
+
+		    Thread.sleep( delay);
+
+		} catch( InterruptedException ie) {
+
+		    Thread.currentThread().interrupt();  // Keep the interrupt flag for the caller.
+
+		    break;
+		}
+	    }
+
+	} finally {  // Record the outcome even for unchecked exceptions, so a trial request can't leave the breaker half open.
+
+	    if( proxy == null) {
+
+		if( serverAvailable) {
+		    circuitBreaker.recordSuccess();
+		} else {
+		    circuitBreaker.recordFailure();
+		}
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Get the proxy for the GET requests of the current thread.
+     *
+     * @return The proxy for the GET requests of the current thread or null, if the requests are sent directly.
+     */
+    public static Proxy getRequestProxy() {
+	return _requestProxy.get();
+    }
+
+    /**
+     * Get the timeout for a complete request.
+     *
+     * @return The timeout for a complete request in milliseconds or 0, if there is no total timeout.
+     */
+    public static int getTotalTimeout() {
+	return _defaultPolicy.getTotalTimeout();
+    }
+
+    /**
+     * Perform a HTTP get request.
+     *
+     * @param url The url to query.
+     *
+     * @return The reply as a string, or null if an error occured.
+     */
+    public static String httpGet( String url) {
+
+	// Execute HTTP GET request with no further header lines.
+	return httpGet( url, null);
+    }
+
+    /**
+     * Perform a HTTP get request.
+     *
+     * @param url The url to query.
+     * @param headerlines Optional header lines for the request.
+     *
+     * @return The reply as a string, or null if an error occured.
+     */
+    public static String httpGet( String url, Map< String, String> headerlines) {
+
+	ResponseStream stream = getResponseStream( url, headerlines);
+
+	if( stream == null) {  // The request failed.
+	    return null;
+	}
+
+	try {
+
+	    String result = readResponse( stream);
+
+	    return stream.isTimedOut() ? null : result;
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "I/O error while reading from URL: " + url + "\n" + ioe.toString());
+
+	    return null;
+
+	} finally {
+
+	    stream.close();
+	}
+    }
+
+    /**
+     * Perform a HTTP get request and return the (decompressed) body as a stream, so large
+     * responses can be processed without copying them into a string first. The stream
+     * holds a connection to the host, so it has to be closed by the caller.
+     *
+     * @param url The url to query.
+     * @param headerlines Optional header lines for the request.
+     *
+     * @return The body of the reply as a stream, or null if an error occured.
+     */
+    public static InputStream httpGetStream( String url, Map< String, String> headerlines) {
+	return getResponseStream( url, headerlines);
+    }
+
+    /** 
+     * Send a HTTP Post request with some post data and return the response as a string.
+     *
+     * @param url The post to post the data to.
+     * @param headerlines Additional lines for the HTTP Post header or null, if no lines should be added.
+     * @param postData The data to send to the server.
+     *
+     * @return The response as a string or null, of the request failed.
+     */
+    public static String httpPost( String url, Map<String, String> headerlines, String postData) {
+	URL requestURL;
+	HttpURLConnection connection;
+	String agent = "Mozilla/4.0";
+	String type = "application/x-www-form-urlencoded; charset=UTF-8";
+	String result = null;
+
+	checkSSLCertsTruster();
+
+	String limitedHost;  // The host of the trade site, even if the URL is redirected.
+
+	try { 
+	    limitedHost = new URL( url).getHost();
+
+	    url = getEffectiveURL( url);
+
+	    requestURL = new URL( url);
+	} catch( MalformedURLException me) {
+
+	    LogUtils.getInstance().getLogger().error( "URL format error: " + url);
+
+	    return null;
+	}
+
+	HttpPolicy policy = getPolicy( requestURL);
+	CircuitBreaker circuitBreaker = getCircuitBreaker( requestURL);
+
+	// POST requests are never retried, since they might not be idempotent.
+	long deadline = policy.getTotalTimeout() > 0 ? System.currentTimeMillis() + policy.getTotalTimeout() : 0L;
+
+	// Fail fast, while the server seems to be down, without using up a request of the rate limit.
+	if( circuitBreaker.isOpen()) {
+
+	    LogUtils.getInstance().getLogger().warn( "Circuit breaker is open for URL: " + url);
+
+	    return null;
+	}
+
+	try {
+
+	    // POST requests are private API calls with the keys of the user, so they are never sent via a proxy.
+	    // Orders and cancels set their type, all the other private calls are account queries.
+	    RequestRateLimiter.getInstance().acquire( limitedHost, TradeSiteRequestType.Account, false, deadline);
+
+	} catch( RequestLimitExceededException rlee) {
+
+	    LogUtils.getInstance().getLogger().warn( rlee.getMessage() + " for URL: " + url);
+
+	    return null;
+	}
+
+	// Another thread might have started the trial request of the breaker in the meantime.
+	if( ! circuitBreaker.allowRequest()) {  // Fail fast, while the server seems to be down.
+
+	    LogUtils.getInstance().getLogger().warn( "Circuit breaker is open for URL: " + url);
+
+	    return null;
+	}
+
+	boolean serverAvailable = false;  // Set, if the server replied without a server error.
+	Semaphore permits = null;
+	ScheduledFuture<?> timeout = null;
+	AtomicBoolean timedOut = new AtomicBoolean( false);
+	HttpStatistics.RequestTimer timer = null;
+
+	try {
+
+	    permits = acquireHostPermit( requestURL, null, deadline);
+
+	    if( permits == null) {
+
+		LogUtils.getInstance().getLogger().error( "No free connection to " + requestURL.getHost() + " for URL: " + url);
+
+		return null;
+	    }
+
+	    timer = HttpStatistics.getInstance().startRequest( requestURL);
+
+	    try {
+		resolveHost( requestURL, timer);
+
+		connection = openConnection( requestURL, null, policy, deadline);
+	    } catch( IOException ioe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot open URL: " + url);
+
+		return null;
+	    }
+
+	    timeout = scheduleTotalTimeout( connection, deadline, timedOut);
+
+	    try {
+		byte [] encodedData = postData.getBytes( "UTF-8");
+
+		connection.setRequestMethod( "POST" );
+		connection.setRequestProperty( "User-Agent", agent );
+		connection.setRequestProperty( "Content-Type", type );
+		connection.setRequestProperty( "Content-Length", "" + encodedData.length);
+
+		// Add the additional headerlines, if there were any given.
+		if( headerlines != null) {
+		    for( Map.Entry<String, String> entry : headerlines.entrySet()) {
+			connection.setRequestProperty( entry.getKey(), entry.getValue());
+		    }
+		}
+	
+		connection.setUseCaches( false);
+		connection.setDoInput( true);
+		connection.setDoOutput( true);
+
+		connection.connect();
+		timer.phaseDone( HttpStatistics.Phase.CONNECT);
+
+		OutputStream os = connection.getOutputStream();
+		os.write( encodedData);
+		os.flush();
+		os.close();
+
+		timer.addBytesSent( encodedData.length);
+	    } catch( ProtocolException pe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot set protocol to HTTP POST: " + pe.toString());
+
+		return null;
+
+	    } catch( IOException ioe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot write HTTP post data to output stream: " + ioe.toString());
+
+		return null;
+	    }
+
+	    try {
+		int rc = connection.getResponseCode();
+
+		timer.phaseDone( HttpStatistics.Phase.FIRST_BYTE);
+
+		serverAvailable = ( rc < HttpURLConnection.HTTP_INTERNAL_ERROR);
+
+		if( rc == 200) {
+
+		    //Get Response	
+		    result = readResponse( getBodyStream( connection, timer));
+
+		    timer.phaseDone( HttpStatistics.Phase.READ);
+
+		} else {  // Posting resulted in an error.
+
+		    discardStream( connection.getErrorStream());
+		}
+	    } catch( IOException ioe) {
+
+		LogUtils.getInstance().getLogger().error( "Cannot read HTTP POST response: " + ioe.toString());
+
+		discardStream( connection.getErrorStream());
+
+		serverAvailable = false;
+	    }
+
+	} finally {
+
+	    if( timeout != null) {
+		timeout.cancel( false);
+	    }
+
+	    if( timedOut.get()) {  // The request exceeded the total timeout.
+
+		result = null;
+		serverAvailable = false;
+	    }
+
+	    if( permits != null) {
+		permits.release();
+	    }
+
+	    if( timer != null) {
+		timer.finish( result != null);
+	    }
+
+	    if( serverAvailable) {
+		circuitBreaker.recordSuccess();
+	    } else {
+		circuitBreaker.recordFailure();
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Don't check SSL certs anymore.
+     *
+     * @see <a href="http://www.rgagnon.com/javadetails/java-fix-certificate-problem-in-HTTPS.html">Fix certificate problem in java</a>
+     */
+    private static void installAllCertsTruster() {
+	
+	_trustAllCerts = new TrustManager [] {
+	    new X509TrustManager() {
+		public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+		    return null;
+		}
+		
+		public void checkClientTrusted(X509Certificate[] certs, String authType) {  }
+		
+		public void checkServerTrusted(X509Certificate[] certs, String authType) {  }
+		
+	    }
+	};
+
+
+	try {
+	    SSLContext sc = SSLContext.getInstance( "SSL");
+	    sc.init ( null, _trustAllCerts, new java.security.SecureRandom());
+	    HttpsURLConnection.setDefaultSSLSocketFactory( sc.getSocketFactory());
+	} catch( KeyManagementException kme) {
+
+	    LogUtils.getInstance().getLogger().error( "Can't get key in SSL fix installer: " + kme.toString());
+
+	    System.exit( 1);
+
+	} catch( NoSuchAlgorithmException nsae) {
+
+	    LogUtils.getInstance().getLogger().error( "Can't get algorithm in SSL fix installer: " + nsae.toString());
+
+	    System.exit( 1);
+
+	}
 
 	// Create all-trusting host name verifier
 	_allHostsValid = new HostnameVerifier() {
@@ -375,4 +1068,374 @@ public class HttpUtils {
 	// Install the all-trusting host verifier
 	HttpsURLConnection.setDefaultHostnameVerifier( _allHostsValid);
     }
+
+    /**
+     * Check, if a failed request might work, if it's retried. Server errors, rate limits
+     * and network errors are retried, while other client errors are not.
+     *
+     * @param connection The connection of the failed request.
+     *
+     * @return true, if the request should be retried.
+     */
+    private static boolean isRetryable( HttpURLConnection connection) {
+
+	try {
+
+	    int rc = connection.getResponseCode();
+
+	    return ( rc == -1) || ( rc == 429) || ( rc >= HttpURLConnection.HTTP_INTERNAL_ERROR);
+
+	} catch( IOException ioe) {  // No valid reply at all.
+
+	    return true;
+	}
+    }
+
+    /**
+     * Open a new connection with the timeouts of a policy.
+     *
+     * @param url The URL to connect to.
+     * @param proxy The proxy for the connection or null, if the host is connected directly.
+     * @param policy The policy for the host.
+     * @param deadline The time in milliseconds, when the request has to be complete, or 0 for no deadline.
+     *
+     * @return The new connection.
+     *
+     * @throws IOException if the connection cannot be opened.
+     */
+    private static HttpURLConnection openConnection( URL url, Proxy proxy, HttpPolicy policy, long deadline) throws IOException {
+
+	// The JVM keeps the connections alive per host only, so the proxy connections have an own pool per proxy and host.
+	HttpURLConnection connection = proxy == null ? (HttpURLConnection)url.openConnection() : new ProxyHttpURLConnection( url, proxy);
+
+	// HttpURLConnection.setFollowRedirects( false);
+
+	int connectTimeout = policy.getConnectTimeout();
+	int readTimeout = policy.getReadTimeout();
+
+	if( deadline != 0L) {  // Don't wait for the server beyond the deadline.
+
+	    int remaining = (int)Math.max( 1L, deadline - System.currentTimeMillis());
+
+	    connectTimeout = connectTimeout == 0 ? remaining : Math.min( connectTimeout, remaining);
+	    readTimeout = readTimeout == 0 ? remaining : Math.min( readTimeout, remaining);
+	}
+
+	connection.setConnectTimeout( connectTimeout);
+	connection.setReadTimeout( readTimeout);
+
+	// Ask for compressed replies, since the depths and trades are large but compress well.
+	// Callers can still override this with their header lines.
+	connection.setRequestProperty( "Accept-Encoding", "gzip");
+
+	return connection;
+    }
+
+    /**
+     * Read a complete response and close the stream, so the connection can be reused.
+     * The bytes are read into a buffer of the current thread and decoded only once.
+     *
+     * @param stream The input stream of the connection.
+     *
+     * @return The response as a string.
+     *
+     * @throws IOException if the response cannot be read.
+     */
+    static String readResponse( InputStream stream) throws IOException {
+
+	byte [] buffer = _readBuffer.get();
+	int length = 0;
+
+	try {
+
+	    int bytesRead;
+
+	    while( ( bytesRead = stream.read( buffer, length, buffer.length - length)) >= 0) {
+
+		length += bytesRead;
+
+		if( length == buffer.length) {  // Grow the buffer, if it's full.
+
+		    byte [] newBuffer = new byte[ buffer.length * 2];
+
+		    System.arraycopy( buffer, 0, newBuffer, 0, length);
+
+		    buffer = newBuffer;
+		}
+	    }
+
+	} finally {
+
+	    stream.close();
+	}
+
+	// Keep the grown buffer for the next response, unless it got huge.
+	if( buffer.length <= MAX_KEPT_BUFFER_SIZE) {
+	    _readBuffer.set( buffer);
+	}
+
+	return new String( buffer, 0, length, "UTF-8");
+    }
+
+    /**
+     * Perform a single HTTP get request.
+     *
+     * @param requestURL The url to query.
+     * @param headerlines Optional header lines for the request.
+     * @param proxy The proxy for the request or null, if the request is sent directly.
+     * @param policy The policy for the host.
+     * @param deadline The time in milliseconds, when the request has to be complete, or 0 for no deadline.
+     *
+     * @return The body of the reply as a stream or null, if the server rejected the request (i.e. 404),
+     *         so a retry wouldn't help.
+     *
+     * @throws IOException if the request failed and might work, if it's retried.
+     */
+    private static ResponseStream requestOnce( URL requestURL, Map< String, String> headerlines, Proxy proxy, HttpPolicy policy, long deadline) throws IOException {
+	HttpURLConnection connection;
+	// String agent = "Mozilla/4.0";  // Bitstamp seems to require this as an example.
+	String agent = "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:24.0) Gecko/20100101 Firefox/24.0";
+
+	Semaphore permits = acquireHostPermit( requestURL, proxy, deadline);
+
+	if( permits == null) {
+	    throw new IOException( "No free connection to " + requestURL.getHost());
+	}
+
+	ScheduledFuture<?> timeout = null;
+	AtomicBoolean timedOut = new AtomicBoolean( false);
+	HttpStatistics.RequestTimer timer = HttpStatistics.getInstance().startRequest( requestURL);
+
+	try {
+
+	    if( proxy == null) {  // A proxy resolves the host itself.
+		resolveHost( requestURL, timer);
+	    }
+
+	    connection = openConnection( requestURL, proxy, policy, deadline);
+
+	    connection.setRequestProperty( "User-Agent", agent );
+      
+	    // Add the additional headerlines, if there were any given.
+	    if( headerlines != null) {
+		for( Map.Entry<String, String> entry : headerlines.entrySet()) {
+		    connection.setRequestProperty( entry.getKey(), entry.getValue());
+		}
+	    }
+
+	    timeout = scheduleTotalTimeout( connection, deadline, timedOut);
+	
+	    try {
+		connection.setRequestMethod("GET");
+
+		connection.connect();
+		timer.phaseDone( HttpStatistics.Phase.CONNECT);
+
+		connection.getResponseCode();  // Wait for the header of the reply.
+		timer.phaseDone( HttpStatistics.Phase.FIRST_BYTE);
+
+		ResponseStream result = new ResponseStream( connection, getBodyStream( connection, timer), permits, timeout, timedOut, timer);
+
+		permits = null;  // The stream releases the permit now.
+
+		return result;
+
+	    } catch( FileNotFoundException fnfe) {  // Some site return this as an error (i.e. coins-e and MintPal).
+
+		LogUtils.getInstance().getLogger().error( "File not found exception for URL: " + fnfe.toString());
+
+		discardStream( connection.getErrorStream());
+
+	    } catch( ProtocolException pe) {
+
+		LogUtils.getInstance().getLogger().error( "Wrong protocol for URL: " + pe.toString());
+
+	    } catch( IOException ioe) {
+
+		discardStream( connection.getErrorStream());
+
+		if( isRetryable( connection)) {
+		    throw ioe;
+		}
+
+		LogUtils.getInstance().getLogger().error( "Request rejected for URL: " + requestURL + "\n" + ioe.toString());
+	    }
+
+	    return null;
+
+	} finally {
+
+	    if( permits != null) {  // The request failed, so release the connection here.
+
+		if( timeout != null) {
+		    timeout.cancel( false);
+		}
+
+		permits.release();
+
+		timer.finish( false);
+	    }
+	}
+    }
+
+    /**
+     * Resolve the host of an URL, so the time of the DNS lookup is recorded. The JVM caches
+     * the address, so the connection does not resolve the host again.
+     *
+     * @param url The URL of the request.
+     * @param timer The timer of the request.
+     *
+     * @throws IOException if the host cannot be resolved.
+     */
+    private static void resolveHost( URL url, HttpStatistics.RequestTimer timer) throws IOException {
+
+	InetAddress.getByName( url.getHost());
+
+	timer.phaseDone( HttpStatistics.Phase.DNS);
+    }
+
+    /**
+     * Abort a request, if it's not complete at the deadline.
+     *
+     * @param connection The connection of the request.
+     * @param deadline The time in milliseconds, when the request has to be complete, or 0 for no deadline.
+     * @param timedOut The flag, that is set, when the request is aborted.
+     *
+     * @return The scheduled abort, that has to be cancelled after the request, or null for no deadline.
+     */
+    private static ScheduledFuture<?> scheduleTotalTimeout( final HttpURLConnection connection, long deadline, final AtomicBoolean timedOut) {
+
+	if( deadline == 0L) {
+	    return null;
+	}
+
+	synchronized( HttpUtils.class) {
+
+	    if( _timeoutTimer == null) {
+
+		_timeoutTimer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+			public Thread newThread( Runnable runnable) {
+
+			    Thread thread = new Thread( runnable, "HttpUtils timeout timer");
+
+			    thread.setDaemon( true);  // Don't keep the application alive.
+
+			    return thread;
+			}
+		    });
+	    }
+	}
+
+	return _timeoutTimer.schedule( new Runnable() {
+		public void run() {
+
+		    timedOut.set( true);
+
+		    LogUtils.getInstance().getLogger().error( "Total timeout exceeded for URL: " + connection.getURL());
+
+		    connection.disconnect();  // Closes the socket, so the blocked request fails.
+		}
+	    }, Math.max( 0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Set the timeout for connecting to a server for all the hosts without an own policy.
+     *
+     * @param connectTimeout The timeout for connecting to a server in milliseconds. 0 means no timeout.
+     */
+    public static void setConnectTimeout( int connectTimeout) {
+	_defaultPolicy.setConnectTimeout( connectTimeout);
+    }
+
+    /**
+     * Set the maximum number of concurrent connections per host.
+     * The number of kept alive connections is set via the http.maxConnections system property,
+     * which the JVM only reads once, so it should be set before the first request.
+     *
+     * @param maxConnectionsPerHost The maximum number of concurrent connections per host.
+     */
+    public static void setMaxConnectionsPerHost( int maxConnectionsPerHost) {
+
+	if( maxConnectionsPerHost < 1) {
+	    throw new IllegalArgumentException( "HttpUtils: at least 1 connection per host is required");
+	}
+
+	_maxConnectionsPerHost = maxConnectionsPerHost;
+
+	// Running requests release their permits to the old semaphores.
+	_hostPermits = new ConcurrentHashMap<String, Semaphore>();
+    }
+
+    /**
+     * Remove the redirection of a base URL.
+     *
+     * @param baseURL The original base URL.
+     */
+    public static void removeURLOverride( String baseURL) {
+	_urlOverrides.remove( baseURL);
+    }
+
+    /**
+     * Set an own policy for the host of an URL.
+     *
+     * @param url The URL.
+     * @param policy The policy for the host or null to use the default policy again.
+     */
+    public static void setPolicy( String url, HttpPolicy policy) {
+
+	String host = getHost( url);
+
+	if( policy == null) {
+	    _policies.remove( host);
+	} else {
+	    _policies.put( host, policy);
+	}
+
+	getCircuitBreakerForHost( host).setPolicy( getPolicyForHost( host));
+    }
+
+    /**
+     * Set an own policy for the host of a trade site.
+     *
+     * @param tradeSite The trade site.
+     * @param policy The policy for the trade site or null to use the default policy again.
+     */
+    public static void setPolicy( TradeSite tradeSite, HttpPolicy policy) {
+	setPolicy( tradeSite.getURL(), policy);
+    }
+
+    /**
+     * Set the timeout for waiting on data from a server for all the hosts without an own policy.
+     *
+     * @param readTimeout The timeout for waiting on data from a server in milliseconds. 0 means no timeout.
+     */
+    public static void setReadTimeout( int readTimeout) {
+	_defaultPolicy.setReadTimeout( readTimeout);
+    }
+
+    /**
+     * Send the GET requests of the current thread via a proxy. The proxy requests are not
+     * retried and don't affect the circuit breaker of the host, so the caller should retry
+     * failed requests with another proxy. POST requests are always sent directly.
+     *
+     * @param proxy The proxy for the GET requests or null, to send the requests directly again.
+     */
+    public static void setRequestProxy( Proxy proxy) {
+
+	if( proxy == null) {
+	    _requestProxy.remove();
+	} else {
+	    _requestProxy.set( proxy);
+	}
+    }
+
+    /**
+     * Set the timeout for a complete request, including the wait for a free connection,
+     * for all the hosts without an own policy.
+     *
+     * @param totalTimeout The timeout for a complete request in milliseconds. 0 means no total timeout.
+     */
+    public static void setTotalTimeout( int totalTimeout) {
+	_defaultPolicy.setTotalTimeout( totalTimeout);
+    }
 }
@@ -27,16 +27,17 @@ package de.andreas_rueckert.util;
 
 import de.andreas_rueckert.NotYetImplementedException;
 import de.andreas_rueckert.trade.site.request.NoProxyAvailableException;
+import de.andreas_rueckert.trade.site.request.ProxyLease;
 import de.andreas_rueckert.trade.site.request.ProxyRequestHandler;
 import de.andreas_rueckert.trade.site.request.ProxyRequestResult;
 import de.andreas_rueckert.trade.site.request.ProxyRequestResultType;
 import de.andreas_rueckert.trade.site.request.RatedProxy;
 import de.andreas_rueckert.trade.site.TradeSite;
 import java.io.BufferedReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
@@ -155,10 +156,12 @@ public class HttpUtilsProxy {
 
 	while( attempts++ < MAX_ATTEMPTS) {  // While we didn't reach the maximum number of attempts.
 
+	    ProxyLease lease;
+
 	    try {  
 		
 		// Ask the proxy handler to give us a proxy for the given trade site.
-		proxy = ProxyRequestHandler.getInstance().recommendProxy( tradeSite);
+		lease = ProxyRequestHandler.getInstance().leaseProxy( tradeSite);
 
 	    } catch( NoProxyAvailableException npae) {  // The proxy handler cannot return a proxy for this trade site.
 
@@ -167,64 +170,24 @@ public class HttpUtilsProxy {
 
 	    }
 
-	    // Check the timestamp of the last request of the given proxy and wait
-	    // until we can do the actual request.
-	    long lastRequestTimestamp = proxy.getLastRequestTimestamp( tradeSite);
-
-	    if( lastRequestTimestamp != -1) {  // If there were requests before, wait until we can do another request.
-
-		// Compute the timestamp for the next possible request.
-		long nextRequestTimestamp = lastRequestTimestamp + tradeSite.getMinimumRequestInterval();
+	    proxy = lease.getProxy();
 
-		long currentTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	    // Wait until the proxy may send another request to this trade site.
+	    if( ! lease.waitForRequestTime()) {  // This would be a real problem, 
+		// because we don't want to request early and get banned!
 
-		if( currentTime < nextRequestTimestamp) {  // If we cannot do a request yet.
-
-		    try {  // Wait the difference (in milliseconds here).
-		    
-			// To make sure, that we don't run into rounding problems, add 1 millisecond.
-			Thread.sleep( ( nextRequestTimestamp - currentTime) / 1000 + 1);
-		    
-		    } catch( InterruptedException ie) {  // This would be a real problem, 
-			// because we don't want to request early and get banned!
-
-			// return new ProxyRequestResult( ProxyRequestResultType.FAILURE, null, "Waiting for the next allow request timestamp failed.");
-
-			continue;  // Do another attempt to fetch the data.
-		    }	
-		}
+		continue;  // Do another attempt to fetch the data.
 	    }
 
-	    try {
+	    long requestTime = TimeUtils.getInstance().getCurrentGMTTimeMicros();
+	    long requestStart = System.nanoTime();
 
-		// Start with a check, if the proxy address is reachable.
-		if( ! ( (InetSocketAddress)( proxy.address())).getAddress().isReachable(10000)) {  // Started with 15000, but it's quite slow.
-			
-		    // Get the rating of this proxy.
-		    if( proxy.getRating() == RatedProxy.MIN_RATING) {  // If the proxy already has the minimum rating.
-			    
-			proxy.setActive( false);  // Deactivate the proxy.
-			
-		    } else {  // This proxy already has a rating better than the minimum rating.
-
-			proxy.rateDown();  // Rate it down.
-		    }
-		
-		    // return new ProxyRequestResult( ProxyRequstResultType.PROXY_NOT_AVAILABLE);  // Cannot connect to proxy.
-		    
-		    continue;  // Do another attempt with another proxy.
-		}
+	    // The proxy handler only leases proxies, that passed their last background test, so
+	    // the proxy isn't checked here. Connections to the host through this proxy are reused.
+	    connection = new ProxyHttpURLConnection( requestURL, proxy);
 
-		connection = (HttpURLConnection)requestURL.openConnection( proxy);
-		
-	    } catch( IOException ioe) {
-		
-		LogUtils.getInstance().getLogger().error( "Cannot open URL: " + url);
-		
-		// return new ProxyRequestResult( ProxyRequestResultType.IO_ERROR);
-
-		continue;  // Do another attempt to fetch the data.
-	    }
+	    // The host is resolved by the proxy, so there is no DNS phase here.
+	    HttpStatistics.RequestTimer timer = HttpStatistics.getInstance().startRequest( requestURL);
 		
 	    try {
 
@@ -248,9 +211,13 @@ public class HttpUtilsProxy {
 
 		// Try to connect to the test website.
 		connection.connect();
+		timer.phaseDone( HttpStatistics.Phase.CONNECT);
 
 		// Do the request and check before, if the proxy is used in the connection!
-		BufferedReader reader = new BufferedReader( new InputStreamReader( connection.getInputStream()));
+		InputStream body = connection.getInputStream();
+		timer.phaseDone( HttpStatistics.Phase.FIRST_BYTE);
+
+		BufferedReader reader = new BufferedReader( new InputStreamReader( timer.countReceivedBytes( body)));
 
 		String currentLine;  // Buffer for the current input line.
 
@@ -258,6 +225,11 @@ public class HttpUtilsProxy {
 		    result.append( currentLine);
 		}
 		reader.close();
+
+		timer.phaseDone( HttpStatistics.Phase.READ);
+		timer.finish( true);
+
+		proxy.recordRequest( tradeSite, requestTime, ( System.nanoTime() - requestStart) / 1000L, true);
 		
 	    } catch( ProtocolException pe) {
 		
@@ -279,16 +251,25 @@ public class HttpUtilsProxy {
 		  System.out.println( "DEBUG: Server error: " + response); */
 		
 		// return new ProxyRequestResult( ProxyRequestREsultType.IO_ERROR);
+
+		connection.disconnect();  // Don't reuse a connection with an unread reply.
+
+		// Record the failure, which also rates the proxy down.
+		proxy.recordRequest( tradeSite, requestTime, ( System.nanoTime() - requestStart) / 1000L, false);
+
+		// Get the rating of this proxy.
+		if( proxy.getRating() == RatedProxy.MIN_RATING) {  // If the proxy already has the minimum rating.
+
+		    proxy.setActive( false);  // Deactivate the proxy, until the background test finds it working again.
+		}
 		    
 		continue;  // Do another attempt to fetch the data.
 		
 	    } finally {
-		
-		if( connection != null) {      // If there is still a connection, 
-		    
-		    connection.disconnect();   // close it.
-			
-		}
+
+		timer.finish( false);  // Records nothing, if the request was successful.
+
+		// The connection is not disconnected, since it's back in the pool for the next request.
 	    } 
 
 	    // Update the request statistics
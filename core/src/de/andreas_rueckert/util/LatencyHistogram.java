@@ -0,0 +1,245 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A histogram of durations with a resolution of microseconds. The buckets grow
+ * logarithmically with 16 buckets per power of 2, so each value is stored with an
+ * error of less than 7%, from 1 microsecond up to some days, in a fixed small array.
+ * Recording a value is lock free, so the histogram can be updated by many threads.
+ */
+public class LatencyHistogram {
+
+    // Static variables
+
+    /**
+     * The number of bits for the buckets within a power of 2.
+     */
+    private final static int SUB_BUCKET_BITS = 4;
+
+    /**
+     * The number of buckets within a power of 2.
+     */
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The largest value in microseconds, that can be stored. Larger values are stored as this value.
+     */
+    private final static long MAX_VALUE = ( 1L << 40) - 1L;
+
+    /**
+     * The number of buckets.
+     */
+    private final static int BUCKETS = getBucketIndex( MAX_VALUE) + 1;
+
+
+    // Instance variables
+
+    /**
+     * The number of values in each bucket.
+     */
+    private AtomicLongArray _buckets = new AtomicLongArray( BUCKETS);
+
+    /**
+     * The number of recorded values.
+     */
+    private AtomicLong _count = new AtomicLong();
+
+    /**
+     * The largest recorded value in microseconds.
+     */
+    private AtomicLong _max = new AtomicLong();
+
+    /**
+     * The sum of all the recorded values in microseconds.
+     */
+    private AtomicLong _sum = new AtomicLong();
+
+
+    // Constructors
+
+    /**
+     * Create a new empty histogram.
+     */
+    public LatencyHistogram() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the index of the bucket for a value.
+     *
+     * @param value The value in microseconds.
+     *
+     * @return The index of the bucket.
+     */
+    private static int getBucketIndex( long value) {
+
+	if( value < SUB_BUCKETS) {  // Small values get an own bucket.
+	    return (int)value;
+	}
+
+	int exponent = 63 - Long.numberOfLeadingZeros( value);
+	int subBucket = (int)( ( value >>> ( exponent - SUB_BUCKET_BITS)) & ( SUB_BUCKETS - 1));
+
+	return SUB_BUCKETS + ( exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the largest value, that is stored in a bucket.
+     *
+     * @param index The index of the bucket.
+     *
+     * @return The largest value of the bucket in microseconds.
+     */
+    private static long getBucketLimit( int index) {
+
+	if( index < SUB_BUCKETS) {
+	    return index;
+	}
+
+	int shift = ( index - SUB_BUCKETS) / SUB_BUCKETS;
+	long subBucket = ( index - SUB_BUCKETS) % SUB_BUCKETS;
+
+	return ( ( SUB_BUCKETS + subBucket + 1L) << shift) - 1L;
+    }
+
+    /**
+     * Get the number of recorded values.
+     *
+     * @return The number of recorded values.
+     */
+    public long getCount() {
+	return _count.get();
+    }
+
+    /**
+     * Get the largest recorded value.
+     *
+     * @return The largest recorded value in microseconds.
+     */
+    public long getMaxMicros() {
+	return _max.get();
+    }
+
+    /**
+     * Get the mean of the recorded values.
+     *
+     * @return The mean of the recorded values in microseconds or 0, if there are no values.
+     */
+    public double getMeanMicros() {
+
+	long count = _count.get();
+
+	return count == 0L ? 0.0d : (double)_sum.get() / count;
+    }
+
+    /**
+     * Get a percentile of the recorded values.
+     *
+     * @param percentile The percentile (0.0 - 100.0).
+     *
+     * @return The value in microseconds, that is not exceeded by the given percentage
+     *         of the values, or 0, if there are no values.
+     */
+    public long getPercentileMicros( double percentile) {
+
+	long count = _count.get();
+
+	if( count == 0L) {
+	    return 0L;
+	}
+
+	long rank = Math.max( 1L, (long)Math.ceil( percentile / 100.0d * count));
+	long seen = 0L;
+
+	for( int i = 0; i < BUCKETS; ++i) {
+
+	    seen += _buckets.get( i);
+
+	    if( seen >= rank) {  // Don't report more than the largest value.
+		return Math.min( getBucketLimit( i), _max.get());
+	    }
+	}
+
+	return _max.get();  // Values were recorded, while we counted.
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void record( long nanos) {
+
+	long value = Math.min( MAX_VALUE, Math.max( 0L, nanos / 1000L));
+
+	_buckets.incrementAndGet( getBucketIndex( value));
+	_sum.addAndGet( value);
+	_count.incrementAndGet();
+
+	long max;
+	while( value > ( max = _max.get()) && ! _max.compareAndSet( max, value)) {
+	}
+    }
+
+    /**
+     * Remove all the recorded values.
+     */
+    public void reset() {
+
+	for( int i = 0; i < BUCKETS; ++i) {
+	    _buckets.set( i, 0L);
+	}
+
+	_count.set( 0L);
+	_sum.set( 0L);
+	_max.set( 0L);
+    }
+
+    /**
+     * Get the histogram as a short string for the log.
+     *
+     * @return The count, mean, median, 90th and 99th percentile and maximum in milliseconds.
+     */
+    public String toString() {
+
+	return String.format( Locale.US
+			      , "n=%d mean=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms"
+			      , getCount()
+			      , getMeanMicros() / 1000.0d
+			      , getPercentileMicros( 50.0d) / 1000.0d
+			      , getPercentileMicros( 90.0d) / 1000.0d
+			      , getPercentileMicros( 99.0d) / 1000.0d
+			      , getMaxMicros() / 1000.0d);
+    }
+}
@@ -0,0 +1,458 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.apache.commons.codec.digest.DigestUtils;
+
+
+/**
+ * An on disk cache for rarely changing metadata of the trade sites, like the lists of traded
+ * pairs, fees and precisions. A cached reply is returned immediately, even if it's older than
+ * its time to live. In that case it's revalidated in the background via a conditional request
+ * (ETag / If-Modified-Since), so the next start of the app uses the new data.
+ */
+public class MetadataCache {
+
+    // Inner classes
+
+    /**
+     * A cached reply.
+     */
+    static class CacheEntry {
+
+	// Instance variables
+
+	/**
+	 * The body of the reply.
+	 */
+	String _body;
+
+	/**
+	 * The ETag of the reply or null, if the server didn't send one.
+	 */
+	String _etag;
+
+	/**
+	 * The time in milliseconds, when the reply was fetched or revalidated the last time.
+	 */
+	long _fetchTime;
+
+	/**
+	 * The Last-Modified date of the reply or null, if the server didn't send one.
+	 */
+	String _lastModified;
+    }
+
+
+    // Static variables
+
+    /**
+     * The default time to live of a cached reply in milliseconds.
+     */
+    public final static long DEFAULT_TTL = 24L * 60L * 60L * 1000L;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static MetadataCache _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The directory for the cache files.
+     */
+    private File _cacheDirectory = new File( System.getProperty( "user.home") + "/.tradeapp/metadata");
+
+    /**
+     * The cached replies in memory, mapped by URL.
+     */
+    private Map<String, CacheEntry> _entries = new ConcurrentHashMap<String, CacheEntry>();
+
+    /**
+     * The URLs, that are currently revalidated in the background.
+     */
+    private Set<String> _pendingRefreshes = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * The executor for the background revalidations or null, if it's not created yet.
+     */
+    private ExecutorService _refreshExecutor = null;
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private MetadataCache() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get the reply for an URL with the default time to live.
+     *
+     * @param url The URL to query.
+     *
+     * @return The (possibly cached) reply or null, if it's neither cached nor available.
+     */
+    public String get( String url) {
+	return get( url, DEFAULT_TTL);
+    }
+
+    /**
+     * Get the reply for an URL. A cached reply is returned immediately. If it's older than
+     * the time to live, it's revalidated in the background. Only an URL without a cached
+     * reply is requested in the calling thread.
+     *
+     * @param url The URL to query.
+     * @param ttl The time to live of a cached reply in milliseconds.
+     *
+     * @return The (possibly cached) reply or null, if it's neither cached nor available.
+     */
+    public String get( String url, long ttl) {
+
+	// Cache the reply under the URL, that is actually requested, so a redirected trade site doesn't overwrite the real data.
+	url = HttpUtils.getEffectiveURL( url);
+
+	CacheEntry entry = getEntry( url);
+
+	if( entry == null) {  // Nothing cached yet, so we have to wait for the server.
+	    return refresh( url);
+	}
+
+	if( System.currentTimeMillis() - entry._fetchTime > ttl) {
+	    scheduleRefresh( url);
+	}
+
+	return entry._body;
+    }
+
+    /**
+     * Get the cache file for an URL.
+     *
+     * @param url The URL.
+     *
+     * @return The cache file for the URL.
+     */
+    private File getCacheFile( String url) {
+	return new File( _cacheDirectory, DigestUtils.md5Hex( url) + ".properties");
+    }
+
+    /**
+     * Get the cached reply for an URL from memory or from disk.
+     *
+     * @param url The URL.
+     *
+     * @return The cached reply or null, if the URL is not cached.
+     */
+    private CacheEntry getEntry( String url) {
+
+	CacheEntry entry = _entries.get( url);
+
+	if( entry == null) {
+
+	    entry = readEntry( url);
+
+	    if( entry != null) {
+		_entries.put( url, entry);
+	    }
+	}
+
+	return entry;
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized MetadataCache getInstance() {
+
+	if( _instance == null) {              // If there is no instance yet,
+
+	    _instance = new MetadataCache();  // ..create one.
+	}
+
+	return _instance;  // Return the only instance.
+    }
+
+    /**
+     * Read a cached reply from disk.
+     *
+     * @param url The URL.
+     *
+     * @return The cached reply or null, if there is no readable cache file.
+     */
+    private CacheEntry readEntry( String url) {
+
+	File cacheFile = getCacheFile( url);
+
+	if( ! cacheFile.isFile()) {
+	    return null;
+	}
+
+	Properties properties = new Properties();
+
+	try {
+
+	    InputStream in = new FileInputStream( cacheFile);
+
+	    try {
+		properties.load( in);
+	    } finally {
+		in.close();
+	    }
+
+	    // The file name is just a hash, so check the URL.
+	    if( ! url.equals( properties.getProperty( "url")) || ( properties.getProperty( "body") == null)) {
+		return null;
+	    }
+
+	    CacheEntry entry = new CacheEntry();
+
+	    entry._body = properties.getProperty( "body");
+	    entry._etag = properties.getProperty( "etag");
+	    entry._lastModified = properties.getProperty( "lastModified");
+	    entry._fetchTime = Long.parseLong( properties.getProperty( "fetchTime", "0"));
+
+	    return entry;
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().warn( "MetadataCache: cannot read " + cacheFile + ": " + ioe);
+
+	} catch( NumberFormatException nfe) {
+
+	    LogUtils.getInstance().getLogger().warn( "MetadataCache: invalid fetch time in " + cacheFile);
+	}
+
+	return null;
+    }
+
+    /**
+     * Revalidate or fetch the reply for an URL in the calling thread.
+     *
+     * @param url The URL to query.
+     *
+     * @return The current reply, the cached reply, if the server is not available, or null, if there is neither.
+     */
+    public String refresh( String url) {
+
+	url = HttpUtils.getEffectiveURL( url);
+
+	CacheEntry entry = getEntry( url);
+
+	// Make the request conditional, if there is a cached reply.
+	Map<String, String> headerlines = new HashMap<String, String>();
+
+	if( entry != null) {
+
+	    if( entry._etag != null) {
+		headerlines.put( "If-None-Match", entry._etag);
+	    }
+
+	    if( entry._lastModified != null) {
+		headerlines.put( "If-Modified-Since", entry._lastModified);
+	    }
+	}
+
+	HttpUtils.ResponseStream stream = HttpUtils.getResponseStream( url, headerlines);
+
+	if( stream == null) {  // The server is not available, so use the cached reply, if there is one.
+	    return entry != null ? entry._body : null;
+	}
+
+	try {
+
+	    HttpURLConnection connection = stream.getConnection();
+
+	    if( ( entry != null) && ( connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+
+		CacheEntry revalidatedEntry = new CacheEntry();
+
+		revalidatedEntry._body = entry._body;
+		revalidatedEntry._etag = entry._etag;
+		revalidatedEntry._lastModified = entry._lastModified;
+		revalidatedEntry._fetchTime = System.currentTimeMillis();
+
+		writeEntry( url, revalidatedEntry);
+
+		return entry._body;
+	    }
+
+	    String body = HttpUtils.readResponse( stream);
+
+	    if( stream.isTimedOut() || ( connection.getResponseCode() != HttpURLConnection.HTTP_OK)) {
+		return entry != null ? entry._body : null;
+	    }
+
+	    CacheEntry newEntry = new CacheEntry();
+
+	    newEntry._body = body;
+	    newEntry._etag = connection.getHeaderField( "ETag");
+	    newEntry._lastModified = connection.getHeaderField( "Last-Modified");
+	    newEntry._fetchTime = System.currentTimeMillis();
+
+	    writeEntry( url, newEntry);
+
+	    return body;
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().error( "MetadataCache: cannot read reply from " + url + ": " + ioe);
+
+	    return entry != null ? entry._body : null;
+
+	} finally {
+
+	    stream.close();
+	}
+    }
+
+    /**
+     * Revalidate the reply for an URL in the background, unless it's already revalidated.
+     *
+     * @param url The URL to revalidate.
+     */
+    private void scheduleRefresh( final String url) {
+
+	if( ! _pendingRefreshes.add( url)) {  // Already scheduled?
+	    return;
+	}
+
+	synchronized( this) {
+
+	    if( _refreshExecutor == null) {
+
+		_refreshExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+			public Thread newThread( Runnable runnable) {
+
+			    Thread thread = new Thread( runnable, "MetadataCache refresh");
+
+			    thread.setDaemon( true);  // Don't keep the application alive.
+
+			    return thread;
+			}
+		    });
+	    }
+	}
+
+	_refreshExecutor.execute( new Runnable() {
+		public void run() {
+
+		    try {
+			refresh( url);
+		    } finally {
+			_pendingRefreshes.remove( url);
+		    }
+		}
+	    });
+    }
+
+    /**
+     * Set the directory for the cache files.
+     *
+     * @param cacheDirectory The directory for the cache files.
+     */
+    public void setCacheDirectory( File cacheDirectory) {
+
+	_cacheDirectory = cacheDirectory;
+
+	_entries.clear();  // Read the replies from the new directory.
+    }
+
+    /**
+     * Store a reply in memory and on disk. The file is written to a temporary file first,
+     * so a crash never leaves a broken cache file.
+     *
+     * @param url The URL.
+     * @param entry The reply.
+     */
+    private void writeEntry( String url, CacheEntry entry) {
+
+	_entries.put( url, entry);
+
+	Properties properties = new Properties();
+
+	properties.setProperty( "url", url);
+	properties.setProperty( "body", entry._body);
+	properties.setProperty( "fetchTime", "" + entry._fetchTime);
+
+	if( entry._etag != null) {
+	    properties.setProperty( "etag", entry._etag);
+	}
+
+	if( entry._lastModified != null) {
+	    properties.setProperty( "lastModified", entry._lastModified);
+	}
+
+	File cacheFile = getCacheFile( url);
+	File temporaryFile = new File( cacheFile.getPath() + ".tmp");
+
+	try {
+
+	    if( ! _cacheDirectory.isDirectory() && ! _cacheDirectory.mkdirs()) {
+		throw new IOException( "cannot create directory " + _cacheDirectory);
+	    }
+
+	    OutputStream out = new FileOutputStream( temporaryFile);
+
+	    try {
+		properties.store( out, "Cached reply from " + url);
+	    } finally {
+		out.close();
+	    }
+
+	    // Windows cannot rename to an existing file.
+	    if( ! temporaryFile.renameTo( cacheFile) && ( ! cacheFile.delete() || ! temporaryFile.renameTo( cacheFile))) {
+		throw new IOException( "cannot rename " + temporaryFile + " to " + cacheFile);
+	    }
+
+	} catch( IOException ioe) {
+
+	    LogUtils.getInstance().getLogger().warn( "MetadataCache: cannot write " + cacheFile + ": " + ioe);
+	}
+    }
+}
@@ -26,6 +26,7 @@
 package de.andreas_rueckert.util;
 
 import de.andreas_rueckert.trade.site.TradeSite;
+import de.andreas_rueckert.trade.site.request.RequestRateLimiter;
 import de.andreas_rueckert.trade.site.server.TradeServer;
 import de.andreas_rueckert.util.LogUtils;
 import java.io.File;
@@ -395,6 +396,8 @@ public class ModuleLoader {
     private void registerTradeSite( TradeSite site) {
 
         _registeredTradeSites.put( site.getName(), site);  // Add the trade site to the list of sites.
+
+        RequestRateLimiter.getInstance().register( site);  // Limit the requests to the trade site.
         
         // _chartProvider.registerTradeSite( site);  // Tell the chart provider about the new trade site.
 
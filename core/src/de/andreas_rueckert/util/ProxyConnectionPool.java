@@ -0,0 +1,559 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+
+
+/**
+ * A pool of kept alive connections through proxies.
+ *
+ * The keep-alive cache of the JVM holds the connections per host and closes a cached
+ * connection, if the next request to the host uses another proxy. Since the proxies
+ * are rotated for each request, this pool keeps the connections per proxy and host,
+ * so a request through a proxy, that was used for the same host before, doesn't
+ * need the connects to the proxy and the host and the TLS handshake again.
+ *
+ * HTTPS hosts are reached through a CONNECT tunnel (HTTP proxies) or a SOCKS connection.
+ */
+class ProxyConnectionPool {
+
+    // Inner classes
+
+    /**
+     * A connection through a proxy to a host.
+     */
+    static class PooledSocket {
+
+	// Instance variables
+
+	/**
+	 * The time in milliseconds, since the connection is idle in the pool.
+	 */
+	private long _idleSince;
+
+	/**
+	 * The buffered input stream of the connection, that is kept for all the requests.
+	 */
+	private InputStream _in;
+
+	/**
+	 * The key of the connection in the pool.
+	 */
+	private String _key;
+
+	/**
+	 * The buffered output stream of the connection.
+	 */
+	private OutputStream _out;
+
+	/**
+	 * Flag to indicate, if the connection was taken from the pool.
+	 */
+	private boolean _reused = false;
+
+	/**
+	 * The socket of the connection.
+	 */
+	private Socket _socket;
+
+
+	// Constructors
+
+	/**
+	 * Create a new pooled connection.
+	 *
+	 * @param key The key of the connection in the pool.
+	 * @param socket The connected socket.
+	 *
+	 * @throws IOException if the streams of the socket cannot be opened.
+	 */
+	PooledSocket( String key, Socket socket) throws IOException {
+
+	    _key = key;
+	    _socket = socket;
+	    _in = new BufferedInputStream( socket.getInputStream());
+	    _out = new BufferedOutputStream( socket.getOutputStream());
+	}
+
+
+	// Methods
+
+	/**
+	 * Close the connection.
+	 */
+	final void close() {
+
+	    try {
+
+		_socket.close();
+
+	    } catch( IOException ioe) {  // Nothing to do about it.
+	    }
+	}
+
+	/**
+	 * Get the input stream of the connection.
+	 *
+	 * @return The input stream of the connection.
+	 */
+	final InputStream getInputStream() {
+	    return _in;
+	}
+
+	/**
+	 * Get the output stream of the connection.
+	 *
+	 * @return The output stream of the connection.
+	 */
+	final OutputStream getOutputStream() {
+	    return _out;
+	}
+
+	/**
+	 * Check, if the connection was taken from the pool, so the server might have closed it meanwhile.
+	 *
+	 * @return true, if the connection was used for an earlier request.
+	 */
+	final boolean isReused() {
+	    return _reused;
+	}
+
+	/**
+	 * Set the read timeout of the connection.
+	 *
+	 * @param readTimeout The read timeout in milliseconds. 0 means no timeout.
+	 *
+	 * @throws IOException if the timeout cannot be set.
+	 */
+	final void setReadTimeout( int readTimeout) throws IOException {
+	    _socket.setSoTimeout( readTimeout);
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The maximum time in milliseconds, that a connection is kept idle in the pool.
+     * Most servers close idle connections after 5 to 15 seconds.
+     */
+    private final static long MAX_IDLE_TIME = 5000L;
+
+    /**
+     * The maximum number of idle connections per proxy and host.
+     */
+    private final static int MAX_IDLE_CONNECTIONS = 4;
+
+    /**
+     * The only instance of this class (singleton pattern).
+     */
+    private static ProxyConnectionPool _instance = null;
+
+
+    // Instance variables
+
+    /**
+     * The idle connections, mapped by proxy and host. The latest connection is the first one.
+     */
+    private ConcurrentHashMap< String, LinkedList< PooledSocket>> _idleConnections = new ConcurrentHashMap< String, LinkedList< PooledSocket>>();
+
+    /**
+     * The time in milliseconds of the last removal of expired connections.
+     */
+    private volatile long _lastCleanup = System.currentTimeMillis();
+
+    /**
+     * The number of opened connections.
+     */
+    private AtomicLong _openedConnections = new AtomicLong( 0L);
+
+    /**
+     * The number of connections, that were reused from the pool.
+     */
+    private AtomicLong _reusedConnections = new AtomicLong( 0L);
+
+
+    // Constructors
+
+    /**
+     * Private constructor for singleton pattern.
+     */
+    private ProxyConnectionPool() {
+    }
+
+
+    // Methods
+
+    /**
+     * Get a connection through a proxy to the host of an URL. An idle connection is reused, if there is one.
+     *
+     * @param proxy The proxy.
+     * @param url The URL to request.
+     * @param connectTimeout The connect timeout in milliseconds. 0 means no timeout.
+     * @param readTimeout The read timeout in milliseconds. 0 means no timeout.
+     *
+     * @return The connection.
+     *
+     * @throws IOException if no connection can be opened.
+     */
+    final PooledSocket acquire( Proxy proxy, URL url, int connectTimeout, int readTimeout) throws IOException {
+
+	String key = getKey( proxy, url);
+
+	LinkedList< PooledSocket> idleConnections = _idleConnections.get( key);
+
+	if( idleConnections != null) {
+
+	    long oldestIdleTime = System.currentTimeMillis() - MAX_IDLE_TIME;
+
+	    while( true) {
+
+		PooledSocket connection;
+
+		synchronized( idleConnections) {
+		    connection = idleConnections.poll();
+		}
+
+		if( connection == null) {  // No idle connection left.
+		    break;
+		}
+
+		if( ( connection._idleSince < oldestIdleTime) || connection._socket.isClosed()) {  // The server might have closed it.
+
+		    connection.close();
+
+		    continue;
+		}
+
+		connection._reused = true;
+		connection.setReadTimeout( readTimeout);
+
+		_reusedConnections.incrementAndGet();
+
+		return connection;
+	    }
+	}
+
+	return open( proxy, url, connectTimeout, readTimeout);
+    }
+
+    /**
+     * Close all the idle connections, i.e. if the proxies changed.
+     */
+    public final void closeIdleConnections() {
+
+	for( LinkedList< PooledSocket> currentConnections : _idleConnections.values()) {
+
+	    synchronized( currentConnections) {
+
+		for( PooledSocket currentConnection : currentConnections) {
+		    currentConnection.close();
+		}
+
+		currentConnections.clear();
+	    }
+	}
+    }
+
+    /**
+     * Close the connections, that are idle for too long.
+     */
+    private void closeExpiredConnections() {
+
+	long oldestIdleTime = System.currentTimeMillis() - MAX_IDLE_TIME;
+
+	_lastCleanup = System.currentTimeMillis();
+
+	for( Iterator< LinkedList< PooledSocket>> listIterator = _idleConnections.values().iterator(); listIterator.hasNext(); ) {
+
+	    LinkedList< PooledSocket> currentConnections = listIterator.next();
+
+	    synchronized( currentConnections) {
+
+		// The oldest connections are at the end of the list.
+		while( ! currentConnections.isEmpty() && ( currentConnections.getLast()._idleSince < oldestIdleTime)) {
+		    currentConnections.removeLast().close();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Get the only instance of this class (singleton pattern).
+     *
+     * @return The only instance of this class.
+     */
+    public static synchronized ProxyConnectionPool getInstance() {
+
+	if( _instance == null) {  // If there is no instance yet,
+
+	    _instance = new ProxyConnectionPool();  // create one.
+	}
+
+	return _instance;
+    }
+
+    /**
+     * Get the key of the connections through a proxy to the host of an URL.
+     *
+     * @param proxy The proxy.
+     * @param url The URL.
+     *
+     * @return The key of the connections.
+     */
+    private String getKey( Proxy proxy, URL url) {
+
+	return proxy.type() + " " + proxy.address() + " " + url.getProtocol() + "://" + url.getHost() + ":" + getPort( url);
+    }
+
+    /**
+     * Get the number of connections, that were opened.
+     *
+     * @return The number of opened connections.
+     */
+    public final long getOpenedConnections() {
+	return _openedConnections.get();
+    }
+
+    /**
+     * Get the port of an URL.
+     *
+     * @param url The URL.
+     *
+     * @return The port of the URL or the default port of its protocol.
+     */
+    static int getPort( URL url) {
+
+	return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    /**
+     * Get the number of requests, that reused a kept alive connection.
+     *
+     * @return The number of reused connections.
+     */
+    public final long getReusedConnections() {
+	return _reusedConnections.get();
+    }
+
+    /**
+     * Open a new connection through a proxy to the host of an URL.
+     *
+     * @param proxy The proxy.
+     * @param url The URL to request.
+     * @param connectTimeout The connect timeout in milliseconds. 0 means no timeout.
+     * @param readTimeout The read timeout in milliseconds. 0 means no timeout.
+     *
+     * @return The new connection.
+     *
+     * @throws IOException if the connection cannot be opened.
+     */
+    private PooledSocket open( Proxy proxy, URL url, int connectTimeout, int readTimeout) throws IOException {
+
+	String host = url.getHost();
+	int port = getPort( url);
+	boolean secure = "https".equalsIgnoreCase( url.getProtocol());
+
+	Socket socket;
+
+	if( proxy.type() == Proxy.Type.SOCKS) {  // The SOCKS proxy resolves the host itself.
+
+	    socket = new Socket( proxy);
+
+	    socket.connect( InetSocketAddress.createUnresolved( host, port), connectTimeout);
+
+	} else if( proxy.type() == Proxy.Type.HTTP) {
+
+	    InetSocketAddress proxyAddress = (InetSocketAddress)proxy.address();
+
+	    if( proxyAddress.isUnresolved()) {
+		proxyAddress = new InetSocketAddress( proxyAddress.getHostName(), proxyAddress.getPort());
+	    }
+
+	    socket = new Socket();
+
+	    socket.connect( proxyAddress, connectTimeout);
+
+	} else {
+
+	    throw new IllegalArgumentException( "ProxyConnectionPool: no proxy given for " + url);
+	}
+
+	try {
+
+	    socket.setSoTimeout( readTimeout);
+	    socket.setTcpNoDelay( true);
+
+	    if( secure) {
+
+		if( proxy.type() == Proxy.Type.HTTP) {  // Ask the proxy for a tunnel to the host.
+		    openTunnel( socket, host, port);
+		}
+
+		SSLSocket sslSocket = (SSLSocket)HttpsURLConnection.getDefaultSSLSocketFactory().createSocket( socket, host, port, true);
+
+		sslSocket.startHandshake();
+
+		if( ! HttpsURLConnection.getDefaultHostnameVerifier().verify( host, sslSocket.getSession())) {
+		    throw new IOException( "ProxyConnectionPool: host name " + host + " does not match the certificate");
+		}
+
+		socket = sslSocket;
+	    }
+
+	    _openedConnections.incrementAndGet();
+
+	    return new PooledSocket( getKey( proxy, url), socket);
+
+	} catch( IOException ioe) {
+
+	    socket.close();
+
+	    throw ioe;
+	}
+    }
+
+    /**
+     * Open a tunnel through a HTTP proxy to a host.
+     *
+     * @param socket The socket connected to the proxy.
+     * @param host The host to connect to.
+     * @param port The port to connect to.
+     *
+     * @throws IOException if the proxy refuses the tunnel.
+     */
+    private void openTunnel( Socket socket, String host, int port) throws IOException {
+
+	OutputStream out = socket.getOutputStream();
+
+	out.write( ( "CONNECT " + host + ":" + port + " HTTP/1.1\r\nHost: " + host + ":" + port + "\r\n\r\n").getBytes( "ISO-8859-1"));
+	out.flush();
+
+	// Read the reply unbuffered, so no byte of the TLS handshake is consumed.
+	InputStream in = socket.getInputStream();
+
+	String statusLine = readLine( in);
+
+	if( ( statusLine == null) || ! statusLine.matches( "HTTP/1\\.[01] 200.*")) {
+	    throw new IOException( "ProxyConnectionPool: proxy refused tunnel to " + host + ": " + statusLine);
+	}
+
+	String currentLine;
+
+	while( ( ( currentLine = readLine( in)) != null) && ! currentLine.isEmpty()) {  // Skip the header lines.
+	}
+    }
+
+    /**
+     * Read a line of a HTTP header.
+     *
+     * @param in The stream to read from.
+     *
+     * @return The line without the line break or null, if the stream ended.
+     *
+     * @throws IOException if the line cannot be read or is too long.
+     */
+    static String readLine( InputStream in) throws IOException {
+
+	ByteArrayOutputStream line = new ByteArrayOutputStream( 128);
+
+	int currentByte;
+
+	while( ( currentByte = in.read()) != '\n') {
+
+	    if( currentByte == -1) {
+		return line.size() == 0 ? null : line.toString( "ISO-8859-1");
+	    }
+
+	    if( currentByte != '\r') {
+
+		line.write( currentByte);
+
+		if( line.size() > 65536) {
+		    throw new IOException( "ProxyConnectionPool: header line too long");
+		}
+	    }
+	}
+
+	return line.toString( "ISO-8859-1");
+    }
+
+    /**
+     * Put a connection back into the pool, after a reply was read completely.
+     *
+     * @param connection The connection.
+     */
+    final void release( PooledSocket connection) {
+
+	if( connection._socket.isClosed()) {
+	    return;
+	}
+
+	connection._idleSince = System.currentTimeMillis();
+
+	LinkedList< PooledSocket> idleConnections = _idleConnections.get( connection._key);
+
+	if( idleConnections == null) {
+
+	    idleConnections = new LinkedList< PooledSocket>();
+
+	    LinkedList< PooledSocket> existingConnections = _idleConnections.putIfAbsent( connection._key, idleConnections);
+
+	    if( existingConnections != null) {
+		idleConnections = existingConnections;
+	    }
+	}
+
+	synchronized( idleConnections) {
+
+	    idleConnections.addFirst( connection);
+
+	    if( idleConnections.size() > MAX_IDLE_CONNECTIONS) {  // Keep only the latest connections.
+		idleConnections.removeLast().close();
+	    }
+	}
+
+	if( connection._idleSince - _lastCleanup > MAX_IDLE_TIME) {  // Close the connections of proxies, that aren't used any more.
+	    closeExpiredConnections();
+	}
+    }
+}
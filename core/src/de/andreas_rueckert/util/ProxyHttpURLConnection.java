@@ -0,0 +1,824 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A HTTP connection through a proxy, that takes its socket from the ProxyConnectionPool
+ * and puts it back, once the reply is read completely. So consecutive requests through
+ * the same proxy to the same host reuse the connection and its TLS session, while the
+ * callers keep using the usual HttpURLConnection API.
+ *
+ * Redirects are not followed and there is no authentication support.
+ */
+class ProxyHttpURLConnection extends HttpURLConnection {
+
+    // Inner classes
+
+    /**
+     * The body of a reply. The connection is released to the pool, once the body is read completely.
+     */
+    class BodyStream extends InputStream {
+
+	// Instance variables
+
+	/**
+	 * Flag to indicate, if the body is transferred in chunks.
+	 */
+	private boolean _chunked;
+
+	/**
+	 * Flag to indicate, if the first chunk was read.
+	 */
+	private boolean _chunkStarted = false;
+
+	/**
+	 * Flag to indicate, if the body is read completely or closed.
+	 */
+	private boolean _done = false;
+
+	/**
+	 * The stream of the connection.
+	 */
+	private InputStream _in;
+
+	/**
+	 * Flag to indicate, if the connection can be reused after the body.
+	 */
+	private boolean _keepAlive;
+
+	/**
+	 * The remaining bytes of the body or the current chunk, or -1, if the body ends, when the server closes the connection.
+	 */
+	private long _remaining;
+
+
+	// Constructors
+
+	/**
+	 * Create a new stream for the body of a reply.
+	 *
+	 * @param in The stream of the connection.
+	 * @param length The length of the body, or -1, if the body ends, when the server closes the connection.
+	 * @param chunked Flag to indicate, if the body is transferred in chunks.
+	 * @param keepAlive Flag to indicate, if the connection can be reused after the body.
+	 */
+	BodyStream( InputStream in, long length, boolean chunked, boolean keepAlive) {
+
+	    _in = in;
+	    _remaining = chunked ? 0L : length;
+	    _chunked = chunked;
+	    _keepAlive = keepAlive && ( length != -1L || chunked);
+
+	    if( ! chunked && ( length == 0L)) {  // There is no body.
+		finish( _keepAlive);
+	    }
+	}
+
+
+	// Methods
+
+	/**
+	 * Get the number of bytes, that can be read without blocking.
+	 *
+	 * @return The number of bytes, that can be read without blocking.
+	 *
+	 * @throws IOException if the stream cannot be read.
+	 */
+	@Override
+	public int available() throws IOException {
+
+	    if( _done || ( _remaining == 0L)) {
+		return 0;
+	    }
+
+	    int available = _in.available();
+
+	    return _remaining == -1L ? available : (int)Math.min( available, _remaining);
+	}
+
+	/**
+	 * Close the stream. A small rest of the body is read, so the connection can be reused.
+	 */
+	@Override
+	public void close() {
+
+	    if( _done) {
+		return;
+	    }
+
+	    try {
+
+		byte [] buffer = new byte[ 4096];
+
+		for( int drained = 0; ! _done && _keepAlive && ( drained < MAX_DRAINED_BYTES); ) {
+
+		    int bytesRead = read( buffer, 0, buffer.length);
+
+		    if( bytesRead == -1) {
+			break;
+		    }
+
+		    drained += bytesRead;
+		}
+
+	    } catch( IOException ioe) {  // The connection is closed then.
+	    }
+
+	    finish( false);  // Does nothing, if the connection is released already.
+	}
+
+	/**
+	 * Mark the body as done and release or close the connection.
+	 *
+	 * @param reuse Flag to indicate, if the connection can be reused.
+	 */
+	private void finish( boolean reuse) {
+
+	    if( _done) {
+		return;
+	    }
+
+	    _done = true;
+
+	    if( reuse) {
+		releaseSocket();
+	    } else {
+		closeSocket();
+	    }
+	}
+
+	/**
+	 * Read the size of the next chunk.
+	 *
+	 * @return The size of the next chunk.
+	 *
+	 * @throws IOException if the size cannot be read.
+	 */
+	private long readChunkSize() throws IOException {
+
+	    if( _chunkStarted) {  // Skip the line break after the last chunk.
+		ProxyConnectionPool.readLine( _in);
+	    }
+
+	    _chunkStarted = true;
+
+	    String sizeLine = ProxyConnectionPool.readLine( _in);
+
+	    if( sizeLine == null) {
+		throw new EOFException( "Unexpected end of chunked reply from " + url);
+	    }
+
+	    int extensionStart = sizeLine.indexOf( ';');
+
+	    try {
+
+		return Long.parseLong( ( extensionStart == -1 ? sizeLine : sizeLine.substring( 0, extensionStart)).trim(), 16);
+
+	    } catch( NumberFormatException nfe) {
+
+		throw new IOException( "Invalid chunk size from " + url + ": " + sizeLine);
+	    }
+	}
+
+	/**
+	 * Read a single byte of the body.
+	 *
+	 * @return The byte or -1 at the end of the body.
+	 *
+	 * @throws IOException if the body cannot be read.
+	 */
+	@Override
+	public int read() throws IOException {
+
+	    byte [] buffer = new byte[ 1];
+
+	    return read( buffer, 0, 1) == -1 ? -1 : buffer[ 0] & 0xff;
+	}
+
+	/**
+	 * Read some bytes of the body.
+	 *
+	 * @param buffer The buffer for the bytes.
+	 * @param offset The offset of the first byte in the buffer.
+	 * @param length The maximum number of bytes to read.
+	 *
+	 * @return The number of read bytes or -1 at the end of the body.
+	 *
+	 * @throws IOException if the body cannot be read.
+	 */
+	@Override
+	public int read( byte [] buffer, int offset, int length) throws IOException {
+
+	    if( _done) {
+		return -1;
+	    }
+
+	    if( length == 0) {
+		return 0;
+	    }
+
+	    if( _chunked && ( _remaining == 0L)) {
+
+		_remaining = readChunkSize();
+
+		if( _remaining == 0L) {  // The last chunk.
+
+		    String trailerLine;
+
+		    while( ( ( trailerLine = ProxyConnectionPool.readLine( _in)) != null) && ! trailerLine.isEmpty()) {  // Skip the trailer.
+		    }
+
+		    finish( _keepAlive);
+
+		    return -1;
+		}
+	    }
+
+	    int bytesRead = _in.read( buffer, offset, _remaining == -1L ? length : (int)Math.min( length, _remaining));
+
+	    if( bytesRead == -1) {
+
+		if( _remaining == -1L) {  // The server closed the connection at the end of the body.
+
+		    finish( false);
+
+		    return -1;
+		}
+
+		finish( false);
+
+		throw new EOFException( "Unexpected end of reply from " + url);
+	    }
+
+	    if( _remaining != -1L) {
+
+		_remaining -= bytesRead;
+
+		if( ! _chunked && ( _remaining == 0L)) {  // Release the connection as soon as possible.
+		    finish( _keepAlive);
+		}
+	    }
+
+	    return bytesRead;
+	}
+    }
+
+
+    // Static variables
+
+    /**
+     * The maximum number of bytes, that are read from an unread body, so the connection can be reused.
+     */
+    private final static int MAX_DRAINED_BYTES = 65536;
+
+
+    // Instance variables
+
+    /**
+     * The stream for the body of a successful reply or null.
+     */
+    private InputStream _body = null;
+
+    /**
+     * The stream for the body of an error reply or null.
+     */
+    private InputStream _errorStream = null;
+
+    /**
+     * The keys of the header fields of the reply. The first key is null for the status line.
+     */
+    private List< String> _headerKeys = new ArrayList< String>();
+
+    /**
+     * The values of the header fields of the reply. The first value is the status line.
+     */
+    private List< String> _headerValues = new ArrayList< String>();
+
+    /**
+     * The proxy of the connection.
+     */
+    private Proxy _proxy;
+
+    /**
+     * The header fields of the request.
+     */
+    private Map< String, List< String>> _requestHeaders = null;
+
+    /**
+     * Flag to indicate, if the reply header was read.
+     */
+    private boolean _responseRead = false;
+
+    /**
+     * The connection from the pool or null, if it's released or closed.
+     */
+    private ProxyConnectionPool.PooledSocket _socket = null;
+
+
+    // Constructors
+
+    /**
+     * Create a new connection through a proxy.
+     *
+     * @param url The URL to request.
+     * @param proxy The proxy for the request.
+     */
+    ProxyHttpURLConnection( URL url, Proxy proxy) {
+
+	super( url);
+
+	_proxy = proxy;
+    }
+
+
+    // Methods
+
+    /**
+     * Close the connection, if it's still in use.
+     */
+    private synchronized void closeSocket() {
+
+	if( _socket != null) {
+
+	    _socket.close();
+
+	    _socket = null;
+	}
+    }
+
+    /**
+     * Get a connection from the pool.
+     *
+     * @throws IOException if no connection can be opened.
+     */
+    @Override
+    public void connect() throws IOException {
+
+	if( connected) {
+	    return;
+	}
+
+	_requestHeaders = getRequestProperties();  // Not available any more, once the connection is connected.
+
+	ProxyConnectionPool.PooledSocket socket = ProxyConnectionPool.getInstance().acquire( _proxy, url, getConnectTimeout(), getReadTimeout());
+
+	synchronized( this) {
+	    _socket = socket;
+	}
+
+	connected = true;
+    }
+
+    /**
+     * Close the connection, i.e. to abort a request. If the reply was read completely,
+     * the connection is in the pool already and stays open.
+     */
+    @Override
+    public void disconnect() {
+	closeSocket();
+    }
+
+    /**
+     * Get the body of an error reply.
+     *
+     * @return The body of an error reply or null, if there was no error.
+     */
+    @Override
+    public InputStream getErrorStream() {
+	return _errorStream;
+    }
+
+    /**
+     * Get the value of a header field of the reply.
+     *
+     * @param index The index of the header field. 0 is the status line.
+     *
+     * @return The value of the header field or null, if there is no such field.
+     */
+    @Override
+    public String getHeaderField( int index) {
+
+	try {
+
+	    readResponse();
+
+	} catch( IOException ioe) {
+
+	    return null;
+	}
+
+	return index < _headerValues.size() ? _headerValues.get( index) : null;
+    }
+
+    /**
+     * Get the value of a header field of the reply.
+     *
+     * @param name The name of the header field.
+     *
+     * @return The last value of the header field or null, if there is no such field.
+     */
+    @Override
+    public String getHeaderField( String name) {
+
+	try {
+
+	    readResponse();
+
+	} catch( IOException ioe) {
+
+	    return null;
+	}
+
+	for( int currentIndex = _headerKeys.size() - 1; currentIndex > 0; --currentIndex) {
+
+	    if( _headerKeys.get( currentIndex).equalsIgnoreCase( name)) {
+		return _headerValues.get( currentIndex);
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Get the key of a header field of the reply.
+     *
+     * @param index The index of the header field. 0 is the status line, which has no key.
+     *
+     * @return The key of the header field or null, if there is no such field.
+     */
+    @Override
+    public String getHeaderFieldKey( int index) {
+
+	try {
+
+	    readResponse();
+
+	} catch( IOException ioe) {
+
+	    return null;
+	}
+
+	return index < _headerKeys.size() ? _headerKeys.get( index) : null;
+    }
+
+    /**
+     * Get all the header fields of the reply.
+     *
+     * @return The header fields of the reply, mapped by their keys. The status line has the key null.
+     */
+    @Override
+    public Map< String, List< String>> getHeaderFields() {
+
+	Map< String, List< String>> result = new LinkedHashMap< String, List< String>>();
+
+	try {
+
+	    readResponse();
+
+	} catch( IOException ioe) {
+
+	    return result;
+	}
+
+	for( int currentIndex = 0; currentIndex < _headerKeys.size(); ++currentIndex) {
+
+	    List< String> values = result.get( _headerKeys.get( currentIndex));
+
+	    if( values == null) {
+
+		values = new ArrayList< String>();
+
+		result.put( _headerKeys.get( currentIndex), values);
+	    }
+
+	    values.add( _headerValues.get( currentIndex));
+	}
+
+	return Collections.unmodifiableMap( result);
+    }
+
+    /**
+     * Get the body of the reply.
+     *
+     * @return The body of the reply.
+     *
+     * @throws IOException if the request failed or the server replied with an error.
+     */
+    @Override
+    public InputStream getInputStream() throws IOException {
+
+	readResponse();
+
+	if( responseCode >= HTTP_BAD_REQUEST) {
+
+	    if( ( responseCode == HTTP_NOT_FOUND) || ( responseCode == HTTP_GONE)) {
+		throw new FileNotFoundException( url.toString());
+	    }
+
+	    throw new IOException( "Server returned HTTP response code: " + responseCode + " for URL: " + url);
+	}
+
+	return _body;
+    }
+
+    /**
+     * Get the status code of the reply.
+     *
+     * @return The status code of the reply.
+     *
+     * @throws IOException if the request failed.
+     */
+    @Override
+    public int getResponseCode() throws IOException {
+
+	readResponse();
+
+	return responseCode;
+    }
+
+    /**
+     * Get the target of the request line.
+     *
+     * @return The complete URL for HTTP proxies and plain HTTP, or the path and query otherwise.
+     */
+    private String getRequestTarget() {
+
+	String path = url.getFile().isEmpty() ? "/" : url.getFile();
+
+	if( ( _proxy.type() == Proxy.Type.HTTP) && "http".equalsIgnoreCase( url.getProtocol())) {
+	    return url.getProtocol() + "://" + url.getAuthority() + path;
+	}
+
+	return path;
+    }
+
+    /**
+     * Check, if a header field of the reply contains a token.
+     *
+     * @param name The name of the header field.
+     * @param token The token.
+     *
+     * @return true, if the header field contains the token.
+     */
+    private boolean hasHeaderToken( String name, String token) {
+
+	String value = getHeaderField( name);
+
+	return ( value != null) && value.toLowerCase().contains( token);
+    }
+
+    /**
+     * Read the header of the reply.
+     *
+     * @param socket The connection.
+     *
+     * @throws IOException if the header cannot be read.
+     */
+    private void readHeader( ProxyConnectionPool.PooledSocket socket) throws IOException {
+
+	InputStream in = socket.getInputStream();
+
+	do {  // Skip informational replies like 100 Continue.
+
+	    _headerKeys.clear();
+	    _headerValues.clear();
+
+	    String statusLine = ProxyConnectionPool.readLine( in);
+
+	    if( ( statusLine == null) || ! statusLine.startsWith( "HTTP/") || ( statusLine.length() < 12)) {
+		throw new IOException( "Invalid status line from " + url + ": " + statusLine);
+	    }
+
+	    try {
+
+		responseCode = Integer.parseInt( statusLine.substring( 9, 12));
+
+	    } catch( NumberFormatException nfe) {
+
+		throw new IOException( "Invalid status line from " + url + ": " + statusLine);
+	    }
+
+	    responseMessage = statusLine.length() > 13 ? statusLine.substring( 13) : "";
+
+	    _headerKeys.add( null);
+	    _headerValues.add( statusLine);
+
+	    String currentLine;
+
+	    while( ( ( currentLine = ProxyConnectionPool.readLine( in)) != null) && ! currentLine.isEmpty()) {
+
+		int separatorIndex = currentLine.indexOf( ':');
+
+		if( separatorIndex > 0) {
+		    _headerKeys.add( currentLine.substring( 0, separatorIndex).trim());
+		    _headerValues.add( currentLine.substring( separatorIndex + 1).trim());
+		}
+	    }
+
+	} while( ( responseCode >= 100) && ( responseCode < 200));
+    }
+
+    /**
+     * Send the request and read the header of the reply, if this wasn't done yet.
+     * If a kept alive connection was closed by the server meanwhile, the request is
+     * sent again on a new connection.
+     *
+     * @throws IOException if the request failed.
+     */
+    private void readResponse() throws IOException {
+
+	if( _responseRead) {
+	    return;
+	}
+
+	connect();
+
+	boolean idempotent = "GET".equals( method) || "HEAD".equals( method);
+
+	// The connection, that sent the request. Another thread might disconnect and clear _socket anytime.
+	ProxyConnectionPool.PooledSocket socket;
+
+	while( true) {
+
+	    synchronized( this) {
+		socket = _socket;
+	    }
+
+	    if( socket == null) {
+		throw new IOException( "Connection to " + url + " was closed");
+	    }
+
+	    try {
+
+		writeRequest( socket);
+		readHeader( socket);
+
+		break;
+
+	    } catch( IOException ioe) {
+
+		closeSocket();
+
+		if( ! socket.isReused() || ! idempotent) {
+		    throw ioe;
+		}
+
+		// The server closed the idle connection, so try the next one.
+		socket = ProxyConnectionPool.getInstance().acquire( _proxy, url, getConnectTimeout(), getReadTimeout());
+
+		synchronized( this) {
+		    _socket = socket;
+		}
+	    }
+	}
+
+	_responseRead = true;
+
+	boolean keepAlive = _headerValues.get( 0).startsWith( "HTTP/1.1") 
+	    ? ! hasHeaderToken( "Connection", "close") 
+	    : hasHeaderToken( "Connection", "keep-alive");
+
+	long length;
+
+	if( "HEAD".equals( method) || ( responseCode == HTTP_NO_CONTENT) || ( responseCode == HTTP_NOT_MODIFIED)) {
+
+	    length = 0L;
+
+	} else if( hasHeaderToken( "Transfer-Encoding", "chunked")) {
+
+	    length = -1L;
+
+	} else {
+
+	    String contentLength = getHeaderField( "Content-Length");
+
+	    try {
+
+		length = contentLength == null ? -1L : Long.parseLong( contentLength);
+
+	    } catch( NumberFormatException nfe) {
+
+		throw new IOException( "Invalid content length from " + url + ": " + contentLength);
+	    }
+	}
+
+	InputStream body = new BodyStream( socket.getInputStream(), length, hasHeaderToken( "Transfer-Encoding", "chunked"), keepAlive);
+
+	if( responseCode >= HTTP_BAD_REQUEST) {
+	    _errorStream = body;
+	} else {
+	    _body = body;
+	}
+    }
+
+    /**
+     * Put the connection back into the pool, if it's still in use.
+     */
+    private synchronized void releaseSocket() {
+
+	if( _socket != null) {
+
+	    ProxyConnectionPool.getInstance().release( _socket);
+
+	    _socket = null;
+	}
+    }
+
+    /**
+     * Check, if this connection uses a proxy.
+     *
+     * @return true, since all the connections of this class use a proxy.
+     */
+    @Override
+    public boolean usingProxy() {
+	return true;
+    }
+
+    /**
+     * Write the request to a connection.
+     *
+     * @param socket The connection.
+     *
+     * @throws IOException if the request cannot be written.
+     */
+    private void writeRequest( ProxyConnectionPool.PooledSocket socket) throws IOException {
+
+	StringBuilder request = new StringBuilder( 512);
+
+	request.append( method).append( ' ').append( getRequestTarget()).append( " HTTP/1.1\r\n");
+
+	int port = ProxyConnectionPool.getPort( url);
+
+	request.append( "Host: ").append( url.getHost());
+
+	if( port != url.getDefaultPort()) {
+	    request.append( ':').append( port);
+	}
+
+	request.append( "\r\n");
+
+	boolean connectionHeader = false;
+
+	for( Map.Entry< String, List< String>> currentHeader : _requestHeaders.entrySet()) {
+
+	    if( ( currentHeader.getKey() == null) || currentHeader.getKey().equalsIgnoreCase( "Host")) {
+		continue;
+	    }
+
+	    connectionHeader |= currentHeader.getKey().equalsIgnoreCase( "Connection");
+
+	    for( String currentValue : currentHeader.getValue()) {
+		request.append( currentHeader.getKey()).append( ": ").append( currentValue).append( "\r\n");
+	    }
+	}
+
+	if( ! connectionHeader) {
+	    request.append( "Connection: keep-alive\r\n");
+	}
+
+	request.append( "\r\n");
+
+	OutputStream out = socket.getOutputStream();
+
+	out.write( request.toString().getBytes( "ISO-8859-1"));
+	out.flush();
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Java implementation for cryptocoin trading.
+ *
+ * Copyright (c) 2014 the authors:
+ * 
+ * @author Andreas Rueckert <mail@andreas-rueckert.de>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining 
+ * a copy of this software and associated documentation files (the "Software"), 
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all 
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, 
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A 
+ * PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT 
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION 
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.andreas_rueckert.util;
+
+
+/**
+ * A token bucket for the requests to a server. The bucket holds up to capacity tokens
+ * and gets a new token every refill interval, so short bursts are possible, while the
+ * long term rate is limited to 1 request per refill interval.
+ *
+ * The bucket is implemented as the time, when it's empty again (the 'virtual scheduling'
+ * of the generic cell rate algorithm), so there is no refill thread. Reserved tokens can
+ * be in the future, so concurrent waiting requests are spread evenly.
+ */
+public class TokenBucket {
+
+    // Instance variables
+
+    /**
+     * The maximum number of tokens in the bucket.
+     */
+    private int _capacity;
+
+    /**
+     * The time in nanoseconds, until all the reserved tokens are refilled.
+     */
+    private long _refilledAt;
+
+    /**
+     * The time in nanoseconds to refill a token.
+     */
+    private long _refillInterval;
+
+
+    // Constructors
+
+    /**
+     * Create a new full token bucket.
+     *
+     * @param capacity The maximum number of tokens (the maximum burst of requests).
+     * @param refillInterval The time in microseconds to refill a token.
+     */
+    public TokenBucket( int capacity, long refillInterval) {
+
+	if( ( capacity < 1) || ( refillInterval < 0L)) {
+	    throw new IllegalArgumentException( "TokenBucket: invalid capacity " + capacity + " or refill interval " + refillInterval);
+	}
+
+	_capacity = capacity;
+	_refillInterval = refillInterval * 1000L;
+	_refilledAt = System.nanoTime() - _capacity * _refillInterval;  // The bucket is full and was idle before.
+    }
+
+
+    // Methods
+
+    /**
+     * Get the maximum number of tokens in the bucket.
+     *
+     * @return The maximum number of tokens in the bucket.
+     */
+    public final int getCapacity() {
+	return _capacity;
+    }
+
+    /**
+     * Get the time in microseconds to refill a token.
+     *
+     * @return The time in microseconds to refill a token.
+     */
+    public final long getRefillInterval() {
+	return _refillInterval / 1000L;
+    }
+
+    /**
+     * Get the time until a token is available.
+     *
+     * @return The time in nanoseconds until a token is available. 0, if a token is available now.
+     */
+    public long getWaitTime() {
+	return getWaitTime( 0);
+    }
+
+    /**
+     * Get the time until a token is available, if some tokens have to stay in the bucket.
+     *
+     * @param reservedTokens The number of tokens, that have to stay in the bucket (i.e. for more important requests).
+     *                       A fraction of a token delays the requests by that fraction of the refill interval.
+     *
+     * @return The time in nanoseconds until a token is available. 0, if a token is available now.
+     */
+    public synchronized long getWaitTime( double reservedTokens) {
+	return Math.max( 0L, getWaitTime( System.nanoTime(), reservedTokens));
+    }
+
+    /**
+     * Get the time from now until the next token is available. The refill time is not moved
+     * up to now here, so the time, that a full bucket was idle, counts for the reserved tokens.
+     * A single token bucket with a reserved fraction of a token works that way.
+     *
+     * @param now The current time in nanoseconds.
+     * @param reservedTokens The number of tokens, that have to stay in the bucket.
+     *
+     * @return The time in nanoseconds until the token is available or a negative value, if it's available now.
+     */
+    private long getWaitTime( long now, double reservedTokens) {
+	return _refilledAt + _refillInterval - (long)( ( _capacity - reservedTokens) * _refillInterval) - now;
+    }
+
+    /**
+     * Give back a reserved token, i.e. if the request was not sent.
+     */
+    public synchronized void release() {
+	_refilledAt -= _refillInterval;
+    }
+
+    /**
+     * Reserve a token. If the bucket is empty, the token is reserved in the future
+     * and the caller has to wait until then.
+     *
+     * @return The time in nanoseconds, that the caller has to wait for the token. 0, if it's available now.
+     */
+    public synchronized long reserve() {
+
+	long now = System.nanoTime();
+	long waitTime = getWaitTime( now, 0);
+
+	_refilledAt = Math.max( _refilledAt, now) + _refillInterval;
+
+	return Math.max( 0L, waitTime);
+    }
+
+    /**
+     * Take a token, if one is available now.
+     *
+     * @return true, if a token was taken. False, if the bucket is empty.
+     */
+    public boolean tryAcquire() {
+	return tryAcquire( 0);
+    }
+
+    /**
+     * Take a token, if one is available now and some tokens stay in the bucket.
+     *
+     * @param reservedTokens The number of tokens, that have to stay in the bucket (i.e. for more important requests).
+     *                       A fraction of a token delays the requests by that fraction of the refill interval.
+     *
+     * @return true, if a token was taken. False, if there are not enough tokens in the bucket.
+     */
+    public synchronized boolean tryAcquire( double reservedTokens) {
+
+	long now = System.nanoTime();
+
+	if( getWaitTime( now, reservedTokens) > 0L) {  // Not enough tokens in the bucket.
+	    return false;
+	}
+
+	_refilledAt = Math.max( _refilledAt, now) + _refillInterval;
+
+	return true;
+    }
+}
@@ -221,8 +221,8 @@ public class MaBot implements TradeBot {
 			// Get the SMA of the selected interval.
 			Price sma = ChartProvider.getInstance().getSMA( _tradeSite, _tradedCurrencyPair, SMA_INTERVAL);
 
-			// Get the current depth.
-			Depth depth = ChartProvider.getInstance().getDepth( _tradeSite, _tradedCurrencyPair);
+			// Get the current depth. The bot only looks at the best orders, so 1 level is enough.
+			Depth depth = ChartProvider.getInstance().getDepth( _tradeSite, _tradedCurrencyPair, 1);
 
 			// Now compare buy and sells the SMA.
 			// Actually the trade fee should considered here, too.
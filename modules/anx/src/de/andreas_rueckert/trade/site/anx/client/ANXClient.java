@@ -560,6 +560,19 @@ public class ANXClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+   /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
@@ -583,7 +596,7 @@ public class ANXClient extends TradeSiteImpl implements TradeSite {
 		if( resultField.equalsIgnoreCase( "success")) {  // Check, if the request worked ok.
 
 		    // Get the data and convert them to a depth object.
-		    return new ANXDepth( requestResultJSON.getJSONObject( "data"), currencyPair, this);
+		    return new ANXDepth( requestResultJSON.getJSONObject( "data"), currencyPair, this, maxLevels);
 		    
 		} else {
 
@@ -995,15 +1008,15 @@ public class ANXClient extends TradeSiteImpl implements TradeSite {
     }
 
     /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
+     * Check, if the depths or tickers of many pairs can be fetched with a single request.
+     * The depths are fetched via the extraCcyPairs argument of the depth request.
      *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
+     * @param requestType The type of request.
      *
-     * @return true, if the given type of request is possible at the moment.
+     * @return true, if many pairs can be fetched with a single request.
      */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
+    public boolean isBatchRequestSupported( TradeSiteRequestType requestType) {
 
-	return true;  // Just a dummy for now.
+	return requestType == TradeSiteRequestType.Depth;
     }
 }
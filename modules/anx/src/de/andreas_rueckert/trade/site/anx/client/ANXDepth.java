@@ -65,6 +65,19 @@ public class ANXDepth extends DepthImpl {
      */
     public ANXDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new ANX depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public ANXDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);  // Init the base depth variables.
 
 	// Get the array with the sell orders.
@@ -100,6 +113,9 @@ public class ANXDepth extends DepthImpl {
 
 	// Make sure, the buys are sorted (they should be anyway, but just in case...)
 	Collections.sort( _buys);	
+
+	// Only the sorted orders can be limited safely, since the order of the response is not guaranteed.
+	removeOrdersBeyondLevel( maxLevels);
     }
 
 
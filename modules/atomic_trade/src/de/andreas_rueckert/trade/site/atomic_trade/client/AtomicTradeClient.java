@@ -32,7 +32,7 @@ import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -43,7 +43,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
@@ -168,6 +167,19 @@ public class AtomicTradeClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+   /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
@@ -190,7 +202,7 @@ public class AtomicTradeClient extends TradeSiteImpl implements TradeSite {
 		JSONObject requestResultJSON = (JSONObject)JSONObject.fromObject( requestResult);
 
 		// Try to parse the market data and turn them into a depth object.
-		return new AtomicTradeDepth( requestResultJSON.getJSONObject( "market"), currencyPair, this);
+		return new AtomicTradeDepth( requestResultJSON.getJSONObject( "market"), currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
@@ -339,18 +351,6 @@ public class AtomicTradeClient extends TradeSiteImpl implements TradeSite {
 	return 15L * 1000000L;  // 15s should work for most exchanges as a default.
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 
     /**
      * Request a list of active markets (= supported currency pairs) from the server.
@@ -389,7 +389,7 @@ public class AtomicTradeClient extends TradeSiteImpl implements TradeSite {
 		Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currencyCodes[1]);
 
 		// Create a currency pair from the 2 currencies.
-		CurrencyPair newCurrencyPair = new CurrencyPairImpl( currency, paymentCurrency);
+		CurrencyPair newCurrencyPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
 		
 		// Add the new pair to the result buffer.
 		resultBuffer.add( newCurrencyPair);
@@ -64,6 +64,19 @@ public class AtomicTradeDepth extends DepthImpl {
      */
     public AtomicTradeDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new Atomic Trade depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public AtomicTradeDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);  // Init the base depth variables.
 
 	// Get the array with the sell orders.
@@ -99,6 +112,9 @@ public class AtomicTradeDepth extends DepthImpl {
 
 	// Make sure, the buys are sorted (they should be anyway, but just in case...)
 	Collections.sort( _buys);
+
+	// Only the sorted orders can be limited safely, since the order of the response is not guaranteed.
+	removeOrdersBeyondLevel( maxLevels);
     }
 
 
@@ -164,6 +164,19 @@ public class Bitcoin_deClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+   /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
@@ -188,7 +201,7 @@ public class Bitcoin_deClient extends TradeSiteImpl implements TradeSite {
 		JSONObject requestResultJSON = (JSONObject)JSONObject.fromObject( requestResult);
 		
 		// Get the data and convert them to a depth object.
-		return new Bitcoin_deDepth( requestResultJSON, currencyPair, this);
+		return new Bitcoin_deDepth( requestResultJSON, currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
@@ -395,18 +408,6 @@ public class Bitcoin_deClient extends TradeSiteImpl implements TradeSite {
 	return 60L * 1000000L;  // According to the docs, bitcoin.de updates every 60s.
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 
     /**
      * Set new settings for the Bitcoin.de client.
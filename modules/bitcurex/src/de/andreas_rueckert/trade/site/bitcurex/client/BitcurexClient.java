@@ -41,7 +41,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
@@ -149,6 +148,19 @@ public class BitcurexClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + this._name);
 	}
@@ -162,7 +174,7 @@ public class BitcurexClient extends TradeSiteImpl implements TradeSite {
 
 	    try {
 		// Convert the HTTP request return value to JSON to parse further.
-		return new BitcurexDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		return new BitcurexDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 		System.err.println( "Cannot parse " + this._name + " depth return: " + je.toString());
@@ -352,17 +364,4 @@ public class BitcurexClient extends TradeSiteImpl implements TradeSite {
     public long getUpdateInterval() {
 	return 30L * 1000000L;  // Bitcurex is quite low-volume, so this should be often enough.
     }
-
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now...
-    }
 }
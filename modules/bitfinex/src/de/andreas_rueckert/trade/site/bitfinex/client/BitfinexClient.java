@@ -32,7 +32,7 @@ import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -43,7 +43,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
@@ -156,12 +155,26 @@ public class BitfinexClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+   /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
 
 	// Create the URL to fetch the depth.
-	String url = _url + "book/" + getBitfinexCurrencyPairSymbol( currencyPair);
+	String url = _url + "book/" + getBitfinexCurrencyPairSymbol( currencyPair)
+	    + ( maxLevels != Depth.ALL_LEVELS ? "?limit_bids=" + maxLevels + "&limit_asks=" + maxLevels : "");  // Let Bitfinex limit the depth.
 
 	// Do the actual request.
 	String requestResult = HttpUtils.httpGet( url);
@@ -186,7 +199,7 @@ public class BitfinexClient extends TradeSiteImpl implements TradeSite {
 		} else {  // The JSON should contain asks and bids now.
 
 		    // Create a new depth instance from the data and return it.
-		    return new BitfinexDepth( requestResultJSON, currencyPair, this);
+		    return new BitfinexDepth( requestResultJSON, currencyPair, this, maxLevels);
 		}
 	    } catch( JSONException je) {
 
@@ -378,18 +391,6 @@ public class BitfinexClient extends TradeSiteImpl implements TradeSite {
 	return 15L * 1000000L;  // 15s should work for most exchanges. Dont't know the actual frequency (a_rueckert).
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 
     /**
      * Request the supported currency pairs from the Bitfinex server.
@@ -430,7 +431,7 @@ public class BitfinexClient extends TradeSiteImpl implements TradeSite {
 		    Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currencyPairName.substring( 3).toUpperCase());
 
 		    // Create a pair from the currencies.
-		    CurrencyPair currentPair = new CurrencyPairImpl( currency, paymentCurrency);
+		    CurrencyPair currentPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
 		
 		    // Add the current pair to the result buffer.
 		    resultBuffer.add( currentPair);
@@ -64,13 +64,26 @@ public class BitfinexDepth extends DepthImpl {
      */
     public BitfinexDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new Bitfinex depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public BitfinexDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);  // Init the base depth variables.
 
 	// Get the array with the sell orders.
 	JSONArray asks = jsonResponse.getJSONArray( "asks");
 
 	// Now loop over the asks array and get the entries as objects.
-	for( int i = 0; i < asks.size(); ++i) {
+	for( int i = 0, nAsks = Math.min( asks.size(), maxLevels); i < nAsks; ++i) {
 
 	    JSONObject sellOrder = asks.getJSONObject( i);  // Get the current sell order.
 
@@ -87,7 +100,7 @@ public class BitfinexDepth extends DepthImpl {
 	JSONArray bids = jsonResponse.getJSONArray( "bids");
 
 	// Now loop over the bids array and get the entries as objects.
-	for( int i = 0; i < bids.size(); ++i) {
+	for( int i = 0, nBids = Math.min( bids.size(), maxLevels); i < nBids; ++i) {
 
 	    JSONObject buyOrder = bids.getJSONObject( i);  // Get the current buy order.
 
@@ -144,6 +144,17 @@ public class BitparkingClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) {
+
 	// If a request for the depth is allowed at the moment
 	if( isRequestAllowed( TradeSiteRequestType.Depth)) { 
 
@@ -158,7 +169,7 @@ public class BitparkingClient extends TradeSiteImpl implements TradeSite {
 	    if( requestResult != null) {  // Request sucessful?
 		try {
 		    // Convert the HTTP request return value to JSON to parse further.
-		    Depth depth =  new BitparkingDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		    Depth depth =  new BitparkingDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 		    updateLastRequest();  // Update the timestamp of the last request.
 
@@ -53,10 +53,23 @@ public class BitparkingDepth extends DepthImpl {
      */
     public BitparkingDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new Bitparking depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the Bitparking server.
+     * @param currencyPair The currency pair, that is used for this depth.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public BitparkingDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);
 	
 	// Parse the nested JSON arrays in the response and convert them to DepthOrder objects.
-	parseJSONDepthArrays( jsonResponse);
+	parseJSONDepthArrays( jsonResponse, maxLevels);
     }
 
 
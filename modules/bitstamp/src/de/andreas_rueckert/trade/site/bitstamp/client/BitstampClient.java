@@ -49,10 +49,10 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.HttpStatistics;
 import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
 import de.andreas_rueckert.util.TimeUtils;
@@ -202,6 +202,10 @@ public class BitstampClient extends TradeSiteImpl implements TradeSite {
 	_name = "Bitstamp";
 	_url = "https://www." + this.DOMAIN + "/";
 
+	// Bitstamp bans IPs with more than 600 requests per 10 minutes. A burst of 60 requests
+	// and 540 more within 10 minutes stay below this limit.
+	setRequestRateLimit( null, 60, 600L * 1000000L / 540L);
+
 		// Define the supported currency pairs for this trading site.
 	_supportedCurrencyPairs = new CurrencyPair[1];
 	_supportedCurrencyPairs[0] = new CurrencyPairImpl( "BTC", "USD");
@@ -410,6 +414,19 @@ public class BitstampClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on Bitstamp");
 	}
@@ -423,16 +440,22 @@ public class BitstampClient extends TradeSiteImpl implements TradeSite {
 	String requestResult = HttpUtils.httpGet( url);
 
 	if( requestResult != null) {  // Request sucessful?
+
+	    long parseStart = System.nanoTime();
+
 	    try {
 
 		// Convert the HTTP request return value to JSON to parse further.
-		return new BitstampDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		return new BitstampDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
 		System.err.println( "Cannot parse Bitstamp depth return: " + je.toString());
 
 		throw new TradeDataNotAvailableException( "cannot parse data from Bitstamp");
+	    } finally {
+
+		HttpStatistics.getInstance().recordParseTime( url, System.nanoTime() - parseStart);
 	    }
 	}
 
@@ -749,17 +772,4 @@ public class BitstampClient extends TradeSiteImpl implements TradeSite {
     public long getUpdateInterval() {
 	return 15L * 1000000L;  // The default Bitstamp update.
     }
-
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now...
-    }
 }
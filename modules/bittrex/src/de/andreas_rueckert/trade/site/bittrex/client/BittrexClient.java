@@ -31,7 +31,7 @@ import de.andreas_rueckert.trade.CryptoCoinTrade;
 import de.andreas_rueckert.trade.currency.Currency;  
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -42,13 +42,13 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
 import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.MetadataCache;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -91,6 +91,10 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
 
 	_url = "https://bittrex.com/api/v1.1/";  // The URL for the version 1 API.
 
+	// Bittrex confirmed, that 1 call every 5s is fine (see getMinimumRequestInterval),
+	// so allow short bursts, but stay at this rate.
+	setRequestRateLimit( null, 3, getMinimumRequestInterval());
+
 	// Fetch the traded currency pairs.
 	if( ! requestSupportedCurrencyPairs()) {
 	    
@@ -155,16 +159,29 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
 	
 	// The URL for the depth request.
-	// I use max 50 orders for now. Should be enough for most trading apps, I guess.
+	// I use max 50 orders, even for the full depth. Should be enough for most trading apps, I guess.
 	// @see 
 	String url = _url + "public/getorderbook?market=" 
 	    + currencyPair.getPaymentCurrency().getCode() + "-" + currencyPair.getCurrency().getCode()
-	    + "&type=both&depth=50";
+	    + "&type=both&depth=" + Math.min( maxLevels, 50);
 
 	// Do the actual request.
 	String requestResult = HttpUtils.httpGet( url);
@@ -184,7 +201,7 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
 		if( successFlag) {  // If the flag is set, parse the actual result.
 		    
 		    // The depth is returned as a JSON object. Parse it in the created BittrexDepth instance.
-		    return new BittrexDepth( jsonResult.getJSONObject( "result"), currencyPair, this); 
+		    return new BittrexDepth( jsonResult.getJSONObject( "result"), currencyPair, this, maxLevels); 
 
 		} else {  // There is an error message returned hopefully...
 
@@ -385,18 +402,6 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
 	return 15L * 1000000L;  // 15s should work for most exchanges. Dont't know the actual frequency (a_rueckert).
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 
     /**
      * Request info on the traded currencies including the trading fees(!).
@@ -408,8 +413,8 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
 
 	String url = _url + "public/getcurrencies";  // The URL for fetching the traded currencies.
 
-	// Request info on the traded currencies from the server.
-	String requestResult = HttpUtils.httpGet( url);
+	// Request info on the traded currencies from the server (or the metadata cache).
+	String requestResult = MetadataCache.getInstance().get( url);
 
 	if( requestResult != null) {  // If the server returned a response.
 
@@ -463,8 +468,8 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
 
 	String url = _url + "public/getmarkets";  // The URL for fetching the traded pairs.
 
-	// Request info on the traded pairs from the server.
-	String requestResult = HttpUtils.httpGet( url);
+	// Request info on the traded pairs from the server (or the metadata cache).
+	String requestResult = MetadataCache.getInstance().get( url);
 
 	if( requestResult != null) {  // If the server returned a response.
 
@@ -502,7 +507,7 @@ public class BittrexClient extends TradeSiteImpl implements TradeSite {
 			    Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currentPairJSON.getString( "BaseCurrency"));
 
 			    // Create a pair from the currencies.
-			    CurrencyPair currentPair = new CurrencyPairImpl( currency, paymentCurrency);
+			    CurrencyPair currentPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
 			
 			    // Add the current pair to the result buffer.
 			    resultBuffer.add( currentPair);
@@ -64,9 +64,22 @@ public class BittrexDepth extends DepthImpl {
      */
     public BittrexDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new Bittrex depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the Bittrex server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public BittrexDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);  // Init the base depth variables.
 
-	parseJSONDepth( jsonResponse);  // Parse the actual depth.
+	parseJSONDepth( jsonResponse, maxLevels);  // Parse the actual depth.
     }
 
 
@@ -77,14 +90,15 @@ public class BittrexDepth extends DepthImpl {
      * DepthOrder objects.
      *
      * @param jsonDepth The depth as JSON object arrays.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
      */
-    private void parseJSONDepth( JSONObject jsonDepth) {
+    private void parseJSONDepth( JSONObject jsonDepth, int maxLevels) {
 
 	// Get the array with the sell orders.
 	JSONArray sales = jsonDepth.getJSONArray( "sell");
 
 	// Now loop over the asks array and get the entries as arrays.
-	for( int i = 0; i < sales.size(); ++i) {
+	for( int i = 0, nSales = Math.min( sales.size(), maxLevels); i < nSales; ++i) {
 
 	    JSONObject sellOrder = sales.getJSONObject( i);  // Get the current sell order.
 
@@ -101,7 +115,7 @@ public class BittrexDepth extends DepthImpl {
 	JSONArray buys = jsonDepth.getJSONArray( "buy");
 
 	// Now loop over the bids array and get the entries as arrays.
-	for( int i = 0; i < buys.size(); ++i) {
+	for( int i = 0, nBuys = Math.min( buys.size(), maxLevels); i < nBuys; ++i) {
 
 	    JSONObject buyOrder = buys.getJSONObject( i);  // Get the current buy order.
 
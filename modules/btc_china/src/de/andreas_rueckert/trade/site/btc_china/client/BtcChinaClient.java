@@ -42,7 +42,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
@@ -191,6 +190,19 @@ public class BtcChinaClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + this._name);
 	}
@@ -205,7 +217,7 @@ public class BtcChinaClient extends TradeSiteImpl implements TradeSite {
 	if( requestResult != null) {  // Request sucessful?
 	    try {
 		// Convert the HTTP request return value to JSON to parse further.
-		return new BtcChinaDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		return new BtcChinaDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
@@ -387,18 +399,4 @@ public class BtcChinaClient extends TradeSiteImpl implements TradeSite {
 	return 15L * 1000000L;  // Just a guess. No clue yet, how btc-china handles this.
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now, since I don't have any info, how btc-china handles things...
-	              // If anyone has more info, please mail me!
-    }
-
 }
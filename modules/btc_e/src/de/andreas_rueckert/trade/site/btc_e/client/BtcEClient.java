@@ -31,14 +31,11 @@ import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 import javax.crypto.Mac;
@@ -64,6 +61,7 @@ import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
 import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.Price;
@@ -79,13 +77,17 @@ import de.andreas_rueckert.trade.order.OrderStatus;
 import de.andreas_rueckert.trade.order.OrderType;
 import de.andreas_rueckert.trade.order.SiteOrder;
 import de.andreas_rueckert.trade.order.WithdrawOrder;
+import de.andreas_rueckert.trade.site.PrecisionRegistry;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
 import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
+import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
+import de.andreas_rueckert.util.HttpStatistics;
 import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.MetadataCache;
 import de.andreas_rueckert.util.TimeUtils;
 
 
@@ -232,7 +234,7 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 	 * @return true if update is made
 	 */
 	public boolean updateSupportedCurrencyPairs() {
-		String requestResult = HttpUtils.httpGet(API_URL_INFO);
+		String requestResult = MetadataCache.getInstance().get( API_URL_INFO);  // Cached, since the info rarely changes.
 		if( requestResult != null) {
 			currencyPairFeeTrade = new HashMap<CurrencyPair, BigDecimal>();
 			//update the supported currency pairs
@@ -259,6 +261,12 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 				//update the fees for currency pairs trades
 				pairFee = jsonResult.getJSONObject("pairs").getJSONObject(pair).getString("fee");
 				currencyPairFeeTrade.put(currencyPair, new BigDecimal(pairFee).multiply(new BigDecimal("0.01")));
+
+				//update the price precision for the order requests
+				PrecisionRegistry.getInstance().setPrecision( this
+									      , currencyPair
+									      , jsonResult.getJSONObject("pairs").getJSONObject(pair).optInt("decimal_places", -1)  // -1 = unknown precision.
+									      , PrecisionRegistry.DEFAULT_AMOUNT_DECIMALS);
 			}
 			_supportedCurrencyPairs = (CurrencyPairImpl []) currencyPairs.toArray(new CurrencyPairImpl[currencyPairs.size()]);
 			return true;
@@ -306,6 +314,19 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 			}
 			currencyPairFeeTrade.put(currencyPair, new BigDecimal(fee));
 		}
+
+		//price precisions for the order requests
+		String [][] priceDecimals = { { "BTC", "USD", "3"}, { "BTC", "RUR", "5"}, { "BTC", "EUR", "5"}
+					      , { "LTC", "BTC", "5"}, { "LTC", "USD", "5"}, { "LTC", "RUR", "5"}, { "LTC", "EUR", "3"}
+					      , { "NMC", "BTC", "5"}, { "NMC", "USD", "3"}, { "NVC", "BTC", "5"}, { "NVC", "USD", "3"}
+					      , { "USD", "RUR", "5"}, { "EUR", "USD", "5"}, { "TRC", "BTC", "5"}, { "PPC", "BTC", "5"}
+					      , { "PPC", "USD", "3"}, { "FTC", "BTC", "5"}, { "XPM", "BTC", "5"} };
+		for (String [] precision : priceDecimals) {
+			PrecisionRegistry.getInstance().setPrecision( this
+								      , new CurrencyPairImpl( precision[0], precision[1])
+								      , Integer.parseInt( precision[2])
+								      , PrecisionRegistry.DEFAULT_AMOUNT_DECIMALS);
+		}
 	}
 
 
@@ -500,7 +521,7 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 	    HashMap<String, String> parameter = new HashMap<String, String>();
 	    
 	    parameter.put( "type", order.getOrderType() == OrderType.BUY ? "buy" : "sell");  // Indicate buy or sell.
-	    parameter.put( "amount", formatAmount( order.getAmount()));
+	    parameter.put( "amount", formatAmount( order.getAmount(), order.getCurrencyPair()));
 	    parameter.put( "rate", formatPrice( order.getPrice(), order.getCurrencyPair()));
 	    parameter.put( "pair", order.getCurrencyPair().getCurrency().getCode().toLowerCase() + "_" + order.getCurrencyPair().getPaymentCurrency().getCode().toLowerCase());  
 
@@ -619,162 +640,27 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
      * Format an amount btc-e compliant.
      * 
      * @param amount The amount to format.
+     * @param currencyPair The currency pair to trade.
      */
-    private final String formatAmount( BigDecimal amount) {
-
-	// The amount has always 8 fraction digits for now.
-	DecimalFormat amountFormat = new DecimalFormat( "#####.########", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
+    private final String formatAmount( BigDecimal amount, CurrencyPair currencyPair) {
 
-	return amountFormat.format( amount);
+	// The amount has 8 fraction digits, unless the info API says something else.
+	return PrecisionRegistry.getInstance().formatAmount( this, currencyPair, amount);
     }
 
-
     /**
      * Format the price for a given currency pair.
      *
      * @param price The price to format.
      * @param currencyPair The currency pair to trade.
+     *
+     * @throws CurrencyNotSupportedException if the precision of the currency pair is not known.
      */
-	/**
-	 * Format the price for a given currency pair.
-	 *
-	 * @param price The price to format.
-	 * @param currencyPair The currency pair to trade.
-	 */
-	private final String formatPrice( BigDecimal price, CurrencyPair currencyPair) {
-
-		if( currencyPair.getCurrency().hasCode( "BTC") 
-				&& currencyPair.getPaymentCurrency().hasCode( "USD")) {
-
-			// btc has only 3 fraction digits for usd.
-			DecimalFormat btcDecimalFormat = new DecimalFormat("#####.###", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return btcDecimalFormat.format( price);
-
-		} else if( currencyPair.getCurrency().hasCode( "BTC")
-				&& currencyPair.getPaymentCurrency().hasCode( "RUR")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "BTC")
-				&& currencyPair.getPaymentCurrency().hasCode( "EUR")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "LTC")
-				&& currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "LTC")
-				&& currencyPair.getPaymentCurrency().hasCode( "USD")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "LTC")
-				&& currencyPair.getPaymentCurrency().hasCode( "RUR")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "LTC")
-				&& currencyPair.getPaymentCurrency().hasCode( "EUR")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.###", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "NMC")
-			   && currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "NMC")
-				&& currencyPair.getPaymentCurrency().hasCode( "USD")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.###", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "NVC")
-				&& currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
+    private final String formatPrice( BigDecimal price, CurrencyPair currencyPair) {
 
-		} else if( currencyPair.getCurrency().hasCode( "NVC")
-				&& currencyPair.getPaymentCurrency().hasCode( "USD")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.###", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "USD")
-				&& currencyPair.getPaymentCurrency().hasCode( "RUR")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "EUR")
-				&& currencyPair.getPaymentCurrency().hasCode( "USD")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "TRC")
-				&& currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "PPC")
-				&& currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "PPC")
-			   && currencyPair.getPaymentCurrency().hasCode( "USD")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.###", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "FTC")
-			   && currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		} else if( currencyPair.getCurrency().hasCode( "XPM")
-				&& currencyPair.getPaymentCurrency().hasCode( "BTC")) {
-
-			DecimalFormat nmcDecimalFormat = new DecimalFormat("#####.#####", DecimalFormatSymbols.getInstance( Locale.ENGLISH));
-
-			return nmcDecimalFormat.format( price); 
-
-		}
-		else {
-			throw new CurrencyNotSupportedException( "The currency pair " + currencyPair.getCode() + " is not supported in formatPrice()");
-		}
-	}
+	// The number of fraction digits comes from the decimal_places of the info API.
+	return PrecisionRegistry.getInstance().formatPrice( this, currencyPair, price);
+    }
 
     /**
      * Get the current funds of the user via the new trade API.
@@ -892,6 +778,29 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 	return currencyPair.getCurrency().getCode().toLowerCase() + "_" + currencyPair.getPaymentCurrency().getCode().toLowerCase();
     }
 
+    /**
+     * Get the api v3 string for a list of currency pairs.
+     *
+     * @param currencyPairs The currency pairs.
+     *
+     * @return The pair names, separated by '-' .
+     */
+    private String getCurrencyPairsString( CurrencyPair [] currencyPairs) {
+
+	StringBuilder result = new StringBuilder();
+
+	for( CurrencyPair currentPair : currencyPairs) {
+
+	    if( result.length() > 0) {
+		result.append( '-');
+	    }
+
+	    result.append( getCurrencyPairString( currentPair));
+	}
+
+	return result.toString();
+    }
+
     /**
      * Get an address to deposit coins at btc-e.
      *
@@ -957,7 +866,7 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
      * @throws TradeDataNotAvailableException if the depth is not available.
      */
     public Depth getDepth( Currency currency) throws TradeDataNotAvailableException {
-	return getDepth( new CurrencyPairImpl( currency, CurrencyProvider.getInstance().getCurrencyForCode( "BTC")));
+	return getDepth( CurrencyPairRegistry.getInstance().getCurrencyPair( currency, CurrencyProvider.getInstance().getCurrencyForCode( "BTC")));
     }
 
     /**
@@ -1006,17 +915,24 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair, int limit) throws TradeDataNotAvailableException {
 
+	if( limit == Depth.ALL_LEVELS) {  // The full depth is still fetched via api v2.
+	    return getDepth( currencyPair);
+	}
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on Btc-E");
 	}
 
 	String url = "https://" + DOMAIN + "/api/3/depth/" 
 	    + getCurrencyPairString( currencyPair)
-	    + "?limit=" + limit;
+	    + "?limit=" + Math.min( limit, 2000);
 
 	String requestResult = HttpUtils.httpGet( url);
 
 	if( requestResult != null) {  // Request sucessful?
+
+	    long parseStart = System.nanoTime();
+
 	    try {
 	    JSONObject requestResultObj = (JSONObject) JSONObject.fromObject( requestResult).get(getCurrencyPairString( currencyPair));
 		// Convert the HTTP request return value to JSON to parse further.
@@ -1027,12 +943,84 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 		System.err.println( "Cannot parse " + this._name + " depth return: " + je.toString());
 
 		throw new TradeDataNotAvailableException( "cannot parse data from " + this._name);
+	    } finally {
+
+		HttpStatistics.getInstance().recordParseTime( url, System.nanoTime() - parseStart);
 	    }
 	}
 	
 	throw new TradeDataNotAvailableException( this._name + " server did not respond to depth request");
     } 
 
+    /**
+     * Get the market depths of several currency pairs with a single request via api v3.
+     * Api v3 returns at most 2000 orders on each side, so deeper books are cut there.
+     *
+     * @param currencyPairs The queried currency pairs.
+     *
+     * @return The market depths in the order of the currency pairs. A depth is null, if the server did not return it.
+     *
+     * @throws TradeDataNotAvailableException if the depths are not available.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
+
+	return getDepths( currencyPairs, Depth.ALL_LEVELS);
+    }
+
+    /**
+     * Get the market depths of several currency pairs with a single request via api v3.
+     * Max limit is 2000 at the moment.
+     *
+     * @param currencyPairs The queried currency pairs.
+     * @param maxLevels The maximum number of buy and sell orders per depth (Depth.ALL_LEVELS for the full depths).
+     *
+     * @return The market depths in the order of the currency pairs. A depth is null, if the server did not return it.
+     *
+     * @throws TradeDataNotAvailableException if the depths are not available.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs, int maxLevels) throws TradeDataNotAvailableException {
+
+	// Without an explicit limit, api v3 returns only the best 150 orders.
+	String url = "https://" + DOMAIN + "/api/3/depth/" 
+	    + getCurrencyPairsString( currencyPairs)
+	    + "?limit=" + Math.min( maxLevels, 2000);
+
+	String requestResult = HttpUtils.httpGet( url);
+
+	if( requestResult != null) {  // Request sucessful?
+
+	    long parseStart = System.nanoTime();
+
+	    try {
+
+		JSONObject requestResultObj = JSONObject.fromObject( requestResult);
+
+		List<Depth> result = new ArrayList<Depth>();
+
+		// The depths are keyed by the pair names.
+		for( CurrencyPair currentPair : currencyPairs) {
+
+		    JSONObject currentDepth = requestResultObj.optJSONObject( getCurrencyPairString( currentPair));
+
+		    result.add( currentDepth == null ? null : new BtcEDepth( currentDepth, currentPair, this, maxLevels));
+		}
+
+		return result;
+
+	    } catch( JSONException je) {
+
+		System.err.println( "Cannot parse " + this._name + " depths return: " + je.toString());
+
+		throw new TradeDataNotAvailableException( "cannot parse data from " + this._name);
+	    } finally {
+
+		HttpStatistics.getInstance().recordParseTime( url, System.nanoTime() - parseStart);
+	    }
+	}
+	
+	throw new TradeDataNotAvailableException( this._name + " server did not respond to depths request");
+    }
+
     /**
      * Get the fee for an order in the resulting currency.
      * Synchronize this method, since several users might use this method with different
@@ -1314,6 +1302,56 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
 	// return null;  // The ticker request failed.
     }
 
+    /**
+     * Get the tickers of several currency pairs with a single request via api v3.
+     *
+     * @param currencyPairs The currency pairs to query.
+     *
+     * @return The tickers in the order of the currency pairs. A ticker is null, if the server did not return it.
+     *
+     * @throws TradeDataNotAvailableException if the tickers are not available.
+     */
+    public List<Ticker> getTickers( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
+
+	String url = "https://" + DOMAIN + "/api/3/ticker/" + getCurrencyPairsString( currencyPairs);
+
+	String requestResult = HttpUtils.httpGet( url);
+	
+	if( requestResult != null) {  // Request sucessful?
+	    try {
+
+		JSONObject requestResultObj = JSONObject.fromObject( requestResult);
+
+		List<Ticker> result = new ArrayList<Ticker>();
+
+		for( CurrencyPair currentPair : currencyPairs) {
+
+		    JSONObject currentTicker = requestResultObj.optJSONObject( getCurrencyPairString( currentPair));
+
+		    if( currentTicker == null) {
+
+			result.add( null);
+
+		    } else {
+
+			// The ticker parser expects the api v2 format with a 'ticker' object.
+			JSONObject wrappedTicker = new JSONObject();
+			wrappedTicker.put( "ticker", currentTicker);
+
+			result.add( new BtcETicker( wrappedTicker, currentPair, this));
+		    }
+		}
+
+		return result;
+
+	    } catch( JSONException je) {
+		System.err.println( "Cannot parse ticker objects: " + je.toString());
+	    }
+	}
+	
+	throw new TradeDataNotAvailableException( "The btc-e tickers request failed");
+    }
+
     /**
      * Get a list of recent trades.
      *
@@ -1477,18 +1515,19 @@ public class BtcEClient extends TradeSiteImpl implements TradeSite {
     }
 
     /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
+     * Check, if the depths or tickers of many pairs can be fetched with a single request.
+     * Api v3 accepts a list of pairs for both.
      *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
+     * @param requestType The type of request.
      *
-     * @return true, if the given type of request is possible at the moment.
+     * @return true, if many pairs can be fetched with a single request.
      */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
+    public boolean isBatchRequestSupported( TradeSiteRequestType requestType) {
 
-	return true;  // Just a dummy for now, but btc-e is quite relaxed on request limits...
+	return ( requestType == TradeSiteRequestType.Depth) || ( requestType == TradeSiteRequestType.Ticker);
     }
 
+
     /**
      * Set a new reference currency for the user.
      *
@@ -33,7 +33,7 @@ import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -51,6 +51,7 @@ import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
 import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.MetadataCache;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -173,6 +174,19 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + this._name);
 	}
@@ -198,7 +212,7 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
 		if( jsonDepth.getBoolean( "status") == true) {
 
 		    // Convert the actual depth to a Depth object and return it.
-		    return new CoinsEDepth( jsonDepth.getJSONObject( "marketdepth"), currencyPair, this);
+		    return new CoinsEDepth( jsonDepth.getJSONObject( "marketdepth"), currencyPair, this, maxLevels);
 		}
 		
 	    } catch( JSONException je) {
@@ -251,7 +265,7 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
 		for( JSONObject jsonCurrentMarket : ( ( Map< String, JSONObject>)jsonMarkets).values()) {
 
 		    // Try to create a currency pair for this market.
-		    CurrencyPair newCurrencyPair = new CurrencyPairImpl( jsonCurrentMarket.getString( "c1"), jsonCurrentMarket.getString( "c2"));
+		    CurrencyPair newCurrencyPair = CurrencyPairRegistry.getInstance().getCurrencyPair( jsonCurrentMarket.getString( "c1"), jsonCurrentMarket.getString( "c2"));
 
 		    if( newCurrencyPair == null) {           // If the new currency pair is not found
 
@@ -535,18 +549,19 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
     }
 
     /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
+     * Check, if the depths or tickers of many pairs can be fetched with a single request.
+     * The depths are fetched via the market data request for all the pairs.
      *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
+     * @param requestType The type of request.
      *
-     * @return true, if the given type of request is possible at the moment.
+     * @return true, if many pairs can be fetched with a single request.
      */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
+    public boolean isBatchRequestSupported( TradeSiteRequestType requestType) {
 
-	return true;  // Just a dummy for now...
+	return requestType == TradeSiteRequestType.Depth;
     }
 
+
     
     /**
      * Request the supported currencies from the coins-e server.
@@ -557,7 +572,7 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
 
 	String url = "http://www." + DOMAIN + "/api/v2/coins/list/";
 
-	String requestResult = HttpUtils.httpGet( url);  // Request the list of supported markets.
+	String requestResult = MetadataCache.getInstance().get( url);  // Request the list of supported markets (or get it from the cache).
 
 	//System.out.println( "DEBUG: coins.e server returned: '" + requestResult + "' as the currency list.");
 
@@ -641,7 +656,7 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
 
 	String url = "http://www." + DOMAIN + "/api/v2/markets/list/";
 
-	String requestResult = HttpUtils.httpGet( url);  // Request the list of supported markets.
+	String requestResult = MetadataCache.getInstance().get( url);  // Request the list of supported markets (or get it from the cache).
 
 	//System.out.println( "DEBUG: coins.e server returned: '" + requestResult + "' as the market list.");
 
@@ -675,7 +690,7 @@ public class CoinsEClient extends TradeSiteImpl implements TradeSite {
 
 			    String [] currencyName = currentMarket.getString( "pair").split( "_");
 			    
-			    CurrencyPair newCurrencyPair = new CurrencyPairImpl( currencyName[ 0], currencyName[ 1]);
+			    CurrencyPair newCurrencyPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currencyName[ 0], currencyName[ 1]);
 
 			    if( newCurrencyPair != null) {           // If the new currency pair is found
 				resultBuffer.add( newCurrencyPair);  // Add it to the result buffer.
@@ -60,16 +60,29 @@ public class CoinsEDepth extends DepthImpl {
      */ 
     public CoinsEDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new coins-e.com depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the coins-e.com server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */ 
+    public CoinsEDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);
 
 	// Since the coins-e depth has a different structure than most of the other depth results,
 	// it's parsed in this class and not in the base class.
 
 	// Parse the sell orders
-	parseCoinsEArray( jsonResponse.getJSONArray( "asks"), _sells, currencyPair, OrderType.SELL);
+	parseCoinsEArray( jsonResponse.getJSONArray( "asks"), _sells, currencyPair, OrderType.SELL, maxLevels);
 
 	// Parse the buy orders.
-	parseCoinsEArray( jsonResponse.getJSONArray( "bids"), _buys, currencyPair, OrderType.BUY);
+	parseCoinsEArray( jsonResponse.getJSONArray( "bids"), _buys, currencyPair, OrderType.BUY, maxLevels);
     }
 
 
@@ -82,11 +95,12 @@ public class CoinsEDepth extends DepthImpl {
      * @param result The array, where the orders are added to.
      * @param currencyPair The currency pair of the depth.
      * @param orderType The order type (buy or sell).
+     * @param maxLevels The maximum number of orders to add to the result.
      */
-    private void parseCoinsEArray( JSONArray jsonArray, List<DepthOrder> result, CurrencyPair currencyPair, OrderType orderType) {
+    private void parseCoinsEArray( JSONArray jsonArray, List<DepthOrder> result, CurrencyPair currencyPair, OrderType orderType, int maxLevels) {
 
-	// Loop over the json array.
-	for( int i = 0; i < jsonArray.size(); ++i) {
+	// Loop over the json array, until the result has the requested number of orders.
+	for( int i = 0; ( i < jsonArray.size()) && ( result.size() < maxLevels); ++i) {
 
 	    // Get the order object.
 	    JSONObject jsonOrder = jsonArray.getJSONObject( i);
@@ -101,7 +115,7 @@ public class CoinsEDepth extends DepthImpl {
 
 	    // Loop over the number of orders in the json array and create DepthOrder objects 
 	    // for the number of orders.
-	    for( int currentUserOrder = 0; currentUserOrder < nOrders; ++currentUserOrder) {
+	    for( int currentUserOrder = 0; ( currentUserOrder < nOrders) && ( result.size() < maxLevels); ++currentUserOrder) {
 
 		// Create one DepthOrder object and add it to the result.
 		result.add( new DepthOrderImpl( orderType, price, currencyPair, amount));
@@ -37,7 +37,7 @@ import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -375,6 +375,18 @@ public class CryptsyClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth(CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+        return getDepth(currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth(CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
         getSupportedCurrencyPairs();
 
         // If the request for the depth is allowed at the moment
@@ -396,7 +408,7 @@ public class CryptsyClient extends TradeSiteImpl implements TradeSite {
             try {
 
                 // Convert the HTTP request return value to JSON to parse further.
-                return new CryptsyDepth(JSONObject.fromObject(requestResult), currencyPair, this);
+                return new CryptsyDepth(JSONObject.fromObject(requestResult), currencyPair, this, maxLevels);
 
             } catch (JSONException je) {
 
@@ -739,17 +751,18 @@ public class CryptsyClient extends TradeSiteImpl implements TradeSite {
     }
 
     /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
+     * Check, if the depths or tickers of many pairs can be fetched with a single request.
+     * The depths are fetched via the orderdatav2 request for all the pairs.
      *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     * @return true, if the given type of request is possible at the moment.
+     * @param requestType The type of request.
+     * @return true, if many pairs can be fetched with a single request.
      */
-    public boolean isRequestAllowed(TradeSiteRequestType requestType) {
+    public boolean isBatchRequestSupported(TradeSiteRequestType requestType) {
 
-        return true;  // Just a dummy for now...
+        return requestType == TradeSiteRequestType.Depth;
     }
 
+
     /**
      * Request the markets from the website.
      *
@@ -781,7 +794,7 @@ public class CryptsyClient extends TradeSiteImpl implements TradeSite {
             Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode(currentMarket.getString("secondary_currency_code").toUpperCase());
 
             // Add the currency pair with the ID to the result buffer.
-            resultBuffer.put(new CurrencyPairImpl(currency, paymentCurrency), marketID);
+            resultBuffer.put(CurrencyPairRegistry.getInstance().getCurrencyPair(currency, paymentCurrency), marketID);
         }
 
         return resultBuffer;  // Return the buffer with the result.
@@ -838,7 +851,7 @@ public class CryptsyClient extends TradeSiteImpl implements TradeSite {
                     Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode(currentMarket.getString("secondarycode").toUpperCase());
 
                     // Add the currency pair with the ID to the result buffer.
-                    resultBuffer.put(new CurrencyPairImpl(currency, paymentCurrency), marketID);
+                    resultBuffer.put(CurrencyPairRegistry.getInstance().getCurrencyPair(currency, paymentCurrency), marketID);
                 }
 
                 return resultBuffer;  // Return the buffer with the result.
@@ -29,7 +29,7 @@ package de.andreas_rueckert.trade.site.cryptsy.client;
 import de.andreas_rueckert.trade.Amount;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.DepthImpl;
 import de.andreas_rueckert.trade.order.DepthOrderImpl;
 import de.andreas_rueckert.trade.order.OrderType;
@@ -73,7 +73,7 @@ public class CryptsyDepth extends DepthImpl {
 	String paymentCurrencyString = jsonMarket.getString( "secondarycode").toUpperCase();
 
 	// Try to create a currency pair for this market.
-	CurrencyPair newCurrencyPair = new CurrencyPairImpl( currencyString, paymentCurrencyString);
+	CurrencyPair newCurrencyPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currencyString, paymentCurrencyString);
 	
 	if( newCurrencyPair == null) {           // If the new currency pair is not found
 		    
@@ -89,7 +89,7 @@ public class CryptsyDepth extends DepthImpl {
 	setCurrencyPair( newCurrencyPair);
 
 	// Parse the orders and add them to this depth instance.
-	parseOrders( jsonMarket);
+	parseOrders( jsonMarket, ALL_LEVELS);
     }
 
     /**
@@ -101,10 +101,23 @@ public class CryptsyDepth extends DepthImpl {
      */
     public CryptsyDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new cryptsy depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the cryptsy server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public CryptsyDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);
 	
 	// Parse the nested JSON arrays in the response and convert them to DepthOrder objects.
-	parseOrders( jsonResponse.getJSONObject( "return").getJSONObject( currencyPair.getCurrency().getCode()));
+	parseOrders( jsonResponse.getJSONObject( "return").getJSONObject( currencyPair.getCurrency().getCode()), maxLevels);
     }
 
 
@@ -114,8 +127,9 @@ public class CryptsyDepth extends DepthImpl {
      * Parse the orders of a depth. This method is used by both constructors.
      *
      * @param jsonMarketStatus The market status as a JSONObject.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
      */
-    private final void parseOrders( JSONObject jsonMarketStatus) {
+    private final void parseOrders( JSONObject jsonMarketStatus, int maxLevels) {
 
 	// Get the array with the sell orders.
 	JSONArray sells = jsonMarketStatus.optJSONArray( "sellorders");
@@ -124,7 +138,7 @@ public class CryptsyDepth extends DepthImpl {
 	if( sells != null) {
 
 	    // Now loop over the sells array and get the entries as arrays.
-	    for( int i = 0; i < sells.size(); ++i) {
+	    for( int i = 0, nSells = Math.min( sells.size(), maxLevels); i < nSells; ++i) {
 		
 		JSONObject sellOrder = sells.getJSONObject( i);  // Get the current sell order.
 		
@@ -142,7 +156,7 @@ public class CryptsyDepth extends DepthImpl {
 	if( buys != null) {
 
 	    // Now loop over the buys array and get the entries as arrays.
-	    for( int i = 0; i < buys.size(); ++i) {
+	    for( int i = 0, nBuys = Math.min( buys.size(), maxLevels); i < nBuys; ++i) {
 		
 		JSONObject buyOrder = buys.getJSONObject( i);  // Get the current buy order.
 		
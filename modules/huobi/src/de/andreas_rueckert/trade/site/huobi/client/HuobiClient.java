@@ -42,7 +42,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
@@ -83,6 +82,10 @@ public class HuobiClient extends TradeSiteImpl implements TradeSite {
 
 	_url = "http://market.huobi.com/staticmarket/";  // Base URL for API calls.
 
+	// Huobi doesn't document a limit for the market data, so stay at the minimum request interval,
+	// but allow a burst to fetch the depths and tickers of both currency pairs.
+	setRequestRateLimit( null, 4, getMinimumRequestInterval());
+
 	// Set the available currency pairs (only 2 at the time of writing 2014/13/6).
 	_supportedCurrencyPairs = new CurrencyPair[2];
 	_supportedCurrencyPairs[0] = new CurrencyPairImpl( "BTC", "CNY");
@@ -138,6 +141,19 @@ public class HuobiClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+   /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
@@ -156,7 +172,7 @@ public class HuobiClient extends TradeSiteImpl implements TradeSite {
 		JSONObject requestResultJSON = (JSONObject)JSONObject.fromObject( requestResult);
 		
 		// Try to convert the response to a depth object and return it.
-		return new HuobiDepth( requestResultJSON, currencyPair, this);
+		return new HuobiDepth( requestResultJSON, currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
@@ -298,17 +314,4 @@ public class HuobiClient extends TradeSiteImpl implements TradeSite {
 
 	return 15L * 1000000L;  // 15s should work for most exchanges as a default.
     }
-
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 }
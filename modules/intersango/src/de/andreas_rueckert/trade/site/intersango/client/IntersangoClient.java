@@ -194,6 +194,19 @@ public class IntersangoClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @return The market depth.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) {
+
 	// If a request for the depth is allowed at the moment
 	if( isRequestAllowed( TradeSiteRequestType.Depth)) { 
 
@@ -211,7 +224,7 @@ public class IntersangoClient extends TradeSiteImpl implements TradeSite {
 		try {
 		    // Convert the HTTP request return value to JSON to parse further.
 		    // Get only the requested currency pair from the returned JSON object (might contain several currencies).
-		    Depth depth = new IntersangoDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		    Depth depth = new IntersangoDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 		    updateLastRequest();  // Update the timestamp of the last request.
 
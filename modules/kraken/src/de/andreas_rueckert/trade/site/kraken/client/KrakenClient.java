@@ -35,7 +35,7 @@ import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencySymbolMapper;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
 import de.andreas_rueckert.trade.order.OrderStatus;
@@ -50,8 +50,10 @@ import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.HttpStatistics;
 import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
+import de.andreas_rueckert.util.MetadataCache;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
@@ -253,6 +255,11 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
 	_name = "Kraken";
 	_url = "https://api.kraken.com/";
 
+	// Kraken counts the API calls of a user. The counter may reach 15 and is reduced by 1 every 3s
+	// (for tier 2 accounts). Orders are limited separately, so pace them with a bucket of their own.
+	setRequestRateLimit( null, 15, 3L * 1000000L);
+	setRequestRateLimit( TradeSiteRequestType.Order, 1, 1000000L);
+
 	// Fetch the supported currency pairs.
 	if( requestSupportedCurrencyPairs()) {
 
@@ -399,6 +406,19 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	// System.out.println( "DEBUG: getting depth for " + currencyPair.toString());
 
 	if( ! isSupportedCurrencyPair( currencyPair)) {
@@ -409,13 +429,16 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
 	String krakenPairName = getCurrencyPairName( currencyPair);
 
 	// The URL for the depth request.
-	String url = "https://api.kraken.com/" + "0/public/Depth?pair=" + krakenPairName;
+	String url = "https://api.kraken.com/" + "0/public/Depth?pair=" + krakenPairName
+	    + ( maxLevels != Depth.ALL_LEVELS ? "&count=" + maxLevels : "");  // Let Kraken limit the depth.
 
 	// Do the actual request.
 	String requestResult = HttpUtils.httpGet( url);
 
 	if( requestResult != null) {  // Request sucessful?
 
+	    long parseStart = System.nanoTime();
+
 	    try {
 
 		// Convert the result to JSON.
@@ -435,13 +458,16 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
 		}
 
 		// Get the JSON object with the ask and bid arrays from the JSON result.
-		return new KrakenDepth( requestResultObj.getJSONObject( "result").getJSONObject( krakenPairName), currencyPair, this);
+		return new KrakenDepth( requestResultObj.getJSONObject( "result").getJSONObject( krakenPairName), currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
 		System.err.println( "Cannot parse " + this._name + " depth return: " + je.toString());
 
 		throw new TradeDataNotAvailableException( "cannot parse data from " + this._name);
+	    } finally {
+
+		HttpStatistics.getInstance().recordParseTime( url, System.nanoTime() - parseStart);
 	    }
 	}
 	
@@ -742,18 +768,6 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
 	return 15L * 1000000L;  // 15s should work for most exchanges. Dont't know the actual frequency (a_rueckert).
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 
     /**
      * Check, if a given currency pair is supported on this site.
@@ -775,8 +789,8 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
 
 	String url = _url + "0/public/AssetPairs";  // The URL for fetching the traded pairs.
 
-	// Request info on the traded pairs from the server.
-	String requestResult = HttpUtils.httpGet( url);
+	// Request info on the traded pairs from the server (or the metadata cache).
+	String requestResult = MetadataCache.getInstance().get( url);
 
 	if( requestResult != null) {  // If the server returned a response.
 
@@ -803,7 +817,7 @@ public class KrakenClient extends TradeSiteImpl implements TradeSite {
 		    Currency paymentCurrency = CurrencySymbolMapper.getCurrencyForIso4217Name( currentCurrencyPairJSON.getString( "quote"));
 
 		    // Create a pair from the currencies.
-		    CurrencyPair currentPair = new CurrencyPairImpl( currency, paymentCurrency);
+		    CurrencyPair currentPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
 
 		    // Add the pair with it's kraken name to the map of pair names.
 		    addCurrencyPairName( currentPair, krakenPairName);
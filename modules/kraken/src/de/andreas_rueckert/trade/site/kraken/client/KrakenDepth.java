@@ -59,13 +59,26 @@ public class KrakenDepth extends DepthImpl {
      */
     public KrakenDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new Kraken.com depth object from the JSON response from the server.
+     *
+     * @param jsonResponse The jsonResponse from the Kraken server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public KrakenDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);  // Init the base depth variables.
 	
 	// Parse the nested JSON arrays in the response and convert them to DepthOrder objects.
 	// Kraken delivers the timestamp of the order as the third argument, but this is ignored
 	// for now, since the DepthOrder object cannot store it anyway and I don't need it in my
 	// app or bots for now (A. Rueckert <a_rueckert@gmx.net>).
-	parseJSONDepthArrays( jsonResponse);
+	parseJSONDepthArrays( jsonResponse, maxLevels);
     }
 
 
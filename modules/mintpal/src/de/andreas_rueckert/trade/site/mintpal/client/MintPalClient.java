@@ -32,7 +32,7 @@ import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -43,7 +43,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
@@ -152,6 +151,21 @@ public class MintPalClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     *
+     * @see <a href="https://www.mintpal.com/api#marketorders">MintPal depth</a>
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
@@ -253,7 +267,7 @@ public class MintPalClient extends TradeSiteImpl implements TradeSite {
 	// End of second request.
 
 	// Now create a new depth object from the returned buy and sell orders.
-	return new MintPalDepth( buyJSON, sellJSON, currencyPair, this); 
+	return new MintPalDepth( buyJSON, sellJSON, currencyPair, this, maxLevels); 
     }
 
     /**
@@ -504,18 +518,6 @@ public class MintPalClient extends TradeSiteImpl implements TradeSite {
 	return _withdrawFees.get( currency);
     }
 
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 
     /**
      * Request the supported currency pairs from the bittrex server.
@@ -554,7 +556,7 @@ public class MintPalClient extends TradeSiteImpl implements TradeSite {
 		    Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currentPairJSON.getString( "exchange").toUpperCase());
 
 		    // Create a pair from the currencies.
-		    CurrencyPair currentPair = new CurrencyPairImpl( currency, paymentCurrency);
+		    CurrencyPair currentPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
 		
 		    // Add the current pair to the result buffer.
 		    resultBuffer.add( currentPair);
@@ -65,6 +65,20 @@ public class MintPalDepth extends DepthImpl {
      */
     public MintPalDepth( JSONObject jsonBuy, JSONObject jsonSell, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonBuy, jsonSell, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new MintPal depth object from the JSON responses from the server.
+     *
+     * @param jsonBuy The buy orders as a JSON object.
+     * @param jsonSell The sell orders as a JSON object.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public MintPalDepth( JSONObject jsonBuy, JSONObject jsonSell, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);  // Init the base depth variables.
 
 	// Get the array with the buy orders.
@@ -100,6 +114,9 @@ public class MintPalDepth extends DepthImpl {
 	
 	// Now sort the buy orders just in case...
 	Collections.sort( _sells);
+
+	// Only the sorted orders can be limited safely, since the order of the response is not guaranteed.
+	removeOrdersBeyondLevel( maxLevels);
     }
 
 
@@ -577,6 +577,19 @@ public class MtGoxClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the trade data from mtgox.
+     *
+     * @param currencyPair The currency pair to query.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @return The trade data as a Depth object.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) {
+
 	// System.out.println( "Fetching depth from MtGox for " + currencyPair.getCode());
 
 	// If the user wants intense logging, add some info.
@@ -602,7 +615,7 @@ public class MtGoxClient extends TradeSiteImpl implements TradeSite {
 	    if( requestResult != null) {  // Request sucessful?
 		try {
 		    // Convert the HTTP request return to JSON to parse further.
-		    Depth depth = new MtGoxDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		    Depth depth = new MtGoxDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 		    updateLastRequest( TradeSiteRequestType.Depth);  // Update the timestamp of the last request.
 
@@ -59,6 +59,19 @@ public class MtGoxDepth extends DepthImpl {
      */
     public MtGoxDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite) {
 
+	this( jsonResponse, currencyPair, tradeSite, ALL_LEVELS);
+    }
+
+    /**
+     * Create a new MtGox depth object from the JSON response from the server.
+     *   
+     * @param jsonResponse The jsonResponse from the btc-e.com server.
+     * @param currencyPair The currency pair, that was queried.
+     * @param tradeSite The trade site, that delivered the data.
+     * @param maxLevels The maximum number of buy and sell orders to parse.
+     */
+    public MtGoxDepth( JSONObject jsonResponse, CurrencyPair currencyPair, TradeSite tradeSite, int maxLevels) {
+
 	super( currencyPair, tradeSite);
 
 	// Get the array with the sell orders.
@@ -96,6 +109,9 @@ public class MtGoxDepth extends DepthImpl {
 	Collections.sort( _buys);
 
 	// Ignore the 'stamp' field for now...
+
+	// Only the sorted orders can be limited safely, since the order of the response is not guaranteed.
+	removeOrdersBeyondLevel( maxLevels);
     }
 
 
@@ -42,7 +42,6 @@ import de.andreas_rueckert.trade.order.WithdrawOrder;
 import de.andreas_rueckert.trade.Price;
 import de.andreas_rueckert.trade.site.TradeSite;
 import de.andreas_rueckert.trade.site.TradeSiteImpl;
-import de.andreas_rueckert.trade.site.TradeSiteRequestType;
 import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
@@ -139,12 +138,26 @@ public class OKCoinClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+   /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
 
 	// Create the URL to fetch the depth.
-	String url = _url + "depth.do?symbol=" + getOKCoinCurrencyPairCode( currencyPair);
+	String url = _url + "depth.do?symbol=" + getOKCoinCurrencyPairCode( currencyPair)
+	    + ( maxLevels != Depth.ALL_LEVELS ? "&size=" + maxLevels : "");  // Let OKCoin limit the depth.
 
 	// Do the actual request.
 	String requestResult = HttpUtils.httpGet( url);
@@ -160,7 +173,7 @@ public class OKCoinClient extends TradeSiteImpl implements TradeSite {
 		// @see: https://bitcointalk.org/index.php?topic=342952.msg7293837#msg7293837
 
 		// So try to convert the response to a depth object and return it.
-		return new OKCoinDepth( requestResultJSON, currencyPair, this);
+		return new OKCoinDepth( requestResultJSON, currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
@@ -355,17 +368,4 @@ public class OKCoinClient extends TradeSiteImpl implements TradeSite {
 
 	return 15L * 1000000L;  // 15s should work for most exchanges as a default.
     }
-
-    /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
-     *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
-     *
-     * @return true, if the given type of request is possible at the moment.
-     */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
-
-	return true;  // Just a dummy for now.
-    }
 }
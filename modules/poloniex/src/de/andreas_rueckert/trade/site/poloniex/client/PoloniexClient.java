@@ -31,7 +31,7 @@ import de.andreas_rueckert.trade.CryptoCoinTrade;
 import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -47,6 +47,7 @@ import de.andreas_rueckert.trade.site.TradeSiteUserAccount;
 import de.andreas_rueckert.trade.Ticker;
 import de.andreas_rueckert.trade.Trade;
 import de.andreas_rueckert.trade.TradeDataNotAvailableException;
+import de.andreas_rueckert.util.HttpStatistics;
 import de.andreas_rueckert.util.HttpUtils;
 import de.andreas_rueckert.util.LogUtils;
 import java.math.BigDecimal;
@@ -70,6 +71,11 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
 
     // Static variables
 
+    /**
+     * The minimum share of the supported currency pairs, that must be queried to fetch the
+     * depths of all the markets with 1 request. Fewer depths are fetched one by one.
+     */
+    private final static double MIN_SHARE_FOR_ALL_DEPTHS = 0.25d;
 
     // Instance variables
 
@@ -85,6 +91,10 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
 
 	_url = "https://poloniex.com/public";  // Base URL for API calls.
 
+	// Poloniex bans IPs with more than 6 calls per second (public and trading API),
+	// so allow short bursts, but stay at 6 calls per second.
+	setRequestRateLimit( null, 3, 1000000L / 6L);
+
 	// Try to request the supported currency pairs.
 	if( ! requestSupportedCurrencyPairs()) {
 
@@ -142,18 +152,34 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) throws TradeDataNotAvailableException {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the market depth as a Depth object.
+     *
+     * @param currencyPair The queried currency pair.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @throws TradeDataNotAvailableException if the depth is not available.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) throws TradeDataNotAvailableException {
+
 	if( ! isSupportedCurrencyPair( currencyPair)) {
 	    throw new CurrencyNotSupportedException( "Currency pair: " + currencyPair.toString() + " is currently not supported on " + _name);
 	}
 
 	// Create the URL to fetch the depth.
-	String url = _url + "?command=returnOrderBook&currencyPair=" + getPoloniexCurrencyPairName( currencyPair);
+	String url = _url + "?command=returnOrderBook&currencyPair=" + getPoloniexCurrencyPairName( currencyPair)
+	    + ( maxLevels != Depth.ALL_LEVELS ? "&depth=" + maxLevels : "");  // Let Poloniex limit the depth.
 
 	// Do the actual request.
 	String requestResult = HttpUtils.httpGet( url);
 
 	if( requestResult != null) {  // Request sucessful?
 
+	    long parseStart = System.nanoTime();
+
 	    try {
 		
 		// Convert the result to JSON.
@@ -162,19 +188,109 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
 		// ToDo: error checking, but Poloniex just returns an empty page in case of an error?
 		
 		// Create a new depth instance from the data and return it.
-		return new PoloniexDepth( requestResultJSON, currencyPair, this);
+		return new PoloniexDepth( requestResultJSON, currencyPair, this, maxLevels);
 
 	    } catch( JSONException je) {
 
 		System.err.println( "Cannot parse " + this._name + " depth return: " + je.toString());
 
 		throw new TradeDataNotAvailableException( "cannot parse depth data from " + this._name);
+	    } finally {
+
+		HttpStatistics.getInstance().recordParseTime( url, System.nanoTime() - parseStart);
 	    }
 	}
     
 	throw new TradeDataNotAvailableException( this._name + " server did not respond to depth request");
     }
 
+    /**
+     * Get the market depths of several currency pairs.
+     *
+     * @param currencyPairs The queried currency pairs.
+     *
+     * @return The market depths in the order of the currency pairs. A depth is null, if the server did not return it.
+     *
+     * @throws TradeDataNotAvailableException if the depths are not available.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
+
+	return getDepths( currencyPairs, Depth.ALL_LEVELS);
+    }
+
+    /**
+     * Get the market depths of several currency pairs.
+     * Poloniex returns the depths of all the pairs, if 'all' is used as the pair name. Since there is
+     * no way to query only some of the pairs, a few depths are fetched with 1 request per pair instead.
+     *
+     * @param currencyPairs The queried currency pairs.
+     * @param maxLevels The maximum number of buy and sell orders per depth (Depth.ALL_LEVELS for the full depths).
+     *
+     * @return The market depths in the order of the currency pairs. A depth is null, if the server did not return it.
+     *
+     * @throws TradeDataNotAvailableException if the depths are not available.
+     */
+    public List<Depth> getDepths( CurrencyPair [] currencyPairs, int maxLevels) throws TradeDataNotAvailableException {
+
+	List<Depth> result = new ArrayList<Depth>();
+
+	CurrencyPair [] supportedPairs = getSupportedCurrencyPairs();
+
+	if( ( supportedPairs != null) && ( currencyPairs.length < MIN_SHARE_FOR_ALL_DEPTHS * supportedPairs.length)) {
+
+	    for( CurrencyPair currentPair : currencyPairs) {
+
+		try {
+		    result.add( getDepth( currentPair, maxLevels));
+
+		} catch( TradeDataNotAvailableException tdnae) {
+
+		    result.add( null);  // Don't let 1 pair fail the other depths.
+		}
+	    }
+
+	    return result;
+	}
+
+	String url = _url + "?command=returnOrderBook&currencyPair=all"
+	    + ( maxLevels != Depth.ALL_LEVELS ? "&depth=" + maxLevels : "");  // Let Poloniex limit the depths.
+
+	// Do the actual request.
+	String requestResult = HttpUtils.httpGet( url);
+
+	if( requestResult != null) {  // Request sucessful?
+
+	    long parseStart = System.nanoTime();
+
+	    try {
+		
+		// Convert the result to JSON.
+		JSONObject requestResultJSON = JSONObject.fromObject( requestResult);
+
+		// Parse only the requested pairs.
+		for( CurrencyPair currentPair : currencyPairs) {
+
+		    JSONObject currentDepth = requestResultJSON.optJSONObject( getPoloniexCurrencyPairName( currentPair));
+
+		    result.add( currentDepth == null ? null : new PoloniexDepth( currentDepth, currentPair, this, maxLevels));
+		}
+
+		return result;
+
+	    } catch( JSONException je) {
+
+		System.err.println( "Cannot parse " + this._name + " depths return: " + je.toString());
+
+		throw new TradeDataNotAvailableException( "cannot parse depth data from " + this._name);
+	    } finally {
+
+		HttpStatistics.getInstance().recordParseTime( url, System.nanoTime() - parseStart);
+	    }
+	}
+    
+	throw new TradeDataNotAvailableException( this._name + " server did not respond to depths request");
+    }
+
     /**
      * Get the fee for an order in the resulting currency.
      * Synchronize this method, since several users might use this method with different
@@ -297,6 +413,52 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
 	throw new TradeDataNotAvailableException( this._name + " server did not respond to depth request");
     }
 
+    /**
+     * Get the tickers of several currency pairs. Poloniex returns all the tickers
+     * with a single request anyway.
+     *
+     * @param currencyPairs The currency pairs to query.
+     *
+     * @return The tickers in the order of the currency pairs. A ticker is null, if the server did not return it.
+     *
+     * @throws TradeDataNotAvailableException if the tickers are not available.
+     */
+    public List<Ticker> getTickers( CurrencyPair [] currencyPairs) throws TradeDataNotAvailableException {
+
+	String url = _url + "?command=returnTicker";
+
+	// Do the actual request.
+	String requestResult = HttpUtils.httpGet( url);
+
+	if( requestResult != null) {  // Request sucessful?
+
+	    try {
+		
+		// Convert the result to JSON.
+		JSONObject requestResultJSON = JSONObject.fromObject( requestResult);
+
+		List<Ticker> result = new ArrayList<Ticker>();
+
+		for( CurrencyPair currentPair : currencyPairs) {
+
+		    result.add( requestResultJSON.has( getPoloniexCurrencyPairName( currentPair)) 
+				? new PoloniexTicker( requestResultJSON, currentPair, this)
+				: null);
+		}
+
+		return result;
+
+	    } catch( JSONException je) {
+
+		System.err.println( "Cannot parse " + this._name + " tickers return: " + je.toString());
+
+		throw new TradeDataNotAvailableException( "cannot parse ticker data from " + this._name);
+	    }
+	}
+
+	throw new TradeDataNotAvailableException( this._name + " server did not respond to tickers request");
+    }
+
     /**
      * Get a list of recent trades.
      *
@@ -323,18 +485,18 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
     }
 
     /**
-     * Check, if some request type is allowed at the moment. Most
-     * trade site have limits on the number of request per time interval.
+     * Check, if the depths or tickers of many pairs can be fetched with a single request.
      *
-     * @param requestType The type of request (trades, depth, ticker, order etc).
+     * @param requestType The type of request.
      *
-     * @return true, if the given type of request is possible at the moment.
+     * @return true, if many pairs can be fetched with a single request.
      */
-    public boolean isRequestAllowed( TradeSiteRequestType requestType) {
+    public boolean isBatchRequestSupported( TradeSiteRequestType requestType) {
 
-	return true;  // Just a dummy for now.
+	return ( requestType == TradeSiteRequestType.Depth) || ( requestType == TradeSiteRequestType.Ticker);
     }
 
+
     /**
      * Request the supported currency pairs from the Bitfinex server.
      *
@@ -379,7 +541,7 @@ public class PoloniexClient extends TradeSiteImpl implements TradeSite {
 			Currency paymentCurrency = CurrencyProvider.getInstance().getCurrencyForCode( currencyNames[1].toUpperCase());
 			
 			// Create a pair from the currencies.
-			CurrencyPair currentPair = new CurrencyPairImpl( currency, paymentCurrency);
+			CurrencyPair currentPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency, paymentCurrency);
 		
 			// Add the current pair to the result buffer.
 			resultBuffer.add( currentPair);
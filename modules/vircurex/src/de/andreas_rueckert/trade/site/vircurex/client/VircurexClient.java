@@ -34,7 +34,7 @@ import de.andreas_rueckert.trade.currency.Currency;
 import de.andreas_rueckert.trade.currency.CurrencyImpl;
 import de.andreas_rueckert.trade.currency.CurrencyNotSupportedException;
 import de.andreas_rueckert.trade.currency.CurrencyPair;
-import de.andreas_rueckert.trade.currency.CurrencyPairImpl;
+import de.andreas_rueckert.trade.currency.CurrencyPairRegistry;
 import de.andreas_rueckert.trade.currency.CurrencyProvider;
 import de.andreas_rueckert.trade.Depth;
 import de.andreas_rueckert.trade.order.DepositOrder;
@@ -209,6 +209,19 @@ public class VircurexClient extends TradeSiteImpl implements TradeSite {
      */
     public Depth getDepth( CurrencyPair currencyPair) {
 
+	return getDepth( currencyPair, Depth.ALL_LEVELS);  // Request the full depth.
+    }
+
+    /**
+     * Get the current depth.
+     *
+     * @param currencyPair The currency pair to be queried.
+     * @param maxLevels The maximum number of buy and sell orders to return.
+     *
+     * @return The current depth.
+     */
+    public Depth getDepth( CurrencyPair currencyPair, int maxLevels) {
+
 	// If a request for the depth is allowed at the moment
 	if( isRequestAllowed( TradeSiteRequestType.Depth)) { 
 
@@ -226,7 +239,7 @@ public class VircurexClient extends TradeSiteImpl implements TradeSite {
 	    if( requestResult != null) {  // Request sucessful?
 		try {
 		    // Convert the HTTP request return value to JSON to parse further.
-		    Depth depth = new VircurexDepth( JSONObject.fromObject( requestResult), currencyPair, this);
+		    Depth depth = new VircurexDepth( JSONObject.fromObject( requestResult), currencyPair, this, maxLevels);
 
 		    updateLastRequest();  // Update the timestamp of the last request.
 
@@ -306,7 +319,7 @@ public class VircurexClient extends TradeSiteImpl implements TradeSite {
 
 		// Since this key is a currency, get the depth for this currency.
 		// The JSON for each currency is the same format as in the orderbook method.
-		Depth depth = new VircurexDepth( resultJSON.getJSONObject( currentKey), new CurrencyPairImpl( currentCurrency, paymentCurrency), this);
+		Depth depth = new VircurexDepth( resultJSON.getJSONObject( currentKey), CurrencyPairRegistry.getInstance().getCurrencyPair( currentCurrency, paymentCurrency), this);
 
 		//Add this depth to the result buffer.
 		resultBuffer.add( depth);
@@ -842,17 +855,17 @@ public class VircurexClient extends TradeSiteImpl implements TradeSite {
 			    String paymentCurrency = (String)iter2.next();
 			    
 			    // Now create a currency pair.
-			    CurrencyPair newPair = new CurrencyPairImpl( currency.toUpperCase(), paymentCurrency.toUpperCase());
+			    CurrencyPair newPair = CurrencyPairRegistry.getInstance().getCurrencyPair( currency.toUpperCase(), paymentCurrency.toUpperCase());
 			    
 			    // Create the same pair also inverted.
-			    CurrencyPair newPairInverted = new CurrencyPairImpl( paymentCurrency.toUpperCase(), currency.toUpperCase());
+			    CurrencyPair newPairInverted = CurrencyPairRegistry.getInstance().getCurrencyPair( paymentCurrency.toUpperCase(), currency.toUpperCase());
 
 			    // Add the new pair only, if it's not already either exactly or inverted in the buffer.
 			    // This is just to minimize the number of pairs, since a huge number slows the arb bot
 			    // down.
 			    if( ! resultBuffer.contains( newPair) && ! resultBuffer.contains( newPairInverted)) {
 				
-				resultBuffer.add( new CurrencyPairImpl( currency.toUpperCase(), paymentCurrency.toUpperCase()));
+				resultBuffer.add( CurrencyPairRegistry.getInstance().getCurrencyPair( currency.toUpperCase(), paymentCurrency.toUpperCase()));
 			    }
 			}
 		    }